@@ -28,6 +28,7 @@ import javax.management.JMException;
 import javax.management.MalformedObjectNameException;
 import javax.management.ObjectName;
 import java.io.IOException;
+import java.text.MessageFormat;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
@@ -73,6 +74,27 @@ public class AdminConsoleClient implements AdminConsoleMXBean, AutoCloseable {
         }
     }
 
+    // Throws, unlike others, as callers have to stop paging at failure
+    @Override
+    public String getUsagePage(String start, String end, String cursor, int limit) throws IOException {
+        try {
+            return (String) client.invokeOperation(objectName, "getUsagePage", start, end, cursor, limit);
+        } catch (Exception e) {
+            throw new IOException(MessageFormat.format("Failed to get usage {0}-{1} after ''{2}''", start, end, cursor), e);
+        }
+    }
+
+    @Override
+    public List<String> getUsageSummary(String start, String end, String groupBy) {
+        try {
+            String[] jsons = (String[]) client.invokeOperation(objectName, "getUsageSummary", start, end, groupBy);
+            return Arrays.asList(jsons);
+        } catch (Exception o) {
+            LOG.error("Failed to get usage summary {}-{} by {}", start, end, groupBy, o);
+            return Collections.emptyList();
+        }
+    }
+
     @Override
     public List<String> listUser() {
         try {
@@ -134,6 +156,26 @@ public class AdminConsoleClient implements AdminConsoleMXBean, AutoCloseable {
         }
     }
 
+    @Override
+    public String gcStatus() {
+        try {
+            return (String) client.invokeOperation(objectName, "gcStatus");
+        } catch (Exception e) {
+            LOG.error("Failed to get GC status", e);
+            return "{}";
+        }
+    }
+
+    @Override
+    public boolean stopGc() {
+        try {
+            return (boolean) client.invokeOperation(objectName, "stopGc");
+        } catch (Exception e) {
+            LOG.error("Failed to stop GC", e);
+            return false;
+        }
+    }
+
     @Override
     public void close() throws IOException {
         client.close();
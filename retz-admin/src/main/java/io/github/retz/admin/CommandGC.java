@@ -28,6 +28,12 @@ public class CommandGC implements SubCommand {
     @Parameter(names = "--leeway", description = "Leeway seconds")
     private int leeway = -1;
 
+    @Parameter(names = "--status", description = "Show progress of running or last garbage collection")
+    private boolean status = false;
+
+    @Parameter(names = "--stop", description = "Stop running garbage collection")
+    private boolean stop = false;
+
     @Override
     public String description() {
         return "Garbage collection";
@@ -42,11 +48,28 @@ public class CommandGC implements SubCommand {
     public int handle(FileConfiguration fileConfig, boolean verbose) throws Throwable  {
         int port = fileConfig.getJmxPort();
         try (AdminConsoleClient client = new AdminConsoleClient(new JmxClient("localhost", port))) {
+            if (status) {
+                LOG.info(client.gcStatus());
+                return 0;
+            } else if (stop) {
+                if (client.stopGc()) {
+                    LOG.info("Garbage collection is being stopped");
+                    return 0;
+                }
+                LOG.info("No garbage collection is running");
+                return 1;
+            }
+            boolean started;
             if (leeway < 0) {
-                client.gc();
+                started = client.gc();
             } else {
-                client.gc(leeway);
+                started = client.gc(leeway);
+            }
+            if (!started) {
+                LOG.info("Garbage collection is already running; see gc --status");
+                return 1;
             }
+            LOG.info("Garbage collection started; see gc --status for progress");
             return 0;
         }
     }
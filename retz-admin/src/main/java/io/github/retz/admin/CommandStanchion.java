@@ -0,0 +1,64 @@
+/**
+ *    Retz
+ *    Copyright (C) 2016-2017 Nautilus Technologies, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.github.retz.admin;
+
+import com.beust.jcommander.Parameter;
+import com.j256.simplejmx.client.JmxClient;
+import io.github.retz.cli.FileConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class CommandStanchion implements SubCommand {
+    static final Logger LOG = LoggerFactory.getLogger(CommandStanchion.class);
+
+    @Parameter(names = "--slow", description = "Show recent slow tasks with their stacks")
+    private boolean slow = false;
+
+    @Parameter(names = "--reset", description = "Reset statistics after showing them")
+    private boolean reset = false;
+
+    @Override
+    public String description() {
+        return "Show queue length, wait and run time of scheduler tasks by kind";
+    }
+
+    @Override
+    public String getName() {
+        return "stanchion";
+    }
+
+    @Override
+    public int handle(FileConfiguration fileConfig, boolean verbose) throws Throwable {
+        int port = fileConfig.getJmxPort();
+        try (StanchionClient client = new StanchionClient(new JmxClient("localhost", port))) {
+            LOG.info("Queue lengths (planning, status lanes...): {}", client.getQueueLengths());
+            for (String line : client.getTasks()) {
+                LOG.info(line);
+            }
+            if (slow) {
+                LOG.info("Tasks slower than {}ms:", client.getSlowTaskThresholdMillis());
+                for (String task : client.getSlowTasks()) {
+                    LOG.info(task);
+                }
+            }
+            if (reset) {
+                client.reset();
+            }
+            return 0;
+        }
+    }
+}
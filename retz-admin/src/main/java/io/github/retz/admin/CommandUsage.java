@@ -17,12 +17,25 @@
 package io.github.retz.admin;
 
 import com.beust.jcommander.Parameter;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
 import com.j256.simplejmx.client.JmxClient;
+import io.github.retz.bean.AdminConsoleMXBean;
 import io.github.retz.cli.FileConfiguration;
+import io.github.retz.cli.TimestampHelper;
+import io.github.retz.protocol.data.Job;
+import io.github.retz.protocol.data.ResourceQuantity;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.stream.Collectors;
 
 public class CommandUsage implements SubCommand {
     static final Logger LOG = LoggerFactory.getLogger(CommandUsage.class);
@@ -33,9 +46,27 @@ public class CommandUsage implements SubCommand {
     @Parameter(names = {"--end", "-end"}, description = "End time of a period to fetch")
     private String end = "9999-12-32";
 
+    @Parameter(names = "--format", description = "Output format: 'json' for a JSON object per line, or 'csv'")
+    String format = "json";
+
+    @Parameter(names = "--group-by", description = "Sum up usage by 'user', 'app' or 'total' at server, instead of listing jobs")
+    String groupBy;
+
+    @Parameter(names = "--page-size", description = "Number of jobs fetched at once")
+    int pageSize = 4096;
+
+    @Parameter(names = "--output", description = "Output file; standard output by default")
+    String output;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    public CommandUsage() {
+        mapper.registerModule(new Jdk8Module());
+    }
+
     @Override
     public String description() {
-        return "Get usage of all users (time range is compared as String)";
+        return "Get usage of all users (time range is given as dates or timestamps)";
     }
 
     @Override
@@ -45,14 +76,111 @@ public class CommandUsage implements SubCommand {
 
     @Override
     public int handle(FileConfiguration fileConfig, boolean verbose) throws Throwable {
+        if (!"json".equals(format) && !"csv".equals(format)) {
+            LOG.error("Unknown format: {}", format);
+            return 1;
+        }
         int port = fileConfig.getJmxPort();
-        try (AdminConsoleClient client = new AdminConsoleClient(new JmxClient("localhost", port))) {
-            List<String> lines = client.getUsage(start, end);
-            for (String line: lines) {
-                LOG.info(line);
+        try (AdminConsoleClient client = new AdminConsoleClient(new JmxClient("localhost", port));
+             Writer writer = openOutput()) {
+            if (groupBy != null) {
+                writeSummary(client.getUsageSummary(start, end, groupBy), writer);
+                return 0;
+            }
+            long count = writeJobs(client, writer);
+            if (verbose) {
+                LOG.info("{} jobs written", count);
             }
             return 0;
         }
     }
-}
 
+    private Writer openOutput() throws IOException {
+        OutputStream out = (output == null) ? new FilterOutputStream(System.out) {
+            @Override
+            public void close() throws IOException {
+                flush(); // Not to close System.out
+            }
+        } : new FileOutputStream(output);
+        return new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+    }
+
+    // Writes jobs page by page, so that neither server nor this process holds all jobs
+    long writeJobs(AdminConsoleMXBean client, Writer writer) throws IOException {
+        if ("csv".equals(format)) {
+            writer.write("id,appid,name,state,result,cpu,memMB,gpu,ports,diskMB,scheduled,started,finished,seconds\n");
+        }
+        long count = 0;
+        String cursor = "";
+        while (true) {
+            JsonNode page = mapper.readTree(client.getUsagePage(start, end, cursor, pageSize));
+            for (JsonNode node : page.get("jobs")) {
+                if ("csv".equals(format)) {
+                    writer.write(toCsv(mapper.treeToValue(node, Job.class)));
+                } else {
+                    writer.write(mapper.writeValueAsString(node));
+                }
+                writer.write('\n');
+                count++;
+            }
+            writer.flush();
+            if (!page.has("next")) {
+                return count;
+            }
+            cursor = page.get("next").asText();
+        }
+    }
+
+    void writeSummary(List<String> lines, Writer writer) throws IOException {
+        if ("csv".equals(format)) {
+            writer.write(csvLine(Arrays.asList(groupBy, "jobs", "cpuSeconds", "memMBSeconds", "gpuSeconds")));
+            writer.write('\n');
+        }
+        for (String line : lines) {
+            if ("csv".equals(format)) {
+                JsonNode node = mapper.readTree(line);
+                Iterator<JsonNode> values = node.elements();
+                StringBuilder sb = new StringBuilder();
+                while (values.hasNext()) {
+                    sb.append(sb.length() == 0 ? "" : ",").append(csvField(values.next().asText()));
+                }
+                writer.write(sb.toString());
+            } else {
+                writer.write(line);
+            }
+            writer.write('\n');
+        }
+    }
+
+    static String toCsv(Job job) {
+        ResourceQuantity r = job.resources();
+        String seconds = "";
+        if (job.started() != null && job.finished() != null) {
+            try {
+                seconds = Double.toString(TimestampHelper.diffMillisec(job.finished(), job.started()) / 1000.0);
+            } catch (ParseException e) {
+                // Other fields of the job are still worth writing; seconds is left empty
+                LOG.debug("Job {} has unparsable timestamps: {}", job.id(), e.toString());
+            }
+        }
+        return csvLine(Arrays.asList(Integer.toString(job.id()), job.appid(), job.name(), job.state().toString(),
+                Integer.toString(job.result()), Integer.toString(r.getCpu()), Integer.toString(r.getMemMB()),
+                Integer.toString(r.getGpu()), Integer.toString(r.getPorts()), Integer.toString(r.getDiskMB()),
+                job.scheduled(), job.started(), job.finished(), seconds));
+    }
+
+    static String csvLine(List<String> fields) {
+        return fields.stream().map(CommandUsage::csvField).collect(Collectors.joining(","));
+    }
+
+    // RFC 4180: quote fields with comma, quote or line breaks, doubling quotes
+    static String csvField(String s) {
+        if (s == null) {
+            return "";
+        }
+        if (s.contains(",") || s.contains("\"") || s.contains("\n") || s.contains("\r")) {
+            return "\"" + s.replace("\"", "\"\"") + "\"";
+        }
+        return s;
+    }
+}
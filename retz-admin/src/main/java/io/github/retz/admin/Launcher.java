@@ -56,6 +56,7 @@ public final class Launcher {
         SUB_COMMANDS.add(new CommandGetUser());
         SUB_COMMANDS.add(new CommandHelp());
         SUB_COMMANDS.add(new CommandListUser());
+        SUB_COMMANDS.add(new CommandStanchion());
         SUB_COMMANDS.add(new CommandUsage());
     }
 
@@ -0,0 +1,95 @@
+/**
+ *    Retz
+ *    Copyright (C) 2016-2017 Nautilus Technologies, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.github.retz.admin;
+
+import com.j256.simplejmx.client.JmxClient;
+import io.github.retz.bean.StanchionMXBean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+public class StanchionClient implements StanchionMXBean, AutoCloseable {
+    static final Logger LOG = LoggerFactory.getLogger(StanchionClient.class);
+
+    private JmxClient client;
+    private ObjectName objectName;
+
+    public StanchionClient(JmxClient client) throws MalformedObjectNameException {
+        this.client = Objects.requireNonNull(client);
+        objectName = new ObjectName("io.github.retz.scheduler:type=Stanchion");
+    }
+
+    @Override
+    public List<Integer> getQueueLengths() {
+        try {
+            return Arrays.asList((Integer[]) client.getAttribute(objectName, "QueueLengths"));
+        } catch (Exception e) {
+            LOG.error("Failed to get queue lengths", e);
+            return Collections.emptyList();
+        }
+    }
+
+    @Override
+    public List<String> getTasks() {
+        return getStrings("Tasks");
+    }
+
+    @Override
+    public long getSlowTaskThresholdMillis() {
+        try {
+            return (long) client.getAttribute(objectName, "SlowTaskThresholdMillis");
+        } catch (Exception e) {
+            LOG.error("Failed to get slow task threshold", e);
+            return -1;
+        }
+    }
+
+    @Override
+    public List<String> getSlowTasks() {
+        return getStrings("SlowTasks");
+    }
+
+    private List<String> getStrings(String attribute) {
+        try {
+            return Arrays.asList((String[]) client.getAttribute(objectName, attribute));
+        } catch (Exception e) {
+            LOG.error("Failed to get {}", attribute, e);
+            return Collections.emptyList();
+        }
+    }
+
+    @Override
+    public void reset() {
+        try {
+            client.invokeOperation(objectName, "reset");
+        } catch (Exception e) {
+            LOG.error("Failed to reset", e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        client.close();
+    }
+}
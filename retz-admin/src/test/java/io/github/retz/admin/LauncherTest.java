@@ -18,6 +18,8 @@ package io.github.retz.admin;
 
 import org.junit.Test;
 
+import java.util.Arrays;
+
 import static org.junit.Assert.assertEquals;
 
 public class LauncherTest {
@@ -74,5 +76,14 @@ public class LauncherTest {
             Launcher.Configuration conf = Launcher.parseConfiguration(argv);
             assertEquals("usage", conf.getParsedSubCommand().getName());
         }
+        {
+            String[] argv = {"-C", CONFIGFILE, "usage", "--format", "csv", "--group-by", "app", "--page-size", "100"};
+            Launcher.Configuration conf = Launcher.parseConfiguration(argv);
+            CommandUsage usage = (CommandUsage) conf.getParsedSubCommand();
+            assertEquals("csv", usage.format);
+            assertEquals("app", usage.groupBy);
+            assertEquals(100, usage.pageSize);
+            assertEquals("a,\"b,c\",\"\"\"d\"\"\",", CommandUsage.csvLine(Arrays.asList("a", "b,c", "\"d\"", null)));
+        }
     }
 }
@@ -18,26 +18,33 @@ package io.github.retz.cli;
 
 import com.beust.jcommander.Parameter;
 import io.github.retz.protocol.ErrorResponse;
-import io.github.retz.protocol.KillResponse;
-import io.github.retz.protocol.ListJobResponse;
+import io.github.retz.protocol.KillJobsResponse;
 import io.github.retz.protocol.Response;
 import io.github.retz.protocol.data.Job;
 import io.github.retz.web.Client;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
-import java.util.stream.Collectors;
 
 public class CommandKillall implements SubCommand {
     static final Logger LOG = LoggerFactory.getLogger(CommandKillall.class);
 
-    @Parameter(names = {"-t", "--tag"}, description = "Job tag which you want to kill all", required = true)
+    @Parameter(names = {"-t", "--tag"}, description = "Job tag which you want to kill all")
     private String tag;
 
+    @Parameter(names = "--states", description = "States of jobs to kill separated by comma")
+    private String states = "QUEUED,STARTING,STARTED";
+
+    @Parameter(names = "--from-id", description = "Smallest id of jobs to kill")
+    private Integer fromId;
+
+    @Parameter(names = "--to-id", description = "Largest id of jobs to kill")
+    private Integer toId;
+
     @Override
     public String description() {
         return "Kill a group of jobs";
@@ -52,64 +59,38 @@ public class CommandKillall implements SubCommand {
     public int handle(ClientCLIConfig fileConfig, boolean verbose) throws Throwable {
         LOG.debug("Configuration: {}", fileConfig.toString());
 
+        if (tag == null && fromId == null && toId == null) {
+            LOG.error("Either --tag, --from-id or --to-id is required");
+            return -1;
+        }
+
+        List<Job.JobState> jobStates = new ArrayList<>();
+        for (String s : states.split(",")) {
+            try {
+                jobStates.add(Job.JobState.valueOf(s.trim()));
+            } catch (IllegalArgumentException e) {
+                LOG.error("Invalid state '{}' in --states: must be one of {}", s, Arrays.toString(Job.JobState.values()));
+                return -1;
+            }
+        }
+
         try (Client webClient = Client.newBuilder(fileConfig.getUri())
                 .setAuthenticator(fileConfig.getAuthenticator())
                 .checkCert(!fileConfig.insecure())
                 .setVerboseLog(verbose)
                 .build()) {
 
-            Optional<String> maybeTag = Optional.of(tag);
-            Job.JobState[] states = {Job.JobState.QUEUED, Job.JobState.STARTED, Job.JobState.STARTING};
-
-            for (Job.JobState state : states) {
-                int r = killGroup(webClient, state, maybeTag, verbose);
-                if (r < 0) {
-                    return r;
-                }
-            }
-            return 0;
-        }
-    }
-
-    // Maybe move this to ClientHelper?
-    int killGroup(Client c, Job.JobState state, Optional<String> maybeTag, boolean verbose) throws IOException {
-        ListJobResponse r;
-        int total = 0;
-        do {
-            Response res = c.list(state, maybeTag);
+            // Jobs are killed at once at server side, instead of listing and killing one by one
+            Response res = webClient.killAll(jobStates, Optional.ofNullable(tag),
+                    Optional.ofNullable(fromId), Optional.ofNullable(toId));
             if (res instanceof ErrorResponse) {
                 LOG.error(res.status());
                 return -1;
             }
-            r = (ListJobResponse) res;
-
-            List<Job> failed = new ArrayList<>();
-            List<Job> killed = new ArrayList<>();
-            for (Job job : r.jobs()) {
-                Response response = c.kill(job.id());
-                if (response instanceof ErrorResponse) {
-                    failed.add(job);
-                } else if (response instanceof KillResponse) {
-                    killed.add(job);
-                } else {
-                    throw new AssertionError(response.getClass().getCanonicalName());
-                }
-            }
-
-            total += r.jobs().size();
-            LOG.info("{}: {} jobs killed, {} jobs failed", state, killed.size(), failed.size());
-
-            if (verbose) {
-                String k = killed.stream().map(job -> Integer.toString(job.id())).collect(Collectors.joining(", "));
-                LOG.info("Jobs killed: {}", k);
-            }
-            if (!failed.isEmpty()) {
-                String f = failed.stream().map(job -> Integer.toString(job.id())).collect(Collectors.joining(", "));
-                LOG.error("Failed to kill jobs: [{}]", f);
-            }
-
-        } while (r.more());
-        return total;
+            KillJobsResponse killJobsResponse = (KillJobsResponse) res;
+            LOG.info("{} queued jobs and {} running jobs killed",
+                    killJobsResponse.queued(), killJobsResponse.running());
+            return 0;
+        }
     }
 }
-
@@ -18,7 +18,6 @@ package io.github.retz.cli;
 
 import com.beust.jcommander.Parameter;
 import io.github.retz.protocol.ErrorResponse;
-import io.github.retz.protocol.ListJobResponse;
 import io.github.retz.protocol.Response;
 import io.github.retz.protocol.data.Job;
 import io.github.retz.web.Client;
@@ -42,6 +41,9 @@ public class CommandList implements SubCommand {
     @Parameter(names = "--tag", description = "Tag name to show ('AND' condition with states)")
     private String tag;
 
+    @Parameter(names = "--page-size", description = "Number of jobs fetched in a request")
+    private int pageSize = 4096;
+
     public static final String NAME = "list";
     public static final String DESCRIPTION = "list all jobs";
 
@@ -77,15 +79,15 @@ public class CommandList implements SubCommand {
                 if (verbose) {
                     LOG.info("Fetching jobs@{}", s);
                 }
-                Response res = webClient.list(s, maybeTag); // TODO: make this CLI argument
+                Response res = webClient.listAll(s, maybeTag, pageSize, page -> {
+                    for (Job job : page) {
+                        jobMap.put(job.id(), job);
+                    }
+                });
                 if (res instanceof ErrorResponse) {
                     LOG.error(res.status());
                     return -1;
                 }
-                ListJobResponse r = (ListJobResponse) res;
-                for (Job job : r.jobs()) {
-                    jobMap.put(job.id(), job);
-                }
             }
 
             TableFormatter formatter = new TableFormatter(
@@ -17,18 +17,20 @@
 package io.github.retz.cli;
 
 import com.beust.jcommander.Parameter;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.github.retz.protocol.Response;
+import io.github.retz.protocol.ScheduleBatchRequest;
+import io.github.retz.protocol.ScheduleBatchResponse;
 import io.github.retz.protocol.ScheduleResponse;
 import io.github.retz.protocol.data.Job;
 import io.github.retz.web.Client;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.IOException;
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.List;
-import java.util.Properties;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
 
 public class CommandSchedule implements SubCommand {
     static final Logger LOG = LoggerFactory.getLogger(CommandSchedule.class);
@@ -46,7 +48,7 @@ public class CommandSchedule implements SubCommand {
     int disk = 32;
     @Parameter(names = {"--ports", "-ports"}, description = "Number of ports (up to 1000) required to the job; Ports will be given as $PORT0, $PORT1, ...")
     int ports = 0;
-    @Parameter(names = {"-c", "--command", "-cmd"}, required = true, description = "Remote command")
+    @Parameter(names = {"-c", "--command", "-cmd"}, description = "Remote command")
     private String remoteCmd;
     @Parameter(names = {"-A", "--appname"}, required = true, description = "Application name you loaded")
     private String appName;
@@ -58,6 +60,11 @@ public class CommandSchedule implements SubCommand {
     String name;
     @Parameter(names = "--tags", description = "Tags separated by commas (e.g. 'a,b,c')")
     List<String> tags = Collections.emptyList();
+    @Parameter(names = "--batch", description = "File of jobs, or '-' for stdin, one JSON object per line with 'cmd' and optionally "
+            + "'name', 'env', 'tags', 'priority', 'attributes', 'cpu', 'mem', 'gpu', 'disk' and 'ports'; other options give defaults")
+    String batch;
+    @Parameter(names = "--batch-size", description = "Number of jobs sent in a request with --batch")
+    int batchSize = 1024;
 
     @Override
     public String getName() {
@@ -71,6 +78,12 @@ public class CommandSchedule implements SubCommand {
 
     @Override
     public int handle(ClientCLIConfig fileConfig, boolean verbose) throws IOException {
+        if (batch != null) {
+            return scheduleBatch(fileConfig, verbose);
+        } else if (remoteCmd == null) {
+            LOG.error("Either -c or --batch is required");
+            return -1;
+        }
         Properties envProps = SubCommand.parseKeyValuePairs(envs);
 
         Job job = new Job(appName, remoteCmd, envProps, cpu, mem, disk, gpu, ports);
@@ -99,5 +112,85 @@ public class CommandSchedule implements SubCommand {
         }
         return -1;
     }
-}
 
+    private int scheduleBatch(ClientCLIConfig fileConfig, boolean verbose) throws IOException {
+        if (batchSize < 1 || ScheduleBatchRequest.MAX_JOB_NUMBER < batchSize) {
+            LOG.error("--batch-size must be in [1, {}]", ScheduleBatchRequest.MAX_JOB_NUMBER);
+            return -1;
+        }
+        ObjectMapper mapper = new ObjectMapper();
+        InputStream in = "-".equals(batch) ? System.in : new FileInputStream(batch);
+        int scheduled = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+             Client webClient = Client.newBuilder(fileConfig.getUri())
+                     .setAuthenticator(fileConfig.getAuthenticator())
+                     .checkCert(!fileConfig.insecure())
+                     .setVerboseLog(verbose)
+                     .build()) {
+            List<Job> jobs = new ArrayList<>(batchSize);
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                try {
+                    jobs.add(toJob(mapper.readTree(line)));
+                } catch (IOException | IllegalArgumentException e) {
+                    LOG.error("Bad job at line {}: {}", lineNumber, e.getMessage());
+                    return -1;
+                }
+                if (jobs.size() == batchSize) {
+                    if (!send(webClient, jobs)) {
+                        return -1;
+                    }
+                    scheduled += jobs.size();
+                    jobs.clear();
+                }
+            }
+            if (!jobs.isEmpty()) {
+                if (!send(webClient, jobs)) {
+                    return -1;
+                }
+                scheduled += jobs.size();
+            }
+        } finally {
+            LOG.info("{} jobs scheduled", scheduled);
+        }
+        return 0;
+    }
+
+    private boolean send(Client webClient, List<Job> jobs) throws IOException {
+        Response res = webClient.scheduleAll(appName, jobs);
+        if (res instanceof ScheduleBatchResponse) {
+            ScheduleBatchResponse res1 = (ScheduleBatchResponse) res;
+            LOG.info("Jobs (id={}..{}): {} registered at {}", res1.firstId(), res1.firstId() + res1.count() - 1,
+                    res1.status(), res1.scheduled());
+            return true;
+        }
+        LOG.error("Error: " + res.status());
+        return false;
+    }
+
+    // Fields not given in a line default to command line options
+    Job toJob(JsonNode node) {
+        if (!node.isObject() || !node.hasNonNull("cmd")) {
+            throw new IllegalArgumentException("'cmd' is required");
+        }
+        Properties envProps = SubCommand.parseKeyValuePairs(envs);
+        if (node.has("env")) {
+            node.get("env").fields().forEachRemaining(e -> envProps.setProperty(e.getKey(), e.getValue().asText()));
+        }
+        Job job = new Job(appName, node.get("cmd").asText(), envProps,
+                node.path("cpu").asInt(cpu), node.path("mem").asInt(mem), node.path("disk").asInt(disk),
+                node.path("gpu").asInt(gpu), node.path("ports").asInt(ports));
+        job.setPriority(node.path("priority").asInt(priority));
+        job.setName(node.hasNonNull("name") ? node.get("name").asText() : name);
+        List<String> jobTags = new ArrayList<>(tags);
+        node.path("tags").forEach(tag -> jobTags.add(tag.asText()));
+        job.addTags(jobTags);
+        job.setAttributes(node.hasNonNull("attributes") ? node.get("attributes").asText() : attributes);
+        return job;
+    }
+}
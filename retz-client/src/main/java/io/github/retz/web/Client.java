@@ -41,10 +41,12 @@ import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
+import java.util.List;
 import java.util.Locale;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.ResourceBundle;
+import java.util.function.Consumer;
 
 public class Client implements AutoCloseable {
 
@@ -124,6 +126,30 @@ public class Client implements AutoCloseable {
         return Retz.tryOrErrorResponse(() -> retz.list(state, tag));
     }
 
+    // Lists a page of jobs with id less than afterId if present, in descending order of id
+    public Response list(Job.JobState state, Optional<String> tag, Optional<Integer> afterId, int limit) throws IOException {
+        return Retz.tryOrErrorResponse(() -> retz.list(state, tag, afterId, limit));
+    }
+
+    // Fetches all jobs page by page and passes each page to the consumer.
+    // Returns an ErrorResponse if any, otherwise the last ListJobResponse.
+    public Response listAll(Job.JobState state, Optional<String> tag, int pageSize, Consumer<List<Job>> consumer) throws IOException {
+        Optional<Integer> afterId = Optional.empty();
+        while (true) {
+            Response res = list(state, tag, afterId, pageSize);
+            if (!(res instanceof ListJobResponse)) {
+                return res;
+            }
+            ListJobResponse r = (ListJobResponse) res;
+            consumer.accept(r.jobs());
+            // Servers before cursors were introduced do not return next
+            if (!r.more() || !r.next().isPresent()) {
+                return r;
+            }
+            afterId = r.next();
+        }
+    }
+
     public Response schedule(Job job) throws IOException {
         if (job.priority() < -20 || 19 < job.priority()) {
             throw new IllegalArgumentException("Priority must be [-19, 20]");
@@ -131,6 +157,16 @@ public class Client implements AutoCloseable {
         return Retz.tryOrErrorResponse(() -> retz.schedule(Objects.requireNonNull(job)));
     }
 
+    // All jobs must be of the application, up to ScheduleBatchRequest.MAX_JOB_NUMBER
+    public Response scheduleAll(String appid, List<Job> jobs) throws IOException {
+        for (Job job : jobs) {
+            if (job.priority() < -20 || 19 < job.priority()) {
+                throw new IllegalArgumentException("Priority must be [-19, 20]");
+            }
+        }
+        return Retz.tryOrErrorResponse(() -> retz.scheduleAll(Objects.requireNonNull(appid), Objects.requireNonNull(jobs)));
+    }
+
     public Response getJob(int id) throws IOException {
         return Retz.tryOrErrorResponse(() -> retz.getJob(id));
     }
@@ -262,6 +298,12 @@ public class Client implements AutoCloseable {
         return Retz.tryOrErrorResponse(() -> retz.kill(id));
     }
 
+    // Kills all jobs of the user matching all conditions at server side
+    public Response killAll(List<Job.JobState> states, Optional<String> tag,
+                            Optional<Integer> fromId, Optional<Integer> toId) throws IOException {
+        return Retz.tryOrErrorResponse(() -> retz.killAll(new KillJobsRequest(states, tag, fromId, toId)));
+    }
+
     public Response getApp(String appid) throws IOException {
         return Retz.tryOrErrorResponse(() -> retz.getApp(appid));
     }
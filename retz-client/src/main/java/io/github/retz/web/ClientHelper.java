@@ -25,6 +25,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
+import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
@@ -43,28 +44,31 @@ public final class ClientHelper {
     }
 
     public static List<Job> queue(Client c) throws IOException {
-        Response res = c.list(Job.JobState.QUEUED, Optional.empty());
-        return ((ListJobResponse) res).jobs();
+        List<Job> jobs = new ArrayList<>();
+        listAll(c, Job.JobState.QUEUED, jobs);
+        return jobs;
     }
 
     public static List<Job> running(Client c) throws IOException {
         List<Job> jobs = new ArrayList<>();
-        Response res = c.list(Job.JobState.STARTING, Optional.empty());
-        jobs.addAll(((ListJobResponse) res).jobs());
-        res = c.list(Job.JobState.STARTED, Optional.empty());
-        jobs.addAll(((ListJobResponse) res).jobs());
+        listAll(c, Job.JobState.STARTING, jobs);
+        listAll(c, Job.JobState.STARTED, jobs);
         return jobs;
     }
 
     public static List<Job> finished(Client c) throws IOException {
         List<Job> jobs = new ArrayList<>();
-        Response res = c.list(Job.JobState.FINISHED, Optional.empty());
-        jobs.addAll(((ListJobResponse) res).jobs());
-        res = c.list(Job.JobState.KILLED, Optional.empty());
-        jobs.addAll(((ListJobResponse) res).jobs());
+        listAll(c, Job.JobState.FINISHED, jobs);
+        listAll(c, Job.JobState.KILLED, jobs);
         return jobs;
     }
 
+    private static void listAll(Client c, Job.JobState state, List<Job> jobs) throws IOException {
+        Response res = c.listAll(state, Optional.empty(), ListJobResponse.MAX_JOB_NUMBER, jobs::addAll);
+        if (!(res instanceof ListJobResponse)) {
+            throw new IOException(MessageFormat.format("Listing {0} jobs failed: {1}", state, res.status()));
+        }
+    }
 
     public static boolean fileExists(Client c, int id, String filename) throws IOException {
         String directory = new File(filename).getParent();
@@ -23,6 +23,7 @@ import feign.jackson.JacksonDecoder;
 import feign.jackson.JacksonEncoder;
 import feign.slf4j.Slf4jLogger;
 import io.github.retz.auth.Authenticator;
+import io.github.retz.protocol.KillJobsRequest;
 import io.github.retz.protocol.ListJobRequest;
 import io.github.retz.protocol.LoadAppRequest;
 import io.github.retz.protocol.Response;
@@ -34,6 +35,7 @@ import javax.net.ssl.HostnameVerifier;
 import javax.net.ssl.SSLSocketFactory;
 import java.io.IOException;
 import java.net.URI;
+import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.function.Supplier;
@@ -52,6 +54,10 @@ public interface Retz {
         return list(new ListJobRequest(state, tag));
     }
 
+    default Response list(Job.JobState state, Optional<String> tag, Optional<Integer> afterId, int limit) {
+        return list(new ListJobRequest(state, tag, afterId, Optional.of(limit)));
+    }
+
     @RequestLine("POST /jobs")
     @Headers({"Content-Type: application/json", "Accept: application/json"})
     Response list(ListJobRequest request);
@@ -64,6 +70,11 @@ public interface Retz {
     @Headers({"Content-Type: application/json", "Accept: application/json"})
     Response schedule(ScheduleRequest request);
 
+    // Jobs are sent as a JSON array
+    @RequestLine("POST /app/{appid}/jobs")
+    @Headers({"Content-Type: application/json", "Accept: application/json"})
+    Response scheduleAll(@Param("appid") String appid, List<Job> jobs);
+
     @RequestLine("GET /job/{id}")
     @Headers({"Content-Type: application/json", "Accept: application/json"})
     Response getJob(@Param("id") int id);
@@ -92,6 +103,10 @@ public interface Retz {
     @Headers({"Content-Type: application/json", "Accept: application/json"})
     Response kill(@Param("id") int id);
 
+    @RequestLine("POST /jobs/kill")
+    @Headers({"Content-Type: application/json", "Accept: application/json"})
+    Response killAll(KillJobsRequest request);
+
     @RequestLine("GET /app/{appid}")
     @Headers({"Content-Type: application/json", "Accept: application/json"})
     Response getApp(@Param("appid") String appid);
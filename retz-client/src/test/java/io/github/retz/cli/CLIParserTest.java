@@ -16,6 +16,8 @@
  */
 package io.github.retz.cli;
 
+import com.beust.jcommander.JCommander;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.github.retz.protocol.data.Job;
 import org.junit.Test;
 
@@ -78,4 +80,28 @@ public class CLIParserTest {
         }
 
     }
+
+    @Test
+    public void batchLineTest() throws Exception {
+        CommandSchedule cmd = new CommandSchedule();
+        JCommander.newBuilder().addObject(cmd).build()
+                .parse("-A", "app", "--batch", "-", "--cpu", "2", "-E", "A=a", "--tags", "x");
+        ObjectMapper mapper = new ObjectMapper();
+
+        Job job = cmd.toJob(mapper.readTree("{\"cmd\":\"ls\",\"mem\":128,\"env\":{\"B\":\"b\"},\"tags\":[\"y\"],\"name\":\"n\"}"));
+        assertEquals("app", job.appid());
+        assertEquals("ls", job.cmd());
+        assertEquals(2, job.resources().getCpu());
+        assertEquals(128, job.resources().getMemMB());
+        assertEquals("a", job.props().getProperty("A"));
+        assertEquals("b", job.props().getProperty("B"));
+        assertEquals(new HashSet<>(Arrays.asList("x", "y")), job.tags());
+        assertEquals("n", job.name());
+
+        try {
+            cmd.toJob(mapper.readTree("{\"name\":\"no command\"}"));
+            assertTrue(false);
+        } catch (IllegalArgumentException e) {
+        }
+    }
 }
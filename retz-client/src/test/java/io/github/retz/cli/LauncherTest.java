@@ -168,6 +168,15 @@ public class LauncherTest {
         // TODO: add more pattern tests
     }
 
+    @Test
+    public void parseKillallTest() throws Throwable {
+        String[] argv = {"-C", PROPERTY_FILE, "killall", "-t", "t", "--states", "QUEUED,STRATED"};
+        Launcher.Configuration conf = Launcher.parseConfiguration(argv);
+        assertEquals("killall", conf.getParsedSubCommand().getName());
+        // Bad states are reported as usage error before connecting to server
+        assertEquals(-1, conf.getParsedSubCommand().handle(new ClientCLIConfig(PROPERTY_FILE), false));
+    }
+
     @Test
     public void parseRunTest() throws IOException, URISyntaxException {
         {
@@ -34,7 +34,9 @@ public class HmacSHA256Authenticator implements Authenticator {
 
     private static final String ALGORITHM = "HmacSHA256";
 
-    static Mac mac = null;
+    // Mac is not thread safe; each thread has its own instance, initialized with
+    // the key of each signature, instead of sharing one under a lock
+    private static final ThreadLocal<Mac> MAC = ThreadLocal.withInitial(HmacSHA256Authenticator::newMac);
 
     private final String key;
     private final SecretKeySpec secretKeySpec;
@@ -42,7 +44,7 @@ public class HmacSHA256Authenticator implements Authenticator {
     static {
         try {
             Date start = Calendar.getInstance().getTime();
-            mac = Mac.getInstance(ALGORITHM);
+            Mac.getInstance(ALGORITHM);
             Date end = Calendar.getInstance().getTime();
             LOG.debug("javax.crypto.Mac instance with {} initialized in {} ms.",
                     ALGORITHM, end.getTime() - start.getTime());
@@ -51,6 +53,15 @@ public class HmacSHA256Authenticator implements Authenticator {
             System.exit(-1);
         }
     }
+
+    private static Mac newMac() {
+        try {
+            return Mac.getInstance(ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(ALGORITHM + " is checked at class initialization", e);
+        }
+    }
+
     public HmacSHA256Authenticator(String key, String secret) {
         this.key = key;
         secretKeySpec = new SecretKeySpec(secret.getBytes(UTF_8), ALGORITHM);
@@ -83,15 +94,10 @@ public class HmacSHA256Authenticator implements Authenticator {
         String string2sign = string2sign(verb, md5, date, resource);
         LOG.debug("String2sign: {}", string2sign);
         try {
-            if (HmacSHA256Authenticator.mac == null) {
-                throw new RuntimeException("Authenticator is null");
-            }
-            // TODO: when this becomes bottleneck at server side, make this TLS
-            synchronized (HmacSHA256Authenticator.mac) {
-                HmacSHA256Authenticator.mac.init(secretKeySpec);
-                byte[] macBytes = mac.doFinal(string2sign.getBytes(UTF_8));
-                return Base64.getEncoder().withoutPadding().encodeToString(macBytes);
-            }
+            Mac mac = MAC.get();
+            mac.init(secretKeySpec);
+            byte[] macBytes = mac.doFinal(string2sign.getBytes(UTF_8));
+            return Base64.getEncoder().withoutPadding().encodeToString(macBytes);
         } catch (InvalidKeyException e) {
             throw new AssertionError(secretKeySpec.getFormat() + " is wrong");
         }
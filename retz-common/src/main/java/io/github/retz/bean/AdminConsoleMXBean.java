@@ -25,7 +25,17 @@ public interface AdminConsoleMXBean {
     String getUser(String keyId) throws IOException;
     boolean enableUser(String id, boolean enabled) throws IOException;
     List<String> getUsage(String start, String end) throws IOException;
+    // A page of jobs finished in [start, end) as {"jobs":[...],"next":"..."} in JSON, with
+    // "next" absent at the last page. Give "next" as cursor to get the next page, empty at first.
+    String getUsagePage(String start, String end, String cursor, int limit) throws IOException;
+    // Resources multiplied by seconds jobs ran, in JSON per user, app or total as groupBy
+    List<String> getUsageSummary(String start, String end, String groupBy) throws IOException;
 
+    // Starts job GC in background; false if already running
     boolean gc();
     boolean gc(int leeway);
+    // Progress of running or last job GC in JSON
+    String gcStatus();
+    // Stops running job GC after current chunk; false if not running
+    boolean stopGc();
 }
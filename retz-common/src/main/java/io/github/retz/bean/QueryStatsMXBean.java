@@ -0,0 +1,46 @@
+/**
+ *    Retz
+ *    Copyright (C) 2016-2017 Nautilus Technologies, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.github.retz.bean;
+
+import java.util.List;
+
+public interface QueryStatsMXBean {
+    // Waiting for connections from the pool
+    long getAcquireCount();
+    long getAcquireMeanMicros();
+    long getAcquireP99Micros();
+    long getAcquireMaxMicros();
+
+    // Executing all queries
+    long getExecuteCount();
+    long getExecuteMeanMicros();
+    long getExecuteP99Micros();
+    long getExecuteMaxMicros();
+
+    long getSlowQueryCount();
+    long getSlowQueryThresholdMillis();
+    // Latency per query, slowest in total first
+    List<String> getQueries();
+
+    int getPoolActive();
+    int getPoolIdle();
+    int getPoolWaiters();
+    // Measured by heartbeats if max lag is set, -1 if unknown or no replica
+    long getReplicaLagMillis();
+
+    void reset();
+}
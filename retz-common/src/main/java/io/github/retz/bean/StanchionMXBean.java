@@ -0,0 +1,32 @@
+/**
+ *    Retz
+ *    Copyright (C) 2016-2017 Nautilus Technologies, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.github.retz.bean;
+
+import java.util.List;
+
+public interface StanchionMXBean {
+    // Planning lane first, status lanes follow
+    List<Integer> getQueueLengths();
+    // Time waited in queue and run per kind of task, most time run in total first
+    List<String> getTasks();
+
+    long getSlowTaskThresholdMillis();
+    // Recent tasks run longer than the threshold, slowest first, with sampled stacks
+    List<String> getSlowTasks();
+
+    void reset();
+}
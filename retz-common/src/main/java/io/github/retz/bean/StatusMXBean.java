@@ -16,6 +16,8 @@
  */
 package io.github.retz.bean;
 
+import java.util.List;
+
 public interface StatusMXBean {
     String getMaster();
     int getNumSlaves();
@@ -25,5 +27,6 @@ public interface StatusMXBean {
     String getServerVersion();
     String getStatus();
     int getStanchionQueueLength();
+    List<Integer> getStanchionQueueLengths();
     String getVersion();
 }
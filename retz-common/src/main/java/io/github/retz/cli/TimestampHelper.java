@@ -17,51 +17,75 @@
 package io.github.retz.cli;
 
 import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.Calendar;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.format.ResolverStyle;
 import java.util.Date;
 
 public final class TimestampHelper {
-    // Use ISO8601-like extended format
-    private static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSXXX");
+    // Use ISO8601-like extended format; DateTimeFormatter is immutable and thread-safe
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSSXXX");
+    // Dates like "9999-12-32" roll over to the next day rather than being rejected
+    private static final DateTimeFormatter LENIENT_DATE = DateTimeFormatter.ofPattern("uuuu-MM-dd")
+            .withResolverStyle(ResolverStyle.LENIENT);
 
     private TimestampHelper() {
         throw new UnsupportedOperationException();
     }
 
     public static String now() {
-        synchronized (DATE_FORMAT) {
-            return DATE_FORMAT.format(nowDate());
-        }
+        return toTimestamp(System.currentTimeMillis());
     }
 
     public static String past(int seconds) {
-        return past(Calendar.getInstance().getTime().getTime(), seconds);
+        return past(System.currentTimeMillis(), seconds);
     }
 
     // Returns duration in second
     public static long diffMillisec(String lhs, String rhs) throws ParseException {
-        synchronized (DATE_FORMAT) {
-            Date l = DATE_FORMAT.parse(lhs);
-            Date r = DATE_FORMAT.parse(rhs);
-            // Date#getTime returns timestamp since 1970 in milliseconds
-            return l.getTime() - r.getTime();
+        try {
+            return toEpochMillis(lhs) - toEpochMillis(rhs);
+        } catch (DateTimeParseException e) {
+            throw new ParseException(e.getMessage(), e.getErrorIndex());
+        }
+    }
+
+    public static String toTimestamp(long epochMillis) {
+        return DATE_FORMAT.format(Instant.ofEpochMilli(epochMillis).atZone(ZoneId.systemDefault()));
+    }
+
+    // Parses a timestamp made by now() or past(), with whatever offset it has
+    public static long toEpochMillis(String timestamp) {
+        return OffsetDateTime.parse(timestamp, DATE_FORMAT).toInstant().toEpochMilli();
+    }
+
+    // Parses either a timestamp or a date such as "2017-04-01", which means its
+    // beginning in the local time zone
+    public static long toEpochMillisLenient(String s) throws ParseException {
+        try {
+            return toEpochMillis(s);
+        } catch (DateTimeParseException e) {
+            try {
+                return LocalDate.parse(s, LENIENT_DATE).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+            } catch (DateTimeParseException e2) {
+                throw new ParseException(e2.getMessage(), e2.getErrorIndex());
+            }
         }
     }
 
     static Date nowDate() {
-        return Calendar.getInstance().getTime();
+        return new Date();
     }
 
     static String now(Date date) {
-        synchronized (DATE_FORMAT) {
-            return DATE_FORMAT.format(date);
-        }
+        return toTimestamp(date.getTime());
     }
 
     static String past(long timestampMsec, int seconds) {
-        synchronized (DATE_FORMAT) {
-            return DATE_FORMAT.format(new Date(timestampMsec - seconds * 1000));
-        }
+        return toTimestamp(timestampMsec - seconds * 1000L);
     }
 }
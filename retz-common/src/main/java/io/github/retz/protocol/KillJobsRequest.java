@@ -0,0 +1,87 @@
+/**
+ *    Retz
+ *    Copyright (C) 2016-2017 Nautilus Technologies, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.github.retz.protocol;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonGetter;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.github.retz.protocol.data.Job;
+
+import java.util.*;
+
+// Kills all jobs of the user that match all conditions given: in any of the states,
+// with the tag, and with id in [fromId, toId]. Only QUEUED, STARTING and STARTED jobs
+// can be killed, which are the default states.
+public class KillJobsRequest extends Request {
+    public static final List<Job.JobState> DEFAULT_STATES = Collections.unmodifiableList(
+            Arrays.asList(Job.JobState.QUEUED, Job.JobState.STARTING, Job.JobState.STARTED));
+
+    private List<Job.JobState> states;
+    private Optional<String> tag;
+    private Optional<Integer> fromId;
+    private Optional<Integer> toId;
+
+    @JsonCreator
+    public KillJobsRequest(@JsonProperty("states") List<Job.JobState> states,
+                           @JsonProperty("tag") Optional<String> tag,
+                           @JsonProperty("fromId") Optional<Integer> fromId,
+                           @JsonProperty("toId") Optional<Integer> toId) {
+        this.states = states == null || states.isEmpty() ? DEFAULT_STATES : states;
+        this.tag = tag == null ? Optional.empty() : tag;
+        this.fromId = fromId == null ? Optional.empty() : fromId;
+        this.toId = toId == null ? Optional.empty() : toId;
+    }
+
+    @JsonGetter("states")
+    public List<Job.JobState> states() {
+        return states;
+    }
+
+    @JsonGetter("tag")
+    public Optional<String> tag() {
+        return tag;
+    }
+
+    @JsonGetter("fromId")
+    public Optional<Integer> fromId() {
+        return fromId;
+    }
+
+    @JsonGetter("toId")
+    public Optional<Integer> toId() {
+        return toId;
+    }
+
+    @Override
+    public String resource() {
+        return "/jobs/kill";
+    }
+
+    @Override
+    public String method() {
+        return POST;
+    }
+
+    @Override
+    public boolean hasPayload() {
+        return true;
+    }
+
+    public static String resourcePattern() {
+        return "/jobs/kill";
+    }
+}
@@ -0,0 +1,45 @@
+/**
+ *    Retz
+ *    Copyright (C) 2016-2017 Nautilus Technologies, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.github.retz.protocol;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonGetter;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public class KillJobsResponse extends Response {
+    private int queued;
+    private int running;
+
+    @JsonCreator
+    public KillJobsResponse(@JsonProperty("queued") int queued,
+                            @JsonProperty("running") int running) {
+        this.queued = queued;
+        this.running = running;
+    }
+
+    // Queued jobs marked as killed
+    @JsonGetter("queued")
+    public int queued() {
+        return queued;
+    }
+
+    // Starting or running jobs marked as killed, with their tasks being killed
+    @JsonGetter("running")
+    public int running() {
+        return running;
+    }
+}
@@ -27,12 +27,24 @@ import java.util.Optional;
 public class ListJobRequest extends Request {
     private Job.JobState state;
     private Optional<String> tag;
+    // Cursor for pagination; jobs are listed in descending order of id, from
+    // ones with id less than afterId. Take ListJobResponse.next() as next afterId.
+    private Optional<Integer> afterId;
+    private Optional<Integer> limit;
+
+    public ListJobRequest(Job.JobState state, Optional<String> tag) {
+        this(state, tag, Optional.empty(), Optional.empty());
+    }
 
     @JsonCreator
     public ListJobRequest(@JsonProperty(value = "state", required = true) Job.JobState state,
-                          @JsonProperty("tag") Optional<String> tag) {
+                          @JsonProperty("tag") Optional<String> tag,
+                          @JsonProperty("afterId") Optional<Integer> afterId,
+                          @JsonProperty("limit") Optional<Integer> limit) {
         this.state = Objects.requireNonNull(state);
         this.tag = tag;
+        this.afterId = afterId == null ? Optional.empty() : afterId;
+        this.limit = limit == null ? Optional.empty() : limit;
     }
 
     @JsonGetter("state")
@@ -45,6 +57,17 @@ public class ListJobRequest extends Request {
         return tag;
     }
 
+    @JsonGetter("afterId")
+    public Optional<Integer> afterId() {
+        return afterId;
+    }
+
+    // Max number of jobs in a page, up to ListJobResponse.MAX_JOB_NUMBER
+    @JsonGetter("limit")
+    public Optional<Integer> limit() {
+        return limit;
+    }
+
     @Override
     public String resource() {
         return "/jobs";
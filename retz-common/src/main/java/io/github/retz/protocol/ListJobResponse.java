@@ -22,18 +22,26 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 import io.github.retz.protocol.data.Job;
 
 import java.util.List;
+import java.util.Optional;
 
 public class ListJobResponse extends Response {
     public static final int MAX_JOB_NUMBER = 65536;
 
     private List<Job> jobs;
     private boolean more = false; // there are more than MAX_JOB_NUMBER jobs
+    private Optional<Integer> next; // afterId to get the next page, present if more
+
+    public ListJobResponse(List<Job> jobs, boolean more) {
+        this(jobs, more, Optional.empty());
+    }
 
     @JsonCreator
     public ListJobResponse(@JsonProperty("jobs") List<Job> jobs,
-                           @JsonProperty("more") boolean more) {
+                           @JsonProperty("more") boolean more,
+                           @JsonProperty("next") Optional<Integer> next) {
         this.jobs = jobs;
         this.more = more;
+        this.next = next == null ? Optional.empty() : next;
     }
 
     @JsonGetter("jobs")
@@ -45,4 +53,9 @@ public class ListJobResponse extends Response {
     public boolean more() {
         return more;
     }
+
+    @JsonGetter("next")
+    public Optional<Integer> next() {
+        return next;
+    }
 }
@@ -24,10 +24,12 @@ import com.fasterxml.jackson.annotation.*;
 @JsonSubTypes({
         @JsonSubTypes.Type(name = "list", value = ListJobResponse.class),
         @JsonSubTypes.Type(name = "schedule", value = ScheduleResponse.class),
+        @JsonSubTypes.Type(name = "schedule-batch", value = ScheduleBatchResponse.class),
         @JsonSubTypes.Type(name = "get-job", value = GetJobResponse.class),
         @JsonSubTypes.Type(name = "get-file", value = GetFileResponse.class),
         @JsonSubTypes.Type(name = "list-files", value = ListFilesResponse.class),
         @JsonSubTypes.Type(name = "kill", value = KillResponse.class),
+        @JsonSubTypes.Type(name = "kill-jobs", value = KillJobsResponse.class),
         @JsonSubTypes.Type(name = "get-app", value = GetAppResponse.class),
         @JsonSubTypes.Type(name = "load-app", value = LoadAppResponse.class),
         @JsonSubTypes.Type(name = "unload-app", value = UnloadAppResponse.class),
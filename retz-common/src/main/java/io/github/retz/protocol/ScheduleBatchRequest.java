@@ -0,0 +1,60 @@
+/**
+ *    Retz
+ *    Copyright (C) 2016-2017 Nautilus Technologies, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.github.retz.protocol;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonGetter;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.Objects;
+
+// Schedules many jobs of an application at once. Payload is not this request but the
+// jobs, either as a JSON array or as newline-delimited JSON objects.
+public class ScheduleBatchRequest extends Request {
+    public static final int MAX_JOB_NUMBER = 65536;
+
+    private String appid;
+
+    @JsonCreator
+    public ScheduleBatchRequest(@JsonProperty(value = "appid", required = true) String appid) {
+        this.appid = Objects.requireNonNull(appid);
+    }
+
+    @JsonGetter("appid")
+    public String appid() {
+        return appid;
+    }
+
+    @Override
+    public String resource() {
+        return "/app/" + appid + "/jobs";
+    }
+
+    @Override
+    public String method() {
+        return POST;
+    }
+
+    @Override
+    public boolean hasPayload() {
+        return true;
+    }
+
+    public static String resourcePattern() {
+        return "/app/:name/jobs";
+    }
+}
@@ -0,0 +1,52 @@
+/**
+ *    Retz
+ *    Copyright (C) 2016-2017 Nautilus Technologies, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.github.retz.protocol;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonGetter;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+// Jobs are given ids from firstId to firstId + count - 1 in the order sent
+public class ScheduleBatchResponse extends Response {
+    private int firstId;
+    private int count;
+    private String scheduled;
+
+    @JsonCreator
+    public ScheduleBatchResponse(@JsonProperty("firstId") int firstId,
+                                 @JsonProperty("count") int count,
+                                 @JsonProperty("scheduled") String scheduled) {
+        this.firstId = firstId;
+        this.count = count;
+        this.scheduled = scheduled;
+    }
+
+    @JsonGetter("firstId")
+    public int firstId() {
+        return firstId;
+    }
+
+    @JsonGetter("count")
+    public int count() {
+        return count;
+    }
+
+    @JsonGetter("scheduled")
+    public String scheduled() {
+        return scheduled;
+    }
+}
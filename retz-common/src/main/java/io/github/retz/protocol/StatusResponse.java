@@ -21,6 +21,8 @@ import com.fasterxml.jackson.annotation.JsonGetter;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import io.github.retz.protocol.data.ResourceQuantity;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
 
@@ -33,6 +35,7 @@ public class StatusResponse extends Response {
     private ResourceQuantity totalOffered;
     private Optional<String> master;
     private int stanchionQueueLength;
+    private List<Integer> stanchionQueueLengths; // Planning lane first, status lanes follow
     private final String serverVersion;
 
     @JsonCreator
@@ -44,6 +47,7 @@ public class StatusResponse extends Response {
                           @JsonProperty("totalOffered") ResourceQuantity totalOffered,
                           @JsonProperty("master") Optional<String> master,
                           @JsonProperty("stanchionQueueLength") int stanchionQueueLength,
+                          @JsonProperty("stanchionQueueLengths") List<Integer> stanchionQueueLengths,
                           @JsonProperty("serverVersion") String serverVersion) {
         this.queueLength = queueLength;
         this.runningLength = runningLength;
@@ -53,6 +57,7 @@ public class StatusResponse extends Response {
         this.totalOffered = totalOffered;
         this.master = (master == null) ? Optional.empty() : master;
         this.stanchionQueueLength = stanchionQueueLength;
+        this.stanchionQueueLengths = (stanchionQueueLengths == null) ? Collections.emptyList() : stanchionQueueLengths;
         this.serverVersion = serverVersion;
     }
 
@@ -62,6 +67,7 @@ public class StatusResponse extends Response {
         totalOffered = new ResourceQuantity();
         totalUsed = new ResourceQuantity();
         this.master = Optional.empty();
+        this.stanchionQueueLengths = Collections.emptyList();
     }
 
     @JsonGetter("queueLength")
@@ -104,6 +110,11 @@ public class StatusResponse extends Response {
         return stanchionQueueLength;
     }
 
+    @JsonGetter("stanchionQueueLengths")
+    public List<Integer> stanchionQueueLengths() {
+        return stanchionQueueLengths;
+    }
+
     @JsonGetter("serverVersion")
     public String serverVersion() {
         return serverVersion;
@@ -120,8 +131,9 @@ public class StatusResponse extends Response {
         this.totalUsed = totalUsed;
     }
 
-    public void setStanchionQueueLength(int stanchionQueueLength) {
-        this.stanchionQueueLength = stanchionQueueLength;
+    public void setStanchionQueueLength(List<Integer> stanchionQueueLengths) {
+        this.stanchionQueueLength = stanchionQueueLengths.stream().mapToInt(Integer::intValue).sum();
+        this.stanchionQueueLengths = stanchionQueueLengths;
     }
 
     public void setMaster(String master) {
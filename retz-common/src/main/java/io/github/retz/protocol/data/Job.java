@@ -271,6 +271,10 @@ public class Job {
         }
     }
 
+    public void setUrl(String url) {
+        this.url = url;
+    }
+
     public void addTags(String... tags) {
         addTags(Arrays.asList(tags));
     }
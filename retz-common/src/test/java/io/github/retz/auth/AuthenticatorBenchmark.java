@@ -0,0 +1,74 @@
+/**
+ *    Retz
+ *    Copyright (C) 2016-2017 Nautilus Technologies, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.github.retz.auth;
+
+import ch.qos.logback.classic.Level;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures authentication throughput of HmacSHA256Authenticator with 1, 2, 4, ...
+ * request threads, each with its own user as at server. Not a unit test; run manually:
+ *
+ * java -cp ... io.github.retz.auth.AuthenticatorBenchmark [max threads] [seconds per run]
+ */
+public class AuthenticatorBenchmark {
+    public static void main(String... argv) throws Exception {
+        int maxThreads = argv.length > 0 ? Integer.parseInt(argv[0]) : Runtime.getRuntime().availableProcessors();
+        int seconds = argv.length > 1 ? Integer.parseInt(argv[1]) : 3;
+        // Debug logs of signatures would dominate the measurement
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(Level.INFO);
+
+        run(1, 1); // warm up
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            long ops = run(threads, seconds);
+            System.out.printf("%d threads: %d auth/s%n", threads, ops / seconds);
+        }
+    }
+
+    private static long run(int threads, int seconds) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        LongAdder ops = new LongAdder();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < threads; ++i) {
+            String key = "key" + i;
+            HmacSHA256Authenticator authenticator = new HmacSHA256Authenticator(key, "secret" + i);
+            String date = "Wed, 18 Oct 2017 01:23:45 GMT";
+            String resource = "/job/" + i;
+            String signature = authenticator.signature("GET", "", date, resource);
+            futures.add(executor.submit(() -> {
+                while (System.nanoTime() < deadline) {
+                    if (!authenticator.authenticate("GET", "", date, resource, key, signature)) {
+                        throw new AssertionError("Authentication failed");
+                    }
+                    ops.increment();
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        return ops.sum();
+    }
+}
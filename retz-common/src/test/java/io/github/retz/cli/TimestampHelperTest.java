@@ -40,4 +40,22 @@ public class TimestampHelperTest {
             System.err.println(t + " - " + p + " = " + TimestampHelper.diffMillisec(t, p));
         }
     }
+
+    @Test
+    public void epochMillis() throws Exception {
+        long now = TimestampHelper.nowDate().getTime();
+        String t = TimestampHelper.toTimestamp(now);
+        assertEquals(now, TimestampHelper.toEpochMillis(t));
+        assertEquals(now, TimestampHelper.toEpochMillisLenient(t));
+        // Same instant in another offset
+        assertEquals(1490000000000L, TimestampHelper.toEpochMillis("2017-03-20T08:53:20.000Z"));
+        assertEquals(1490000000000L, TimestampHelper.toEpochMillis("2017-03-20T17:53:20.000+09:00"));
+
+        long day = TimestampHelper.toEpochMillisLenient("2017-03-20");
+        assertEquals(24 * 3600 * 1000L, TimestampHelper.toEpochMillisLenient("2017-03-21") - day);
+        // Default upper bound of "retz-admin usage"
+        assertEquals(24 * 3600 * 1000L,
+                TimestampHelper.toEpochMillisLenient("9999-12-32") - TimestampHelper.toEpochMillisLenient("9999-12-31"));
+        assertTrue(TimestampHelper.toEpochMillisLenient("0000-01-01") < 0);
+    }
 }
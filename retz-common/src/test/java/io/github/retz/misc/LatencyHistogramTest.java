@@ -0,0 +1,65 @@
+/**
+ *    Retz
+ *    Copyright (C) 2016-2017 Nautilus Technologies, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.github.retz.misc;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void buckets() {
+        int last = -1;
+        for (long v = 0; v < 1 << 20; v++) {
+            int i = LatencyHistogram.index(v);
+            // Buckets are contiguous and each value is within its bucket
+            assertTrue(i == last || i == last + 1);
+            assertTrue(v <= LatencyHistogram.upperBound(i));
+            if (i > 0) {
+                assertTrue(LatencyHistogram.upperBound(i - 1) < v);
+            }
+            // Within 12.5% error
+            assertTrue(LatencyHistogram.upperBound(i) - v <= v / 8);
+            last = i;
+        }
+        assertEquals(0, LatencyHistogram.index(-1));
+        assertTrue(LatencyHistogram.index(Long.MAX_VALUE) < (64 - 3) * 8);
+    }
+
+    @Test
+    public void percentiles() {
+        LatencyHistogram h = new LatencyHistogram();
+        assertEquals(0, h.percentileMicros(99));
+        for (long v = 1; v <= 1000; v++) {
+            h.recordNanos(v * 1000);
+        }
+        assertEquals(1000, h.count());
+        assertEquals(1000, h.maxMicros());
+        assertEquals(500, h.meanMicros());
+        long p50 = h.percentileMicros(50);
+        assertTrue(p50 >= 500 && p50 <= 500 * 9 / 8);
+        long p99 = h.percentileMicros(99);
+        assertTrue(p99 >= 990 && p99 <= 1000);
+        assertEquals(1000, h.percentileMicros(100));
+
+        h.reset();
+        assertEquals(0, h.count());
+        assertEquals(0, h.maxMicros());
+    }
+}
@@ -25,6 +25,7 @@ import org.junit.Before;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.util.Collections;
 import java.util.Optional;
 
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -121,6 +122,16 @@ public class ProtocolTest {
             KillRequest kreq = (KillRequest) req;
             assertThat(kreq.id(), is(2));
         }
+        {
+            String json = "{\"command\":\"kill-jobs\",\"tag\":\"sweep\",\"toId\":100}";
+            Request req = mapper.readValue(json, Request.class);
+            assertThat(req, instanceOf(KillJobsRequest.class));
+            KillJobsRequest kreq = (KillJobsRequest) req;
+            assertThat(kreq.tag(), is(Optional.of("sweep")));
+            assertThat(kreq.states(), is(KillJobsRequest.DEFAULT_STATES));
+            assertFalse(kreq.fromId().isPresent());
+            assertThat(kreq.toId(), is(Optional.of(100)));
+        }
     }
 
     @Test
@@ -147,6 +158,14 @@ public class ProtocolTest {
             assertNotNull(sres.job);
             assertThat(sres.job.id(), is(23));
         }
+        {
+            String json = "{\"command\":\"schedule-batch\", \"status\":\"ok\", \"firstId\":100, \"count\":3, \"scheduled\":\"2017-03-20T00:00:00.000Z\"}";
+            Response res = mapper.readValue(json, Response.class);
+            assertThat(res, instanceOf(ScheduleBatchResponse.class));
+            ScheduleBatchResponse bres = (ScheduleBatchResponse) res;
+            assertThat(bres.firstId(), is(100));
+            assertThat(bres.count(), is(3));
+        }
         {
             String json = "{\"command\":\"get-job\",\"job\":{\"appid\":\"foobar\", \"cmd\":\"Mmmmmmmmmy commmmmand1!!!!!\",\"scheduled\":null,\"started\":null,\"finished\":null,\"result\":0,\"id\":0,\"url\":null, \"resources\":{\"cpu\":1,\"memMB\":128}, \"state\":\"STARTED\"}}";
 
@@ -175,6 +194,27 @@ public class ProtocolTest {
             assertThat(req2, instanceOf(ListJobRequest.class));
         }
 
+        {
+            ListJobRequest req = new ListJobRequest(Job.JobState.FINISHED, Optional.empty(), Optional.of(42), Optional.of(100));
+            ListJobRequest req2 = (ListJobRequest) mapper.readValue(mapper.writeValueAsString(req), Request.class);
+            assertThat(req2.afterId(), is(Optional.of(42)));
+            assertThat(req2.limit(), is(Optional.of(100)));
+
+            // Requests and responses without cursors
+            String json = "{\"command\":\"list\",\"state\":\"QUEUED\"}";
+            req2 = (ListJobRequest) mapper.readValue(json, Request.class);
+            assertFalse(req2.afterId().isPresent());
+            assertFalse(req2.limit().isPresent());
+            json = "{\"command\":\"list\",\"status\":\"ok\",\"jobs\":[],\"more\":false}";
+            ListJobResponse res = (ListJobResponse) mapper.readValue(json, Response.class);
+            assertFalse(res.next().isPresent());
+
+            res = new ListJobResponse(Collections.emptyList(), true, Optional.of(7));
+            ListJobResponse res2 = (ListJobResponse) mapper.readValue(mapper.writeValueAsString(res), Response.class);
+            assertTrue(res2.more());
+            assertThat(res2.next(), is(Optional.of(7)));
+        }
+
         {
             Job job = new Job("foobar-app", "ls -l", null, 1, 32, 128);
             ScheduleRequest scheduleRequest = new ScheduleRequest(job);
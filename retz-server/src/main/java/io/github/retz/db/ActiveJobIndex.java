@@ -0,0 +1,267 @@
+/**
+ *    Retz
+ *    Copyright (C) 2016-2017 Nautilus Technologies, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.github.retz.db;
+
+import io.github.retz.protocol.data.Job;
+import io.github.retz.protocol.data.ResourceQuantity;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+// In-memory index of non-terminal (QUEUED, STARTING, STARTED) jobs by id and task id,
+// written through by Database after each commit. Jobs are kept as their stored JSON
+// so that every reader gets its own copy to modify. Numbers of queued and running
+// jobs, and resources used by running jobs, are maintained at each write.
+// Writes carry versions so that one applied later than a newer write of the same job
+// is dropped; versions of recently removed jobs are kept for the same purpose.
+public class ActiveJobIndex {
+    private static final int MAX_REMOVED = 65536;
+
+    private final Map<Integer, Entry> byId = new ConcurrentHashMap<>();
+    private final Map<String, Integer> byTaskId = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong versions = new AtomicLong();
+    // Writes committing or being applied
+    private final AtomicInteger writing = new AtomicInteger();
+    // Job id => version at removal, oldest first
+    private final LinkedHashMap<Integer, Long> removed = new LinkedHashMap<>();
+    // Replaced, never modified, so that readers don't wait for writers holding the monitor
+    private volatile Counts counts = new Counts(0, 0, new ResourceQuantity());
+
+    static boolean isActive(Job.JobState state) {
+        return state == Job.JobState.QUEUED || state == Job.JobState.STARTING || state == Job.JobState.STARTED;
+    }
+
+    static boolean isRunning(Job.JobState state) {
+        return state == Job.JobState.STARTING || state == Job.JobState.STARTED;
+    }
+
+    // Version for a write to be committed; writers take it after all writes of the
+    // transaction and before commit, while rows of the jobs are still locked, so
+    // versions of a job follow its commit order
+    long nextVersion() {
+        return versions.incrementAndGet();
+    }
+
+    long version() {
+        return versions.get();
+    }
+
+    // Like nextVersion, for a write to be applied; end must be called after applying or failure
+    long begin() {
+        writing.incrementAndGet();
+        return versions.incrementAndGet();
+    }
+
+    void end() {
+        writing.decrementAndGet();
+    }
+
+    // Version of the last write if all writes begun have been applied, or -1. Reading
+    // the database between two equal non-negative results sees just what the index has.
+    long settledVersion() {
+        long version = versions.get();
+        return writing.get() == 0 ? version : -1;
+    }
+
+    // For writers that call this in commit order by themselves
+    synchronized void put(Job job, String json) {
+        put(job, json, nextVersion());
+    }
+
+    // Applies a write committed with the version, unless a newer one of the job is applied
+    synchronized void put(Job job, String json, long version) {
+        Entry current = byId.get(job.id());
+        Long last = current != null ? Long.valueOf(current.version) : removed.get(job.id());
+        if (last != null && last > version) {
+            return;
+        }
+        if (isActive(job.state())) {
+            removed.remove(job.id());
+        } else {
+            removed.put(job.id(), version);
+            if (removed.size() > MAX_REMOVED) {
+                Iterator<Integer> eldest = removed.keySet().iterator();
+                eldest.next();
+                eldest.remove();
+            }
+        }
+
+        Entry entry = new Entry(job.state(), job.taskId(), job.appid(), job.resources(), json, version);
+        Entry old = isActive(job.state()) ? byId.put(job.id(), entry) : byId.remove(job.id());
+        if (old != null && old.taskId != null) {
+            byTaskId.remove(old.taskId, job.id());
+        }
+        if (isActive(job.state()) && job.taskId() != null) {
+            byTaskId.put(job.taskId(), job.id());
+        }
+
+        if (old == null && !isActive(job.state())) {
+            return;
+        }
+        Counts c = counts;
+        int queued = c.queued;
+        int running = c.running;
+        ResourceQuantity used = new ResourceQuantity().copy(c.used);
+        if (old != null) {
+            queued -= old.state == Job.JobState.QUEUED ? 1 : 0;
+            if (isRunning(old.state)) {
+                running--;
+                used.add(-old.cpu, -old.memMB, -old.gpu, -old.ports, -old.diskMB);
+            }
+        }
+        if (isActive(job.state())) {
+            queued += job.state() == Job.JobState.QUEUED ? 1 : 0;
+            if (isRunning(job.state())) {
+                running++;
+                used.add(entry.cpu, entry.memMB, entry.gpu, entry.ports, entry.diskMB);
+            }
+        }
+        counts = new Counts(queued, running, used);
+    }
+
+    synchronized void removeBelow(int maxId) {
+        byId.entrySet().removeIf(e -> e.getKey() < maxId);
+        byTaskId.entrySet().removeIf(e -> e.getValue() < maxId);
+        removed.keySet().removeIf(id -> id < maxId);
+        recount();
+    }
+
+    synchronized void clear() {
+        byId.clear();
+        byTaskId.clear();
+        removed.clear();
+        recount();
+    }
+
+    private void recount() {
+        int queued = 0;
+        int running = 0;
+        ResourceQuantity used = new ResourceQuantity();
+        for (Entry e : byId.values()) {
+            if (e.state == Job.JobState.QUEUED) {
+                queued++;
+            } else if (isRunning(e.state)) {
+                running++;
+                used.add(e.cpu, e.memMB, e.gpu, e.ports, e.diskMB);
+            }
+        }
+        counts = new Counts(queued, running, used);
+    }
+
+    public int queued() {
+        return counts.queued;
+    }
+
+    public int running() {
+        return counts.running;
+    }
+
+    // Sum of resources of running jobs
+    public ResourceQuantity used() {
+        return new ResourceQuantity().copy(counts.used);
+    }
+
+    Optional<String> get(int id) {
+        return count(Optional.ofNullable(byId.get(id)).map(e -> e.json));
+    }
+
+    // Not counted as a hit or miss, as it is followed by get(id) to read the job
+    Optional<String> getAppid(int id) {
+        return Optional.ofNullable(byId.get(id)).map(e -> e.appid);
+    }
+
+    Optional<String> getFromTaskId(String taskId) {
+        Integer id = byTaskId.get(taskId);
+        Entry entry = id == null ? null : byId.get(id);
+        return count(Optional.ofNullable(entry).map(e -> e.json));
+    }
+
+    List<String> getByStates(Job.JobState... states) {
+        List<Job.JobState> list = Arrays.asList(states);
+        return byId.values().stream().filter(e -> list.contains(e.state)).map(e -> e.json).collect(Collectors.toList());
+    }
+
+    Map<Integer, String> snapshot() {
+        Map<Integer, String> ret = new HashMap<>();
+        byId.forEach((id, e) -> ret.put(id, e.json));
+        return ret;
+    }
+
+    public int size() {
+        return byId.size();
+    }
+
+    public long hits() {
+        return hits.get();
+    }
+
+    public long misses() {
+        return misses.get();
+    }
+
+    private Optional<String> count(Optional<String> result) {
+        if (result.isPresent()) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+        return result;
+    }
+
+    private static final class Entry {
+        private final Job.JobState state;
+        private final String taskId;
+        private final String appid;
+        private final int cpu;
+        private final int memMB;
+        private final int gpu;
+        private final int ports;
+        private final int diskMB;
+        private final String json;
+        private final long version;
+
+        Entry(Job.JobState state, String taskId, String appid, ResourceQuantity resources, String json, long version) {
+            this.state = state;
+            this.taskId = taskId;
+            this.appid = appid;
+            this.cpu = resources.getCpu();
+            this.memMB = resources.getMemMB();
+            this.gpu = resources.getGpu();
+            this.ports = resources.getPorts();
+            this.diskMB = resources.getDiskMB();
+            this.json = json;
+            this.version = version;
+        }
+    }
+
+    private static final class Counts {
+        private final int queued;
+        private final int running;
+        private final ResourceQuantity used;
+
+        Counts(int queued, int running, ResourceQuantity used) {
+            this.queued = queued;
+            this.running = running;
+            this.used = used;
+        }
+    }
+}
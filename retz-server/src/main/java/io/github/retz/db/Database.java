@@ -25,8 +25,10 @@ import io.github.retz.misc.LogUtil;
 import io.github.retz.planner.AppJobPair;
 import io.github.retz.protocol.data.Application;
 import io.github.retz.protocol.data.Job;
+import io.github.retz.protocol.data.ResourceQuantity;
 import io.github.retz.protocol.data.User;
 import io.github.retz.protocol.exception.JobNotFoundException;
+import io.github.retz.scheduler.Applications;
 import io.github.retz.scheduler.ServerConfiguration;
 import org.apache.tomcat.jdbc.pool.DataSource;
 import org.apache.tomcat.jdbc.pool.PoolProperties;
@@ -37,16 +39,31 @@ import java.io.IOException;
 import java.sql.*;
 import java.text.MessageFormat;
 import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
-public class Database {
+public class Database implements JobStore {
     private static final Logger LOG = LoggerFactory.getLogger(Database.class);
     private static Database database = new Database();
+    private static final int FIT_FETCH_SIZE = 256;
+    private static final int USAGE_FETCH_SIZE = 1024;
+    private static final int KILL_CHUNK_SIZE = 1000;
+    private static final long HEARTBEAT_INTERVAL = 1000; // milliseconds
 
     private final ObjectMapper mapper = new ObjectMapper();
     private final DataSource dataSource = new DataSource();
     private final DBMigration dbMigrator = new DBMigration((javax.sql.DataSource) dataSource);
+    private final ActiveJobIndex activeJobs = new ActiveJobIndex();
+    private UserCache users = new UserCache(ServerConfiguration.DEFAULT_USER_CACHE_TTL);
+    // Optional read replica for queries that tolerate staleness; never written
+    private volatile DataSource replica = null;
+    private long replicaMaxLagMillis = 0;
+    private ScheduledExecutorService heartbeat = null;
+    private volatile boolean replicaAvailable = true;
+    private volatile long replicaLagMillis = -1;
     String databaseURL = null;
 
     Database() {
@@ -65,6 +82,11 @@ public class Database {
         return getInstance().dbMigrator;
     }
 
+    @Override
+    public ActiveJobIndex getActiveJobIndex() {
+        return activeJobs;
+    }
+
     static Database newMemInstance(String name) throws IOException {
         Database db = new Database();
         db.initOnMem(name);
@@ -74,7 +96,7 @@ public class Database {
     public void validate() throws Exception {
         Objects.requireNonNull(databaseURL);
         Objects.requireNonNull(dataSource);
-        try (Connection conn = dataSource.getConnection();
+        try (Connection conn = getConnection();
              Statement s = conn.createStatement();
              ResultSet r = s.executeQuery("select 1")) {
             if (!r.next()) {
@@ -83,9 +105,12 @@ public class Database {
         }
     }
 
+    @Override
     public void init(ServerConfiguration config) throws IOException {
         databaseURL = Objects.requireNonNull(config.getDatabaseURL());
         LOG.info("Initializing database {}", databaseURL);
+        users = new UserCache(config.getUserCacheTtl());
+        QueryStats.configure(config.getSlowQueryThreshold());
 
         PoolProperties props = new PoolProperties();
 
@@ -100,6 +125,19 @@ public class Database {
 
         init(props, true);
 
+        if (config.getDatabaseReplicaURL().isPresent()) {
+            PoolProperties replicaProps = new PoolProperties();
+            replicaProps.setUrl(config.getDatabaseReplicaURL().get());
+            replicaProps.setDriverClassName(config.getDatabaseDriver());
+            if (config.getDatabaseReplicaUser().isPresent()) {
+                replicaProps.setUsername(config.getDatabaseReplicaUser().get());
+                if (config.getDatabaseReplicaPass().isPresent()) {
+                    replicaProps.setPassword(config.getDatabaseReplicaPass().get());
+                }
+            }
+            initReplica(replicaProps, config.getDatabaseReplicaMaxLag());
+        }
+
         if (getUser(config.getAccessKey()).isPresent()) {
             LOG.info("admin user is {}", config.getAccessKey());
         } else {
@@ -117,9 +155,81 @@ public class Database {
         init(props, false);
     }
 
+    // Replica must have been migrated by its primary
+    void initReplicaOnMem(String name, int maxLag) {
+        PoolProperties props = new PoolProperties();
+        props.setUrl("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1");
+        props.setDriverClassName("org.h2.Driver");
+        initReplica(props, maxLag);
+    }
+
+    private void initReplica(PoolProperties props, int maxLag) {
+        LOG.info("Initializing read replica {}, max lag={}s", props.getUrl(), maxLag);
+        props.setValidationQuery("select 1;");
+        props.setJdbcInterceptors(QueryStatsInterceptor.class.getName());
+        props.setDefaultReadOnly(true);
+        replica = new DataSource(props);
+        replicaMaxLagMillis = maxLag * 1000L;
+        if (maxLag > 0) {
+            checkReplica();
+            heartbeat = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "database-heartbeat");
+                t.setDaemon(true);
+                return t;
+            });
+            heartbeat.scheduleWithFixedDelay(this::checkReplica, HEARTBEAT_INTERVAL, HEARTBEAT_INTERVAL, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // Writes a heartbeat to primary and reads the one replicated to replica; the lag is
+    // measured in granularity of heartbeat interval, and unknown replica lag is too much
+    void checkReplica() {
+        DataSource source = replica;
+        if (source == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        try (Connection conn = getConnection()) {
+            conn.setAutoCommit(false);
+            new Property(conn).setHeartbeat(now);
+            conn.commit();
+        } catch (SQLException e) {
+            LogUtil.error(LOG, "Database.checkReplica() failed to write heartbeat", e);
+        }
+
+        long lag = -1;
+        try (Connection conn = source.getConnection()) {
+            conn.setAutoCommit(true);
+            Optional<Long> replicated = new Property(conn).getHeartbeat();
+            if (replicated.isPresent()) {
+                lag = Math.max(0, now - replicated.get());
+            }
+        } catch (SQLException | NumberFormatException e) {
+            LOG.warn("Database.checkReplica() failed to read heartbeat: {}", e.toString());
+        }
+        replicaLagMillis = lag;
+
+        boolean available = lag >= 0 && lag <= replicaMaxLagMillis;
+        if (available != replicaAvailable) {
+            LOG.warn("Replica lag is {}ms: {} replica", lag, available ? "using" : "not using");
+            replicaAvailable = available;
+        }
+    }
+
+    public boolean hasReplica() {
+        return replica != null;
+    }
+
+    // -1 if not measured or unknown
+    @Override
+    public long replicaLag() {
+        return replicaLagMillis;
+    }
+
     private void init(PoolProperties props, boolean enableJmx) throws IOException {
         props.setValidationQuery("select 1;");
         props.setJmxEnabled(enableJmx);
+        props.setJdbcInterceptors(QueryStatsInterceptor.class.getName());
 
         dataSource.setPoolProperties(props);
 
@@ -128,8 +238,160 @@ public class Database {
         } catch (SQLException | IOException e) {
             throw new IOException("Database.init() failed", e);
         }
+        rebuildActiveJobIndex();
+    }
+
+    private Connection getConnection() throws SQLException {
+        return getConnection(dataSource);
+    }
+
+    // For queries that tolerate staleness, such as listing and accounting; falls back to
+    // primary while replica lags behind or fails
+    private Connection getReadConnection() throws SQLException {
+        DataSource source = replica;
+        if (source == null || !replicaAvailable) {
+            return getConnection();
+        }
+        try {
+            return getConnection(source);
+        } catch (SQLException e) {
+            LOG.warn("Failed to connect to replica, reading from primary: {}", e.toString());
+            return getConnection();
+        }
+    }
+
+    // Times waiting for a connection from the pool, apart from executing queries
+    private static Connection getConnection(DataSource dataSource) throws SQLException {
+        long start = System.nanoTime();
+        Connection conn = dataSource.getConnection();
+        long nanos = System.nanoTime() - start;
+        if (QueryStats.recordAcquire(nanos)) {
+            LOG.warn("Slow connection acquisition ({} ms): active={}, idle={}, waiters={}",
+                    nanos / 1000_000L, dataSource.getActive(), dataSource.getIdle(), dataSource.getWaitCount());
+        }
+        return conn;
+    }
+
+    private void rebuildActiveJobIndex() throws IOException {
+        try (Connection conn = getConnection();
+             PreparedStatement p = conn.prepareStatement("SELECT json FROM jobs WHERE state IN ('QUEUED', 'STARTING', 'STARTED')")) {
+            conn.setAutoCommit(true);
+            synchronized (activeJobs) {
+                activeJobs.clear();
+                try (ResultSet res = p.executeQuery()) {
+                    while (res.next()) {
+                        String json = res.getString("json");
+                        // Any write committed meanwhile is at least as new as this
+                        activeJobs.put(mapper.readValue(json, Job.class), json, 0);
+                    }
+                }
+            }
+            LOG.info("{} active jobs loaded to index", activeJobs.size());
+        } catch (SQLException e) {
+            throw new IOException("Database.rebuildActiveJobIndex() failed", e);
+        }
+    }
+
+    // Commits and writes jobs through to the active job index. Only the index is
+    // locked, at applying each job; writes reaching it out of commit order are dropped
+    // by version
+    private void commit(Connection conn, Collection<Job> jobs) throws SQLException, JsonProcessingException {
+        List<String> jsons = new ArrayList<>(jobs.size());
+        for (Job job : jobs) {
+            jsons.add(mapper.writeValueAsString(job));
+        }
+        long version = activeJobs.begin();
+        try {
+            conn.commit();
+            Iterator<String> json = jsons.iterator();
+            for (Job job : jobs) {
+                activeJobs.put(job, json.next(), version);
+            }
+        } finally {
+            activeJobs.end();
+        }
+    }
+
+    // Compares the active job index with the database and returns differences found
+    @Override
+    public List<String> checkActiveJobIndex() throws IOException {
+        List<String> diffs = new ArrayList<>();
+        try (Connection conn = getConnection();
+             PreparedStatement p = conn.prepareStatement("SELECT id, json FROM jobs WHERE state IN ('QUEUED', 'STARTING', 'STARTED')")) {
+            conn.setAutoCommit(true);
+            synchronized (activeJobs) {
+                Map<Integer, String> indexed = activeJobs.snapshot();
+                try (ResultSet res = p.executeQuery()) {
+                    while (res.next()) {
+                        int id = res.getInt("id");
+                        String json = indexed.remove(id);
+                        if (json == null) {
+                            diffs.add(MessageFormat.format("id={0}: missing in index", Integer.toString(id)));
+                        } else if (!mapper.readTree(json).equals(mapper.readTree(res.getString("json")))) {
+                            diffs.add(MessageFormat.format("id={0}: differs from database", Integer.toString(id)));
+                        }
+                    }
+                }
+                for (int id : indexed.keySet()) {
+                    diffs.add(MessageFormat.format("id={0}: not active in database", Integer.toString(id)));
+                }
+            }
+        } catch (SQLException e) {
+            throw new IOException("Database.checkActiveJobIndex() failed", e);
+        }
+        if (!diffs.isEmpty()) {
+            LOG.warn("Active job index is inconsistent with database: {}", diffs);
+        }
+        return diffs;
+    }
+
+    // Whether 'jobs' has an index led by (state, orderBy...), which queue scans
+    // like findFit and queued need to avoid sorting all queued jobs
+    @Override
+    public boolean hasQueueIndex(List<String> orderBy) throws IOException {
+        List<String> prefix = new ArrayList<>();
+        prefix.add("state");
+        orderBy.forEach(column -> prefix.add(column.trim().toLowerCase()));
+
+        try (Connection conn = getConnection()) {
+            DatabaseMetaData meta = conn.getMetaData();
+            // PostgreSQL holds table names in lower case while H2 does in upper case
+            Map<String, List<String>> indexes = getIndexColumns(meta, "jobs");
+            indexes.putAll(getIndexColumns(meta, "JOBS"));
+
+            for (Map.Entry<String, List<String>> e : indexes.entrySet()) {
+                List<String> columns = e.getValue();
+                if (columns.size() >= prefix.size() && columns.subList(0, prefix.size()).equals(prefix)) {
+                    LOG.debug("Index {} {} matches ORDER BY {}", e.getKey(), columns, orderBy);
+                    return true;
+                }
+            }
+            return false;
+        } catch (SQLException e) {
+            throw new IOException(MessageFormat.format("Database.hasQueueIndex({0}) failed", orderBy), e);
+        }
     }
 
+    // Index name => column names in lower case, in the order of the index
+    private Map<String, List<String>> getIndexColumns(DatabaseMetaData meta, String table) throws SQLException {
+        Map<String, TreeMap<Short, String>> columns = new HashMap<>();
+        try (ResultSet res = meta.getIndexInfo(null, null, table, false, true)) {
+            while (res.next()) {
+                String name = res.getString("INDEX_NAME");
+                String column = res.getString("COLUMN_NAME");
+                if (name == null || column == null) {
+                    continue;
+                }
+                columns.computeIfAbsent(name, k -> new TreeMap<>())
+                        .put(res.getShort("ORDINAL_POSITION"), column.toLowerCase());
+            }
+        }
+        Map<String, List<String>> ret = new HashMap<>();
+        columns.forEach((name, ordered) -> ret.put(name, new ArrayList<>(ordered.values())));
+        return ret;
+    }
+
+    @Override
     public void stop() {
         LOG.info("Stopping database {}", databaseURL);
 
@@ -141,13 +403,26 @@ public class Database {
             }
         }
         dataSource.close();
+        if (heartbeat != null) {
+            heartbeat.shutdownNow();
+            heartbeat = null;
+        }
+        if (replica != null) {
+            replica.close();
+            replica = null;
+        }
+        replicaAvailable = true;
+        replicaLagMillis = -1;
         LOG.info("Stopped database");
     }
 
     // This is for test purpose
+    @Override
     public void clear() {
         try {
             dbMigrator.clean();
+            activeJobs.clear();
+            users.invalidateAll();
             LOG.info("All tables dropped successfully");
         } catch (IOException e) {
             LogUtil.error(LOG,"Database.clear() failed", e);
@@ -155,11 +430,12 @@ public class Database {
     }
 
 
+    @Override
     public List<User> allUsers() throws IOException {
         List<User> ret = new ArrayList<>();
         //try (Connection conn = DriverManager.getConnection(databaseURL)) {
         //try (Connection conn = pool.getConnection();
-        try (Connection conn = dataSource.getConnection(); //pool.getConnection()) {
+        try (Connection conn = getConnection(); //pool.getConnection()) {
              PreparedStatement p = conn.prepareStatement("SELECT * FROM users")) {
             conn.setAutoCommit(true);
 
@@ -175,19 +451,10 @@ public class Database {
         }
     }
 
-    // Maybe this must return Optional<User> ?
-    public User createUser(String info) throws IOException {
-        String keyId = UUID.randomUUID().toString().replace("-", "");
-        String secret = UUID.randomUUID().toString().replace("-", "");
-        User u = new User(keyId, secret, true, info);
-        LOG.info("new (key_id, secret) = ({}, {})", keyId, secret);
-        addUser(u);
-        return u;
-    }
-
+    @Override
     public boolean addUser(User u) throws IOException {
         //try (Connection conn = DriverManager.getConnection(databaseURL)) {
-        try (Connection conn = dataSource.getConnection(); //pool.getConnection();
+        try (Connection conn = getConnection(); //pool.getConnection();
              PreparedStatement p = conn.prepareStatement("INSERT INTO users(key_id, secret, enabled, json) values(?, ?, ?, ?)")) {
             conn.setAutoCommit(true);
 
@@ -196,6 +463,7 @@ public class Database {
             p.setBoolean(3, true);
             p.setString(4, mapper.writeValueAsString(u));
             p.execute();
+            users.invalidate(u.keyId());
             return true;
         } catch (SQLException | IOException e) {
             throw new IOException(MessageFormat.format("Database.addUser({0}) failed", u.keyId()), e);
@@ -212,12 +480,19 @@ public class Database {
         }
     }
 
+    // Cached, as this is called for every authenticated request
+    @Override
     public Optional<User> getUser(String keyId) throws IOException {
+        Optional<User> cached = users.get(keyId);
+        if (cached.isPresent()) {
+            return cached;
+        }
         //try (Connection conn = DriverManager.getConnection(databaseURL)) {
-        try (Connection conn = dataSource.getConnection()) { //pool.getConnection()) {
+        try (Connection conn = getConnection()) { //pool.getConnection()) {
             conn.setAutoCommit(false);
             Optional<User> u = getUser(conn, keyId);
             conn.commit();
+            u.ifPresent(users::put);
             return u;
         } catch (SQLException | IOException e) {
             throw new IOException(MessageFormat.format("Database.getUser({0}) failed", keyId), e);
@@ -242,8 +517,9 @@ public class Database {
         }
     }
 
+    @Override
     public void enableUser(String keyId, boolean enabled) throws IOException {
-        try (Connection conn = dataSource.getConnection()) {
+        try (Connection conn = getConnection()) {
             conn.setAutoCommit(false);
             Optional<User> user = getUser(conn, keyId);
             if (user.isPresent()) {
@@ -251,18 +527,16 @@ public class Database {
                 updateUser(conn, user.get());
             }
             conn.commit();
+            users.invalidate(keyId);
         } catch (SQLException | IOException e) {
             throw new IOException(MessageFormat.format("Database.enableUser({0}) failed", keyId), e);
         }
     }
 
-    public List<Application> getAllApplications() throws IOException {
-        return getAllApplications(null);
-    }
-
+    @Override
     public List<Application> getAllApplications(String id) throws IOException {
         List<Application> ret = Collections.emptyList();
-        try (Connection conn = dataSource.getConnection()) { //pool.getConnection()) {
+        try (Connection conn = getReadConnection()) { //pool.getConnection()) {
             conn.setAutoCommit(false);
             ret = getApplications(conn, id);
             conn.commit();
@@ -296,8 +570,9 @@ public class Database {
         return ret;
     }
 
+    @Override
     public boolean addApplication(Application a) throws IOException {
-        try (Connection conn = dataSource.getConnection(); //pool.getConnection();
+        try (Connection conn = getConnection(); //pool.getConnection();
              PreparedStatement p = conn.prepareStatement("INSERT INTO applications(appid, owner, json) values(?, ?, ?)")) {
             conn.setAutoCommit(false);
 
@@ -326,8 +601,10 @@ public class Database {
         }
     }
 
-    public Optional<Application> getApplication(String appid) throws IOException {
-        try (Connection conn = dataSource.getConnection()) { //pool.getConnection()) {
+    // Reads from replica if allowStale, not to be used in scheduling
+    @Override
+    public Optional<Application> getApplication(String appid, boolean allowStale) throws IOException {
+        try (Connection conn = allowStale ? getReadConnection() : getConnection()) { //pool.getConnection()) {
             conn.setAutoCommit(true);
             return getApplication(conn, appid);
         } catch (SQLException e) {
@@ -355,8 +632,9 @@ public class Database {
         }
     }
 
+    @Override
     public void safeDeleteApplication(String appid) throws IOException {
-        try (Connection conn = dataSource.getConnection()) { //pool.getConnection()) {
+        try (Connection conn = getConnection()) { //pool.getConnection()) {
             conn.setAutoCommit(false);
             // TODO: check there are no non-finished Jobs
             // TODO: THINK: what about finished jobs??????
@@ -380,34 +658,72 @@ public class Database {
         }
     }
 
-    public List<Job> listJobs(String id, Job.JobState state, Optional<String> tag, int limit) throws IOException {
+    // Lists jobs in descending order of id, from ones with id less than afterId if present
+    @Override
+    public List<Job> listJobs(String id, Job.JobState state, Optional<String> tag, Optional<Integer> afterId, int limit) throws IOException {
         List<Job> ret = new ArrayList<>();
-        String prefix = "SELECT j.json FROM jobs j, applications a WHERE j.appid = a.appid AND a.owner = ?";
-        String sql = prefix + " AND j.state=? ORDER BY j.id DESC LIMIT ?";
-
-        try (Connection conn = dataSource.getConnection(); // pool.getConnection();
-             PreparedStatement p = conn.prepareStatement(sql)) {
-            p.setString(1, id);
-            p.setString(2, state.toString());
-            p.setInt(3, limit);
+        for (String json : listJobsJson(id, state, tag, afterId, limit)) {
+            Job job = mapper.readValue(json, Job.class);
+            assert job.state() == state;
+            ret.add(job);
+        }
+        return ret;
+    }
 
+    // Returns jobs as stored in JSON, to be sent to clients without decoding
+    @Override
+    public List<String> listJobsJson(String id, Job.JobState state, Optional<String> tag, Optional<Integer> afterId, int limit) throws IOException {
+        try (Connection conn = getReadConnection()) { // pool.getConnection();
             conn.setAutoCommit(true);
+            List<Map.Entry<Integer, String>> jobs = listJobsJson(conn, "jobs", "job_tags", id, state, tag, afterId, limit);
+            if (state == Job.JobState.FINISHED || state == Job.JobState.KILLED) {
+                // Both are in descending order of id, and no id is in both tables
+                List<Map.Entry<Integer, String>> archived = listJobsJson(conn, "jobs_archive", "jobs_archive_tags", id, state, tag, afterId, limit);
+                jobs.addAll(archived);
+                jobs.sort((lhs, rhs) -> Integer.compare(rhs.getKey(), lhs.getKey()));
+            }
+            return jobs.stream().limit(limit).map(Map.Entry::getValue).collect(Collectors.toList());
+        } catch (SQLException e) {
+            throw new IOException(MessageFormat.format("Database.listJobs({0}, {1}) failed", id, state), e);
+        }
+    }
+
+    private List<Map.Entry<Integer, String>> listJobsJson(Connection conn, String table, String tagTable,
+                                                         String id, Job.JobState state, Optional<String> tag,
+                                                         Optional<Integer> afterId, int limit) throws SQLException {
+        List<Map.Entry<Integer, String>> ret = new ArrayList<>();
+        String sql = "SELECT j.id, j.json FROM " + table + " j, applications a";
+        if (tag.isPresent()) {
+            sql += ", " + tagTable + " t WHERE t.tag = ? AND t.job_id = j.id AND";
+        } else {
+            sql += " WHERE";
+        }
+        sql += " j.appid = a.appid AND a.owner = ? AND j.state=?";
+        if (afterId.isPresent()) {
+            sql += " AND j.id < ?";
+        }
+        // Scans (state, id) index of jobs, or (appid, state, id) of jobs_archive, backwards from afterId
+        sql += " ORDER BY j.id DESC LIMIT ?";
+
+        try (PreparedStatement p = conn.prepareStatement(sql)) {
+            int i = 1;
+            if (tag.isPresent()) {
+                p.setString(i++, tag.get());
+            }
+            p.setString(i++, id);
+            p.setString(i++, state.toString());
+            if (afterId.isPresent()) {
+                p.setInt(i++, afterId.get());
+            }
+            p.setInt(i, limit);
 
             try (ResultSet res = p.executeQuery()) {
                 while (res.next()) {
-                    String json = res.getString(1);
-                    Job job = mapper.readValue(json, Job.class);
-                    assert job.state() == state;
-                    if (tag.isPresent() && !job.tags().contains(tag.get())) {
-                        continue;
-                    }
-                    ret.add(job);
+                    ret.add(new AbstractMap.SimpleImmutableEntry<>(res.getInt(1), res.getString(2)));
                 }
             }
-            return ret;
-        } catch (SQLException e) {
-            throw new IOException(MessageFormat.format("Database.listJobs({0}, {1}) failed", id, state), e);
         }
+        return ret;
     }
 
     // This is for debug purpose
@@ -417,7 +733,7 @@ public class Database {
         if (id != null) {
             sql = "SELECT j.json FROM jobs j, applications a WHERE j.appid = a.appid AND a.owner = ?";
         }
-        try (Connection conn = dataSource.getConnection(); // pool.getConnection();
+        try (Connection conn = getConnection(); // pool.getConnection();
              PreparedStatement p = conn.prepareStatement(sql)) {
             if (id != null) {
                 p.setString(1, id);
@@ -438,15 +754,19 @@ public class Database {
         return ret;
     }
 
-    // Selects all "finished" jobs
-    public List<Job> finishedJobs(String start, String end) throws IOException {
+    // Selects all "finished" jobs in [start, end), in milliseconds since epoch, including archived ones
+    @Override
+    public List<Job> finishedJobs(long start, long end) throws IOException {
         List<Job> ret = new ArrayList<>();
-        try (Connection conn = dataSource.getConnection(); //pool.getConnection();
-             PreparedStatement p = conn.prepareStatement("SELECT * FROM jobs WHERE ? <= finished AND finished < ?")) {
+        try (Connection conn = getReadConnection(); //pool.getConnection();
+             PreparedStatement p = conn.prepareStatement("SELECT json FROM jobs WHERE ? <= finished_at AND finished_at < ?"
+                     + " UNION ALL SELECT json FROM jobs_archive WHERE ? <= finished_at AND finished_at < ?")) {
             conn.setAutoCommit(true);
 
-            p.setString(1, start);
-            p.setString(2, end);
+            p.setLong(1, start);
+            p.setLong(2, end);
+            p.setLong(3, start);
+            p.setLong(4, end);
             try (ResultSet res = p.executeQuery()) {
                 while (res.next()) {
                     String json = res.getString("json");
@@ -463,15 +783,123 @@ public class Database {
         }
     }
 
+    // Pages jobs finished in [start, end) in order of (finished_at, id), from ones after the cursor,
+    // including archived ones. Rows are read through a cursor of USAGE_FETCH_SIZE rows at a time.
+    @Override
+    public List<UsageEntry> finishedJobsJson(long start, long end, Optional<UsageEntry> after, int limit) throws IOException {
+        try (Connection conn = getReadConnection()) { //pool.getConnection();
+            // PostgreSQL JDBC driver uses cursors for fetch size only out of autocommit mode
+            conn.setAutoCommit(false);
+            List<UsageEntry> ret = finishedJobsJson(conn, "jobs", start, end, after, limit);
+            ret.addAll(finishedJobsJson(conn, "jobs_archive", start, end, after, limit));
+            conn.commit();
+            ret.sort(Comparator.comparingLong(UsageEntry::finishedAt).thenComparingInt(UsageEntry::id));
+            return ret.size() > limit ? new ArrayList<>(ret.subList(0, limit)) : ret;
+        } catch (SQLException e) {
+            throw new IOException(MessageFormat.format("Database.finishedJobsJson({0}, {1}) failed", start, end), e);
+        }
+    }
+
+    private List<UsageEntry> finishedJobsJson(Connection conn, String table, long start, long end,
+                                              Optional<UsageEntry> after, int limit) throws SQLException {
+        List<UsageEntry> ret = new ArrayList<>();
+        String sql = "SELECT finished_at, id, json FROM " + table + " WHERE finished_at < ?";
+        if (after.isPresent()) {
+            sql += " AND (finished_at > ? OR (finished_at = ? AND id > ?))";
+        } else {
+            sql += " AND ? <= finished_at";
+        }
+        sql += " ORDER BY finished_at, id LIMIT ?";
+        try (PreparedStatement p = conn.prepareStatement(sql)) {
+            p.setFetchSize(USAGE_FETCH_SIZE);
+            int i = 1;
+            p.setLong(i++, end);
+            if (after.isPresent()) {
+                p.setLong(i++, after.get().finishedAt());
+                p.setLong(i++, after.get().finishedAt());
+                p.setInt(i++, after.get().id());
+            } else {
+                p.setLong(i++, start);
+            }
+            p.setInt(i, limit);
+            try (ResultSet res = p.executeQuery()) {
+                while (res.next()) {
+                    ret.add(new UsageEntry(res.getLong(1), res.getInt(2), res.getString(3)));
+                }
+            }
+        }
+        return ret;
+    }
+
+    // Sums resources multiplied by durations of jobs finished in [start, end), grouped by
+    // owner of the application ("user"), application ("app") or not grouped ("total")
+    @Override
+    public List<UsageSummary> usageSummary(long start, long end, String groupBy) throws IOException {
+        String key;
+        String from;
+        switch (groupBy) {
+            case "user":
+                key = "a.owner";
+                from = " j, applications a WHERE j.appid = a.appid AND";
+                break;
+            case "app":
+                key = "j.appid";
+                from = " j WHERE";
+                break;
+            case "total":
+                key = "'total'";
+                from = " j WHERE";
+                break;
+            default:
+                throw new IllegalArgumentException("groupBy must be one of user, app or total: " + groupBy);
+        }
+        Map<String, UsageSummary> summaries = new TreeMap<>();
+        try (Connection conn = getReadConnection()) { //pool.getConnection();
+            conn.setAutoCommit(true);
+            for (String table : Arrays.asList("jobs", "jobs_archive")) {
+                // Jobs killed before started have no duration
+                String sql = "SELECT " + key + ", count(j.id), sum(j.cpu * (j.finished_at - j.started_at)),"
+                        + " sum(j.mem_mb * (j.finished_at - j.started_at)), sum(j.gpu * (j.finished_at - j.started_at))"
+                        + " FROM " + table + from + " ? <= j.finished_at AND j.finished_at < ?";
+                if (!"total".equals(groupBy)) {
+                    sql += " GROUP BY " + key;
+                }
+                try (PreparedStatement p = conn.prepareStatement(sql)) {
+                    p.setLong(1, start);
+                    p.setLong(2, end);
+                    try (ResultSet res = p.executeQuery()) {
+                        while (res.next()) {
+                            if (res.getLong(2) == 0) {
+                                continue;
+                            }
+                            UsageSummary summary = new UsageSummary(res.getString(1), res.getLong(2),
+                                    res.getLong(3), res.getLong(4), res.getLong(5));
+                            summaries.merge(summary.key(), summary, UsageSummary::add);
+                        }
+                    }
+                }
+            }
+            return new ArrayList<>(summaries.values());
+        } catch (SQLException e) {
+            throw new IOException(MessageFormat.format("Database.usageSummary({0}, {1}, {2}) failed", start, end, groupBy), e);
+        }
+    }
+
+    // Leading 'state' is redundant as queries are all on a single state, but it
+    // lets H2 read rows in the order of (state, ...) indexes instead of sorting
+    private static String queueOrder(List<String> orderBy) {
+        return "state ASC, " + orderBy.stream().map(s -> s + " ASC").collect(Collectors.joining(", "));
+    }
+
     // orderBy must not have any duplication
+    @Override
     public List<Job> findAll(List<String> orderBy, int limit) throws IOException {
         List<Job> ret = new ArrayList<>();
-        String orders = orderBy.stream().map(s -> s + " ASC").collect(Collectors.joining(", "));
-        String sql = "SELECT * FROM jobs WHERE state='QUEUED' ORDER BY " + orders;
+        String sql = "SELECT * FROM jobs WHERE state='QUEUED' ORDER BY " + queueOrder(orderBy);
         if (limit >= 0) {
             sql += " LIMIT " + limit;
         }
-        try (Connection conn = dataSource.getConnection(); //pool.getConnection();
+        try (Connection conn = getConnection(); //pool.getConnection();
              PreparedStatement p = conn.prepareStatement(sql)) {
             try (ResultSet res = p.executeQuery()) {
                 while (res.next()) {
@@ -489,42 +917,46 @@ public class Database {
         }
     }
 
+    // Greedily takes queued jobs in the order until cpu or memMB runs out. The cut-off is
+    // found by scanning only typed resource columns; JSON is decoded just for selected jobs
+    @Override
     public List<Job> findFit(List<String> orderBy, int cpu, int memMB) throws IOException {
-        List<Job> ret = new ArrayList<>();
-        String orders = orderBy.stream().map(s -> s + " ASC").collect(Collectors.joining(", "));
-        try (Connection conn = dataSource.getConnection(); //pool.getConnection();
-             PreparedStatement p = conn.prepareStatement("SELECT * FROM jobs WHERE state='QUEUED' ORDER BY " + orders)) {
-            conn.setAutoCommit(true);
+        List<Integer> ids = new ArrayList<>();
+        try (Connection conn = getConnection(); //pool.getConnection();
+             PreparedStatement p = conn.prepareStatement("SELECT id, cpu, mem_mb FROM jobs WHERE state='QUEUED' ORDER BY " + queueOrder(orderBy))) {
+            // PostgreSQL driver only uses cursor with fetch size if autocommit is off
+            conn.setAutoCommit(false);
+            p.setFetchSize(FIT_FETCH_SIZE);
 
             try (ResultSet res = p.executeQuery()) {
                 int totalCpu = 0;
                 int totalMem = 0;
 
-                while (res.next() && totalCpu <= cpu && totalMem <= memMB) {
-                    String json = res.getString("json");
-                    Job job = mapper.readValue(json, Job.class);
-
-                    if (job == null) {
-                        throw new AssertionError("Cannot be null!!");
-                    } else if (totalCpu + job.resources().getCpu() <= cpu && totalMem + job.resources().getMemMB() <= memMB) {
-                        ret.add(job);
-                        totalCpu += job.resources().getCpu();
-                        totalMem += job.resources().getMemMB();
+                while (res.next()) {
+                    int jobCpu = res.getInt("cpu");
+                    int jobMem = res.getInt("mem_mb");
+                    if (totalCpu + jobCpu <= cpu && totalMem + jobMem <= memMB) {
+                        ids.add(res.getInt("id"));
+                        totalCpu += jobCpu;
+                        totalMem += jobMem;
                     } else {
                         break;
                     }
                 }
             }
+            List<Job> ret = new Jobs(conn, mapper).getJobs(ids);
+            conn.commit();
             return ret;
         } catch (SQLException | IOException e) {
             throw new IOException(MessageFormat.format("Database.findFit({0}, {1}) failed", cpu, memMB), e);
         }
     }
 
+    @Override
     public List<Job> queued(int limit) throws IOException {
         List<Job> ret = new ArrayList<>();
-        try (Connection conn = dataSource.getConnection(); //pool.getConnection();
-             PreparedStatement p = conn.prepareStatement("SELECT * FROM jobs WHERE state='QUEUED' ORDER BY id ASC LIMIT ?")) {
+        try (Connection conn = getConnection(); //pool.getConnection();
+             PreparedStatement p = conn.prepareStatement("SELECT * FROM jobs WHERE state='QUEUED' ORDER BY " + queueOrder(Arrays.asList("id")) + " LIMIT ?")) {
             conn.setAutoCommit(true);
             p.setInt(1, limit);
 
@@ -546,21 +978,9 @@ public class Database {
         }
     }
 
-    private void addJob(Connection conn, Job j) throws SQLException, JsonProcessingException {
-        try (PreparedStatement p = conn.prepareStatement("INSERT INTO jobs(name, id, appid, priority, taskid, state, json) values(?, ?, ?, ?, ?, ?, ?)")) {
-            p.setString(1, j.name());
-            p.setInt(2, j.id());
-            p.setString(3, j.appid());
-            p.setInt(4, j.priority());
-            p.setString(5, j.taskId());
-            p.setString(6, j.state().toString());
-            p.setString(7, mapper.writeValueAsString(j));
-            p.execute();
-        }
-    }
-
+    @Override
     public void safeAddJob(Job j) throws IOException {
-        try (Connection conn = dataSource.getConnection()) { //pool.getConnection()) {
+        try (Connection conn = getConnection()) { //pool.getConnection()) {
             conn.setAutoCommit(false);
 
             Optional<Application> app = getApplication(conn, j.appid());
@@ -568,16 +988,50 @@ public class Database {
                 throw new IllegalStateException("No such application: " + j.appid());
             }
 
-            addJob(conn, j);
-            conn.commit();
+            new Jobs(conn, mapper).addJob(j);
+            commit(conn, Collections.singletonList(j));
 
         } catch (SQLException | IOException e) {
             throw new IOException(MessageFormat.format("Database.safeAddJob({0}) failed", j.appid()), e);
         }
     }
 
+    // Adds jobs of one application in one transaction
+    @Override
+    public void safeAddJobs(String appid, List<Job> jobs) throws IOException {
+        try (Connection conn = getConnection()) { //pool.getConnection()) {
+            conn.setAutoCommit(false);
+
+            Optional<Application> app = getApplication(conn, appid);
+            if (!app.isPresent()) {
+                throw new IllegalStateException("No such application: " + appid);
+            }
+            for (Job job : jobs) {
+                if (!appid.equals(job.appid())) {
+                    throw new IllegalArgumentException("Job of another application: " + job.appid());
+                }
+            }
+
+            new Jobs(conn, mapper).addJobs(jobs);
+            commit(conn, jobs);
+
+        } catch (SQLException | IOException e) {
+            throw new IOException(MessageFormat.format("Database.safeAddJobs({0}, {1}) failed", appid, jobs.size()), e);
+        }
+    }
+
+    @Override
     public Optional<AppJobPair> getAppJob(int id) throws IOException {
-        try (Connection conn = dataSource.getConnection(); //pool.getConnection();
+        Optional<String> indexed = activeJobs.get(id);
+        if (indexed.isPresent()) {
+            Job job = mapper.readValue(indexed.get(), Job.class);
+            Optional<Application> app = getApplication(job.appid());
+            if (!app.isPresent()) {
+                return Optional.empty();
+            }
+            return Optional.of(new AppJobPair(app, job));
+        }
+        try (Connection conn = getConnection(); //pool.getConnection();
              PreparedStatement p = conn.prepareStatement("SELECT j.json, a.json FROM jobs j, applications a WHERE id = ? AND j.appid = a.appid")) {
             conn.setAutoCommit(true);
             p.setInt(1, id);
@@ -594,16 +1048,78 @@ public class Database {
 
                     return Optional.of(new AppJobPair(Optional.of(app), job));
                 }
-                // No such application
-                return Optional.empty();
             }
+            Optional<String> archived = getArchivedJobJson(conn, id);
+            if (archived.isPresent()) {
+                Job job = mapper.readValue(archived.get(), Job.class);
+                Optional<Application> app = getApplication(job.appid());
+                if (app.isPresent()) {
+                    return Optional.of(new AppJobPair(app, job));
+                }
+            }
+            // No such application
+            return Optional.empty();
         } catch (SQLException | IOException e) {
             throw new IOException(MessageFormat.format("Database.getAppJob({0}) failed", id), e);
         }
     }
 
+    // Returns a job as stored in JSON, only if its application is owned by the owner
+    @Override
+    public Optional<String> getJobJson(int id, String owner) throws IOException {
+        // Active jobs are served from the index, with the owner checked against cached applications
+        Optional<String> appid = activeJobs.getAppid(id);
+        if (appid.isPresent()) {
+            Optional<Application> app = Applications.get(appid.get());
+            Optional<String> indexed = activeJobs.get(id);
+            if (app.isPresent() && indexed.isPresent()) {
+                return owner.equals(app.get().getOwner()) ? indexed : Optional.empty();
+            }
+        }
+        try (Connection conn = getConnection(); //pool.getConnection();
+             PreparedStatement p = conn.prepareStatement("SELECT j.json FROM jobs j, applications a WHERE j.id = ? AND j.appid = a.appid AND a.owner = ?")) {
+            conn.setAutoCommit(true);
+            p.setInt(1, id);
+            p.setString(2, owner);
+            try (ResultSet res = p.executeQuery()) {
+                if (res.next()) {
+                    return Optional.of(res.getString(1));
+                }
+            }
+            try (PreparedStatement archive = conn.prepareStatement("SELECT j.json FROM jobs_archive j, applications a WHERE j.id = ? AND j.appid = a.appid AND a.owner = ?")) {
+                archive.setInt(1, id);
+                archive.setString(2, owner);
+                try (ResultSet res = archive.executeQuery()) {
+                    if (res.next()) {
+                        return Optional.of(res.getString(1));
+                    }
+                }
+            }
+            return Optional.empty();
+        } catch (SQLException e) {
+            throw new IOException(MessageFormat.format("Database.getJobJson({0}) failed", id), e);
+        }
+    }
+
+    private Optional<String> getArchivedJobJson(Connection conn, int id) throws SQLException {
+        try (PreparedStatement p = conn.prepareStatement("SELECT json FROM jobs_archive WHERE id = ?")) {
+            p.setInt(1, id);
+            try (ResultSet res = p.executeQuery()) {
+                if (res.next()) {
+                    return Optional.of(res.getString(1));
+                }
+            }
+        }
+        return Optional.empty();
+    }
+
+    @Override
     public Optional<Job> getJob(int id) throws IOException {
-        try (Connection conn = dataSource.getConnection(); //pool.getConnection();
+        Optional<String> indexed = activeJobs.get(id);
+        if (indexed.isPresent()) {
+            return Optional.of(mapper.readValue(indexed.get(), Job.class));
+        }
+        try (Connection conn = getConnection(); //pool.getConnection();
              PreparedStatement p = conn.prepareStatement("SELECT * FROM jobs WHERE id = ?")) {
             conn.setAutoCommit(true);
             p.setInt(1, id);
@@ -617,16 +1133,25 @@ public class Database {
                     }
                     return Optional.of(job);
                 }
-                // No such application
-                return Optional.empty();
             }
+            Optional<String> archived = getArchivedJobJson(conn, id);
+            if (archived.isPresent()) {
+                return Optional.of(mapper.readValue(archived.get(), Job.class));
+            }
+            // No such application
+            return Optional.empty();
         } catch (SQLException | IOException e) {
             throw new IOException(MessageFormat.format("Database.getJob({0}) failed", id), e);
         }
     }
 
+    @Override
     public Optional<Job> getJobFromTaskId(String taskId) throws IOException {
-        try (Connection conn = dataSource.getConnection(); //pool.getConnection();
+        Optional<String> indexed = activeJobs.getFromTaskId(taskId);
+        if (indexed.isPresent()) {
+            return Optional.of(mapper.readValue(indexed.get(), Job.class));
+        }
+        try (Connection conn = getConnection(); //pool.getConnection();
              PreparedStatement p = conn.prepareStatement("SELECT json FROM jobs WHERE taskid=?")) {
             conn.setAutoCommit(true);
 
@@ -651,37 +1176,79 @@ public class Database {
     }
 
     // Delete all jobs that has ID smaller than id
+    @Override
     public void deleteAllJob(int maxId) throws IOException {
-        try (Connection conn = dataSource.getConnection(); //pool.getConnection();
-             PreparedStatement p = conn.prepareStatement("DELETE FROM jobs WHERE id < ?")) {
+        try (Connection conn = getConnection(); //pool.getConnection();
+             PreparedStatement p = conn.prepareStatement("DELETE FROM jobs WHERE id < ?");
+             PreparedStatement archive = conn.prepareStatement("DELETE FROM jobs_archive WHERE id < ?")) {
             conn.setAutoCommit(true);
             p.setInt(1, maxId);
+            archive.setInt(1, maxId);
             p.execute();
+            activeJobs.removeBelow(maxId);
+            archive.execute();
         } catch (SQLException e) {
             throw new IOException(MessageFormat.format("Database.deleteAllJob({0}) failed", maxId), e);
         }
     }
 
-    public void deleteOldJobs(int leeway) throws IOException {
-        try (Connection conn = dataSource.getConnection()) {
+    // Old jobs are FINISHED or KILLED jobs finished before the time, in milliseconds since epoch
+    @Override
+    public Optional<JobIdRange> getOldJobIdRange(long before) throws IOException {
+        try (Connection conn = getConnection()) {
             conn.setAutoCommit(false);
-            new Jobs(conn, mapper).collect(leeway);
+            Optional<JobIdRange> range = new Jobs(conn, mapper).getOldJobIdRange(before);
+            conn.commit();
+            return range;
         } catch (SQLException e) {
-            throw new IOException(MessageFormat.format("Database.deleteOldJobs({0}) failed", leeway), e);
+            throw new IOException(MessageFormat.format("Database.getOldJobIdRange({0}) failed", before), e);
         }
     }
 
-    public void setJobStarting(int id, Optional<String> maybeUrl, String taskId) throws IOException, JobNotFoundException {
-        updateJob(id, job -> {
-            job.starting(taskId, maybeUrl, TimestampHelper.now());
-            LOG.info("TaskId of id={}: {} / {}", id, taskId, job.taskId());
-            return Optional.of(job);
-        });
+    @Override
+    public Optional<Integer> getOldJobChunkEnd(long before, int afterId, int limit) throws IOException {
+        try (Connection conn = getConnection()) {
+            conn.setAutoCommit(false);
+            Optional<Integer> end = new Jobs(conn, mapper).getOldJobChunkEnd(before, afterId, limit);
+            conn.commit();
+            return end;
+        } catch (SQLException e) {
+            throw new IOException(MessageFormat.format("Database.getOldJobChunkEnd({0}, {1}, {2}) failed", before, afterId, limit), e);
+        }
+    }
+
+    // Deletes old jobs with ids in [fromId, toId] in one transaction and returns the number deleted
+    @Override
+    public int deleteOldJobs(long before, int fromId, int toId) throws IOException {
+        try (Connection conn = getConnection()) {
+            conn.setAutoCommit(false);
+            int deleted = new Jobs(conn, mapper).collect(before, fromId, toId);
+            conn.commit();
+            return deleted;
+        } catch (SQLException e) {
+            throw new IOException(MessageFormat.format("Database.deleteOldJobs({0}, {1}, {2}) failed", before, fromId, toId), e);
+        }
     }
 
+    // Moves old jobs with ids in [fromId, toId] to jobs_archive in one transaction and returns their JSON
+    @Override
+    public List<String> archiveOldJobs(long before, int fromId, int toId) throws IOException {
+        try (Connection conn = getConnection()) {
+            conn.setAutoCommit(false);
+            List<String> archived = new Jobs(conn, mapper).archive(before, fromId, toId);
+            conn.commit();
+            return archived;
+        } catch (SQLException e) {
+            throw new IOException(MessageFormat.format("Database.archiveOldJobs({0}, {1}, {2}) failed", before, fromId, toId), e);
+        }
+    }
+
+    // The row is locked until commit, as status updates and planning may update the same job
+    // at once from different lanes of Stanchion
+    @Override
     public void updateJob(int id, Function<Job, Optional<Job>> fun) throws IOException, JobNotFoundException {
-        try (Connection conn = dataSource.getConnection(); //pool.getConnection();
-             PreparedStatement p = conn.prepareStatement("SELECT json FROM jobs WHERE id=?")) {
+        try (Connection conn = getConnection(); //pool.getConnection();
+             PreparedStatement p = conn.prepareStatement("SELECT json FROM jobs WHERE id=? FOR UPDATE")) {
             conn.setAutoCommit(false);
             p.setInt(1, id);
             try (ResultSet set = p.executeQuery()) {
@@ -692,10 +1259,13 @@ public class Database {
                     if (result.isPresent()) {
                         // addJob..
                         new Jobs(conn, mapper).updateJob(job);
-                        conn.commit();
+                        commit(conn, Collections.singletonList(job));
                         LOG.info("Job (id={}) status updated to {}", job.id(), job.state());
+                    } else {
+                        conn.rollback(); // Release the lock
                     }
                 } else {
+                    conn.rollback();
                     throw new JobNotFoundException(id);
                 }
             }
@@ -704,8 +1274,96 @@ public class Database {
         }
     }
 
+    // Applies fun to jobs of the task ids in memory and writes back the jobs it returns,
+    // all in one transaction; jobs written are returned after commit
+    @Override
+    public List<Job> updateJobsFromTaskIds(Collection<String> taskIds, Function<Map<String, Job>, List<Job>> fun) throws IOException {
+        try (Connection conn = getConnection()) {
+            conn.setAutoCommit(false);
+            Jobs jobs = new Jobs(conn, mapper);
+            List<Job> updated = fun.apply(jobs.getJobsFromTaskIds(taskIds));
+            jobs.updateJobs(updated);
+            commit(conn, updated);
+            return updated;
+        } catch (SQLException | IOException e) {
+            throw new IOException(MessageFormat.format("Database.updateJobsFromTaskIds({0}) failed", taskIds), e);
+        }
+    }
+
+    // Marks active jobs of the owner matching all conditions as killed, in chunks of jobs in
+    // order of id with one batched UPDATE and one transaction per chunk, and returns them.
+    // Jobs with task ids were started and their tasks are to be killed by caller.
+    @Override
+    public List<Job> killJobs(String owner, Collection<Job.JobState> states, Optional<String> tag,
+                              Optional<Integer> fromId, Optional<Integer> toId, String reason) throws IOException {
+        return killJobs(owner, states, tag, fromId, toId, reason, KILL_CHUNK_SIZE);
+    }
+
+    List<Job> killJobs(String owner, Collection<Job.JobState> states, Optional<String> tag,
+                       Optional<Integer> fromId, Optional<Integer> toId, String reason, int chunkSize) throws IOException {
+        List<Job.JobState> active = states.stream().filter(ActiveJobIndex::isActive).distinct().collect(Collectors.toList());
+        if (active.isEmpty()) {
+            return Collections.emptyList();
+        }
+        // Owner and tag are resolved in subqueries so that only rows of jobs are locked;
+        // H2 does not support FOR UPDATE with joins under MVCC
+        String sql = "SELECT json FROM jobs WHERE appid IN (SELECT appid FROM applications WHERE owner = ?)";
+        if (tag.isPresent()) {
+            sql += " AND id IN (SELECT job_id FROM job_tags WHERE tag = ?)";
+        }
+        sql += " AND state IN (" + active.stream().map(s -> "?").collect(Collectors.joining(", ")) + ")";
+        sql += " AND id > ?";
+        if (toId.isPresent()) {
+            sql += " AND id <= ?";
+        }
+        sql += " ORDER BY id LIMIT ? FOR UPDATE";
+
+        List<Job> killed = new ArrayList<>();
+        String now = TimestampHelper.now();
+        int after = fromId.isPresent() ? Math.max(fromId.get(), Integer.MIN_VALUE + 1) - 1 : Integer.MIN_VALUE;
+        while (true) {
+            try (Connection conn = getConnection(); //pool.getConnection();
+                 PreparedStatement p = conn.prepareStatement(sql)) {
+                conn.setAutoCommit(false);
+                int i = 1;
+                p.setString(i++, owner);
+                if (tag.isPresent()) {
+                    p.setString(i++, tag.get());
+                }
+                for (Job.JobState state : active) {
+                    p.setString(i++, state.toString());
+                }
+                p.setInt(i++, after);
+                if (toId.isPresent()) {
+                    p.setInt(i++, toId.get());
+                }
+                p.setInt(i++, chunkSize);
+
+                List<Job> chunk = new ArrayList<>();
+                try (ResultSet res = p.executeQuery()) {
+                    while (res.next()) {
+                        Job job = mapper.readValue(res.getString("json"), Job.class);
+                        job.killed(now, Optional.empty(), reason);
+                        chunk.add(job);
+                    }
+                }
+                new Jobs(conn, mapper).updateJobs(chunk);
+                commit(conn, chunk);
+                killed.addAll(chunk);
+                if (chunk.size() < chunkSize) {
+                    return killed;
+                }
+                after = chunk.get(chunk.size() - 1).id();
+            } catch (SQLException | IOException e) {
+                throw new IOException(MessageFormat.format("Database.killJobs({0}, {1}, {2}) failed after {3} jobs killed",
+                        owner, states, tag, killed.size()), e);
+            }
+        }
+    }
+
+    @Override
     public int countJobs() throws IOException {
-        try (Connection conn = dataSource.getConnection(); //pool.getConnection();
+        try (Connection conn = getConnection(); //pool.getConnection();
              PreparedStatement p = conn.prepareStatement("SELECT count(id) FROM jobs")) {
             conn.setAutoCommit(true);
             try (ResultSet set = p.executeQuery()) {
@@ -719,33 +1377,77 @@ public class Database {
         }
     }
 
-    public int countRunning() throws IOException {
-        return countByState(Job.JobState.STARTED) + countByState(Job.JobState.STARTING);
+    // Counters below are maintained by the active job index at each write; see reconcileJobCounters
+    @Override
+    public int countRunning() {
+        return activeJobs.running();
     }
 
-    public int countQueued() throws IOException {
-        return countByState(Job.JobState.QUEUED);
+    @Override
+    public int countQueued() {
+        return activeJobs.queued();
     }
 
-    private int countByState(Job.JobState state) throws IOException {
-        try (Connection conn = dataSource.getConnection(); //pool.getConnection();
-             PreparedStatement p = conn.prepareStatement("SELECT count(id) FROM jobs WHERE state = ?")) {
-            conn.setAutoCommit(true);
+    // Sum of resources used by STARTING and STARTED jobs
+    @Override
+    public ResourceQuantity getUsedResources() {
+        return activeJobs.used();
+    }
 
-            p.setString(1, state.toString());
-            try (ResultSet set = p.executeQuery()) {
-                if (set.next()) {
-                    return set.getInt(1);
+    // Compares counters of the active job index with the database, and rebuilds the index
+    // if they differ. Returns true if they were consistent, or if jobs were written during
+    // the comparison and it was skipped. The query runs without blocking writers.
+    @Override
+    public boolean reconcileJobCounters() throws IOException {
+        long version = activeJobs.settledVersion();
+        if (version < 0) {
+            LOG.debug("Jobs being written; job counters not reconciled");
+            return true;
+        }
+        int queued = 0;
+        int running = 0;
+        ResourceQuantity used = new ResourceQuantity();
+        try (Connection conn = getConnection();
+             PreparedStatement p = conn.prepareStatement(
+                     "SELECT state, count(id), sum(cpu), sum(mem_mb), sum(gpu), sum(ports), sum(disk_mb) FROM jobs "
+                             + "WHERE state IN ('QUEUED', 'STARTING', 'STARTED') GROUP BY state")) {
+            conn.setAutoCommit(true);
+            try (ResultSet res = p.executeQuery()) {
+                while (res.next()) {
+                    if (Job.JobState.QUEUED.toString().equals(res.getString(1))) {
+                        queued += res.getInt(2);
+                    } else {
+                        running += res.getInt(2);
+                        used.add(res.getInt(3), res.getInt(4), res.getInt(5), res.getInt(6), res.getInt(7));
+                    }
                 }
-                return 0;
             }
         } catch (SQLException e) {
-            throw new IOException(MessageFormat.format("Database.countByState({0}) failed", state), e);
+            throw new IOException("Database.reconcileJobCounters() failed", e);
+        }
+
+        synchronized (activeJobs) {
+            if (activeJobs.settledVersion() != version) {
+                LOG.debug("Jobs written meanwhile; job counters not reconciled");
+                return true;
+            }
+            ResourceQuantity indexed = activeJobs.used();
+            if (queued == activeJobs.queued() && running == activeJobs.running()
+                    && used.getCpu() == indexed.getCpu() && used.getMemMB() == indexed.getMemMB()
+                    && used.getGpu() == indexed.getGpu() && used.getPorts() == indexed.getPorts()
+                    && used.getDiskMB() == indexed.getDiskMB()) {
+                return true;
+            }
+            LOG.warn("Job counters differ from database: queued={}/{}, running={}/{}, used={}/{}; rebuilding index",
+                    activeJobs.queued(), queued, activeJobs.running(), running, indexed, used);
         }
+        rebuildActiveJobIndex();
+        return false;
     }
 
+    @Override
     public int getLatestJobId() throws IOException {
-        try (Connection conn = dataSource.getConnection(); //pool.getConnection();
+        try (Connection conn = getConnection(); //pool.getConnection();
              PreparedStatement p = conn.prepareStatement("SELECT id FROM jobs ORDER BY id DESC LIMIT 1")) {
             conn.setAutoCommit(true);
             try (ResultSet res = p.executeQuery()) {
@@ -761,35 +1463,18 @@ public class Database {
         }
     }
 
+    @Override
     public List<Job> getRunning() throws IOException {
-        List<Job> jobs = new ArrayList<>(2);
-        jobs.addAll(getByState(Job.JobState.STARTING));
-        jobs.addAll(getByState(Job.JobState.STARTED));
-        return jobs;
-    }
-
-    private List<Job> getByState(Job.JobState state) throws IOException {
         List<Job> jobs = new ArrayList<>();
-        try (Connection conn = dataSource.getConnection(); //pool.getConnection();
-             PreparedStatement p = conn.prepareStatement("SELECT id, json FROM jobs WHERE state = ?")) {
-            conn.setAutoCommit(true);
-
-            p.setString(1, state.toString());
-            try (ResultSet set = p.executeQuery()) {
-                while (set.next()) {
-                    String json = set.getString("json");
-                    Job job = mapper.readValue(json, Job.class);
-                    jobs.add(job);
-                }
-            }
-            return jobs;
-        } catch (SQLException e) {
-            throw new IOException(MessageFormat.format("Database.getByState({0}) failed", state), e);
+        for (String json : activeJobs.getByStates(Job.JobState.STARTING, Job.JobState.STARTED)) {
+            jobs.add(mapper.readValue(json, Job.class));
         }
+        return jobs;
     }
 
+    @Override
     public boolean setFrameworkId(String value) throws IOException {
-        try (Connection conn = dataSource.getConnection()) {
+        try (Connection conn = getConnection()) {
             conn.setAutoCommit(true);
             LOG.info("setting new framework: {}", value);
             return new Property(conn).setFrameworkId(value);
@@ -798,16 +1483,18 @@ public class Database {
         }
     }
 
+    @Override
     public Optional<String> getFrameworkId() throws IOException {
-        try (Connection conn = dataSource.getConnection()) {
+        try (Connection conn = getConnection()) {
             return new Property(conn).getFrameworkId();
         } catch (SQLException e) {
             throw new IOException("Database.getFrameworkId() failed", e);
         }
     }
 
+    @Override
     public void deleteAllProperties() throws IOException {
-        try (Connection conn = dataSource.getConnection()) {
+        try (Connection conn = getConnection()) {
             conn.setAutoCommit(false);
             new Property(conn).deleteAll();
             conn.commit();
@@ -816,27 +1503,26 @@ public class Database {
         }
     }
 
+    @Override
     public void updateJobs(List<Job> list) throws IOException {
-        try (Connection conn = dataSource.getConnection()) {
+        try (Connection conn = getConnection()) {
             conn.setAutoCommit(false);
-            Jobs jobs = new Jobs(conn, mapper);
-            for (Job job : list) {
-                jobs.updateJob(job);
-            }
-            conn.commit();
+            new Jobs(conn, mapper).updateJobs(list);
+            commit(conn, list);
         } catch (SQLException | IOException e) {
-            String ids = list.stream().map(job -> job.appid()).collect(Collectors.joining(","));
+            String ids = list.stream().map(job -> Integer.toString(job.id())).collect(Collectors.joining(","));
             throw new IOException(MessageFormat.format("Database.updateJobs({0}) failed", ids), e);
         }
     }
 
+    @Override
     public void retryJobs(List<Integer> ids) throws IOException {
-        try (Connection conn = dataSource.getConnection()) {
+        try (Connection conn = getConnection()) {
             conn.setAutoCommit(false);
-            new Jobs(conn, mapper).doRetry(ids);
-            conn.commit();
+            List<Job> jobs = new Jobs(conn, mapper).doRetry(ids);
+            commit(conn, jobs);
         } catch (SQLException | IOException e) {
-            throw new IOException(MessageFormat.format("Database.updateJobs({0}) failed", ids), e);
+            throw new IOException(MessageFormat.format("Database.retryJobs({0}) failed", ids), e);
         }
     }
 }
@@ -0,0 +1,290 @@
+/**
+ *    Retz
+ *    Copyright (C) 2016-2017 Nautilus Technologies, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.github.retz.db;
+
+import io.github.retz.cli.TimestampHelper;
+import io.github.retz.planner.AppJobPair;
+import io.github.retz.protocol.data.Application;
+import io.github.retz.protocol.data.Job;
+import io.github.retz.protocol.data.ResourceQuantity;
+import io.github.retz.protocol.data.User;
+import io.github.retz.protocol.exception.JobNotFoundException;
+import io.github.retz.scheduler.ServerConfiguration;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.function.Function;
+
+// Persistence of users, applications, jobs and server properties. Database on JDBC is
+// the default; see JobStores for choosing one. Jobs returned are copies owned by callers,
+// and written back only through updateJob(s) or other writing methods.
+public interface JobStore {
+
+    void init(ServerConfiguration config) throws IOException;
+
+    void stop();
+
+    // This is for test purpose
+    void clear();
+
+    List<User> allUsers() throws IOException;
+
+    // Maybe this must return Optional<User> ?
+    default User createUser(String info) throws IOException {
+        String keyId = UUID.randomUUID().toString().replace("-", "");
+        String secret = UUID.randomUUID().toString().replace("-", "");
+        User u = new User(keyId, secret, true, info);
+        addUser(u);
+        return u;
+    }
+
+    boolean addUser(User u) throws IOException;
+
+    Optional<User> getUser(String keyId) throws IOException;
+
+    void enableUser(String keyId, boolean enabled) throws IOException;
+
+    default List<Application> getAllApplications() throws IOException {
+        return getAllApplications(null);
+    }
+
+    // All applications if id is null
+    List<Application> getAllApplications(String id) throws IOException;
+
+    // False if the owner is not present or disabled
+    boolean addApplication(Application a) throws IOException;
+
+    default Optional<Application> getApplication(String appid) throws IOException {
+        return getApplication(appid, false);
+    }
+
+    // Allowing stale, possibly read from a replica, not to be used in scheduling
+    Optional<Application> getApplication(String appid, boolean allowStale) throws IOException;
+
+    // Lag in milliseconds of the replica stale reads go to; -1 if there is none or it is unknown
+    default long replicaLag() {
+        return -1;
+    }
+
+    void safeDeleteApplication(String appid) throws IOException;
+
+    default List<Job> listJobs(String id, Job.JobState state, Optional<String> tag, int limit) throws IOException {
+        return listJobs(id, state, tag, Optional.empty(), limit);
+    }
+
+    // Lists jobs in descending order of id, from ones with id less than afterId if present
+    List<Job> listJobs(String id, Job.JobState state, Optional<String> tag, Optional<Integer> afterId, int limit) throws IOException;
+
+    // Returns jobs as stored in JSON, to be sent to clients without decoding
+    List<String> listJobsJson(String id, Job.JobState state, Optional<String> tag, Optional<Integer> afterId, int limit) throws IOException;
+
+    // Selects all "finished" jobs in [start, end), in milliseconds since epoch, including archived ones
+    List<Job> finishedJobs(long start, long end) throws IOException;
+
+    // Pages jobs finished in [start, end) in order of (finishedAt, id), from ones after the cursor
+    List<UsageEntry> finishedJobsJson(long start, long end, Optional<UsageEntry> after, int limit) throws IOException;
+
+    // groupBy is one of "user", "app" or "total"
+    List<UsageSummary> usageSummary(long start, long end, String groupBy) throws IOException;
+
+    // Queued jobs in the order of job properties; all jobs if limit is negative
+    List<Job> findAll(List<String> orderBy, int limit) throws IOException;
+
+    // Greedily takes queued jobs in the order until cpu or memMB runs out
+    List<Job> findFit(List<String> orderBy, int cpu, int memMB) throws IOException;
+
+    // Queued jobs in the order of id
+    List<Job> queued(int limit) throws IOException;
+
+    // Whether queued jobs can be read in the order without sorting all of them
+    boolean hasQueueIndex(List<String> orderBy) throws IOException;
+
+    void safeAddJob(Job j) throws IOException;
+
+    // Adds jobs of one application at once
+    void safeAddJobs(String appid, List<Job> jobs) throws IOException;
+
+    Optional<AppJobPair> getAppJob(int id) throws IOException;
+
+    // Returns a job as stored in JSON, only if its application is owned by the owner
+    Optional<String> getJobJson(int id, String owner) throws IOException;
+
+    Optional<Job> getJob(int id) throws IOException;
+
+    Optional<Job> getJobFromTaskId(String taskId) throws IOException;
+
+    // Delete all jobs that has ID smaller than id
+    void deleteAllJob(int maxId) throws IOException;
+
+    // Old jobs are FINISHED or KILLED jobs finished before the time, in milliseconds since epoch
+    Optional<JobIdRange> getOldJobIdRange(long before) throws IOException;
+
+    // Id of the last of the first limit old jobs with ids greater than afterId, empty if none
+    Optional<Integer> getOldJobChunkEnd(long before, int afterId, int limit) throws IOException;
+
+    // Deletes old jobs with ids in [fromId, toId] at once and returns the number deleted
+    int deleteOldJobs(long before, int fromId, int toId) throws IOException;
+
+    // Moves old jobs with ids in [fromId, toId] to archive at once and returns their JSON
+    List<String> archiveOldJobs(long before, int fromId, int toId) throws IOException;
+
+    // Marks a QUEUED job as STARTING; false if the job is in another state, e.g. killed after planning
+    default boolean setJobStarting(int id, Optional<String> maybeUrl, String taskId) throws IOException, JobNotFoundException {
+        boolean[] queued = {false};
+        updateJob(id, job -> {
+            if (job.state() != Job.JobState.QUEUED) {
+                return Optional.empty();
+            }
+            job.starting(taskId, maybeUrl, TimestampHelper.now());
+            queued[0] = true;
+            return Optional.of(job);
+        });
+        return queued[0];
+    }
+
+    // Writes back the job if fun returns it
+    void updateJob(int id, Function<Job, Optional<Job>> fun) throws IOException, JobNotFoundException;
+
+    // Applies fun to jobs of the task ids and writes back the jobs it returns at once;
+    // jobs written are returned
+    List<Job> updateJobsFromTaskIds(Collection<String> taskIds, Function<Map<String, Job>, List<Job>> fun) throws IOException;
+
+    // Marks active jobs of the owner matching all conditions as killed, and returns them
+    List<Job> killJobs(String owner, Collection<Job.JobState> states, Optional<String> tag,
+                       Optional<Integer> fromId, Optional<Integer> toId, String reason) throws IOException;
+
+    void updateJobs(List<Job> list) throws IOException;
+
+    void retryJobs(List<Integer> ids) throws IOException;
+
+    int countJobs() throws IOException;
+
+    int countRunning();
+
+    int countQueued();
+
+    // Sum of resources used by STARTING and STARTED jobs
+    ResourceQuantity getUsedResources();
+
+    // Returns true if counters were consistent with stored jobs, or rebuilds them
+    boolean reconcileJobCounters() throws IOException;
+
+    int getLatestJobId() throws IOException;
+
+    List<Job> getRunning() throws IOException;
+
+    ActiveJobIndex getActiveJobIndex();
+
+    // Compares the active job index with stored jobs and returns differences found
+    List<String> checkActiveJobIndex() throws IOException;
+
+    boolean setFrameworkId(String value) throws IOException;
+
+    Optional<String> getFrameworkId() throws IOException;
+
+    void deleteAllProperties() throws IOException;
+
+    final class JobIdRange {
+        private final int min;
+        private final int max;
+        private final long count;
+
+        JobIdRange(int min, int max, long count) {
+            this.min = min;
+            this.max = max;
+            this.count = count;
+        }
+
+        public int min() {
+            return min;
+        }
+
+        public int max() {
+            return max;
+        }
+
+        public long count() {
+            return count;
+        }
+    }
+
+    final class UsageEntry {
+        private final long finishedAt;
+        private final int id;
+        private final String json;
+
+        public UsageEntry(long finishedAt, int id, String json) {
+            this.finishedAt = finishedAt;
+            this.id = id;
+            this.json = json;
+        }
+
+        public long finishedAt() {
+            return finishedAt;
+        }
+
+        public int id() {
+            return id;
+        }
+
+        public String json() {
+            return json;
+        }
+    }
+
+    // Resources multiplied by milliseconds jobs ran, e.g. cpuMillis of 2 CPUs for 3 seconds is 6000
+    final class UsageSummary {
+        private final String key;
+        private final long jobs;
+        private final long cpuMillis;
+        private final long memMBMillis;
+        private final long gpuMillis;
+
+        UsageSummary(String key, long jobs, long cpuMillis, long memMBMillis, long gpuMillis) {
+            this.key = key;
+            this.jobs = jobs;
+            this.cpuMillis = cpuMillis;
+            this.memMBMillis = memMBMillis;
+            this.gpuMillis = gpuMillis;
+        }
+
+        UsageSummary add(UsageSummary other) {
+            return new UsageSummary(key, jobs + other.jobs, cpuMillis + other.cpuMillis,
+                    memMBMillis + other.memMBMillis, gpuMillis + other.gpuMillis);
+        }
+
+        public String key() {
+            return key;
+        }
+
+        public long jobs() {
+            return jobs;
+        }
+
+        public long cpuMillis() {
+            return cpuMillis;
+        }
+
+        public long memMBMillis() {
+            return memMBMillis;
+        }
+
+        public long gpuMillis() {
+            return gpuMillis;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/**
+ *    Retz
+ *    Copyright (C) 2016-2017 Nautilus Technologies, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.github.retz.db;
+
+import io.github.retz.scheduler.ServerConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+
+// Holds the JobStore the server runs on, which is Database unless initialized otherwise
+public final class JobStores {
+    private static final Logger LOG = LoggerFactory.getLogger(JobStores.class);
+    private static volatile JobStore store = Database.getInstance();
+
+    private JobStores() {
+    }
+
+    public static JobStore get() {
+        return store;
+    }
+
+    // Creates and initializes the store named by retz.database.store, and makes it current
+    public static JobStore init(ServerConfiguration config) throws IOException {
+        JobStore newStore;
+        switch (config.getDatabaseStore()) {
+            case "memory":
+                newStore = new MemoryJobStore();
+                break;
+            case "jdbc":
+            default:
+                newStore = Database.getInstance();
+        }
+        LOG.info("Using {} as job store", newStore.getClass().getSimpleName());
+        newStore.init(config);
+        store = newStore;
+        return newStore;
+    }
+
+    // This is for test purpose
+    static void set(JobStore newStore) {
+        store = newStore;
+    }
+}
@@ -20,6 +20,7 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.github.retz.cli.TimestampHelper;
 import io.github.retz.protocol.data.Job;
+import io.github.retz.protocol.data.ResourceQuantity;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -28,13 +29,14 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Objects;
-import java.util.Optional;
+import java.sql.Types;
+import java.util.*;
+import java.util.stream.Collectors;
 
 public class Jobs {
     private static final Logger LOG = LoggerFactory.getLogger(Jobs.class);
+    // Number of ids in one IN clause, far below bind parameter limits of databases
+    static final int GET_CHUNK_SIZE = 1000;
 
     private Connection conn;
     private ObjectMapper mapper;
@@ -55,24 +57,22 @@ public class Jobs {
                 String json = res.getString("json");
                 ret.add(mapper.readValue(json, Job.class));
             }
-            for (Job job : ret) {
-                job.doRetry();
-                LOG.info("Retrying job: {}", job);
-                updateJob(job);
-            }
         }
+        for (Job job : ret) {
+            job.doRetry();
+            LOG.info("Retrying job: {}", job);
+        }
+        updateJobs(ret);
         return ret;
     }
 
-    public void doRetry(List<Integer> ids) throws SQLException, IOException {
-        for (int id : ids) {
-            Optional<Job> maybeJob = getJob(id);
-            if (maybeJob.isPresent()) {
-                Job job = maybeJob.get();
-                job.doRetry();
-                updateJob(job);
-            }
+    public List<Job> doRetry(List<Integer> ids) throws SQLException, IOException {
+        List<Job> jobs = getJobs(ids);
+        for (Job job : jobs) {
+            job.doRetry();
         }
+        updateJobs(jobs);
+        return jobs;
     }
 
     public Optional<Job> getJob(int id) throws SQLException, IOException {
@@ -88,28 +88,222 @@ public class Jobs {
         return Optional.empty();
     }
 
+    // Returns jobs in the same order as ids; missing ids are skipped. Ids are queried in
+    // chunks to keep the number of bind parameters bounded
+    public List<Job> getJobs(List<Integer> ids) throws SQLException, IOException {
+        Map<Integer, Job> found = new HashMap<>();
+        for (int from = 0; from < ids.size(); from += GET_CHUNK_SIZE) {
+            List<Integer> chunk = ids.subList(from, Math.min(from + GET_CHUNK_SIZE, ids.size()));
+            String params = chunk.stream().map(id -> "?").collect(Collectors.joining(", "));
+            try (PreparedStatement p = conn.prepareStatement("SELECT json FROM jobs WHERE id IN (" + params + ")")) {
+                for (int i = 0; i < chunk.size(); ++i) {
+                    p.setInt(i + 1, chunk.get(i));
+                }
+                try (ResultSet res = p.executeQuery()) {
+                    while (res.next()) {
+                        Job job = mapper.readValue(res.getString("json"), Job.class);
+                        found.put(job.id(), job);
+                    }
+                }
+            }
+        }
+        return ids.stream().filter(found::containsKey).map(found::get).collect(Collectors.toList());
+    }
+
+    // Returns jobs keyed by their task ids; missing task ids are skipped. Rows are locked
+    // until the transaction ends, in order of id, as they are to be written back
+    public Map<String, Job> getJobsFromTaskIds(Collection<String> taskIds) throws SQLException, IOException {
+        Map<String, Job> found = new HashMap<>();
+        if (taskIds.isEmpty()) {
+            return found;
+        }
+        String params = taskIds.stream().map(id -> "?").collect(Collectors.joining(", "));
+        try (PreparedStatement p = conn.prepareStatement("SELECT json FROM jobs WHERE taskid IN (" + params + ") ORDER BY id FOR UPDATE")) {
+            int i = 1;
+            for (String taskId : taskIds) {
+                p.setString(i++, taskId);
+            }
+            try (ResultSet res = p.executeQuery()) {
+                while (res.next()) {
+                    Job job = mapper.readValue(res.getString("json"), Job.class);
+                    found.put(job.taskId(), job);
+                }
+            }
+        }
+        return found;
+    }
+
+    public void addJob(Job j) throws SQLException, JsonProcessingException {
+        addJobs(Collections.singletonList(j));
+    }
+
+    // Inserts all jobs with one batched INSERT statement, and tags with another
+    public void addJobs(List<Job> list) throws SQLException, JsonProcessingException {
+        try (PreparedStatement p = conn.prepareStatement("INSERT INTO jobs(name, id, appid, priority, taskid, state, cpu, mem_mb, gpu, ports, disk_mb, scheduled_at, started_at, finished_at, json) values(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)")) {
+            for (Job j : list) {
+                p.setString(1, j.name());
+                p.setInt(2, j.id());
+                p.setString(3, j.appid());
+                p.setInt(4, j.priority());
+                p.setString(5, j.taskId());
+                p.setString(6, j.state().toString());
+                setResources(p, 7, j.resources());
+                setTimestamps(p, 12, j);
+                p.setString(15, mapper.writeValueAsString(j));
+                p.addBatch();
+            }
+            p.executeBatch();
+        }
+        addTags(list);
+    }
+
     public void updateJob(Job j) throws SQLException, JsonProcessingException {
-        LOG.debug("Updating job as name={}, id={}, appid={}", j.name(), j.id(), j.appid());
-        try (PreparedStatement p = conn.prepareStatement("UPDATE jobs SET name=?, appid=?, priority=?, taskid=?, state=?, started=?, finished=?, json=? WHERE id=?")) {
-            p.setString(1, j.name());
-            p.setString(2, j.appid());
-            p.setInt(3, j.priority());
-            p.setString(4, j.taskId());
-            p.setString(5, j.state().toString());
-            p.setString(6, j.started());
-            p.setString(7, j.finished());
-            p.setString(8, mapper.writeValueAsString(j));
-            p.setInt(9, j.id());
-            p.execute();
+        updateJobs(Collections.singletonList(j));
+    }
+
+    // Updates all jobs with one batched UPDATE statement. Tags are not touched: they are
+    // given at submission, written by addJobs and never change
+    public void updateJobs(List<Job> list) throws SQLException, JsonProcessingException {
+        if (list.isEmpty()) {
+            return;
+        }
+        try (PreparedStatement p = conn.prepareStatement("UPDATE jobs SET name=?, appid=?, priority=?, taskid=?, state=?, started=?, finished=?, cpu=?, mem_mb=?, gpu=?, ports=?, disk_mb=?, scheduled_at=?, started_at=?, finished_at=?, json=? WHERE id=?")) {
+            for (Job j : list) {
+                LOG.debug("Updating job as name={}, id={}, appid={}", j.name(), j.id(), j.appid());
+                p.setString(1, j.name());
+                p.setString(2, j.appid());
+                p.setInt(3, j.priority());
+                p.setString(4, j.taskId());
+                p.setString(5, j.state().toString());
+                p.setString(6, j.started());
+                p.setString(7, j.finished());
+                setResources(p, 8, j.resources());
+                setTimestamps(p, 13, j);
+                p.setString(16, mapper.writeValueAsString(j));
+                p.setInt(17, j.id());
+                p.addBatch();
+            }
+            p.executeBatch();
+        }
+    }
+
+    private void addTags(List<Job> list) throws SQLException {
+        try (PreparedStatement p = conn.prepareStatement("INSERT INTO job_tags(job_id, tag) VALUES (?, ?)")) {
+            int count = 0;
+            for (Job j : list) {
+                for (String tag : j.tags()) {
+                    p.setInt(1, j.id());
+                    p.setString(2, tag);
+                    p.addBatch();
+                    count++;
+                }
+            }
+            if (count > 0) {
+                p.executeBatch();
+            }
+        }
+    }
+
+    // Sets cpu, mem_mb, gpu, ports and disk_mb columns in this order from the index
+    private static void setResources(PreparedStatement p, int from, ResourceQuantity r) throws SQLException {
+        p.setInt(from, r.getCpu());
+        p.setInt(from + 1, r.getMemMB());
+        p.setInt(from + 2, r.getGpu());
+        p.setInt(from + 3, r.getPorts());
+        p.setInt(from + 4, r.getDiskMB());
+    }
+
+    // Sets scheduled_at, started_at and finished_at columns in this order from the index
+    public static void setTimestamps(PreparedStatement p, int from, Job j) throws SQLException {
+        setEpochMillis(p, from, j.scheduled());
+        setEpochMillis(p, from + 1, j.started());
+        setEpochMillis(p, from + 2, j.finished());
+    }
+
+    private static void setEpochMillis(PreparedStatement p, int index, String timestamp) throws SQLException {
+        if (timestamp == null) {
+            p.setNull(index, Types.BIGINT);
+        } else {
+            p.setLong(index, TimestampHelper.toEpochMillis(timestamp));
+        }
+    }
+
+    // Returns ids range and number of FINISHED or KILLED jobs finished before the time
+    public Optional<JobStore.JobIdRange> getOldJobIdRange(long before) throws SQLException {
+        try (PreparedStatement p = conn.prepareStatement("SELECT min(id), max(id), count(id) FROM jobs WHERE finished_at < ? AND state IN ('FINISHED', 'KILLED')")) {
+            p.setLong(1, before);
+            try (ResultSet res = p.executeQuery()) {
+                if (res.next() && res.getLong(3) > 0) {
+                    return Optional.of(new JobStore.JobIdRange(res.getInt(1), res.getInt(2), res.getLong(3)));
+                }
+            }
+        }
+        return Optional.empty();
+    }
+
+    // Id of the last of the first limit FINISHED or KILLED jobs finished before the time
+    // with ids greater than afterId, so that chunks skip ranges without such jobs
+    public Optional<Integer> getOldJobChunkEnd(long before, int afterId, int limit) throws SQLException {
+        try (PreparedStatement p = conn.prepareStatement("SELECT max(id) FROM (SELECT id FROM jobs WHERE id > ? AND finished_at < ? AND state IN ('FINISHED', 'KILLED') ORDER BY id LIMIT ?) chunk")) {
+            p.setInt(1, afterId);
+            p.setLong(2, before);
+            p.setInt(3, limit);
+            try (ResultSet res = p.executeQuery()) {
+                if (res.next()) {
+                    int end = res.getInt(1);
+                    if (!res.wasNull()) {
+                        return Optional.of(end);
+                    }
+                }
+            }
+        }
+        return Optional.empty();
+    }
+
+    // Deletes FINISHED or KILLED jobs finished before the time, within ids [fromId, toId]
+    public int collect(long before, int fromId, int toId) throws SQLException {
+        try (PreparedStatement p = conn.prepareStatement("DELETE FROM jobs WHERE id BETWEEN ? AND ? AND finished_at < ? AND state IN ('FINISHED', 'KILLED')")) {
+            setChunk(p, before, fromId, toId);
+            return p.executeUpdate();
         }
     }
 
-    public void collect(int leeway) throws SQLException {
-        String last = TimestampHelper.past(leeway);
-        try (PreparedStatement p = conn.prepareStatement("DELETE FROM jobs WHERE finished < ? AND (state='FINISHED' OR state='KILLED')")) {
-            LOG.info("Deleting old jobs finished before {}...", last);
-            p.setString(1, last);
-            p.execute(); // returns true as the result of DELETE query is null.
+    // Moves FINISHED or KILLED jobs finished before the time, within ids [fromId, toId],
+    // with their tags to jobs_archive; returns JSON of the moved jobs
+    public List<String> archive(long before, int fromId, int toId) throws SQLException {
+        String cond = " WHERE id BETWEEN ? AND ? AND finished_at < ? AND state IN ('FINISHED', 'KILLED')";
+        List<String> ret = new ArrayList<>();
+        try (PreparedStatement p = conn.prepareStatement("SELECT json FROM jobs" + cond)) {
+            setChunk(p, before, fromId, toId);
+            try (ResultSet res = p.executeQuery()) {
+                while (res.next()) {
+                    ret.add(res.getString(1));
+                }
+            }
+        }
+        if (ret.isEmpty()) {
+            return ret;
         }
+        String columns = "id, name, appid, state, cpu, mem_mb, gpu, ports, disk_mb, scheduled_at, started_at, finished_at, json";
+        try (PreparedStatement p = conn.prepareStatement("INSERT INTO jobs_archive(" + columns + ") SELECT " + columns + " FROM jobs" + cond)) {
+            setChunk(p, before, fromId, toId);
+            p.execute();
+        }
+        try (PreparedStatement p = conn.prepareStatement("INSERT INTO jobs_archive_tags(job_id, tag) SELECT job_id, tag FROM job_tags WHERE job_id IN (SELECT id FROM jobs" + cond + ")")) {
+            setChunk(p, before, fromId, toId);
+            p.execute();
+        }
+        // job_tags are deleted by cascade
+        try (PreparedStatement p = conn.prepareStatement("DELETE FROM jobs" + cond)) {
+            setChunk(p, before, fromId, toId);
+            p.execute();
+        }
+        return ret;
+    }
+
+    private static void setChunk(PreparedStatement p, long before, int fromId, int toId) throws SQLException {
+        p.setInt(1, fromId);
+        p.setInt(2, toId);
+        p.setLong(3, before);
     }
 }
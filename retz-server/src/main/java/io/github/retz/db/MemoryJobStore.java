@@ -0,0 +1,967 @@
+/**
+ *    Retz
+ *    Copyright (C) 2016-2017 Nautilus Technologies, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.github.retz.db;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
+import io.github.retz.cli.TimestampHelper;
+import io.github.retz.planner.AppJobPair;
+import io.github.retz.protocol.data.Application;
+import io.github.retz.protocol.data.Job;
+import io.github.retz.protocol.data.ResourceQuantity;
+import io.github.retz.protocol.data.User;
+import io.github.retz.protocol.exception.JobNotFoundException;
+import io.github.retz.scheduler.ServerConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.text.MessageFormat;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+// JobStore on concurrent in-memory structures, for throwaway or benchmark clusters.
+// Writes are serialized by the monitor of this store as transactions are in Database,
+// while reads go without locks. Nothing survives restart unless a snapshot file is
+// given: every write is appended to it as a JSON line, and it is replayed and compacted
+// at start. The file is flushed but not synced at each write.
+public class MemoryJobStore implements JobStore {
+    private static final Logger LOG = LoggerFactory.getLogger(MemoryJobStore.class);
+    private static final String FRAMEWORK_ID = "FrameworkID";
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    // User and application are kept as JSON, decoded for each reader
+    private final Map<String, String> users = new ConcurrentHashMap<>();
+    private final Map<String, StoredApp> apps = new ConcurrentHashMap<>();
+    private final NavigableMap<Integer, Row> jobs = new ConcurrentSkipListMap<>();
+    private final NavigableMap<Integer, Row> archive = new ConcurrentSkipListMap<>();
+    private final Map<Job.JobState, NavigableMap<Integer, Row>> byState = new EnumMap<>(Job.JobState.class);
+    private final Map<String, Integer> byTaskId = new ConcurrentHashMap<>();
+    // Jobs in both jobs and archive that have finished_at, in order of (finished_at, id)
+    private final NavigableSet<Row> byFinished = new ConcurrentSkipListSet<>(
+            Comparator.comparingLong((Row r) -> r.finishedAt).thenComparingInt(r -> r.id));
+    // Queued jobs sorted in each order requested so far
+    private final Map<List<String>, NavigableSet<Row>> queues = new ConcurrentHashMap<>();
+    private final ActiveJobIndex activeJobs = new ActiveJobIndex();
+    private final Map<String, String> properties = new ConcurrentHashMap<>();
+    private Path snapshot = null;
+    private BufferedWriter journal = null;
+
+    public MemoryJobStore() {
+        mapper.registerModule(new Jdk8Module());
+        for (Job.JobState state : Job.JobState.values()) {
+            byState.put(state, new ConcurrentSkipListMap<>());
+        }
+    }
+
+    @Override
+    public void init(ServerConfiguration config) throws IOException {
+        if (config.getDatabaseSnapshot().isPresent()) {
+            openSnapshot(Paths.get(config.getDatabaseSnapshot().get()));
+        }
+        if (getUser(config.getAccessKey()).isPresent()) {
+            LOG.info("admin user is {}", config.getAccessKey());
+        } else {
+            LOG.info("No user found: creating admin user {}", config.getAccessKey());
+            addUser(config.getUser());
+        }
+    }
+
+    // Replays the snapshot if exists, rewrites it only with the latest state, and appends to it
+    synchronized void openSnapshot(Path path) throws IOException {
+        LOG.info("Loading snapshot {}", path);
+        if (Files.exists(path)) {
+            int lines = 0;
+            try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (!line.isEmpty()) {
+                        replay(mapper.readTree(line));
+                        lines++;
+                    }
+                }
+            }
+            LOG.info("{} records replayed: {} users, {} applications, {} jobs, {} archived jobs",
+                    lines, users.size(), apps.size(), jobs.size(), archive.size());
+        }
+
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            journal = writer;
+            for (String json : users.values()) {
+                append("user", json);
+            }
+            for (StoredApp app : apps.values()) {
+                append("app", app.json);
+            }
+            for (Row row : jobs.values()) {
+                append("job", row.json);
+            }
+            for (Row row : archive.values()) {
+                append("archived", row.json);
+            }
+            for (Map.Entry<String, String> e : properties.entrySet()) {
+                appendRaw("{\"op\":\"property\",\"key\":" + mapper.writeValueAsString(e.getKey())
+                        + ",\"value\":" + mapper.writeValueAsString(e.getValue()) + "}");
+            }
+        } finally {
+            journal = null;
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        snapshot = path;
+        journal = Files.newBufferedWriter(path, StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+    }
+
+    private void replay(JsonNode record) throws IOException {
+        String op = record.get("op").asText();
+        switch (op) {
+            case "user":
+                User u = mapper.treeToValue(record.get("value"), User.class);
+                users.put(u.keyId(), mapper.writeValueAsString(u));
+                break;
+            case "app":
+                Application a = mapper.treeToValue(record.get("value"), Application.class);
+                apps.put(a.getAppid(), new StoredApp(a.getOwner(), mapper.writeValueAsString(a)));
+                break;
+            case "delete-app":
+                apps.remove(record.get("id").asText());
+                break;
+            case "job":
+                Job job = mapper.treeToValue(record.get("value"), Job.class);
+                put(job, mapper.writeValueAsString(job));
+                break;
+            case "archived":
+                Job archived = mapper.treeToValue(record.get("value"), Job.class);
+                Row row = new Row(archived, mapper.writeValueAsString(archived));
+                archive.put(row.id, row);
+                if (row.finishedAt >= 0) {
+                    byFinished.add(row);
+                }
+                break;
+            case "archive-job":
+                moveToArchive(record.get("id").asInt());
+                break;
+            case "delete-job":
+                remove(record.get("id").asInt());
+                break;
+            case "delete-jobs-below":
+                removeBelow(record.get("id").asInt());
+                break;
+            case "property":
+                properties.put(record.get("key").asText(), record.get("value").asText());
+                break;
+            case "delete-properties":
+                properties.clear();
+                break;
+            default:
+                throw new IOException("Unknown record in snapshot: " + op);
+        }
+    }
+
+    // Callers must hold the monitor, and flush the journal before returning
+    private void append(String op, String json) throws IOException {
+        appendRaw("{\"op\":\"" + op + "\",\"value\":" + json + "}");
+    }
+
+    private void appendId(String op, Object id) throws IOException {
+        appendRaw("{\"op\":\"" + op + "\",\"id\":" + mapper.writeValueAsString(id) + "}");
+    }
+
+    private void appendRaw(String line) throws IOException {
+        if (journal != null) {
+            journal.write(line);
+            journal.newLine();
+        }
+    }
+
+    private void flush() throws IOException {
+        if (journal != null) {
+            journal.flush();
+        }
+    }
+
+    @Override
+    public synchronized void stop() {
+        LOG.info("Stopping job store: {} jobs, {} archived jobs", jobs.size(), archive.size());
+        if (journal != null) {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                LOG.warn("Closing snapshot {} failed: {}", snapshot, e.toString());
+            }
+            journal = null;
+        }
+    }
+
+    // This is for test purpose
+    @Override
+    public synchronized void clear() {
+        users.clear();
+        apps.clear();
+        jobs.clear();
+        archive.clear();
+        byState.values().forEach(Map::clear);
+        byTaskId.clear();
+        byFinished.clear();
+        queues.clear();
+        activeJobs.clear();
+        properties.clear();
+        if (journal != null) {
+            try {
+                journal.close();
+                journal = Files.newBufferedWriter(snapshot, StandardCharsets.UTF_8, StandardOpenOption.TRUNCATE_EXISTING);
+            } catch (IOException e) {
+                LOG.warn("Truncating snapshot {} failed: {}", snapshot, e.toString());
+            }
+        }
+    }
+
+    @Override
+    public List<User> allUsers() throws IOException {
+        List<User> ret = new ArrayList<>();
+        for (String json : users.values()) {
+            ret.add(mapper.readValue(json, User.class));
+        }
+        return ret;
+    }
+
+    @Override
+    public synchronized boolean addUser(User u) throws IOException {
+        if (users.containsKey(u.keyId())) {
+            throw new IOException(MessageFormat.format("MemoryJobStore.addUser({0}) failed: already exists", u.keyId()));
+        }
+        String json = mapper.writeValueAsString(u);
+        append("user", json);
+        flush();
+        users.put(u.keyId(), json);
+        return true;
+    }
+
+    @Override
+    public Optional<User> getUser(String keyId) throws IOException {
+        String json = users.get(keyId);
+        return json == null ? Optional.empty() : Optional.of(mapper.readValue(json, User.class));
+    }
+
+    @Override
+    public synchronized void enableUser(String keyId, boolean enabled) throws IOException {
+        Optional<User> user = getUser(keyId);
+        if (user.isPresent()) {
+            user.get().enable(enabled);
+            String json = mapper.writeValueAsString(user.get());
+            append("user", json);
+            flush();
+            users.put(keyId, json);
+        }
+    }
+
+    @Override
+    public List<Application> getAllApplications(String id) throws IOException {
+        List<Application> ret = new ArrayList<>();
+        for (StoredApp app : apps.values()) {
+            if (id == null || id.equals(app.owner)) {
+                ret.add(mapper.readValue(app.json, Application.class));
+            }
+        }
+        return ret;
+    }
+
+    @Override
+    public synchronized boolean addApplication(Application a) throws IOException {
+        Optional<User> u = getUser(a.getOwner());
+        if (!u.isPresent()) {
+            LOG.warn("{} tried to load application {}, but the user not present",
+                    a.getOwner(), a.getAppid());
+            return false;
+        } else if (!u.get().enabled()) {
+            LOG.warn("{} tried to load application {}, but user.enabled={}",
+                    a.getOwner(), a.getAppid(), u.get().enabled());
+            return false;
+        }
+        String json = mapper.writeValueAsString(a);
+        append("app", json);
+        flush();
+        apps.put(a.getAppid(), new StoredApp(a.getOwner(), json));
+        return true;
+    }
+
+    @Override
+    public Optional<Application> getApplication(String appid, boolean allowStale) throws IOException {
+        StoredApp app = apps.get(appid);
+        return app == null ? Optional.empty() : Optional.of(mapper.readValue(app.json, Application.class));
+    }
+
+    @Override
+    public synchronized void safeDeleteApplication(String appid) throws IOException {
+        appendId("delete-app", appid);
+        flush();
+        apps.remove(appid);
+    }
+
+    private boolean ownedBy(Row row, String owner) {
+        StoredApp app = apps.get(row.appid);
+        return app != null && app.owner.equals(owner);
+    }
+
+    @Override
+    public List<Job> listJobs(String id, Job.JobState state, Optional<String> tag, Optional<Integer> afterId, int limit) throws IOException {
+        return decode(listJobsJson(id, state, tag, afterId, limit));
+    }
+
+    @Override
+    public List<String> listJobsJson(String id, Job.JobState state, Optional<String> tag, Optional<Integer> afterId, int limit) throws IOException {
+        List<Row> rows = listRows(byState.get(state), id, state, tag, afterId, limit);
+        if (state == Job.JobState.FINISHED || state == Job.JobState.KILLED) {
+            // Both are in descending order of id, and no id is in both
+            rows.addAll(listRows(archive, id, state, tag, afterId, limit));
+            rows.sort((lhs, rhs) -> Integer.compare(rhs.id, lhs.id));
+        }
+        return rows.stream().limit(limit).map(r -> r.json).collect(Collectors.toList());
+    }
+
+    private List<Row> listRows(NavigableMap<Integer, Row> map, String id, Job.JobState state,
+                               Optional<String> tag, Optional<Integer> afterId, int limit) {
+        NavigableMap<Integer, Row> from = afterId.isPresent() ? map.headMap(afterId.get(), false) : map;
+        return from.descendingMap().values().stream()
+                .filter(r -> r.state == state && ownedBy(r, id) && (!tag.isPresent() || r.tags.contains(tag.get())))
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    // Rows in both jobs and archive finished in [start, end)
+    private NavigableSet<Row> finishedIn(long start, long end) {
+        return byFinished.subSet(Row.bound(start, Integer.MIN_VALUE), true, Row.bound(end, Integer.MIN_VALUE), false);
+    }
+
+    @Override
+    public List<Job> finishedJobs(long start, long end) throws IOException {
+        return decode(finishedIn(start, end).stream().map(r -> r.json).collect(Collectors.toList()));
+    }
+
+    @Override
+    public List<UsageEntry> finishedJobsJson(long start, long end, Optional<UsageEntry> after, int limit) throws IOException {
+        Row from = after.isPresent() ? Row.bound(after.get().finishedAt(), after.get().id()) : Row.bound(start, Integer.MIN_VALUE);
+        Row to = Row.bound(end, Integer.MIN_VALUE);
+        if (byFinished.comparator().compare(from, to) >= 0) {
+            return new ArrayList<>();
+        }
+        // Like Database, start is not looked at once the cursor is given
+        return byFinished.subSet(from, !after.isPresent(), to, false).stream().limit(limit)
+                .map(r -> new UsageEntry(r.finishedAt, r.id, r.json))
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public List<UsageSummary> usageSummary(long start, long end, String groupBy) throws IOException {
+        Function<Row, String> key;
+        switch (groupBy) {
+            case "user":
+                // Like join with applications, jobs of deleted applications are not accounted
+                key = r -> {
+                    StoredApp app = apps.get(r.appid);
+                    return app == null ? null : app.owner;
+                };
+                break;
+            case "app":
+                key = r -> r.appid;
+                break;
+            case "total":
+                key = r -> "total";
+                break;
+            default:
+                throw new IllegalArgumentException("groupBy must be one of user, app or total: " + groupBy);
+        }
+        Map<String, UsageSummary> summaries = new TreeMap<>();
+        for (Row r : finishedIn(start, end)) {
+            String k = key.apply(r);
+            if (k == null) {
+                continue;
+            }
+            // Jobs killed before started have no duration
+            long duration = r.startedAt >= 0 ? r.finishedAt - r.startedAt : 0;
+            summaries.merge(k, new UsageSummary(k, 1, r.cpu * duration, r.memMB * duration, r.gpu * duration),
+                    UsageSummary::add);
+        }
+        return new ArrayList<>(summaries.values());
+    }
+
+    // Columns of jobs table that queued jobs can be ordered by; all in ascending order
+    private static Comparator<Row> comparator(List<String> orderBy) throws IOException {
+        Comparator<Row> c = null;
+        for (String column : orderBy) {
+            Comparator<Row> next;
+            switch (column.trim().toLowerCase()) {
+                case "id":
+                    next = Comparator.comparingInt(r -> r.id);
+                    break;
+                case "priority":
+                    next = Comparator.comparingInt(r -> r.priority);
+                    break;
+                case "name":
+                    next = Comparator.comparing(r -> r.name, Comparator.nullsFirst(Comparator.naturalOrder()));
+                    break;
+                case "appid":
+                    next = Comparator.comparing(r -> r.appid);
+                    break;
+                case "cpu":
+                    next = Comparator.comparingInt(r -> r.cpu);
+                    break;
+                case "mem_mb":
+                    next = Comparator.comparingInt(r -> r.memMB);
+                    break;
+                case "gpu":
+                    next = Comparator.comparingInt(r -> r.gpu);
+                    break;
+                case "ports":
+                    next = Comparator.comparingInt(r -> r.ports);
+                    break;
+                case "disk_mb":
+                    next = Comparator.comparingInt(r -> r.diskMB);
+                    break;
+                case "scheduled_at":
+                    next = Comparator.comparingLong(r -> r.scheduledAt);
+                    break;
+                default:
+                    throw new IOException(MessageFormat.format("MemoryJobStore cannot order jobs by {0}", column));
+            }
+            c = c == null ? next : c.thenComparing(next);
+        }
+        // Each job must be distinct in a sorted set
+        Comparator<Row> byId = Comparator.comparingInt(r -> r.id);
+        return c == null ? byId : c.thenComparing(byId);
+    }
+
+    private NavigableSet<Row> queue(List<String> orderBy) throws IOException {
+        NavigableSet<Row> queue = queues.get(orderBy);
+        if (queue != null) {
+            return queue;
+        }
+        Comparator<Row> c = comparator(orderBy);
+        synchronized (this) {
+            return queues.computeIfAbsent(new ArrayList<>(orderBy), k -> {
+                NavigableSet<Row> q = new ConcurrentSkipListSet<>(c);
+                q.addAll(byState.get(Job.JobState.QUEUED).values());
+                LOG.info("Queued jobs sorted by {}: {} jobs", k, q.size());
+                return q;
+            });
+        }
+    }
+
+    @Override
+    public List<Job> findAll(List<String> orderBy, int limit) throws IOException {
+        return decode(queue(orderBy).stream().limit(limit < 0 ? Long.MAX_VALUE : limit)
+                .map(r -> r.json).collect(Collectors.toList()));
+    }
+
+    @Override
+    public List<Job> findFit(List<String> orderBy, int cpu, int memMB) throws IOException {
+        List<String> selected = new ArrayList<>();
+        int totalCpu = 0;
+        int totalMem = 0;
+        for (Row r : queue(orderBy)) {
+            if (totalCpu + r.cpu <= cpu && totalMem + r.memMB <= memMB) {
+                selected.add(r.json);
+                totalCpu += r.cpu;
+                totalMem += r.memMB;
+            } else {
+                break;
+            }
+        }
+        return decode(selected);
+    }
+
+    @Override
+    public List<Job> queued(int limit) throws IOException {
+        return decode(byState.get(Job.JobState.QUEUED).values().stream().limit(limit)
+                .map(r -> r.json).collect(Collectors.toList()));
+    }
+
+    // Queues are sorted sets maintained at each write
+    @Override
+    public boolean hasQueueIndex(List<String> orderBy) throws IOException {
+        try {
+            comparator(orderBy);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public void safeAddJob(Job j) throws IOException {
+        safeAddJobs(j.appid(), Collections.singletonList(j));
+    }
+
+    @Override
+    public synchronized void safeAddJobs(String appid, List<Job> list) throws IOException {
+        if (!apps.containsKey(appid)) {
+            throw new IllegalStateException("No such application: " + appid);
+        }
+        for (Job job : list) {
+            if (!appid.equals(job.appid())) {
+                throw new IllegalArgumentException("Job of another application: " + job.appid());
+            }
+            if (jobs.containsKey(job.id()) || archive.containsKey(job.id())) {
+                throw new IOException(MessageFormat.format("MemoryJobStore.safeAddJobs({0}) failed: id={1} exists",
+                        appid, Integer.toString(job.id())));
+            }
+        }
+        write(list);
+    }
+
+    private Row getRow(int id) {
+        Row row = jobs.get(id);
+        return row == null ? archive.get(id) : row;
+    }
+
+    @Override
+    public Optional<AppJobPair> getAppJob(int id) throws IOException {
+        Row row = getRow(id);
+        if (row == null) {
+            return Optional.empty();
+        }
+        Optional<Application> app = getApplication(row.appid);
+        if (!app.isPresent()) {
+            return Optional.empty();
+        }
+        return Optional.of(new AppJobPair(app, mapper.readValue(row.json, Job.class)));
+    }
+
+    @Override
+    public Optional<String> getJobJson(int id, String owner) throws IOException {
+        Row row = getRow(id);
+        return row != null && ownedBy(row, owner) ? Optional.of(row.json) : Optional.empty();
+    }
+
+    @Override
+    public Optional<Job> getJob(int id) throws IOException {
+        Row row = getRow(id);
+        return row == null ? Optional.empty() : Optional.of(mapper.readValue(row.json, Job.class));
+    }
+
+    @Override
+    public Optional<Job> getJobFromTaskId(String taskId) throws IOException {
+        Integer id = byTaskId.get(taskId);
+        Row row = id == null ? null : jobs.get(id);
+        return row == null ? Optional.empty() : Optional.of(mapper.readValue(row.json, Job.class));
+    }
+
+    @Override
+    public synchronized void deleteAllJob(int maxId) throws IOException {
+        appendId("delete-jobs-below", maxId);
+        flush();
+        removeBelow(maxId);
+    }
+
+    private static boolean isOld(Row row, long before) {
+        return row.finishedAt >= 0 && row.finishedAt < before
+                && (row.state == Job.JobState.FINISHED || row.state == Job.JobState.KILLED);
+    }
+
+    @Override
+    public Optional<JobIdRange> getOldJobIdRange(long before) throws IOException {
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+        long count = 0;
+        for (Row row : byFinished.headSet(Row.bound(before, Integer.MIN_VALUE), false)) {
+            if (isOld(row, before) && jobs.get(row.id) == row) {
+                min = Math.min(min, row.id);
+                max = Math.max(max, row.id);
+                count++;
+            }
+        }
+        return count == 0 ? Optional.empty() : Optional.of(new JobIdRange(min, max, count));
+    }
+
+    @Override
+    public Optional<Integer> getOldJobChunkEnd(long before, int afterId, int limit) throws IOException {
+        Optional<Integer> end = Optional.empty();
+        int count = 0;
+        for (Row row : jobs.tailMap(afterId, false).values()) {
+            if (count >= limit) {
+                break;
+            }
+            if (isOld(row, before)) {
+                end = Optional.of(row.id);
+                count++;
+            }
+        }
+        return end;
+    }
+
+    private List<Row> oldRows(long before, int fromId, int toId) {
+        return jobs.subMap(fromId, true, toId, true).values().stream()
+                .filter(r -> isOld(r, before))
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public synchronized int deleteOldJobs(long before, int fromId, int toId) throws IOException {
+        List<Row> rows = oldRows(before, fromId, toId);
+        for (Row row : rows) {
+            appendId("delete-job", row.id);
+        }
+        flush();
+        rows.forEach(row -> remove(row.id));
+        return rows.size();
+    }
+
+    @Override
+    public synchronized List<String> archiveOldJobs(long before, int fromId, int toId) throws IOException {
+        List<Row> rows = oldRows(before, fromId, toId);
+        for (Row row : rows) {
+            appendId("archive-job", row.id);
+        }
+        flush();
+        rows.forEach(row -> moveToArchive(row.id));
+        return rows.stream().map(r -> r.json).collect(Collectors.toList());
+    }
+
+    @Override
+    public synchronized void updateJob(int id, Function<Job, Optional<Job>> fun) throws IOException, JobNotFoundException {
+        Row row = jobs.get(id);
+        if (row == null) {
+            throw new JobNotFoundException(id);
+        }
+        Job job = mapper.readValue(row.json, Job.class);
+        if (fun.apply(job).isPresent()) {
+            write(Collections.singletonList(job));
+            LOG.info("Job (id={}) status updated to {}", job.id(), job.state());
+        }
+    }
+
+    @Override
+    public synchronized List<Job> updateJobsFromTaskIds(Collection<String> taskIds, Function<Map<String, Job>, List<Job>> fun) throws IOException {
+        Map<String, Job> found = new HashMap<>();
+        for (String taskId : taskIds) {
+            getJobFromTaskId(taskId).ifPresent(job -> found.put(taskId, job));
+        }
+        List<Job> updated = fun.apply(found);
+        write(updated);
+        return updated;
+    }
+
+    @Override
+    public synchronized List<Job> killJobs(String owner, Collection<Job.JobState> states, Optional<String> tag,
+                                           Optional<Integer> fromId, Optional<Integer> toId, String reason) throws IOException {
+        List<Job> killed = new ArrayList<>();
+        String now = TimestampHelper.now();
+        List<Job.JobState> active = states.stream().filter(ActiveJobIndex::isActive).distinct().collect(Collectors.toList());
+        for (Job.JobState state : active) {
+            NavigableMap<Integer, Row> rows = byState.get(state)
+                    .subMap(fromId.orElse(Integer.MIN_VALUE), true, toId.orElse(Integer.MAX_VALUE), true);
+            for (Row row : rows.values()) {
+                if (ownedBy(row, owner) && (!tag.isPresent() || row.tags.contains(tag.get()))) {
+                    Job job = mapper.readValue(row.json, Job.class);
+                    job.killed(now, Optional.empty(), reason);
+                    killed.add(job);
+                }
+            }
+        }
+        write(killed);
+        return killed;
+    }
+
+    // Like UPDATE, jobs not stored are ignored
+    @Override
+    public synchronized void updateJobs(List<Job> list) throws IOException {
+        write(list.stream().filter(job -> jobs.containsKey(job.id())).collect(Collectors.toList()));
+    }
+
+    @Override
+    public synchronized void retryJobs(List<Integer> ids) throws IOException {
+        List<Job> retried = new ArrayList<>();
+        for (int id : ids) {
+            Row row = jobs.get(id);
+            if (row != null) {
+                Job job = mapper.readValue(row.json, Job.class);
+                job.doRetry();
+                retried.add(job);
+            }
+        }
+        write(retried);
+    }
+
+    @Override
+    public int countJobs() throws IOException {
+        return jobs.size();
+    }
+
+    @Override
+    public int countRunning() {
+        return activeJobs.running();
+    }
+
+    @Override
+    public int countQueued() {
+        return activeJobs.queued();
+    }
+
+    @Override
+    public ResourceQuantity getUsedResources() {
+        return activeJobs.used();
+    }
+
+    @Override
+    public synchronized boolean reconcileJobCounters() throws IOException {
+        if (checkActiveJobIndex().isEmpty()) {
+            return true;
+        }
+        LOG.warn("Job counters differ from stored jobs; rebuilding index");
+        activeJobs.clear();
+        for (Job.JobState state : Arrays.asList(Job.JobState.QUEUED, Job.JobState.STARTING, Job.JobState.STARTED)) {
+            for (Row row : byState.get(state).values()) {
+                activeJobs.put(mapper.readValue(row.json, Job.class), row.json);
+            }
+        }
+        return false;
+    }
+
+    // Archived ids are not to be issued again either
+    @Override
+    public int getLatestJobId() throws IOException {
+        int latest = jobs.isEmpty() ? 0 : jobs.lastKey();
+        return archive.isEmpty() ? latest : Math.max(latest, archive.lastKey());
+    }
+
+    @Override
+    public List<Job> getRunning() throws IOException {
+        return decode(activeJobs.getByStates(Job.JobState.STARTING, Job.JobState.STARTED));
+    }
+
+    @Override
+    public ActiveJobIndex getActiveJobIndex() {
+        return activeJobs;
+    }
+
+    @Override
+    public synchronized List<String> checkActiveJobIndex() throws IOException {
+        List<String> diffs = new ArrayList<>();
+        Map<Integer, String> indexed = activeJobs.snapshot();
+        for (Row row : jobs.values()) {
+            if (!ActiveJobIndex.isActive(row.state)) {
+                continue;
+            }
+            String json = indexed.remove(row.id);
+            if (json == null) {
+                diffs.add(MessageFormat.format("id={0}: missing in index", Integer.toString(row.id)));
+            } else if (!json.equals(row.json)) {
+                diffs.add(MessageFormat.format("id={0}: differs from store", Integer.toString(row.id)));
+            }
+        }
+        for (int id : indexed.keySet()) {
+            diffs.add(MessageFormat.format("id={0}: not active in store", Integer.toString(id)));
+        }
+        if (!diffs.isEmpty()) {
+            LOG.warn("Active job index is inconsistent with store: {}", diffs);
+        }
+        return diffs;
+    }
+
+    @Override
+    public synchronized boolean setFrameworkId(String value) throws IOException {
+        LOG.info("setting new framework: {}", value);
+        appendRaw("{\"op\":\"property\",\"key\":\"" + FRAMEWORK_ID + "\",\"value\":" + mapper.writeValueAsString(value) + "}");
+        flush();
+        properties.put(FRAMEWORK_ID, value);
+        return true;
+    }
+
+    @Override
+    public Optional<String> getFrameworkId() throws IOException {
+        return Optional.ofNullable(properties.get(FRAMEWORK_ID));
+    }
+
+    @Override
+    public synchronized void deleteAllProperties() throws IOException {
+        appendRaw("{\"op\":\"delete-properties\"}");
+        flush();
+        properties.clear();
+    }
+
+    private List<Job> decode(List<String> list) throws IOException {
+        List<Job> ret = new ArrayList<>(list.size());
+        for (String json : list) {
+            ret.add(mapper.readValue(json, Job.class));
+        }
+        return ret;
+    }
+
+    // Appends jobs to the journal before applying them all; callers must hold the monitor
+    private void write(List<Job> list) throws IOException {
+        if (list.isEmpty()) {
+            return;
+        }
+        List<String> jsons = new ArrayList<>(list.size());
+        for (Job job : list) {
+            String json = mapper.writeValueAsString(job);
+            append("job", json);
+            jsons.add(json);
+        }
+        flush();
+        for (int i = 0; i < list.size(); i++) {
+            put(list.get(i), jsons.get(i));
+        }
+    }
+
+    private void put(Job job, String json) {
+        Row row = new Row(job, json);
+        Row old = jobs.put(row.id, row);
+        if (old != null) {
+            unindex(old);
+        }
+        byState.get(row.state).put(row.id, row);
+        if (row.taskId != null) {
+            byTaskId.put(row.taskId, row.id);
+        }
+        if (row.finishedAt >= 0) {
+            byFinished.add(row);
+        }
+        if (row.state == Job.JobState.QUEUED) {
+            queues.values().forEach(q -> q.add(row));
+        }
+        activeJobs.put(job, json);
+    }
+
+    private void unindex(Row row) {
+        byState.get(row.state).remove(row.id, row);
+        if (row.taskId != null) {
+            byTaskId.remove(row.taskId, row.id);
+        }
+        byFinished.remove(row);
+        if (row.state == Job.JobState.QUEUED) {
+            queues.values().forEach(q -> q.remove(row));
+        }
+    }
+
+    // Only jobs not active are removed or archived but by deleteAllJob
+    private void remove(int id) {
+        Row row = jobs.remove(id);
+        if (row != null) {
+            unindex(row);
+        }
+        row = archive.remove(id);
+        if (row != null) {
+            byFinished.remove(row);
+        }
+    }
+
+    private void removeBelow(int maxId) {
+        new ArrayList<>(jobs.headMap(maxId).keySet()).forEach(this::remove);
+        new ArrayList<>(archive.headMap(maxId).keySet()).forEach(this::remove);
+        activeJobs.removeBelow(maxId);
+    }
+
+    private void moveToArchive(int id) {
+        Row row = jobs.remove(id);
+        if (row != null) {
+            // Keeps its place in byFinished
+            byState.get(row.state).remove(row.id, row);
+            if (row.taskId != null) {
+                byTaskId.remove(row.taskId, row.id);
+            }
+            archive.put(id, row);
+        }
+    }
+
+    private static final class StoredApp {
+        private final String owner;
+        private final String json;
+
+        StoredApp(String owner, String json) {
+            this.owner = owner;
+            this.json = json;
+        }
+    }
+
+    // Columns of a job as in jobs table, copied at write so that callers may modify the job later
+    private static final class Row {
+        private final int id;
+        private final String appid;
+        private final String name;
+        private final int priority;
+        private final Job.JobState state;
+        private final String taskId;
+        private final Set<String> tags;
+        private final int cpu;
+        private final int memMB;
+        private final int gpu;
+        private final int ports;
+        private final int diskMB;
+        // Epoch milliseconds, or -1 if not yet
+        private final long scheduledAt;
+        private final long startedAt;
+        private final long finishedAt;
+        private final String json;
+
+        Row(Job job, String json) {
+            this.id = job.id();
+            this.appid = job.appid();
+            this.name = job.name();
+            this.priority = job.priority();
+            this.state = job.state();
+            this.taskId = job.taskId();
+            this.tags = Collections.unmodifiableSet(new HashSet<>(job.tags()));
+            this.cpu = job.resources().getCpu();
+            this.memMB = job.resources().getMemMB();
+            this.gpu = job.resources().getGpu();
+            this.ports = job.resources().getPorts();
+            this.diskMB = job.resources().getDiskMB();
+            this.scheduledAt = epochMillis(job.scheduled());
+            this.startedAt = epochMillis(job.started());
+            this.finishedAt = epochMillis(job.finished());
+            this.json = json;
+        }
+
+        // A key to find rows in byFinished
+        private Row(long finishedAt, int id) {
+            this.id = id;
+            this.appid = null;
+            this.name = null;
+            this.priority = 0;
+            this.state = null;
+            this.taskId = null;
+            this.tags = Collections.emptySet();
+            this.cpu = 0;
+            this.memMB = 0;
+            this.gpu = 0;
+            this.ports = 0;
+            this.diskMB = 0;
+            this.scheduledAt = -1;
+            this.startedAt = -1;
+            this.finishedAt = finishedAt;
+            this.json = null;
+        }
+
+        static Row bound(long finishedAt, int id) {
+            return new Row(finishedAt, id);
+        }
+
+        private static long epochMillis(String timestamp) {
+            return timestamp == null ? -1 : TimestampHelper.toEpochMillis(timestamp);
+        }
+    }
+}
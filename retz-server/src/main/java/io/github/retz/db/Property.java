@@ -31,6 +31,8 @@ import java.util.Properties;
 public class Property {
     private static final Logger LOG = LoggerFactory.getLogger(Property.class);
 
+    private static final String HEARTBEAT = "Heartbeat";
+
     private final Connection conn;
 
     public Property(Connection c) {
@@ -45,6 +47,23 @@ public class Property {
         return getProperty("FrameworkID");
     }
 
+    // Epoch milliseconds written periodically at primary, to tell how far a replica lags behind
+    public void setHeartbeat(long millis) throws SQLException {
+        String value = Long.toString(millis);
+        if (updateProperty(HEARTBEAT, value) == 0) {
+            try (PreparedStatement p = conn.prepareStatement("INSERT INTO properties(key, value, epoch) VALUES (?, ?, ?)")) {
+                p.setString(1, HEARTBEAT);
+                p.setString(2, value);
+                p.setInt(3, 0);
+                p.execute();
+            }
+        }
+    }
+
+    public Optional<Long> getHeartbeat() throws SQLException {
+        return getProperty(HEARTBEAT).map(Long::parseLong);
+    }
+
     private boolean setProperty(String key, String value) throws SQLException {
         try (PreparedStatement p = conn.prepareStatement("INSERT INTO properties(key, value, epoch) VALUES (?, ?, ?)")) {
             conn.setAutoCommit(false);
@@ -55,17 +74,16 @@ public class Property {
             return true;
         } catch (SQLException e) {
             LOG.warn("setting {}={} into properties => {}: trying update...", key, value, e.toString());
-            return updateProperty(key, value);
+            return updateProperty(key, value) > 0;
         }
     }
 
-    private boolean updateProperty(String key, String value) throws SQLException {
+    private int updateProperty(String key, String value) throws SQLException {
         try (PreparedStatement p = conn.prepareStatement("UPDATE properties SET value=?, epoch=epoch+1 WHERE key=?")) {
             conn.setAutoCommit(false);
-            p.setString(3, key);
+            p.setString(2, key);
             p.setString(1, value);
-            p.execute();
-            return true;
+            return p.executeUpdate();
         }
     }
 
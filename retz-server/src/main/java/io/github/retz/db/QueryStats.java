@@ -0,0 +1,148 @@
+/**
+ *    Retz
+ *    Copyright (C) 2016-2017 Nautilus Technologies, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.github.retz.db;
+
+import io.github.retz.misc.LatencyHistogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+// Latency of acquiring connections from the pool and of executing each SQL statement,
+// recorded by Database and QueryStatsInterceptor. Statements are keyed by their SQL
+// with numeric literals replaced by '?', as some of them have LIMIT inlined.
+public class QueryStats {
+    private static final Logger LOG = LoggerFactory.getLogger(QueryStats.class);
+    // Bounds memory when statements are built with ever-changing SQL
+    private static final int MAX_QUERIES = 256;
+    private static final int MAX_RAW_QUERIES = 4096;
+    private static final String OTHER = "(other)";
+    private static final int MAX_PARAM_LENGTH = 128;
+
+    private static final LatencyHistogram ACQUIRE = new LatencyHistogram();
+    private static final LatencyHistogram EXECUTE = new LatencyHistogram();
+    private static final Map<String, LatencyHistogram> QUERIES = new ConcurrentHashMap<>();
+    // Cache of raw SQL to histogram, so that a hit doesn't normalize the SQL
+    private static final Map<String, LatencyHistogram> RAW_QUERIES = new ConcurrentHashMap<>();
+    private static final AtomicLong SLOW_QUERIES = new AtomicLong();
+    private static volatile long slowQueryNanos = 1000_000_000L;
+
+    private QueryStats() {
+    }
+
+    // 0 disables slow query log
+    public static void configure(int slowQueryMillis) {
+        slowQueryNanos = slowQueryMillis > 0 ? slowQueryMillis * 1000_000L : Long.MAX_VALUE;
+    }
+
+    public static long slowQueryMillis() {
+        return slowQueryNanos == Long.MAX_VALUE ? 0 : slowQueryNanos / 1000_000L;
+    }
+
+    static boolean recordAcquire(long nanos) {
+        ACQUIRE.recordNanos(nanos);
+        return nanos >= slowQueryNanos;
+    }
+
+    // Parameters are only formatted when the query was slow
+    static void recordQuery(String sql, long nanos, long rows, Object[] params, int paramCount) {
+        EXECUTE.recordNanos(nanos);
+        LatencyHistogram h = RAW_QUERIES.get(sql);
+        if (h == null) {
+            h = histogramOf(sql);
+        }
+        h.recordNanos(nanos);
+        if (nanos >= slowQueryNanos) {
+            SLOW_QUERIES.incrementAndGet();
+            LOG.warn("Slow query ({} ms, {} rows): {} {}", nanos / 1000_000L, rows, sql,
+                    formatParams(sql, params, paramCount));
+        }
+    }
+
+    private static LatencyHistogram histogramOf(String sql) {
+        String key = normalize(sql);
+        LatencyHistogram h = QUERIES.get(key);
+        if (h == null) {
+            h = QUERIES.size() < MAX_QUERIES
+                    ? QUERIES.computeIfAbsent(key, k -> new LatencyHistogram())
+                    : QUERIES.computeIfAbsent(OTHER, k -> new LatencyHistogram());
+        }
+        if (RAW_QUERIES.size() < MAX_RAW_QUERIES) {
+            RAW_QUERIES.putIfAbsent(sql, h);
+        }
+        return h;
+    }
+
+    static String normalize(String sql) {
+        return sql.trim().replaceAll("\\s+", " ").replaceAll("\\b\\d+\\b", "?");
+    }
+
+    static String formatParams(String sql, Object[] params, int paramCount) {
+        // Not to leak user secrets to log
+        if (sql.toLowerCase(Locale.ROOT).contains("secret")) {
+            return "[...]";
+        }
+        StringBuilder b = new StringBuilder("[");
+        for (int i = 0; i < paramCount; i++) {
+            if (i > 0) {
+                b.append(", ");
+            }
+            String s = Objects.toString(params[i]);
+            if (s.length() > MAX_PARAM_LENGTH) {
+                s = s.substring(0, MAX_PARAM_LENGTH) + "...";
+            }
+            b.append(s);
+        }
+        return b.append(']').toString();
+    }
+
+    public static LatencyHistogram acquire() {
+        return ACQUIRE;
+    }
+
+    public static LatencyHistogram execute() {
+        return EXECUTE;
+    }
+
+    public static long slowQueries() {
+        return SLOW_QUERIES.get();
+    }
+
+    // One line per statement, slowest in total first
+    public static List<String> report() {
+        return QUERIES.entrySet().stream()
+                .filter(e -> e.getValue().count() > 0)
+                .sorted(Comparator.comparingLong((Map.Entry<String, LatencyHistogram> e) -> e.getValue().sumMicros()).reversed())
+                .map(e -> {
+                    LatencyHistogram h = e.getValue();
+                    return String.format("count=%d total=%dus mean=%dus p50=%dus p99=%dus max=%dus: %s",
+                            h.count(), h.sumMicros(), h.meanMicros(), h.percentileMicros(50),
+                            h.percentileMicros(99), h.maxMicros(), e.getKey());
+                })
+                .collect(Collectors.toList());
+    }
+
+    public static void reset() {
+        ACQUIRE.reset();
+        EXECUTE.reset();
+        QUERIES.values().forEach(LatencyHistogram::reset);
+        SLOW_QUERIES.set(0);
+    }
+}
@@ -0,0 +1,157 @@
+/**
+ *    Retz
+ *    Copyright (C) 2016-2017 Nautilus Technologies, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.github.retz.db;
+
+import org.apache.tomcat.jdbc.pool.interceptor.AbstractCreateStatementInterceptor;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.util.Arrays;
+
+// Pool interceptor that times each statement execution into QueryStats. Parameters are
+// kept for slow query log, and rows are counted as read from the result set; the query is
+// reported when the result set is closed, with time spent in executing it but not reading.
+// A proxy and a Report are allocated per statement and result set; only recording into
+// the histograms of QueryStats is free of allocation.
+public class QueryStatsInterceptor extends AbstractCreateStatementInterceptor {
+
+    @Override
+    public Object createStatement(Object proxy, Method method, Object[] args, Object statement, long time) {
+        String sql = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : null;
+        return Proxy.newProxyInstance(QueryStatsInterceptor.class.getClassLoader(),
+                new Class<?>[]{method.getReturnType()}, new StatementHandler(statement, sql));
+    }
+
+    @Override
+    public void closeInvoked() {
+    }
+
+    private static Object call(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private final class StatementHandler implements InvocationHandler {
+        private final Object statement;
+        private final String sql;
+        private Object[] params = new Object[8];
+        private int paramCount = 0;
+        // Result set not closed yet
+        private Report pending = null;
+
+        StatementHandler(Object statement, String sql) {
+            this.statement = statement;
+            this.sql = sql;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (isExecute(method, false)) {
+                flush();
+                String query = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : sql;
+                long start = System.nanoTime();
+                Object result = call(statement, method, args);
+                long nanos = System.nanoTime() - start;
+                if (result instanceof ResultSet) {
+                    pending = new Report(query, nanos);
+                    return Proxy.newProxyInstance(QueryStatsInterceptor.class.getClassLoader(),
+                            new Class<?>[]{ResultSet.class}, new ResultSetHandler(result, pending));
+                } else if (result instanceof Integer) {
+                    report(query, nanos, (Integer) result);
+                } else if (result instanceof int[]) {
+                    report(query, nanos, Arrays.stream((int[]) result).filter(n -> n > 0).sum());
+                } else {
+                    report(query, nanos, -1);
+                }
+                return result;
+            }
+
+            String name = method.getName();
+            if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer) {
+                setParam((Integer) args[0], name.equals("setNull") ? null : args[1]);
+            } else if (compare(CLOSE_VAL, method)) {
+                flush();
+            } else if (name.equals("clearParameters")) {
+                Arrays.fill(params, 0, paramCount, null);
+                paramCount = 0;
+            }
+            return call(statement, method, args);
+        }
+
+        private void setParam(int index, Object value) {
+            if (index < 1) {
+                return;
+            }
+            if (index > params.length) {
+                params = Arrays.copyOf(params, Math.max(index, params.length * 2));
+            }
+            params[index - 1] = value;
+            paramCount = Math.max(paramCount, index);
+        }
+
+        private void flush() {
+            if (pending != null) {
+                report(pending.query, pending.nanos, pending.rows);
+                pending = null;
+            }
+        }
+
+        private void report(String query, long nanos, long rows) {
+            QueryStats.recordQuery(query == null ? "" : query, nanos, rows, params, paramCount);
+        }
+
+        private final class ResultSetHandler implements InvocationHandler {
+            private final Object resultSet;
+            private final Report report;
+
+            ResultSetHandler(Object resultSet, Report report) {
+                this.resultSet = resultSet;
+                this.report = report;
+            }
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                Object result = call(resultSet, method, args);
+                if (method.getName().equals("next")) {
+                    if (Boolean.TRUE.equals(result)) {
+                        report.rows++;
+                    }
+                } else if (compare(CLOSE_VAL, method) && pending == report) {
+                    flush();
+                }
+                return result;
+            }
+        }
+    }
+
+    private static final class Report {
+        private final String query;
+        private final long nanos;
+        private long rows = 0;
+
+        Report(String query, long nanos) {
+            this.query = query;
+            this.nanos = nanos;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/**
+ *    Retz
+ *    Copyright (C) 2016-2017 Nautilus Technologies, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.github.retz.db;
+
+import io.github.retz.misc.LruMap;
+import io.github.retz.protocol.data.User;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+// LRU cache of users by key id for request authentication. Entries expire after ttl
+// so that changes by other servers sharing the database are seen; changes through
+// this server invalidate the entry immediately.
+final class UserCache {
+    private static final int MAX_SIZE = 4096;
+
+    private final long ttlNanos;
+    private final LongSupplier nanoTime;
+    private final Map<String, Entry> entries = new LruMap<>(MAX_SIZE);
+
+    UserCache(int ttlSeconds) {
+        this(ttlSeconds, System::nanoTime);
+    }
+
+    UserCache(int ttlSeconds, LongSupplier nanoTime) {
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+        this.nanoTime = Objects.requireNonNull(nanoTime);
+    }
+
+    synchronized Optional<User> get(String keyId) {
+        Entry entry = entries.get(keyId);
+        if (entry == null || nanoTime.getAsLong() - entry.loaded >= ttlNanos) {
+            return Optional.empty();
+        }
+        return Optional.of(entry.user);
+    }
+
+    synchronized void put(User user) {
+        if (ttlNanos > 0) {
+            entries.put(user.keyId(), new Entry(user, nanoTime.getAsLong()));
+        }
+    }
+
+    synchronized void invalidate(String keyId) {
+        entries.remove(keyId);
+    }
+
+    synchronized void invalidateAll() {
+        entries.clear();
+    }
+
+    private static final class Entry {
+        private final User user;
+        private final long loaded;
+
+        Entry(User user, long loaded) {
+            this.user = user;
+            this.loaded = loaded;
+        }
+    }
+}
@@ -29,6 +29,8 @@ public class DBMigration {
     public DBMigration(DataSource dataSource) {
         flyway.setDataSource(dataSource);
         flyway.setBaselineOnMigrate(true);
+        // SQL migrations are in resources, Java migrations (e.g. V3_1) are in this package
+        flyway.setLocations("classpath:db/migration", "classpath:io/github/retz/db/migration");
     }
 
     public void migrate() throws SQLException, IOException {
@@ -0,0 +1,65 @@
+/**
+ *    Retz
+ *    Copyright (C) 2016-2017 Nautilus Technologies, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.github.retz.db.migration;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
+import io.github.retz.protocol.data.Job;
+import io.github.retz.protocol.data.ResourceQuantity;
+import org.flywaydb.core.api.migration.jdbc.JdbcMigration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+
+// Fills resource columns added in V3__Add_resources_to_jobs.sql from JSON of existing jobs
+public class V3_1__Fill_resources_of_jobs implements JdbcMigration {
+    private static final Logger LOG = LoggerFactory.getLogger(V3_1__Fill_resources_of_jobs.class);
+    private static final int BATCH_SIZE = 1024;
+
+    @Override
+    public void migrate(Connection conn) throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.registerModule(new Jdk8Module());
+
+        int count = 0;
+        try (PreparedStatement select = conn.prepareStatement("SELECT id, json FROM jobs");
+             PreparedStatement update = conn.prepareStatement("UPDATE jobs SET cpu=?, mem_mb=?, gpu=?, ports=?, disk_mb=? WHERE id=?")) {
+            select.setFetchSize(BATCH_SIZE);
+            try (ResultSet res = select.executeQuery()) {
+                while (res.next()) {
+                    Job job = mapper.readValue(res.getString("json"), Job.class);
+                    ResourceQuantity r = job.resources();
+                    update.setInt(1, r.getCpu());
+                    update.setInt(2, r.getMemMB());
+                    update.setInt(3, r.getGpu());
+                    update.setInt(4, r.getPorts());
+                    update.setInt(5, r.getDiskMB());
+                    update.setInt(6, res.getInt("id"));
+                    update.addBatch();
+                    if (++count % BATCH_SIZE == 0) {
+                        update.executeBatch();
+                    }
+                }
+            }
+            update.executeBatch();
+        }
+        LOG.info("Filled resource columns of {} jobs", count);
+    }
+}
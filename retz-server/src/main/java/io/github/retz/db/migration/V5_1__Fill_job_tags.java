@@ -0,0 +1,61 @@
+/**
+ *    Retz
+ *    Copyright (C) 2016-2017 Nautilus Technologies, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.github.retz.db.migration;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
+import io.github.retz.protocol.data.Job;
+import org.flywaydb.core.api.migration.jdbc.JdbcMigration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+
+// Fills job_tags added in V5__Add_job_tags.sql from JSON of existing jobs
+public class V5_1__Fill_job_tags implements JdbcMigration {
+    private static final Logger LOG = LoggerFactory.getLogger(V5_1__Fill_job_tags.class);
+    private static final int BATCH_SIZE = 1024;
+
+    @Override
+    public void migrate(Connection conn) throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.registerModule(new Jdk8Module());
+
+        int count = 0;
+        try (PreparedStatement select = conn.prepareStatement("SELECT json FROM jobs");
+             PreparedStatement insert = conn.prepareStatement("INSERT INTO job_tags(job_id, tag) VALUES (?, ?)")) {
+            select.setFetchSize(BATCH_SIZE);
+            try (ResultSet res = select.executeQuery()) {
+                while (res.next()) {
+                    Job job = mapper.readValue(res.getString("json"), Job.class);
+                    for (String tag : job.tags()) {
+                        insert.setInt(1, job.id());
+                        insert.setString(2, tag);
+                        insert.addBatch();
+                        if (++count % BATCH_SIZE == 0) {
+                            insert.executeBatch();
+                        }
+                    }
+                }
+            }
+            insert.executeBatch();
+        }
+        LOG.info("Filled {} tags of jobs", count);
+    }
+}
@@ -0,0 +1,62 @@
+/**
+ *    Retz
+ *    Copyright (C) 2016-2017 Nautilus Technologies, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.github.retz.jmx;
+
+import io.github.retz.bean.ActiveJobIndexMXBean;
+import io.github.retz.db.ActiveJobIndex;
+import io.github.retz.db.JobStores;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.List;
+
+public class ActiveJobIndexAdapter implements ActiveJobIndexMXBean {
+    private static final Logger LOG = LoggerFactory.getLogger(ActiveJobIndexAdapter.class);
+
+    @Override
+    public int getSize() {
+        return getIndex().size();
+    }
+
+    @Override
+    public long getHits() {
+        return getIndex().hits();
+    }
+
+    @Override
+    public long getMisses() {
+        return getIndex().misses();
+    }
+
+    @Override
+    public double getHitRate() {
+        long hits = getHits();
+        long total = hits + getMisses();
+        return total == 0 ? 0.0 : (double) hits / total;
+    }
+
+    @Override
+    public List<String> checkConsistency() throws IOException {
+        LOG.info("Checking consistency of active job index from JMX");
+        return JobStores.get().checkActiveJobIndex();
+    }
+
+    private ActiveJobIndex getIndex() {
+        return JobStores.get().getActiveJobIndex();
+    }
+}
@@ -18,22 +18,31 @@ package io.github.retz.jmx;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.RawValue;
 import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
 import io.github.retz.bean.AdminConsoleMXBean;
-import io.github.retz.db.Database;
+import io.github.retz.cli.TimestampHelper;
+import io.github.retz.db.JobStore;
+import io.github.retz.db.JobStores;
 import io.github.retz.misc.LogUtil;
 import io.github.retz.protocol.data.Job;
 import io.github.retz.protocol.data.User;
+import io.github.retz.scheduler.GarbageJobCollector;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.text.MessageFormat;
+import java.text.ParseException;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
 public class AdminConsole implements AdminConsoleMXBean {
     private static final Logger LOG = LoggerFactory.getLogger(AdminConsole.class);
+    static final int MAX_USAGE_PAGE_SIZE = 65536;
 
     private final ObjectMapper mapper = new ObjectMapper();
     private final int defaultLeeway;
@@ -46,7 +55,7 @@ public class AdminConsole implements AdminConsoleMXBean {
     @Override
     public String createUser(String info) throws IOException {
         LOG.info("AdminConsole.createUser({})", info);
-        User user = Database.getInstance().createUser(info);
+        User user = JobStores.get().createUser(info);
         LOG.info(maybeEncodeAsJSON(user));
         return maybeEncodeAsJSON(user);
     }
@@ -54,29 +63,85 @@ public class AdminConsole implements AdminConsoleMXBean {
     @Override
     public String getUser(String name) throws IOException {
         LOG.info("AdminConsole.getUser({})", name);
-        Optional<User> maybeUser = Database.getInstance().getUser(name);
+        Optional<User> maybeUser = JobStores.get().getUser(name);
         return maybeEncodeAsJSON(maybeUser);
     }
 
     @Override
     public boolean enableUser(String id, boolean enabled) throws IOException {
         LOG.info("AdminConsole.enableUser({}, {})", id, enabled);
-        Database.getInstance().enableUser(id, enabled);
+        JobStores.get().enableUser(id, enabled);
         return true;
     }
 
     @Override
     public List<String> getUsage(String start, String end) throws IOException {
         LOG.info("Querying usage at [{}, {})", start, end); //TODO
-        List<Job> jobs = Database.getInstance().finishedJobs(start, end);
+        List<Job> jobs = JobStores.get().finishedJobs(parseTime(start, end, start), parseTime(start, end, end));
         return jobs.stream().map(job -> maybeEncodeAsJSON(job)).collect(Collectors.toList());
     }
 
+    @Override
+    public String getUsagePage(String start, String end, String cursor, int limit) throws IOException {
+        LOG.info("Querying usage at [{}, {}) after '{}', limit={}", start, end, cursor, limit);
+        Optional<JobStore.UsageEntry> after = Optional.empty();
+        if (!cursor.isEmpty()) {
+            String[] c = cursor.split(":");
+            try {
+                after = Optional.of(new JobStore.UsageEntry(Long.parseLong(c[0]), Integer.parseInt(c[1]), null));
+            } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                throw new IOException("Invalid cursor: " + cursor, e);
+            }
+        }
+        int pageSize = Math.max(1, Math.min(limit, MAX_USAGE_PAGE_SIZE));
+        // One more than the page, to know there are more
+        List<JobStore.UsageEntry> entries = JobStores.get().finishedJobsJson(
+                parseTime(start, end, start), parseTime(start, end, end), after, pageSize + 1);
+
+        Map<String, Object> page = new LinkedHashMap<>();
+        if (entries.size() > pageSize) {
+            entries = entries.subList(0, pageSize);
+            JobStore.UsageEntry last = entries.get(pageSize - 1);
+            page.put("next", last.finishedAt() + ":" + last.id());
+        }
+        // Jobs are written as stored in database, without decoding
+        page.put("jobs", entries.stream().map(e -> new RawValue(e.json())).collect(Collectors.toList()));
+        return mapper.writeValueAsString(page);
+    }
+
+    @Override
+    public List<String> getUsageSummary(String start, String end, String groupBy) throws IOException {
+        LOG.info("Querying usage summary at [{}, {}) by {}", start, end, groupBy);
+        List<JobStore.UsageSummary> summaries;
+        try {
+            summaries = JobStores.get().usageSummary(parseTime(start, end, start), parseTime(start, end, end), groupBy);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+        return summaries.stream().map(summary -> {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put(groupBy, summary.key());
+            m.put("jobs", summary.jobs());
+            m.put("cpuSeconds", summary.cpuMillis() / 1000.0);
+            m.put("memMBSeconds", summary.memMBMillis() / 1000.0);
+            m.put("gpuSeconds", summary.gpuMillis() / 1000.0);
+            return maybeEncodeAsJSON(m);
+        }).collect(Collectors.toList());
+    }
+
+    private static long parseTime(String start, String end, String time) throws IOException {
+        try {
+            return TimestampHelper.toEpochMillisLenient(time);
+        } catch (ParseException e) {
+            throw new IOException(MessageFormat.format("Invalid time range [{0}, {1})", start, end), e);
+        }
+    }
+
     @Override
     public List<String> listUser() throws IOException {
         LOG.info("AdminConsole.listUser()");
 
-        List<User> users = Database.getInstance().allUsers();
+        List<User> users = JobStores.get().allUsers();
         return users.stream().map(user -> user.keyId()).collect(Collectors.toList());
 
     }
@@ -86,17 +151,31 @@ public class AdminConsole implements AdminConsoleMXBean {
         return gc(defaultLeeway);
     }
 
+    // Returns at once not to block JMX callers for the whole collection; see gcStatus
     @Override
     public boolean gc(int leeway) {
-        try {
-            // TODO: do we do mutex to avoid concurrent execution even though it has transaction?
-            LOG.info("Job GC invocation from JMX: leeway={}s", leeway);
-            Database.getInstance().deleteOldJobs(leeway);
-            return true;
-        } catch (Throwable t) {
-            LogUtil.info(LOG, "AdminConsole.gc() failed", t);
-            return false;
+        LOG.info("Job GC invocation from JMX: leeway={}s", leeway);
+        return GarbageJobCollector.startCollection(leeway);
+    }
+
+    @Override
+    public String gcStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("running", GarbageJobCollector.isRunning());
+        if (GarbageJobCollector.startedAt() > 0) {
+            status.put("started", TimestampHelper.toTimestamp(GarbageJobCollector.startedAt()));
         }
+        status.put("durationMillis", GarbageJobCollector.duration());
+        status.put("rowsDeleted", GarbageJobCollector.rowsDeleted());
+        status.put("backlog", GarbageJobCollector.backlog());
+        status.put("totalRowsDeleted", GarbageJobCollector.totalRowsDeleted());
+        return maybeEncodeAsJSON(status);
+    }
+
+    @Override
+    public boolean stopGc() {
+        LOG.info("Job GC stop request from JMX");
+        return GarbageJobCollector.stopCollection();
     }
 
     private String maybeEncodeAsJSON(Object o) {
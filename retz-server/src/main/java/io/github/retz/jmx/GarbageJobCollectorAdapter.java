@@ -0,0 +1,47 @@
+/**
+ *    Retz
+ *    Copyright (C) 2016-2017 Nautilus Technologies, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.github.retz.jmx;
+
+import io.github.retz.bean.GarbageJobCollectorMXBean;
+import io.github.retz.scheduler.GarbageJobCollector;
+
+public class GarbageJobCollectorAdapter implements GarbageJobCollectorMXBean {
+    @Override
+    public boolean isRunning() {
+        return GarbageJobCollector.isRunning();
+    }
+
+    @Override
+    public long getDurationMillis() {
+        return GarbageJobCollector.duration();
+    }
+
+    @Override
+    public long getRowsDeleted() {
+        return GarbageJobCollector.rowsDeleted();
+    }
+
+    @Override
+    public long getBacklog() {
+        return GarbageJobCollector.backlog();
+    }
+
+    @Override
+    public long getTotalRowsDeleted() {
+        return GarbageJobCollector.totalRowsDeleted();
+    }
+}
@@ -0,0 +1,106 @@
+/**
+ *    Retz
+ *    Copyright (C) 2016-2017 Nautilus Technologies, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.github.retz.jmx;
+
+import io.github.retz.bean.QueryStatsMXBean;
+import io.github.retz.db.Database;
+import io.github.retz.db.JobStores;
+import io.github.retz.db.QueryStats;
+
+import java.util.List;
+
+public class QueryStatsAdapter implements QueryStatsMXBean {
+    @Override
+    public long getAcquireCount() {
+        return QueryStats.acquire().count();
+    }
+
+    @Override
+    public long getAcquireMeanMicros() {
+        return QueryStats.acquire().meanMicros();
+    }
+
+    @Override
+    public long getAcquireP99Micros() {
+        return QueryStats.acquire().percentileMicros(99);
+    }
+
+    @Override
+    public long getAcquireMaxMicros() {
+        return QueryStats.acquire().maxMicros();
+    }
+
+    @Override
+    public long getExecuteCount() {
+        return QueryStats.execute().count();
+    }
+
+    @Override
+    public long getExecuteMeanMicros() {
+        return QueryStats.execute().meanMicros();
+    }
+
+    @Override
+    public long getExecuteP99Micros() {
+        return QueryStats.execute().percentileMicros(99);
+    }
+
+    @Override
+    public long getExecuteMaxMicros() {
+        return QueryStats.execute().maxMicros();
+    }
+
+    @Override
+    public long getSlowQueryCount() {
+        return QueryStats.slowQueries();
+    }
+
+    @Override
+    public long getSlowQueryThresholdMillis() {
+        return QueryStats.slowQueryMillis();
+    }
+
+    @Override
+    public List<String> getQueries() {
+        return QueryStats.report();
+    }
+
+    @Override
+    public int getPoolActive() {
+        return Database.getDataSource().getActive();
+    }
+
+    @Override
+    public int getPoolIdle() {
+        return Database.getDataSource().getIdle();
+    }
+
+    @Override
+    public int getPoolWaiters() {
+        return Database.getDataSource().getWaitCount();
+    }
+
+    @Override
+    public long getReplicaLagMillis() {
+        return JobStores.get().replicaLag();
+    }
+
+    @Override
+    public void reset() {
+        QueryStats.reset();
+    }
+}
@@ -18,6 +18,7 @@ package io.github.retz.jmx;
 
 import com.j256.simplejmx.server.JmxServer;
 import io.github.retz.db.Database;
+import io.github.retz.db.JobStores;
 import io.github.retz.misc.LogUtil;
 import io.github.retz.scheduler.ServerConfiguration;
 import org.slf4j.Logger;
@@ -51,10 +52,17 @@ public final class RetzJmxServer {
         int jmxPort = config.getJmxPort();
 
         registerMBean(new AdminConsole(config.getGcLeeway()), "io.github.retz.scheduler:type=AdminConsole");
-        registerMBean(Database.getDataSource().getPool().getJmxPool(), "io.github.retz.db:type=TomcatThreadPool");
         registerMBean(new StatusAdapter(), "io.github.retz:type=Stats,name=Status");
         registerMBean(ResourceQuantityAdapter.newTotalOfferedQuantityAdapter() , "io.github.retz:type=Stats,name=TotalOffered");
         registerMBean(ResourceQuantityAdapter.newTotalUsedQuantityAdapter(), "io.github.retz:type=Stats,name=TotalUsed");
+        registerMBean(new ActiveJobIndexAdapter(), "io.github.retz.db:type=ActiveJobIndex");
+        registerMBean(new GarbageJobCollectorAdapter(), "io.github.retz.scheduler:type=GarbageJobCollector");
+        registerMBean(new StanchionAdapter(), "io.github.retz.scheduler:type=Stanchion");
+        // Connection pool and queries are only of Database
+        if (JobStores.get() instanceof Database) {
+            registerMBean(Database.getDataSource().getPool().getJmxPool(), "io.github.retz.db:type=TomcatThreadPool");
+            registerMBean(new QueryStatsAdapter(), "io.github.retz.db:type=QueryStats");
+        }
 
         jmxServer = new JmxServer(jmxPort);
         jmxServer.start();
@@ -20,6 +20,8 @@ import io.github.retz.bean.StatusMXBean;
 import io.github.retz.protocol.StatusResponse;
 import io.github.retz.web.StatusCache;
 
+import java.util.List;
+
 public class StatusAdapter implements StatusMXBean {
     @Override
     public String getMaster() {
@@ -66,6 +68,11 @@ public class StatusAdapter implements StatusMXBean {
         return getStatusResponse().stanchionQueueLength();
     }
 
+    @Override
+    public List<Integer> getStanchionQueueLengths() {
+        return getStatusResponse().stanchionQueueLengths();
+    }
+
     private StatusResponse getStatusResponse() {
         return StatusCache.getRawStatusResponse();
     }
@@ -16,6 +16,7 @@
  */
 package io.github.retz.mesosc;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.github.retz.misc.Pair;
 import io.github.retz.misc.Receivable;
@@ -104,17 +105,40 @@ public final class MesosHTTPFetcher {
             return Optional.empty();
         }
 
+        return buildSandboxUri(t, slaveAddr.get(), dir.get());
+    }
+
+    public static Optional<String> buildSandboxUri(String t, String slaveAddr, String dir) {
         try {
             return Optional.of(String.format("http://%s/files/%s?path=%s",
-                    slaveAddr.get(), t,
-                    URLEncoder.encode(dir.get(), //builder.toString(),
-                            UTF_8.toString())));
+                    slaveAddr, t,
+                    URLEncoder.encode(dir, UTF_8.toString())));
         } catch (UnsupportedEncodingException e) {
             LOG.error(e.toString(), e);
             return Optional.empty();
         }
     }
 
+    // Addresses of all agents known to the master, keyed by agent id
+    public static Map<String, String> fetchSlaveAddrs(String master) throws IOException {
+        String addr = "http://" + master + "/slaves";
+        try (UrlConnector conn = new UrlConnector(addr, "GET", true)) {
+            return extractSlaveAddrs(conn.getInputStream());
+        }
+    }
+
+    public static Map<String, String> extractSlaveAddrs(InputStream stream) throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        Map<String, String> addrs = new HashMap<>();
+        for (JsonNode slave : mapper.readTree(stream).path("slaves")) {
+            String[] tokens = slave.path("pid").asText().split("@");
+            if (tokens.length == 2) {
+                addrs.put(slave.path("id").asText(), tokens[1]);
+            }
+        }
+        return addrs;
+    }
+
     private static Optional<String> fetchSlaveAddr(String master, String slaveId) {
         String addr = "http://" + master + "/slaves";
         try (UrlConnector conn = new UrlConnector(addr, "GET", true)) {
@@ -152,7 +176,7 @@ public final class MesosHTTPFetcher {
     }
 
 
-    private static Optional<String> fetchDirectory(String slave, String frameworkId,
+    public static Optional<String> fetchDirectory(String slave, String frameworkId,
                                                    String executorId, String containerId) {
         String addr = "http://" + slave + "/state";
         try (UrlConnector conn = new UrlConnector(addr, "GET", true)) {
@@ -0,0 +1,73 @@
+/**
+ *    Retz
+ *    Copyright (C) 2016-2017 Nautilus Technologies, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.github.retz.planner;
+
+import io.github.retz.planner.spi.Attribute;
+import io.github.retz.planner.spi.Resource;
+import org.apache.mesos.Protos;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+// A resource offer from Mesos with its resources and attributes decoded once on arrival,
+// to be shared by the offer stock and planners instead of decoding it at each use.
+// Resource returned must not be modified: merge it into a new one to cut from.
+public final class DecodedOffer {
+    private final Protos.Offer offer;
+    private final Resource resource;
+    private final List<Attribute> attributes;
+
+    public DecodedOffer(Protos.Offer offer) {
+        this.offer = Objects.requireNonNull(offer);
+        this.resource = ResourceConstructor.decode(offer.getResourcesList());
+        this.attributes = new AttributeBuilder(offer.getAttributesList()).build();
+    }
+
+    public static List<DecodedOffer> decodeAll(List<Protos.Offer> offers) {
+        List<DecodedOffer> decoded = new ArrayList<>(offers.size());
+        for (Protos.Offer offer : offers) {
+            decoded.add(new DecodedOffer(offer));
+        }
+        return decoded;
+    }
+
+    public Protos.Offer offer() {
+        return offer;
+    }
+
+    public String id() {
+        return offer.getId().getValue();
+    }
+
+    public String slaveId() {
+        return offer.getSlaveId().getValue();
+    }
+
+    public Resource resource() {
+        return resource;
+    }
+
+    public List<Attribute> attributes() {
+        return attributes;
+    }
+
+    @Override
+    public String toString() {
+        return offer.toString();
+    }
+}
@@ -83,25 +83,40 @@ public class ExtensiblePlanner implements Planner {
     }
 
     @Override
-    public Plan plan(List<Protos.Offer> offers, List<AppJobPair> appJobPairs, int maxStock, String unixUser) throws IOException {
+    public Plan plan(List<DecodedOffer> offers, List<AppJobPair> appJobPairs, int maxStock, String unixUser) throws IOException {
         extension.setMaxStock(maxStock);
 
+        // Offers from the same agent are presented to the extension as one offer, keyed by
+        // the id of the first one, and accepted together - as Mesos allows
+        Map<String, List<DecodedOffer>> byAgent = new LinkedHashMap<>();
+        for (DecodedOffer offer : offers) {
+            byAgent.computeIfAbsent(offer.slaveId(), k -> new ArrayList<>()).add(offer);
+        }
+
         Map<String, Offer> mapOffers = new LinkedHashMap<>();
-        for (Protos.Offer offer : offers) {
+        Map<String, List<DecodedOffer>> grouped = new LinkedHashMap<>();
+        Set<String> ids = new HashSet<>();
+        for (List<DecodedOffer> agentOffers : byAgent.values()) {
+            DecodedOffer first = agentOffers.get(0);
             // maybe TODO: salvage more properties from Protos.Offer to include in spi.Offer
-            List<Attribute> attrs = new AttributeBuilder(offer.getAttributesList()).build();
+            List<Attribute> attrs = first.attributes();
             if (LOG.isDebugEnabled()) {
                 for (Attribute attr : attrs) {
-                    LOG.debug("Attribute: {} @{}", attr, offer.getId().getValue());
+                    LOG.debug("Attribute: {} @{}", attr, first.id());
                 }
             }
-            Resource resource = ResourceConstructor.decode(offer.getResourcesList());
-            Offer newOffer = new Offer(offer.getId().getValue(), resource, attrs);
-            mapOffers.put(offer.getId().getValue(), newOffer);
+            Resource resource = new Resource(0, 0, 0);
+            for (DecodedOffer offer : agentOffers) {
+                ids.add(offer.id());
+                resource.merge(offer.resource());
+            }
+            Offer newOffer = new Offer(first.id(), resource, attrs);
+            mapOffers.put(first.id(), newOffer);
+            grouped.put(first.id(), agentOffers);
         }
 
-        if (mapOffers.keySet().size() != offers.size()) {
-            String s = String.join(",", offers.stream().map(offer -> offer.getId().getValue()).collect(Collectors.toList()));
+        if (ids.size() != offers.size()) {
+            String s = String.join(",", offers.stream().map(offer -> offer.id()).collect(Collectors.toList()));
             throw new AssertionError("Duplicate offer ids! " + s);
         }
 
@@ -111,19 +126,24 @@ public class ExtensiblePlanner implements Planner {
         List<Job> keep = p.getToKeep();
 
         List<OfferAcceptor> acceptors = new ArrayList<>();
-        List<Protos.Offer> toStock = new ArrayList<>();
+        List<DecodedOffer> toStock = new ArrayList<>();
 
-        for (Protos.Offer offer : offers) {
-            if (p.getOfferIdsToStock().contains(offer.getId().getValue())) {
-                toStock.add(offer);
+        for (Map.Entry<String, List<DecodedOffer>> e : grouped.entrySet()) {
+            String offerId = e.getKey();
+            List<DecodedOffer> agentOffers = e.getValue();
+            if (p.getOfferIdsToStock().contains(offerId)) {
+                toStock.addAll(agentOffers);
                 continue;
             }
 
-            OfferAcceptor acceptor = new OfferAcceptor(offer);
-            if (p.getJobSpecs().containsKey(offer.getId().getValue())) {
-                List<Job> jobs1 = p.getJobSpecs().get(offer.getId().getValue());
+            OfferAcceptor acceptor = new OfferAcceptor(agentOffers.get(0));
+            for (DecodedOffer other : agentOffers.subList(1, agentOffers.size())) {
+                acceptor.addOffer(other);
+            }
+            if (p.getJobSpecs().containsKey(offerId)) {
+                List<Job> jobs1 = p.getJobSpecs().get(offerId);
 
-                Resource resource = ResourceConstructor.decode(offer.getResourcesList());
+                Resource resource = acceptor.totalResource();
                 int last = resource.lastPort();
                 for (Job job : jobs1) {
                     Application application = Applications.get(job.appid()).get();
@@ -131,7 +151,7 @@ public class ExtensiblePlanner implements Planner {
                     String id = Integer.toString(job.id());
 
                     Protos.TaskInfo taskInfo = builder.setName(job.name())
-                            .setResource(resource.cut(job.resources(), last), offer.getSlaveId())
+                            .setResource(resource.cut(job.resources(), last), acceptor.getSlaveID())
                             .setCommand(job, application, unixUser)
                             .setName("retz-" + application.getAppid() + "-name-" + job.name())
                             .setTaskId("retz-" + application.getAppid() + "-id-" + id)
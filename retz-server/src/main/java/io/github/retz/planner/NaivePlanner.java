@@ -40,17 +40,17 @@ public class NaivePlanner implements Planner {
     }
 
     // TODO: very naive packing, from left to right, no searching
-    static void pack(List<Protos.Offer> offers,
+    static void pack(List<DecodedOffer> offers,
                      List<AppJobPair> appJobs, // Inputs
                      List<OfferAcceptor> acceptors, // output offers to be accepted per SlaveId
                      List<Job> spill,
                      String unixUser) {
         Map<String, OfferAcceptor> slaveAcceptors = new HashMap<>();
-        for (Protos.Offer offer : offers) {
-            if (slaveAcceptors.containsKey(offer.getSlaveId().getValue())) {
-                slaveAcceptors.get(offer.getSlaveId().getValue()).addOffer(offer);
+        for (DecodedOffer offer : offers) {
+            if (slaveAcceptors.containsKey(offer.slaveId())) {
+                slaveAcceptors.get(offer.slaveId()).addOffer(offer);
             } else {
-                slaveAcceptors.put(offer.getSlaveId().getValue(), new OfferAcceptor(offer));
+                slaveAcceptors.put(offer.slaveId(), new OfferAcceptor(offer));
             }
         }
 
@@ -99,11 +99,11 @@ public class NaivePlanner implements Planner {
         spill.addAll(appJobs.stream().map(appJobPair -> appJobPair.job()).collect(Collectors.toList()));
     }
 
-    private static boolean resourceSufficient(List<Protos.Offer> offers, List<AppJobPair> jobs) {
+    private static boolean resourceSufficient(List<DecodedOffer> offers, List<AppJobPair> jobs) {
 
         int totalCpu = 0, totalMem = 0, totalGPU = 0, totalPorts = 0;
-        for (Protos.Offer offer : offers) {
-            Resource resource = ResourceConstructor.decode(offer.getResourcesList());
+        for (DecodedOffer offer : offers) {
+            Resource resource = offer.resource();
             totalCpu += resource.cpu();
             totalMem += resource.memMB();
             totalGPU += resource.gpu();
@@ -160,13 +160,13 @@ public class NaivePlanner implements Planner {
     // INPUT: jobs - candidates for task launch, most likely chosen from database or else
     // TODO: where to do null-check of unixUser?!
     @Override
-    public Plan plan(List<Protos.Offer> offers, List<AppJobPair> jobs, int maxStock, String unixUser) {
+    public Plan plan(List<DecodedOffer> offers, List<AppJobPair> jobs, int maxStock, String unixUser) {
 
         List<OfferAcceptor> acceptors = new ArrayList<>();
-        List<Protos.Offer> toStock = new ArrayList<>();
+        List<DecodedOffer> toStock = new ArrayList<>();
 
         if (!resourceSufficient(offers, jobs)) {
-            for (Protos.Offer offer : offers) {
+            for (DecodedOffer offer : offers) {
                 if (toStock.size() < maxStock) {
                     toStock.add(offer);
                 } else {
@@ -186,9 +186,7 @@ public class NaivePlanner implements Planner {
         List<OfferAcceptor> trueAcceptors = new ArrayList<>();
         for (OfferAcceptor acceptor : acceptors) {
             if (acceptor.getJobs().isEmpty() && toStock.size() < maxStock) {
-                for (Protos.Offer offer : acceptor.getOffers()) {
-                    toStock.add(offer);
-                }
+                toStock.addAll(acceptor.getOffers());
             } else {
                 trueAcceptors.add(acceptor);
             }
@@ -28,17 +28,17 @@ import java.util.stream.Collectors;
 
 public class OfferAcceptor {
     private final Protos.SlaveID slaveID;
-    private final List<Protos.Offer> offers = new ArrayList<>();
+    private final List<DecodedOffer> offers = new ArrayList<>();
     private final List<Protos.Offer.Operation> operations = new ArrayList<>();
     private final List<Job> jobs = new ArrayList<>();
 
-    public OfferAcceptor(Protos.Offer offer) {
-        this.slaveID = Objects.requireNonNull(offer.getSlaveId());
+    public OfferAcceptor(DecodedOffer offer) {
+        this.slaveID = Objects.requireNonNull(offer.offer().getSlaveId());
         this.offers.add(offer);
     }
 
-    public void addOffer(Protos.Offer offer) {
-        if (!this.slaveID.getValue().equals(offer.getSlaveId().getValue())) {
+    public void addOffer(DecodedOffer offer) {
+        if (!this.slaveID.getValue().equals(offer.slaveId())) {
             throw new AssertionError("It's bug: adding " + offer + " to " + this.slaveID.getValue());
         }
         offers.add(offer);
@@ -56,27 +56,38 @@ public class OfferAcceptor {
         jobs.add(job);
     }
 
+    // Drops the task of the job, e.g. killed after planning
+    public void removeJob(Job job) {
+        for (int i = 0; i < jobs.size(); i++) {
+            if (jobs.get(i) == job) {
+                jobs.remove(i);
+                operations.remove(i);
+                return;
+            }
+        }
+    }
+
     public Resource totalResource() {
         Resource resource = new Resource(0, 0, 0);
-        for (Protos.Offer offer : offers) {
-            resource.merge(ResourceConstructor.decode(offer.getResourcesList()));
+        for (DecodedOffer offer : offers) {
+            resource.merge(offer.resource());
         }
         return resource;
     }
 
     public void acceptOffers(SchedulerDriver driver, Protos.Filters filters) {
-        driver.acceptOffers(offers.stream().map(offer -> offer.getId()).collect(Collectors.toList()),
+        driver.acceptOffers(offers.stream().map(offer -> offer.offer().getId()).collect(Collectors.toList()),
                 operations, filters);
     }
 
     public int declineOffer(SchedulerDriver driver, Protos.Filters filters) {
-        for (Protos.Offer offer : offers) {
-            driver.declineOffer(offer.getId(), filters);
+        for (DecodedOffer offer : offers) {
+            driver.declineOffer(offer.offer().getId(), filters);
         }
         return offers.size();
     }
 
-    public List<Protos.Offer> getOffers() {
+    public List<DecodedOffer> getOffers() {
         return offers;
     }
 
@@ -89,10 +100,10 @@ public class OfferAcceptor {
     }
 
     public void verify() {
-        for (Protos.Offer offer : offers) {
-            if (!offer.getSlaveId().getValue().equals(slaveID.getValue())) {
+        for (DecodedOffer offer : offers) {
+            if (!offer.slaveId().equals(slaveID.getValue())) {
                 throw new AssertionError("Different Slave ID in single offer acceptor ("
-                        + slaveID.getValue() + "):\t" + offer.getSlaveId().getValue());
+                        + slaveID.getValue() + "):\t" + offer.slaveId());
             }
         }
         if (operations.size() != jobs.size()) {
@@ -17,7 +17,6 @@
 package io.github.retz.planner;
 
 import io.github.retz.protocol.data.Job;
-import org.apache.mesos.Protos;
 
 import java.util.List;
 import java.util.Objects;
@@ -26,11 +25,11 @@ import java.util.stream.Collectors;
 public class Plan {
     private List<OfferAcceptor> offerAcceptors;
     private List<Job> toKeep;
-    private List<Protos.Offer> toStock;
+    private List<DecodedOffer> toStock;
 
     public Plan(List<OfferAcceptor> offerAcceptors,
          List<Job> toKeep,
-         List<Protos.Offer> toStock) {
+         List<DecodedOffer> toStock) {
         this.offerAcceptors = Objects.requireNonNull(offerAcceptors);
         this.toKeep = Objects.requireNonNull(toKeep);
         this.toStock = Objects.requireNonNull(toStock);
@@ -44,7 +43,7 @@ public class Plan {
         return toKeep;
     }
 
-    public List<Protos.Offer> getToStock() {
+    public List<DecodedOffer> getToStock() {
         return toStock;
     }
 
@@ -17,7 +17,6 @@
 package io.github.retz.planner;
 
 import io.github.retz.protocol.data.Job;
-import org.apache.mesos.Protos;
 
 import java.io.IOException;
 import java.util.List;
@@ -29,5 +28,5 @@ public interface Planner {
     // TODO: make useGPU and maxStock configuration of each instance
     List<AppJobPair> filter(List<Job> jobs, List<Job> cancel, boolean useGPU) throws IOException;
 
-    Plan plan(List<Protos.Offer> offers, List<AppJobPair> jobs, int maxStock, String unixUser) throws IOException;
+    Plan plan(List<DecodedOffer> offers, List<AppJobPair> jobs, int maxStock, String unixUser) throws IOException;
 }
\ No newline at end of file
@@ -0,0 +1,90 @@
+/**
+ *    Retz
+ *    Copyright (C) 2016-2017 Nautilus Technologies, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.github.retz.scheduler;
+
+import io.github.retz.misc.LruMap;
+import io.github.retz.protocol.data.Application;
+import org.apache.mesos.Protos;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+// LRU cache of applications by appid. Entries older than maxStaleness are reloaded so
+// that changes made by other servers sharing the database are seen eventually; changes
+// made through this server invalidate the entry immediately.
+final class ApplicationCache {
+    private final int maxSize;
+    private final long maxStalenessNanos;
+    private final Map<String, Entry> entries;
+
+    ApplicationCache(int maxSize, int maxStalenessSeconds) {
+        this.maxSize = maxSize;
+        this.maxStalenessNanos = TimeUnit.SECONDS.toNanos(maxStalenessSeconds);
+        this.entries = new LruMap<>(maxSize);
+    }
+
+    synchronized Optional<Application> get(String appid) {
+        if (maxSize == 0) {
+            return Optional.empty();
+        }
+        Entry entry = entries.get(appid);
+        if (entry == null || System.nanoTime() - entry.loaded > maxStalenessNanos) {
+            return Optional.empty();
+        }
+        return Optional.of(entry.application);
+    }
+
+    synchronized void put(Application application) {
+        if (maxSize > 0) {
+            entries.put(application.getAppid(), new Entry(application));
+        }
+    }
+
+    synchronized void invalidate(String appid) {
+        entries.remove(appid);
+    }
+
+    // Returns the container info of the application, built at most once per cached instance
+    Protos.ContainerInfo containerInfo(Application application, Function<Application, Protos.ContainerInfo> builder) {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(application.getAppid());
+        }
+        if (entry == null || entry.application != application) {
+            return builder.apply(application);
+        }
+        synchronized (entry) {
+            if (entry.containerInfo == null) {
+                entry.containerInfo = builder.apply(application);
+            }
+            return entry.containerInfo;
+        }
+    }
+
+    private static final class Entry {
+        private final Application application;
+        private final long loaded;
+        private Protos.ContainerInfo containerInfo;
+
+        Entry(Application application) {
+            this.application = application;
+            this.loaded = System.nanoTime();
+        }
+    }
+}
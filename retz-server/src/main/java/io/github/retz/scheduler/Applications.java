@@ -16,7 +16,7 @@
  */
 package io.github.retz.scheduler;
 
-import io.github.retz.db.Database;
+import io.github.retz.db.JobStores;
 import io.github.retz.protocol.data.*;
 import org.apache.mesos.Protos;
 import org.slf4j.Logger;
@@ -30,33 +30,70 @@ import java.util.Optional;
 public final class Applications {
     private static final Logger LOG = LoggerFactory.getLogger(Applications.class);
 
+    private static ApplicationCache cache = new ApplicationCache(
+            ServerConfiguration.DEFAULT_APP_CACHE_SIZE, ServerConfiguration.DEFAULT_APP_CACHE_MAX_STALENESS);
+
     private Applications() {
     }
 
+    public static void configure(ServerConfiguration config) {
+        LOG.info("Application cache size={}, max staleness={}s",
+                config.getAppCacheSize(), config.getAppCacheMaxStaleness());
+        cache = new ApplicationCache(config.getAppCacheSize(), config.getAppCacheMaxStaleness());
+    }
+
     public static Optional<Application> get(String appName) throws IOException {
-        return Database.getInstance().getApplication(appName);
+        Optional<Application> cached = cache.get(appName);
+        if (cached.isPresent()) {
+            return cached;
+        }
+        Optional<Application> app = JobStores.get().getApplication(appName);
+        app.ifPresent(cache::put);
+        return app;
+    }
+
+    // Cached or read from replica, which may be stale; not to be used in scheduling
+    public static Optional<Application> peek(String appName) throws IOException {
+        Optional<Application> cached = cache.get(appName);
+        if (cached.isPresent()) {
+            return cached;
+        }
+        return JobStores.get().getApplication(appName, true);
     }
 
     public static boolean load(Application application) throws IOException {
-        return Database.getInstance().addApplication(application);
+        try {
+            return JobStores.get().addApplication(application);
+        } finally {
+            cache.invalidate(application.getAppid());
+        }
     }
 
     @Deprecated
     public static void unload(String appName) throws IOException {
         // Volumes are destroyed lazily
         LOG.info("deleting {}", appName);
-        Database.getInstance().safeDeleteApplication(appName);
+        try {
+            JobStores.get().safeDeleteApplication(appName);
+        } finally {
+            cache.invalidate(appName);
+        }
     }
 
     public static List<Application> getAll() throws IOException {
-        return Database.getInstance().getAllApplications();
+        return JobStores.get().getAllApplications();
     }
 
     public static List<Application> getAll(String id) throws IOException {
-        return Database.getInstance().getAllApplications(id);
+        return JobStores.get().getAllApplications(id);
     }
 
+    // Built once per cached application, as TaskBuilder calls this for every task
     public static Protos.ContainerInfo appToContainerInfo(Application application) {
+        return cache.containerInfo(application, Applications::buildContainerInfo);
+    }
+
+    private static Protos.ContainerInfo buildContainerInfo(Application application) {
         Container container = application.container();
         DockerContainer c = (DockerContainer) container;
 
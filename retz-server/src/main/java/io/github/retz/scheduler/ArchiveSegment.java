@@ -0,0 +1,53 @@
+/**
+ *    Retz
+ *    Copyright (C) 2016-2017 Nautilus Technologies, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.github.retz.scheduler;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+// Append-only file of archived jobs as JSON lines in gzip. Each append is a
+// separate gzip member, so a file cut by crash is readable (e.g. with zcat)
+// up to the last complete append.
+final class ArchiveSegment {
+    private final Path path;
+
+    ArchiveSegment(Path dir, long startedAt) {
+        this.path = dir.resolve("jobs-archive-" + startedAt + ".json.gz");
+    }
+
+    Path path() {
+        return path;
+    }
+
+    void append(List<String> jsons) throws IOException {
+        Files.createDirectories(path.getParent());
+        try (Writer writer = new OutputStreamWriter(new GZIPOutputStream(
+                Files.newOutputStream(path, StandardOpenOption.CREATE, StandardOpenOption.APPEND)), StandardCharsets.UTF_8)) {
+            for (String json : jsons) {
+                writer.write(json);
+                writer.write('\n');
+            }
+        }
+    }
+}
@@ -16,19 +16,45 @@
  */
 package io.github.retz.scheduler;
 
-import io.github.retz.db.Database;
+import io.github.retz.cli.TimestampHelper;
+import io.github.retz.db.JobStore;
+import io.github.retz.db.JobStores;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Optional;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+// Deletes (or archives) old jobs in chunks of chunkSize old jobs in order of id, one
+// transaction per chunk, sleeping between chunks to keep the deletion rate under
+// rowsPerSecond. Ranges of ids without old jobs are skipped by the chunk query. Only one collection
+// runs at a time, whether scheduled here or invoked from AdminConsole.
 public class GarbageJobCollector implements Runnable {
     private static final Logger LOG = LoggerFactory.getLogger(GarbageJobCollector.class);
-    private static boolean on = true;
+    private static volatile boolean on = true;
     private static final ScheduledExecutorService SCHEDULER = Executors.newScheduledThreadPool(1);
 
+    private static final AtomicBoolean RUNNING = new AtomicBoolean(false);
+    private static volatile boolean stopRequested = false;
+    private static volatile int chunkSize = 1000;
+    private static volatile int rowsPerSecond = 5000;
+    private static volatile boolean archive = false;
+    private static volatile Optional<Path> archiveDir = Optional.empty();
+
+    // Progress of the running or last collection
+    private static volatile long startedAt = 0;
+    private static volatile long duration = 0;
+    private static volatile long rowsDeleted = 0;
+    private static volatile long backlog = 0;
+    private static volatile long totalRowsDeleted = 0;
+
     private final int leeway;
     private final int interval;
     GarbageJobCollector(int leeway, int interval) {
@@ -37,9 +63,9 @@ public class GarbageJobCollector implements Runnable {
     }
     @Override
     public void run() {
-        LOG.debug("beep! on={}, leeway={}", true, leeway);
+        LOG.debug("beep! on={}, leeway={}", on, leeway);
         try {
-            Database.getInstance().deleteOldJobs(leeway);
+            collect(leeway);
         } catch (Throwable t) {
             LOG.warn(t.toString(), t);
         }
@@ -47,6 +73,14 @@ public class GarbageJobCollector implements Runnable {
             SCHEDULER.schedule(new GarbageJobCollector(leeway, interval), interval, TimeUnit.SECONDS);
         }
     }
+
+    static void configure(int chunk, int rate, boolean archiveJobs, Optional<String> dir) {
+        chunkSize = chunk;
+        rowsPerSecond = rate;
+        archive = archiveJobs;
+        archiveDir = dir.map(Paths::get);
+    }
+
     static void start(int leeway, int interval) {
         LOG.info("Starting garbage job collector with leeway={}s, interval={}s", leeway, interval);
         SCHEDULER.schedule(new GarbageJobCollector(leeway, interval), interval, TimeUnit.SECONDS);
@@ -54,5 +88,143 @@ public class GarbageJobCollector implements Runnable {
 
     static void stop() {
         on = false;
+        stopRequested = true;
+    }
+
+    // Returns false if another collection is running, or this one is stopped before completion
+    public static boolean collect(int leeway) throws IOException {
+        if (!begin()) {
+            return false;
+        }
+        return collectBegun(leeway);
+    }
+
+    // Starts a collection on the collector thread and returns at once, false if another
+    // collection is running; progress is reported by the methods below
+    public static boolean startCollection(int leeway) {
+        if (!begin()) {
+            return false;
+        }
+        SCHEDULER.execute(() -> {
+            try {
+                collectBegun(leeway);
+            } catch (Throwable t) {
+                LOG.warn(t.toString(), t);
+            }
+        });
+        return true;
+    }
+
+    private static boolean begin() {
+        if (!RUNNING.compareAndSet(false, true)) {
+            LOG.info("Garbage job collection is already running");
+            return false;
+        }
+        stopRequested = false;
+        startedAt = System.currentTimeMillis();
+        duration = 0;
+        rowsDeleted = 0;
+        backlog = 0;
+        return true;
+    }
+
+    private static boolean collectBegun(int leeway) throws IOException {
+        try {
+            return collect(System.currentTimeMillis() - leeway * 1000L);
+        } finally {
+            duration = System.currentTimeMillis() - startedAt;
+            RUNNING.set(false);
+            LOG.info("Garbage job collection deleted {} jobs in {}ms", rowsDeleted, duration);
+        }
+    }
+
+    private static boolean collect(long before) throws IOException {
+        Optional<JobStore.JobIdRange> range = JobStores.get().getOldJobIdRange(before);
+        if (!range.isPresent()) {
+            return true;
+        }
+        LOG.info("Deleting {} old jobs finished before {} (id {} to {})...",
+                range.get().count(), TimestampHelper.toTimestamp(before), range.get().min(), range.get().max());
+        backlog = range.get().count();
+        Optional<ArchiveSegment> segment = Optional.empty();
+        if (archive && archiveDir.isPresent()) {
+            segment = Optional.of(new ArchiveSegment(archiveDir.get(), startedAt));
+            LOG.info("Archiving old jobs to {}", segment.get().path());
+        }
+        int after = range.get().min() - 1;
+        while (true) {
+            if (stopRequested) {
+                LOG.info("Garbage job collection stopped with {} jobs left", backlog);
+                return false;
+            }
+            long chunkStart = System.currentTimeMillis();
+            Optional<Integer> end = JobStores.get().getOldJobChunkEnd(before, after, chunkSize);
+            if (!end.isPresent()) {
+                break;
+            }
+            int from = after + 1;
+            int to = end.get();
+            after = to;
+            int deleted;
+            if (archive) {
+                List<String> archived = JobStores.get().archiveOldJobs(before, from, to);
+                if (segment.isPresent() && !archived.isEmpty()) {
+                    // Already committed to jobs_archive; nothing is lost if this fails
+                    segment.get().append(archived);
+                }
+                deleted = archived.size();
+            } else {
+                deleted = JobStores.get().deleteOldJobs(before, from, to);
+            }
+            rowsDeleted += deleted;
+            totalRowsDeleted += deleted;
+            backlog = Math.max(0, backlog - deleted);
+            duration = System.currentTimeMillis() - startedAt;
+
+            // Yield to scheduler transactions, long enough to keep the rate
+            long wait = deleted * 1000L / rowsPerSecond - (System.currentTimeMillis() - chunkStart);
+            try {
+                Thread.sleep(Math.max(1, wait));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Asks running collection to stop after the current chunk; returns false if none is running
+    public static boolean stopCollection() {
+        if (!RUNNING.get()) {
+            return false;
+        }
+        stopRequested = true;
+        return true;
+    }
+
+    public static boolean isRunning() {
+        return RUNNING.get();
+    }
+
+    public static long startedAt() {
+        return startedAt;
+    }
+
+    // Milliseconds the running or last collection has taken so far
+    public static long duration() {
+        return RUNNING.get() ? System.currentTimeMillis() - startedAt : duration;
+    }
+
+    public static long rowsDeleted() {
+        return rowsDeleted;
+    }
+
+    // Estimate of old jobs left, as counted at the start of the collection
+    public static long backlog() {
+        return backlog;
+    }
+
+    public static long totalRowsDeleted() {
+        return totalRowsDeleted;
     }
 }
@@ -17,7 +17,7 @@
 package io.github.retz.scheduler;
 
 import io.github.retz.cli.TimestampHelper;
-import io.github.retz.db.Database;
+import io.github.retz.db.JobStores;
 import io.github.retz.misc.LogUtil;
 import io.github.retz.protocol.data.Job;
 import io.github.retz.protocol.data.ResourceQuantity;
@@ -28,6 +28,7 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.UncheckedIOException;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -44,7 +45,7 @@ public final class JobQueue {
     static {
         int latest;
         try {
-            latest = Database.getInstance().getLatestJobId();
+            latest = JobStores.get().getLatestJobId();
         } catch (IOException e) {
             throw new UncheckedIOException(e);
         }
@@ -54,8 +55,8 @@ public final class JobQueue {
     private JobQueue() {
     }
 
-    public static List<Job> list(String user, Job.JobState state, Optional<String> tag, int limit) throws IOException {
-        return Database.getInstance().listJobs(user, state, tag, limit);
+    public static List<String> listJson(String user, Job.JobState state, Optional<String> tag, Optional<Integer> afterId, int limit) throws IOException {
+        return JobStores.get().listJobsJson(user, state, tag, afterId, limit);
     }
 
     // As this is issued by server without any transaction, this id may have
@@ -64,9 +65,18 @@ public final class JobQueue {
         return COUNTER.getAndIncrement(); // Just have to be unique
     }
 
+    // Issues ids from the returned one to it + count - 1
+    public static int issueJobIds(int count) {
+        return COUNTER.getAndAdd(count);
+    }
+
     public static void push(Job job) throws IOException {
         // TODO: set a cap of queue
-        Database.getInstance().safeAddJob(job);
+        JobStores.get().safeAddJob(job);
+    }
+
+    public static void pushAll(String appid, List<Job> jobs) throws IOException {
+        JobStores.get().safeAddJobs(appid, jobs);
     }
 
     public static void cancelAll(List<Job> jobs) {
@@ -77,7 +87,7 @@ public final class JobQueue {
             }
         }
         try {
-            Database.getInstance().updateJobs(jobs);
+            JobStores.get().updateJobs(jobs);
         } catch (IOException e) {
             throw new UncheckedIOException(e);
         }
@@ -86,7 +96,7 @@ public final class JobQueue {
     public static Optional<Job> cancel(int id, String reason) throws IOException, JobNotFoundException {
         Optional<Job> maybeJob = getJob(id);
         if (maybeJob.isPresent()) {
-            Database.getInstance().updateJob(id, (job -> {
+            JobStores.get().updateJob(id, (job -> {
                 if (job.state() == Job.JobState.KILLED || job.state() == Job.JobState.FINISHED) {
                     return Optional.empty();
                 }
@@ -99,42 +109,51 @@ public final class JobQueue {
         return maybeJob;
     }
 
+    public static List<Job> cancelAll(String owner, Collection<Job.JobState> states, Optional<String> tag,
+                                      Optional<Integer> fromId, Optional<Integer> toId, String reason) throws IOException {
+        List<Job> killed = JobStores.get().killJobs(owner, states, tag, fromId, toId, reason);
+        LOG.info("{} jobs of {} have been canceled", killed.size(), owner);
+        return killed;
+    }
+
     public static List<Job> findAll(List<String> orderBy, int limit) throws IOException {
-        return Database.getInstance().findAll(orderBy, limit);
+        return JobStores.get().findAll(orderBy, limit);
     }
 
     // @doc take as much jobs as in the max cpu/memMB
     public static List<Job> findFit(List<String> orderBy, ResourceQuantity total) throws IOException {
-        return Database.getInstance().findFit(orderBy, total.getCpu(), total.getMemMB());
+        return JobStores.get().findFit(orderBy, total.getCpu(), total.getMemMB());
     }
 
     public static List<Job> queued(int limit) throws IOException {
-        return Database.getInstance().queued(limit);
+        return JobStores.get().queued(limit);
     }
 
     public static synchronized Optional<Job> getJob(int id) throws IOException {
-        return Database.getInstance().getJob(id);
+        return JobStores.get().getJob(id);
     }
 
     public static synchronized void clear() throws IOException {
-        Database.getInstance().deleteAllJob(Integer.MAX_VALUE);
+        JobStores.get().deleteAllJob(Integer.MAX_VALUE);
     }
 
     public static int size() throws IOException {
-        return Database.getInstance().countJobs();
+        return JobStores.get().countJobs();
     }
 
-    public static void starting(Job job, Optional<String> url, String taskId) throws IOException {
+    // False if the job is not to be launched, as it is no longer queued
+    public static boolean starting(Job job, Optional<String> url, String taskId) throws IOException {
         try {
-            Database.getInstance().setJobStarting(job.id(), url, taskId);
+            return JobStores.get().setJobStarting(job.id(), url, taskId);
         } catch (JobNotFoundException e) {
             LOG.warn("JobQueue.starting() failed", e);
+            return false;
         }
     }
 
     static void started(String taskId, String slaveId, Optional<String> maybeUrl) throws IOException, JobNotFoundException {
-        Optional<Job> maybeJob = Database.getInstance().getJobFromTaskId(taskId);
-        Database.getInstance().updateJob(maybeJob.get().id(), job -> {
+        Optional<Job> maybeJob = JobStores.get().getJobFromTaskId(taskId);
+        JobStores.get().updateJob(maybeJob.get().id(), job -> {
             // the state of job is already started; don't update timestamp
             String ts = (job.state() == Job.JobState.STARTED) ? job.started() : TimestampHelper.now();
             job.started(taskId, slaveId, maybeUrl, ts);
@@ -143,35 +162,29 @@ public final class JobQueue {
     }
 
     public static Optional<Job> getFromTaskId(String taskId) throws IOException {
-        return Database.getInstance().getJobFromTaskId(taskId);
+        return JobStores.get().getJobFromTaskId(taskId);
     }
 
-    public static void retry(String taskId, String reason) throws IOException, JobNotFoundException {
-        Optional<Job> maybeJob = Database.getInstance().getJobFromTaskId(taskId);
-        if (maybeJob.isPresent()) {
-            int threshold = 5;
-            Database.getInstance().updateJob(maybeJob.get().id(), job -> {
-                if (job.retry() > threshold) {
-                    String msg = String.format("Giving up Job retry: %d / id=%d, last reason='%s'", threshold, job.id(),
-                            reason);
-                    LOG.warn(msg);
-                    job.killed(TimestampHelper.now(), Optional.empty(), msg);
-
-                } else {
-                    job.doRetry();
-                    LOG.info("Scheduled retry {}/{} of Job(taskId={}), reason='{}'", job.retry(), threshold,
-                            job.taskId(), reason);
-                }
-                return Optional.of(job);
-            });
+    static void retryOrGiveUp(Job job, String reason) {
+        int threshold = 5;
+        if (job.retry() > threshold) {
+            String msg = String.format("Giving up Job retry: %d / id=%d, last reason='%s'", threshold, job.id(),
+                    reason);
+            LOG.warn(msg);
+            job.killed(TimestampHelper.now(), Optional.empty(), msg);
+
+        } else {
+            job.doRetry();
+            LOG.info("Scheduled retry {}/{} of Job(taskId={}), reason='{}'", job.retry(), threshold,
+                    job.taskId(), reason);
         }
     }
 
     // Whether it's success, fail, or killed
     static void finished(String taskId, Optional<String> maybeUrl, int ret, String finished) throws IOException, JobNotFoundException {
-        Optional<Job> maybeJob = Database.getInstance().getJobFromTaskId(taskId);
+        Optional<Job> maybeJob = JobStores.get().getJobFromTaskId(taskId);
         if (maybeJob.isPresent()) {
-            Database.getInstance().updateJob(maybeJob.get().id(), job -> {
+            JobStores.get().updateJob(maybeJob.get().id(), job -> {
                 job.finished(finished, maybeUrl, ret);
                 return Optional.of(job);
             });
@@ -179,19 +192,8 @@ public final class JobQueue {
         }
     }
 
-    public static void failed(String taskId, Optional<String> maybeUrl, String msg) throws IOException, JobNotFoundException {
-        Optional<Job> maybeJob = Database.getInstance().getJobFromTaskId(taskId);
-        if (maybeJob.isPresent()) {
-            Database.getInstance().updateJob(maybeJob.get().id(), job -> {
-                job.killed(TimestampHelper.now(), maybeUrl, msg);
-                return Optional.of(job);
-            });
-            LOG.info("Job id={} has failed: {}", maybeJob.get().id(), msg);
-        }
-    }
-
-    public static int countRunning() throws IOException {
-        return Database.getInstance().countRunning();
+    public static int countRunning() {
+        return JobStores.get().countRunning();
     }
 
 }
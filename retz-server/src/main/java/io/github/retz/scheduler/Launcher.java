@@ -16,7 +16,7 @@
  */
 package io.github.retz.scheduler;
 
-import io.github.retz.db.Database;
+import io.github.retz.db.JobStores;
 import io.github.retz.jmx.RetzJmxServer;
 import io.github.retz.misc.LogUtil;
 import io.github.retz.web.WebConsole;
@@ -66,7 +66,10 @@ public final class Launcher {
             if (conf.fileConfig.isTLS()) {
                 LOG.warn("Make sure a valid certificate is being used or RetzExecutor may not work.");
             }
-            Database.getInstance().init(conf.getServerConfig());
+            JobStores.init(conf.getServerConfig());
+            Applications.configure(conf.getServerConfig());
+            GarbageJobCollector.configure(conf.getServerConfig().getGcChunkSize(), conf.getServerConfig().getGcRowsPerSecond(),
+                    conf.getServerConfig().getGcArchive(), conf.getServerConfig().getGcArchiveDir());
             if (conf.getServerConfig().getGc()) {
                 GarbageJobCollector.start(conf.getServerConfig().getGcLeeway(), conf.getServerConfig().getGcInterval());
             } else {
@@ -83,6 +86,8 @@ public final class Launcher {
         RetzScheduler scheduler;
 
         try {
+            Stanchion.setStatusLanes(conf.getServerConfig().getStatusLanes());
+            StanchionStats.configure(conf.getServerConfig().getStanchionSlowTaskThreshold());
             scheduler = new RetzScheduler(conf, fw);
         } catch (Throwable t) {
             LOG.error("Cannot initialize scheduler", t);
@@ -116,7 +121,7 @@ public final class Launcher {
 
         WebConsole.stop(); // Stop web server
         GarbageJobCollector.stop();
-        Database.getInstance().stop();
+        JobStores.get().stop();
         RetzJmxServer.stop();
 
         return (status == Protos.Status.DRIVER_STOPPED ? 0 : 255);
@@ -143,7 +148,7 @@ public final class Launcher {
 
         Optional<String> fid;
         try {
-            fid = Database.getInstance().getFrameworkId();
+            fid = JobStores.get().getFrameworkId();
         } catch (IOException e) {
             throw new UncheckedIOException(e);
         }
@@ -23,10 +23,10 @@ import org.apache.mesos.SchedulerDriver;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 public class LocalSchedulerDriver implements SchedulerDriver {
@@ -78,9 +78,9 @@ public class LocalSchedulerDriver implements SchedulerDriver {
                 .setId("mesosMaster")
                 .setIp(10)
                 .build();
-        declined = new ArrayList<>();
-        accepted = new ArrayList<>();
-        tasks = new ArrayList<>();
+        declined = new CopyOnWriteArrayList<>();
+        accepted = new CopyOnWriteArrayList<>();
+        tasks = new CopyOnWriteArrayList<>();
     }
 
     public Protos.Status start() {
@@ -166,47 +166,14 @@ public class LocalSchedulerDriver implements SchedulerDriver {
     public Protos.Status acceptOffers(Collection<Protos.OfferID> offerIds,
                                       Collection<Protos.Offer.Operation> operations,
                                       Protos.Filters filters) {
-        // TODO: this function must be implemented to test result fetching (do we support Docker as well?)
-        // TODO: wonder NotImplementedException is suitable as this is originally for refleciton.
-        throw new RuntimeException("Not implemented yet");
-//        this.accepted.addAll(offerIds);
-//        for (Protos.OfferID id : offerIds) {
-//            Protos.Offer.Builder ob = offers.get(id).toBuilder();
-//
-//
-//            for (Protos.Offer.Operation op : operations) {
-//                switch (op.getType().getNumber()) {
-//                    case Protos.Offer.Operation.Type.LAUNCH_VALUE: {
-//                        tasks.addAll(op.getLaunch().getTaskInfosList());
-//                        break;
-//                    }
-//                    case Protos.Offer.Operation.Type.RESERVE_VALUE: {
-//                        // TODO: aggregate against same principal/roles
-//                        reserved.addAll(op.getReserve().getResourcesList());
-//                        break;
-//                    }
-//                    case Protos.Offer.Operation.Type.CREATE_VALUE: {
-//                        volumes.addAll(op.getCreate().getVolumesList());
-//                        break;
-//                    }
-//                    case Protos.Offer.Operation.Type.DESTROY_VALUE: {
-//                        for (Protos.Resource r : op.getDestroy().getVolumesList()) {
-//                            volumes.remove(r);
-//                        }
-//                        break;
-//                    }
-//                    case Protos.Offer.Operation.Type.UNRESERVE_VALUE: {
-//                        for (Protos.Resource r : op.getUnreserve().getResourcesList()) {
-//                            reserved.remove(r);
-//                        }
-//                        break;
-//                    }
-//                    default:
-//                        fail();
-//                }
-//            }
-//        }
-//        return Protos.Status.DRIVER_RUNNING;
+        // Tasks are only recorded as launched and never executed; see dummyTaskUpdate()
+        accepted.addAll(offerIds);
+        for (Protos.Offer.Operation op : operations) {
+            if (op.getType() == Protos.Offer.Operation.Type.LAUNCH) {
+                tasks.addAll(op.getLaunch().getTaskInfosList());
+            }
+        }
+        return Protos.Status.DRIVER_RUNNING;
     }
 
     public Protos.Status declineOffer(Protos.OfferID offerID, Protos.Filters filters) {
@@ -0,0 +1,256 @@
+/**
+ *    Retz
+ *    Copyright (C) 2016-2017 Nautilus Technologies, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.github.retz.scheduler;
+
+import io.github.retz.planner.DecodedOffer;
+import io.github.retz.protocol.data.Job;
+import io.github.retz.protocol.data.ResourceQuantity;
+
+import java.util.*;
+import java.util.function.LongSupplier;
+
+// Offers kept by the scheduler between planning passes. Offers are grouped per agent so
+// that several offers of one agent are planned and accepted together, and expire after
+// TTL. Agents are indexed by their total CPU and memory, so that a job can be matched with
+// an agent that fits it without handing the whole pool to the planner.
+final class OfferPool {
+    private static final Comparator<Agent> BY_SIZE = Comparator.<Agent>comparingInt(a -> a.cpu)
+            .thenComparingInt(a -> a.memMB)
+            .thenComparing(a -> a.id);
+
+    private final Map<String, Agent> agents = new HashMap<>();
+    private final TreeSet<Agent> index = new TreeSet<>(BY_SIZE);
+    // offer id => agent id, for rescinded offers
+    private final Map<String, String> owners = new HashMap<>();
+    // Arrival time of offers taken out for planning, to keep it when they come back
+    private final Map<String, Long> taken = new HashMap<>();
+    private final long ttlMillis;
+    private final LongSupplier clock;
+
+    OfferPool(int ttlSeconds) {
+        this(ttlSeconds, System::currentTimeMillis);
+    }
+
+    OfferPool(int ttlSeconds, LongSupplier clock) {
+        this.ttlMillis = ttlSeconds * 1000L;
+        this.clock = Objects.requireNonNull(clock);
+    }
+
+    // Adds fresh offers from Mesos
+    synchronized void add(List<DecodedOffer> offers) {
+        long now = clock.getAsLong();
+        for (DecodedOffer offer : offers) {
+            put(new Stocked(offer, now));
+        }
+    }
+
+    // Puts back offers the planner decided to stock, with the time they first arrived
+    synchronized void restock(List<DecodedOffer> offers) {
+        long now = clock.getAsLong();
+        for (DecodedOffer offer : offers) {
+            Long since = taken.get(offer.id());
+            put(new Stocked(offer, since == null ? now : since));
+        }
+        // Offers not put back have been accepted or declined
+        taken.clear();
+    }
+
+    // Takes all offers out for planning
+    synchronized List<DecodedOffer> takeAll() {
+        List<DecodedOffer> offers = new ArrayList<>();
+        for (Agent agent : new ArrayList<>(agents.values())) {
+            offers.addAll(take(agent));
+        }
+        return offers;
+    }
+
+    // Takes out offers of the smallest agents each job fits in, in order of jobs. Jobs that fit
+    // in the rest of an agent already taken don't take another agent; jobs that fit nowhere
+    // take nothing.
+    synchronized List<DecodedOffer> takeFor(List<Job> jobs) {
+        List<DecodedOffer> offers = new ArrayList<>();
+        List<int[]> rests = new ArrayList<>();
+        for (Job job : jobs) {
+            int cpu = job.resources().getCpu();
+            int memMB = job.resources().getMemMB();
+            boolean fit = false;
+            for (int[] rest : rests) {
+                if (rest[0] >= cpu && rest[1] >= memMB) {
+                    rest[0] -= cpu;
+                    rest[1] -= memMB;
+                    fit = true;
+                    break;
+                }
+            }
+            if (fit) {
+                continue;
+            }
+            Agent agent = ceiling(cpu, memMB);
+            if (agent != null) {
+                rests.add(new int[]{agent.cpu - cpu, agent.memMB - memMB});
+                offers.addAll(take(agent));
+            }
+        }
+        return offers;
+    }
+
+    // Removes offers older than TTL and returns them to be declined
+    synchronized List<DecodedOffer> expire() {
+        List<DecodedOffer> expired = new ArrayList<>();
+        long deadline = clock.getAsLong() - ttlMillis;
+        for (Agent agent : new ArrayList<>(agents.values())) {
+            if (agent.oldest() > deadline) {
+                continue;
+            }
+            List<Stocked> keep = new ArrayList<>();
+            for (Stocked s : agent.offers) {
+                if (s.since > deadline) {
+                    keep.add(s);
+                } else {
+                    expired.add(s.offer);
+                }
+            }
+            drop(agent);
+            keep.forEach(this::put);
+        }
+        return expired;
+    }
+
+    // Removes all offers of a lost agent and returns them
+    synchronized List<DecodedOffer> removeAgent(String agentId) {
+        Agent agent = agents.get(agentId);
+        if (agent == null) {
+            return Collections.emptyList();
+        }
+        drop(agent);
+        List<DecodedOffer> offers = new ArrayList<>(agent.offers.size());
+        for (Stocked s : agent.offers) {
+            offers.add(s.offer);
+        }
+        return offers;
+    }
+
+    // Removes a rescinded offer; returns false if it's not in the pool
+    synchronized boolean remove(String offerId) {
+        String agentId = owners.get(offerId);
+        if (agentId == null) {
+            return false;
+        }
+        Agent agent = agents.get(agentId);
+        List<Stocked> keep = new ArrayList<>();
+        for (Stocked s : agent.offers) {
+            if (!s.offer.id().equals(offerId)) {
+                keep.add(s);
+            }
+        }
+        drop(agent);
+        keep.forEach(this::put);
+        return true;
+    }
+
+    synchronized int size() {
+        return owners.size();
+    }
+
+    synchronized ResourceQuantity total() {
+        ResourceQuantity total = new ResourceQuantity();
+        for (Agent agent : agents.values()) {
+            for (Stocked s : agent.offers) {
+                total.add(s.offer.resource().toQuantity());
+            }
+        }
+        total.setNodes(agents.size());
+        return total;
+    }
+
+    // The smallest agent with at least cpu and memMB; O(log n) unless agents with
+    // enough CPU are short of memory
+    private Agent ceiling(int cpu, int memMB) {
+        for (Agent agent : index.tailSet(new Agent("", cpu, memMB), true)) {
+            if (agent.memMB >= memMB) {
+                return agent;
+            }
+        }
+        return null;
+    }
+
+    private void put(Stocked s) {
+        String agentId = s.offer.slaveId();
+        Agent agent = agents.get(agentId);
+        if (agent == null) {
+            agent = new Agent(agentId, 0, 0);
+            agents.put(agentId, agent);
+        } else {
+            // Re-index with new size
+            index.remove(agent);
+        }
+        agent.offers.add(s);
+        agent.cpu += (int) s.offer.resource().cpu();
+        agent.memMB += s.offer.resource().memMB();
+        index.add(agent);
+        owners.put(s.offer.id(), agentId);
+    }
+
+    private List<DecodedOffer> take(Agent agent) {
+        drop(agent);
+        List<DecodedOffer> offers = new ArrayList<>(agent.offers.size());
+        for (Stocked s : agent.offers) {
+            taken.put(s.offer.id(), s.since);
+            offers.add(s.offer);
+        }
+        return offers;
+    }
+
+    private void drop(Agent agent) {
+        index.remove(agent);
+        agents.remove(agent.id);
+        for (Stocked s : agent.offers) {
+            owners.remove(s.offer.id());
+        }
+    }
+
+    private static final class Agent {
+        private final String id;
+        private final List<Stocked> offers = new ArrayList<>();
+        private int cpu;
+        private int memMB;
+
+        Agent(String id, int cpu, int memMB) {
+            this.id = id;
+            this.cpu = cpu;
+            this.memMB = memMB;
+        }
+
+        long oldest() {
+            long oldest = Long.MAX_VALUE;
+            for (Stocked s : offers) {
+                oldest = Math.min(oldest, s.since);
+            }
+            return oldest;
+        }
+    }
+
+    private static final class Stocked {
+        private final DecodedOffer offer;
+        private final long since;
+
+        Stocked(DecodedOffer offer, long since) {
+            this.offer = offer;
+            this.since = since;
+        }
+    }
+}
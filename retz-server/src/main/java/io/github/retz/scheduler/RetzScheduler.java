@@ -18,15 +18,11 @@ package io.github.retz.scheduler;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
-import io.github.retz.cli.TimestampHelper;
-import io.github.retz.db.Database;
-import io.github.retz.mesosc.MesosHTTPFetcher;
+import io.github.retz.db.JobStores;
 import io.github.retz.misc.LogUtil;
 import io.github.retz.planner.*;
-import io.github.retz.planner.spi.Resource;
 import io.github.retz.protocol.data.Job;
 import io.github.retz.protocol.data.ResourceQuantity;
-import io.github.retz.protocol.exception.JobNotFoundException;
 import io.github.retz.web.StatusCache;
 import org.apache.mesos.Protos;
 import org.apache.mesos.Scheduler;
@@ -58,13 +54,15 @@ public class RetzScheduler implements Scheduler {
     private final ResourceQuantity maxJobSize;
     private final Long maxFileSize;
     private final ObjectMapper objectMapper = new ObjectMapper();
-    private final Map<String, Protos.Offer> offerStock = new ConcurrentHashMap<>();
+    private final OfferPool offerPool;
     private final Planner planner;
     private final Protos.Filters filters;
+    private final StatusUpdateJournal statusUpdates;
+    private final SandboxUrlResolver sandboxes;
     private Launcher.Configuration conf;
-    private Protos.FrameworkInfo frameworkInfo;
+    private volatile Protos.FrameworkInfo frameworkInfo;
     private Map<String, List<Protos.SlaveID>> slaves;
-    private Optional<String> master;
+    private volatile Optional<String> master;
 
     public RetzScheduler(Launcher.Configuration conf, Protos.FrameworkInfo frameworkInfo) throws Throwable {
         objectMapper.registerModule(new Jdk8Module());
@@ -73,9 +71,27 @@ public class RetzScheduler implements Scheduler {
         this.frameworkInfo = frameworkInfo;
         this.slaves = new ConcurrentHashMap<>();
         this.filters = Protos.Filters.newBuilder().setRefuseSeconds(conf.getServerConfig().getRefuseSeconds()).build();
+        this.offerPool = new OfferPool(conf.getServerConfig().getOfferTtl());
         maxJobSize = conf.getServerConfig().getMaxJobSize();
         maxFileSize = conf.getServerConfig().getMaxFileSize();
         this.master = Optional.empty();
+        this.statusUpdates = new StatusUpdateJournal(this, conf.getServerConfig().getStatusBatchSize(),
+                conf.getServerConfig().getStatusBatchDelay());
+        this.sandboxes = new SandboxUrlResolver(() -> this.master, () -> this.frameworkInfo.getId().getValue());
+        checkQueueIndex(planner.orderBy());
+    }
+
+    // Custom planners may order jobs by columns that built-in indexes (see
+    // V4__Add_queue_indexes.sql) don't cover, which makes every queue scan a full sort
+    private static void checkQueueIndex(List<String> orderBy) {
+        try {
+            if (!JobStores.get().hasQueueIndex(orderBy)) {
+                LOG.warn("No index on jobs(state, {}) found: scanning queued jobs may be slow. " +
+                        "Consider creating one for the planner", String.join(", ", orderBy));
+            }
+        } catch (IOException e) {
+            LogUtil.error(LOG, "Checking index of jobs table failed", e);
+        }
     }
 
     @Override
@@ -100,8 +116,10 @@ public class RetzScheduler implements Scheduler {
     @Override
     public void offerRescinded(SchedulerDriver driver, Protos.OfferID offerId) {
         LOG.info("Offer rescinded: {}", offerId.getValue());
-        // Hereby offers must be removed from offerStock, instead it's removed at slaveLost() callback.
-        // This is based on an assumption that all offerRescinded calls come with slaveLost().
+        // Offers being planned can't be recalled here; launching on them just fails with TASK_LOST
+        if (offerPool.remove(offerId.getValue())) {
+            updateOfferStats();
+        }
     }
 
     @Override
@@ -130,9 +148,10 @@ public class RetzScheduler implements Scheduler {
                 newMaster, masterInfo.getVersion(), frameworkId.getValue());
         this.master = Optional.of(newMaster);
         StatusCache.updateMaster(newMaster);
+        sandboxes.clear();
         frameworkInfo = frameworkInfo.toBuilder().setId(frameworkId).build();
 
-        Optional<String> oldFrameworkId = Database.getInstance().getFrameworkId();
+        Optional<String> oldFrameworkId = JobStores.get().getFrameworkId();
         if (oldFrameworkId.isPresent()) {
             if (oldFrameworkId.get().equals(frameworkId.getValue())) {
                 // framework exists. nothing to do
@@ -144,7 +163,7 @@ public class RetzScheduler implements Scheduler {
                 driver.stop();
             }
         } else {
-            if (!Database.getInstance().setFrameworkId(frameworkId.getValue())) {
+            if (!JobStores.get().setFrameworkId(frameworkId.getValue())) {
                 LOG.warn("Failed to remember frameworkID...");
             }
         }
@@ -184,6 +203,7 @@ public class RetzScheduler implements Scheduler {
                 .toString();
         this.master = Optional.of(newMaster);
         StatusCache.updateMaster(newMaster);
+        sandboxes.clear();
         LOG.info("Reconnected to master {}", newMaster);
         reconcileAllRunningJobs(driver);
     }
@@ -192,48 +212,23 @@ public class RetzScheduler implements Scheduler {
     public void resourceOffers(SchedulerDriver driver, List<Protos.Offer> offers) {
         LOG.debug("Resource offer: {}", offers.size());
 
-        // Merge fresh offers from Mesos and offers in stock here, declining duplicate offers
-        Stanchion.schedule(() -> {
-            List<Protos.Offer> available = new ArrayList<>();
-            synchronized (offerStock) {
-                // TODO: cleanup this code, optimize for max.stock = 0 case
-                Map<String, List<Protos.Offer>> allOffers = new HashMap<>();
-                for (Protos.Offer offer : offerStock.values()) {
-                    String key = offer.getSlaveId().getValue();
-                    List<Protos.Offer> list = allOffers.computeIfAbsent(key, k -> new ArrayList<>());
-                    list.add(offer);
-                }
-                for (Protos.Offer offer : offers) {
-                    String key = offer.getSlaveId().getValue();
-                    List<Protos.Offer> list = allOffers.computeIfAbsent(key, k -> new ArrayList<>());
-                    list.add(offer);
-                }
-
-                int declined = 0;
-                for (Map.Entry<String, List<Protos.Offer>> e : allOffers.entrySet()) {
-                    if (e.getValue().size() == 1) {
-                        available.add(e.getValue().get(0));
-                    } else {
-                        for (Protos.Offer dup : e.getValue()) {
-                            driver.declineOffer(dup.getId(), filters);
-                            declined += 1;
-                        }
-                    }
-                }
-                if (conf.fileConfig.getMaxStockSize() > 0) {
-                    LOG.info("Offer stock renewal: {} offers available ({} declined from stock)", available.size(), declined);
-                }
-                offerStock.clear();
+        // Merge fresh offers from Mesos and offers in stock here; offers from the same agent
+        // are planned and accepted together
+        Stanchion.schedule(Stanchion.Kind.OFFERS, () -> {
+            declineExpired(driver);
+            offerPool.add(DecodedOffer.decodeAll(offers));
+            List<DecodedOffer> available = offerPool.takeAll();
+            if (conf.fileConfig.getMaxStockSize() > 0) {
+                LOG.info("Offer stock renewal: {} offers available ({} fresh)", available.size(), offers.size());
             }
 
             final List<Job> jobs;
             switch (conf.getServerConfig().getJobQueueType()) {
                 case FIT:
                     ResourceQuantity total = new ResourceQuantity();
-                    for (Protos.Offer offer : available) {
+                    for (DecodedOffer offer : available) {
                         LOG.debug("offer: {}", offer);
-                        Resource resource = ResourceConstructor.decode(offer.getResourcesList());
-                        total.add(resource.toQuantity());
+                        total.add(offer.resource().toQuantity());
                     }
                     total.setNodes(offers.size());
                     // TODO: change findFit to consider not only CPU and Memory, but GPUs and Ports
@@ -255,12 +250,32 @@ public class RetzScheduler implements Scheduler {
     }
 
     public void maybeInvokeNow(SchedulerDriver driver, Job job) {
-        Stanchion.schedule(() -> {
+        maybeInvokeNow(driver, Arrays.asList(job));
+    }
+
+    // Jobs must be sorted by id. One scheduling pass for all jobs, e.g. scheduled in a batch
+    public void maybeInvokeNow(SchedulerDriver driver, List<Job> jobs) {
+        if (jobs.isEmpty()) {
+            return;
+        }
+        Stanchion.schedule(Stanchion.Kind.INVOKE, () -> {
+            // Jobs may have been killed by a task before this pass; only ones still queued
+            // are planned, as read again here
+            List<Job> current = new ArrayList<>();
             try {
+                for (Job job : jobs) {
+                    Optional<Job> latest = JobQueue.getJob(job.id());
+                    if (latest.isPresent() && latest.get().state() == Job.JobState.QUEUED) {
+                        current.add(latest.get());
+                    }
+                }
+                if (current.isEmpty()) {
+                    return;
+                }
                 List<Job> queued = JobQueue.queued(1);
-                // Make sure it's the only job in the queue - otherwise return
+                // Make sure no older job is waiting in the queue - otherwise return
                 // and wait in the queue
-                if (!(queued.size() == 1 && queued.get(0).id() == job.id())) {
+                if (!(queued.size() == 1 && queued.get(0).id() == current.get(0).id())) {
                     return;
                 }
             } catch (Exception e) {
@@ -268,18 +283,18 @@ public class RetzScheduler implements Scheduler {
                 return;
             }
 
-            List<Protos.Offer> available = new ArrayList<>(offerStock.size());
-            synchronized (offerStock) {
-                available.addAll(offerStock.values());
-                offerStock.clear();
-            }
+            declineExpired(driver);
             // Only if the queue is empty, and with offer stock, try job invocation
-            List<Job> jobs = Arrays.asList(job);
-            handleAll(available, jobs, driver);
+            // on agents the jobs fit in
+            List<DecodedOffer> available = offerPool.takeFor(current);
+            if (available.isEmpty()) {
+                return;
+            }
+            handleAll(available, current, driver);
         });
     }
 
-    public void handleAll(List<Protos.Offer> offers, List<Job> jobs, SchedulerDriver driver) throws IOException {
+    public void handleAll(List<DecodedOffer> offers, List<Job> jobs, SchedulerDriver driver) throws IOException {
 
         // TODO: this is fleaky limitation, build this into Planner.plan as a constraint
         // Check if simultaneous jobs exceeded its limit
@@ -287,6 +302,8 @@ public class RetzScheduler implements Scheduler {
         if (running >= conf.fileConfig.getMaxSimultaneousJobs()) {
             LOG.warn("Number of concurrently running jobs has reached its limit: {} >= {} ({})",
                     running, conf.fileConfig.getMaxSimultaneousJobs(), ServerConfiguration.MAX_SIMULTANEOUS_JOBS);
+            offerPool.restock(offers);
+            updateOfferStats();
             return;
         }
 
@@ -304,19 +321,20 @@ public class RetzScheduler implements Scheduler {
         int declined = 0;
         // Accept offers from mesos
         for (OfferAcceptor acceptor : bestPlan.getOfferAcceptors()) {
+            for (Job j : new ArrayList<>(acceptor.getJobs())) {
+                // Update local database, to running
+                if (!JobQueue.starting(j, Optional.empty(), j.taskId())) {
+                    LOG.warn("Job id={} is no longer queued and not launched", j.id());
+                    acceptor.removeJob(j);
+                }
+            }
             if (acceptor.getJobs().isEmpty()) {
                 declined += acceptor.declineOffer(driver, filters);
             } else {
-                for (Job j : acceptor.getJobs()) {
-                    // Update local database, to running
-                    JobQueue.starting(j, Optional.empty(), j.taskId());
-                }
                 acceptor.acceptOffers(driver, filters);
             }
         }
-        for (Protos.Offer offer : bestPlan.getToStock()) {
-            offerStock.put(offer.getSlaveId().getValue(), offer);
-        }
+        offerPool.restock(bestPlan.getToStock());
         LOG.info("{} accepted, {} declined ({} offers back in stock)",
                 bestPlan.getOfferAcceptors().stream().mapToInt(offerAcceptor -> offerAcceptor.getJobs().size()).sum(),
                 declined, bestPlan.getToStock().size());
@@ -350,23 +368,21 @@ public class RetzScheduler implements Scheduler {
             }
             slaves.put(entry.getKey(), list);
         }
+        sandboxes.agentLost(slaveId.getValue());
 
         // TODO: remove **ONLY** tasks that is running on the failed slave
-        Stanchion.schedule(() -> reconcileAllRunningJobs(driver));
+        Stanchion.schedule(Stanchion.Kind.RECONCILE, () -> reconcileAllRunningJobs(driver));
 
         // There is a potential race between offerRescinded/slaveLost and using offer stocks;
-        // in case handleAll trying to schedule tasks, offers are removed from offerStock
+        // in case handleAll trying to schedule tasks, offers are taken out of offerPool
         // but being used to schedule tasks - this message can't be in time ...
         // The task with rescinded offer (slave) might fail in advance; TASK_FAILED or TASK_LOST?
         // any way in this case it should be retried...
         //
         // Clean up stocked offers from lost slave, or kept long dead
         // TODO: add tests on github #153 bug, this is a quick patch
-        synchronized (offerStock) {
-            Protos.Offer offer = offerStock.remove(slaveId.getValue());
-            if (offer != null) {
-                driver.declineOffer(offer.getId());
-            }
+        for (DecodedOffer offer : offerPool.removeAgent(slaveId.getValue())) {
+            driver.declineOffer(offer.offer().getId());
         }
         updateOfferStats();
     }
@@ -376,135 +392,29 @@ public class RetzScheduler implements Scheduler {
         LOG.info("Status update of task {}: {} / {} ({})",
                 status.getTaskId().getValue(), status.getState().name(), status.getMessage(),
                 status.getReason());
-        Stanchion.schedule(() -> {
-            Optional<Job> job = JobQueue.getFromTaskId(status.getTaskId().getValue());
-            if (!job.isPresent()) {
-                LOG.warn("Event {} ({}) for unknown job (taskid={})",
-                        status.getState().getDescriptorForType().getName(),
-                        status.getMessage(), status.getTaskId().getValue());
-                return;
-            }
-
-            JobStatem.Action action = JobStatem.handleCall(job.get(), status.getState());
-            switch (action) {
-                case FINISHED:
-                    finished(status);
-                    break;
-
-                case FAILED:
-                    failed(status);
-                    break;
-
-                case RETRY:
-                    retry(status);
-                    maybeInvokeNow(driver, job.get());
-                    break;
-
-                case NOOP:
-                    break;
-
-                case NEVER:
-                    LOG.error("This cannot happen: {} {} => {}",
-                            job.get().state(), status.getState().getNumber(), action);
-                    throw new AssertionError("May be a state diagram (JobStatem) bug");
-
-                case LOG:
-                    LOG.warn("This cannot happen: {} {} => {}",
-                            job.get().state(), status.getState().getNumber(), action);
-                    break;
-
-                case STARTED:
-                    started(status);
-                    break;
-
-                case STARTING:
-                    // LOG.info("Task {} starting at {}", status.getTaskId().getValue(), status.getSlaveId().getValue());
-                    Optional<String> maybeUrl = Optional.empty();
-                    if (this.master.isPresent()) {
-                        maybeUrl = maybeGetUrl(status);
-                    }
-                    JobQueue.starting(job.get(), maybeUrl, status.getTaskId().getValue());
-                    break;
-
-                case KILLED: // kill by user...
-                default:
-                    break;
-            }
-        });
+        statusUpdates.add(driver, status);
     }
 
-    // Maybe Retry
-    void retry(Protos.TaskStatus status) throws IOException {
-        String reason = "";
-        if (status.hasMessage()) {
-            reason = status.getMessage();
+    private void declineExpired(SchedulerDriver driver) {
+        List<DecodedOffer> expired = offerPool.expire();
+        for (DecodedOffer offer : expired) {
+            driver.declineOffer(offer.offer().getId(), filters);
         }
-        try {
-            JobQueue.retry(status.getTaskId().getValue(), reason);
-        } catch (JobNotFoundException e) {
-            LOG.warn("retry({}) failed", status, e);
-            // TODO: re-insert the failed job again?
-        }
-    }
-
-    void finished(Protos.TaskStatus status) throws IOException {
-        Optional<String> maybeUrl = Optional.empty();
-        if (this.master.isPresent()) {
-            maybeUrl = maybeGetUrl(status);
-            LOG.info("finished: {}", maybeUrl);
-        }
-        int ret = status.getState().getNumber() - Protos.TaskState.TASK_FINISHED_VALUE;
-        String finished = TimestampHelper.now();
-        try {
-            JobQueue.finished(status.getTaskId().getValue(), maybeUrl, ret, finished);
-        } catch (JobNotFoundException e) {
-            LOG.warn("finished({}) failed", status, e);
-            // TODO: re-insert the failed job again?
-        }
-
-    }
-
-    void failed(Protos.TaskStatus status) throws IOException {
-        Optional<String> maybeUrl = Optional.empty();
-        if (this.master.isPresent()) {
-            maybeUrl = maybeGetUrl(status);
-        }
-        try {
-            JobQueue.failed(status.getTaskId().getValue(), maybeUrl, status.getMessage());
-        } catch (JobNotFoundException e) {
-            LOG.warn("failed({}) failed", status, e);
-            // TODO: re-insert the failed job again?
-        }
-    }
-
-    void started(Protos.TaskStatus status) throws IOException {
-        Optional<String> maybeUrl = Optional.empty();
-        if (this.master.isPresent()) {
-            maybeUrl = maybeGetUrl(status);
-        }
-        try {
-            JobQueue.started(status.getTaskId().getValue(), status.getSlaveId().getValue(), maybeUrl);
-        } catch (JobNotFoundException e) {
-            LOG.warn("started({}) failed", status, e);
-            // TODO: re-insert the failed job again?
+        if (!expired.isEmpty()) {
+            LOG.info("{} offers declined after {} seconds in stock ({})", expired.size(),
+                    conf.getServerConfig().getOfferTtl(), ServerConfiguration.OFFER_TTL);
         }
     }
 
     private void updateOfferStats() {
-        ResourceQuantity total = new ResourceQuantity();
-        for (Map.Entry<String, Protos.Offer> e : offerStock.entrySet()) {
-            Resource r = ResourceConstructor.decode(e.getValue().getResourcesList());
-            total.add(r.toQuantity());
-        }
-        total.setNodes(offerStock.size());
-        StatusCache.setOfferStats(offerStock.size(), total);
+        StatusCache.setOfferStats(offerPool.size(), offerPool.total());
     }
 
     // Get all running jobs and reconcile all of them - status update on database
     // will be done after statusUpdate() received. See how reconciliation must work
     // in http://mesos.apache.org/documentation/latest/reconciliation/ .
     private void reconcileAllRunningJobs(SchedulerDriver driver) throws IOException {
-        List<Job> jobs = Database.getInstance().getRunning();
+        List<Job> jobs = JobStores.get().getRunning();
         List<Protos.TaskStatus> taskStatuses = jobs.stream().map(job -> {
             Protos.TaskStatus.Builder builder = Protos.TaskStatus.newBuilder()
                     .setTaskId(Protos.TaskID.newBuilder().setValue(job.taskId()))
@@ -522,17 +432,14 @@ public class RetzScheduler implements Scheduler {
         }
     }
 
-    private Optional<String> maybeGetUrl(Protos.TaskStatus status) {
-        if (status.hasSlaveId() && status.hasExecutorId() && status.hasContainerStatus() && status.getContainerStatus().hasContainerId()) {
-            return MesosHTTPFetcher.sandboxBaseUri(this.master.get(),
-                    status.getSlaveId().getValue(), frameworkInfo.getId().getValue(),
-                    status.getExecutorId().getValue(),
-                    status.getContainerStatus().getContainerId().getValue());
-        }
-        // TODO: something is lacking; show log output?
-        // ... should be debug because if the status piggyback is sent due to reconcilication
-        // most of information is lacking in the task status
-        return Optional.empty();
+    // Only returns URLs already resolved, as this is called at Stanchion; others
+    // have to be requested with resolveUrl() and are written to the job later
+    Optional<String> maybeGetUrl(Protos.TaskStatus status) {
+        return sandboxes.cached(status);
+    }
+
+    void resolveUrl(int jobId, Protos.TaskStatus status) {
+        sandboxes.resolve(jobId, status);
     }
 
     public boolean validateJob(Job job) {
@@ -0,0 +1,217 @@
+/**
+ *    Retz
+ *    Copyright (C) 2016-2017 Nautilus Technologies, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.github.retz.scheduler;
+
+import io.github.retz.db.JobStores;
+import io.github.retz.mesosc.MesosHTTPFetcher;
+import io.github.retz.misc.LruMap;
+import io.github.retz.protocol.exception.JobNotFoundException;
+import org.apache.mesos.Protos;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+// Resolves sandbox URLs of tasks off the Stanchion thread. Agent addresses and URLs
+// of containers are cached; a URL not in the cache is fetched from the master and the
+// agent in background, and patched into the jobs waiting for it when it arrives.
+final class SandboxUrlResolver {
+    private static final Logger LOG = LoggerFactory.getLogger(SandboxUrlResolver.class);
+    private static final int THREADS = 4;
+    private static final int RETRY_LIMIT = 3;
+    private static final int RETRY_INTERVAL = 1000; // milliseconds
+    private static final int MAX_URLS = 8192;
+
+    private final Supplier<Optional<String>> master;
+    private final Supplier<String> frameworkId;
+    private final Fetcher fetcher;
+    private final int retryInterval;
+    private final ScheduledExecutorService executor;
+    // Agent id => host:port
+    private final Map<String, String> agents = new ConcurrentHashMap<>();
+    // Container id => sandbox, least recently used first
+    private final Map<String, Sandbox> sandboxes = new LruMap<>(MAX_URLS);
+    // Container id => ids of jobs waiting for the URL
+    private final Map<String, Set<Integer>> pending = new ConcurrentHashMap<>();
+
+    // Fetches agent addresses and sandbox directories from Mesos; replaced in tests
+    interface Fetcher {
+        Map<String, String> agentAddrs(String master) throws IOException;
+
+        Optional<String> directory(String agentAddr, String frameworkId, String executorId, String containerId);
+    }
+
+    private static final Fetcher MESOS = new Fetcher() {
+        @Override
+        public Map<String, String> agentAddrs(String master) throws IOException {
+            return MesosHTTPFetcher.fetchSlaveAddrs(master);
+        }
+
+        @Override
+        public Optional<String> directory(String agentAddr, String frameworkId, String executorId, String containerId) {
+            return MesosHTTPFetcher.fetchDirectory(agentAddr, frameworkId, executorId, containerId);
+        }
+    };
+
+    SandboxUrlResolver(Supplier<Optional<String>> master, Supplier<String> frameworkId) {
+        this(master, frameworkId, MESOS, RETRY_INTERVAL);
+    }
+
+    SandboxUrlResolver(Supplier<Optional<String>> master, Supplier<String> frameworkId, Fetcher fetcher, int retryInterval) {
+        this.master = Objects.requireNonNull(master);
+        this.frameworkId = Objects.requireNonNull(frameworkId);
+        this.fetcher = Objects.requireNonNull(fetcher);
+        this.retryInterval = retryInterval;
+        this.executor = Executors.newScheduledThreadPool(THREADS, r -> {
+            Thread t = new Thread(r, "sandbox-url-resolver");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    // Never blocks on network
+    Optional<String> cached(Protos.TaskStatus status) {
+        if (!hasSandbox(status)) {
+            return Optional.empty();
+        }
+        synchronized (sandboxes) {
+            Sandbox sandbox = sandboxes.get(status.getContainerStatus().getContainerId().getValue());
+            return sandbox == null ? Optional.empty() : Optional.of(sandbox.url);
+        }
+    }
+
+    // Resolves the URL of the task in background and writes it to the job
+    void resolve(int jobId, Protos.TaskStatus status) {
+        if (!hasSandbox(status)) {
+            return;
+        }
+        String agentId = status.getSlaveId().getValue();
+        String executorId = status.getExecutorId().getValue();
+        String containerId = status.getContainerStatus().getContainerId().getValue();
+
+        boolean[] first = {false};
+        pending.compute(containerId, (k, ids) -> {
+            if (ids == null) {
+                ids = new HashSet<>();
+                first[0] = true;
+            }
+            ids.add(jobId);
+            return ids;
+        });
+        if (first[0]) {
+            executor.execute(() -> resolve(agentId, executorId, containerId, 1));
+        }
+    }
+
+    private void resolve(String agentId, String executorId, String containerId, int attempt) {
+        Optional<String> url = fetch(agentId, executorId, containerId);
+        if (url.isPresent()) {
+            synchronized (sandboxes) {
+                sandboxes.put(containerId, new Sandbox(agentId, url.get()));
+            }
+            Set<Integer> ids = pending.remove(containerId);
+            if (ids != null) {
+                Stanchion.schedule(Stanchion.Kind.SANDBOX_URL, () -> patch(ids, url.get()));
+            }
+        } else if (attempt < RETRY_LIMIT) {
+            LOG.warn("{} retry happening for agent={}, executorId={}, containerId={}", attempt, agentId, executorId, containerId);
+            executor.schedule(() -> resolve(agentId, executorId, containerId, attempt + 1),
+                    retryInterval * attempt, TimeUnit.MILLISECONDS);
+        } else {
+            LOG.error("{} retries on fetching sandbox URI of container {} failed", RETRY_LIMIT, containerId);
+            pending.remove(containerId);
+        }
+    }
+
+    private Optional<String> fetch(String agentId, String executorId, String containerId) {
+        Optional<String> maybeMaster = master.get();
+        if (!maybeMaster.isPresent()) {
+            return Optional.empty();
+        }
+        String addr = agents.get(agentId);
+        if (addr == null) {
+            try {
+                agents.putAll(fetcher.agentAddrs(maybeMaster.get()));
+            } catch (IOException e) {
+                LOG.warn("Failed to fetch agent addresses from master {}: {}", maybeMaster.get(), e.toString());
+                return Optional.empty();
+            }
+            addr = agents.get(agentId);
+            if (addr == null) {
+                return Optional.empty();
+            }
+        }
+        LOG.debug("Agent address of executor {}: {}", executorId, addr);
+
+        Optional<String> dir = fetcher.directory(addr, frameworkId.get(), executorId, containerId);
+        if (!dir.isPresent()) {
+            // The agent may have re-registered with another address
+            agents.remove(agentId, addr);
+            return Optional.empty();
+        }
+        return MesosHTTPFetcher.buildSandboxUri("browse", addr, dir.get());
+    }
+
+    private static void patch(Set<Integer> ids, String url) throws IOException {
+        for (int id : ids) {
+            try {
+                JobStores.get().updateJob(id, job -> {
+                    if (url.equals(job.url())) {
+                        return Optional.empty();
+                    }
+                    job.setUrl(url);
+                    return Optional.of(job);
+                });
+            } catch (JobNotFoundException e) {
+                // Deleted or archived already
+                LOG.debug("Job id={} not found on patching sandbox URL", id);
+            }
+        }
+    }
+
+    void agentLost(String agentId) {
+        agents.remove(agentId);
+        synchronized (sandboxes) {
+            sandboxes.values().removeIf(sandbox -> sandbox.agentId.equals(agentId));
+        }
+    }
+
+    void clear() {
+        agents.clear();
+        synchronized (sandboxes) {
+            sandboxes.clear();
+        }
+    }
+
+    private static boolean hasSandbox(Protos.TaskStatus status) {
+        return status.hasSlaveId() && status.hasExecutorId()
+                && status.hasContainerStatus() && status.getContainerStatus().hasContainerId();
+    }
+
+    private static final class Sandbox {
+        private final String agentId;
+        private final String url;
+
+        Sandbox(String agentId, String url) {
+            this.agentId = agentId;
+            this.url = url;
+        }
+    }
+}
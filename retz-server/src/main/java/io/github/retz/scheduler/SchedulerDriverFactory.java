@@ -66,9 +66,10 @@ public final class SchedulerDriverFactory {
         }
 
         LOG.info("{} starting", MesosSchedulerDriver.class.getName());
+        // Status updates are acknowledged explicitly after being committed; see StatusUpdateJournal
         if (credential != null) {
-            return new MesosSchedulerDriver(scheduler, fw, conf.getMesosMaster(), credential);
+            return new MesosSchedulerDriver(scheduler, fw, conf.getMesosMaster(), false, credential);
         }
-        return new MesosSchedulerDriver(scheduler, fw, conf.getMesosMaster());
+        return new MesosSchedulerDriver(scheduler, fw, conf.getMesosMaster(), false);
     }
 }
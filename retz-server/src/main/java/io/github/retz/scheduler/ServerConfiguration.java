@@ -35,6 +35,9 @@ public class ServerConfiguration extends FileConfiguration {
     public static final String DEFAULT_MAX_SIMULTANEOUS_JOBS = "128";
     public static final String MAX_STOCK_SIZE = "retz.max.stock";
     public static final String DEFAULT_MAX_STOCK_SIZE = "16";
+    // Stocked offers are declined after this number of seconds
+    static final String OFFER_TTL = "retz.offer.ttl";
+    static final int DEFAULT_OFFER_TTL = 60;
     public static final String MAX_CPUS = "retz.max.cpus";
     public static final String DEFAULT_MAX_CPUS = "8";
     public static final String MAX_MEM = "retz.max.mem";
@@ -74,6 +77,23 @@ public class ServerConfiguration extends FileConfiguration {
     static final String DEFAULT_DATABASE_DRIVER_CLASS = "org.h2.Driver";
     static final String DATABASE_USERNAME = "retz.database.user";
     static final String DATABASE_PASSWORD = "retz.database.pass";
+    // Queries and connection acquisitions taking longer are logged with parameters; 0 disables
+    private static final String DATABASE_SLOW_QUERY = "retz.database.slow-query-ms";
+    private static final int DEFAULT_DATABASE_SLOW_QUERY = 1000;
+    // Optional read replica, for listing jobs and apps and accounting usage; user and password
+    // are same as primary if not set. Replica is not used while it lags behind more than max-lag
+    // seconds, measured by heartbeats written to primary; 0 always uses replica.
+    private static final String DATABASE_REPLICA_URL = "retz.database.replica.url";
+    private static final String DATABASE_REPLICA_USERNAME = "retz.database.replica.user";
+    private static final String DATABASE_REPLICA_PASSWORD = "retz.database.replica.pass";
+    private static final String DATABASE_REPLICA_MAX_LAG = "retz.database.replica.max-lag";
+    private static final int DEFAULT_DATABASE_REPLICA_MAX_LAG = 0;
+
+    // "jdbc" stores everything in the database above, and "memory" only in memory, optionally
+    // with an append-only snapshot file to be reloaded at start
+    private static final String DATABASE_STORE = "retz.database.store";
+    private static final String DEFAULT_DATABASE_STORE = "jdbc";
+    private static final String DATABASE_SNAPSHOT = "retz.database.snapshot";
     // https://github.com/apache/mesos/blob/master/include/mesos/mesos.proto#L208-L210
     static final String USER_NAME = "retz.user";
     // static final String[] INVALID_BIND_ADDRESS = {"0.0.0.0", "localhost", "127.0.0.1"};
@@ -126,7 +146,44 @@ public class ServerConfiguration extends FileConfiguration {
     private static final int DEFAULT_GC_LEEWAY = 7 * 86400; // a week in seconds
     private static final String GC_INTERVAL = "retz.gc.interval";
     private static final int DEFAULT_GC_INTERVAL = 600; // 10 minutes in seconds
-
+    // Old jobs are deleted in chunks of this many ids, one transaction each, and
+    // no faster than this many rows per second not to block job updates
+    private static final String GC_CHUNK_SIZE = "retz.gc.chunk-size";
+    private static final int DEFAULT_GC_CHUNK_SIZE = 1000;
+    private static final String GC_ROWS_PER_SECOND = "retz.gc.rows-per-second";
+    private static final int DEFAULT_GC_ROWS_PER_SECOND = 5000;
+    // Instead of deleting, old jobs are moved to jobs_archive table where they are still
+    // listed and accounted. They are also appended to gzip'd JSON lines files if a directory is given.
+    private static final String GC_ARCHIVE = "retz.gc.archive";
+    private static final String GC_ARCHIVE_DIR = "retz.gc.archive.dir";
+
+
+    // Mesos status updates are applied and committed in batches of at most this size;
+    // each is acknowledged to Mesos only after its batch is committed.
+    private static final String STATUS_BATCH_SIZE = "retz.status.batch.size";
+    private static final int DEFAULT_STATUS_BATCH_SIZE = 256;
+    // Milliseconds to wait for more status updates before committing a batch
+    private static final String STATUS_BATCH_DELAY = "retz.status.batch.delay";
+    private static final int DEFAULT_STATUS_BATCH_DELAY = 10;
+    // Status updates are applied by this number of lanes in parallel, apart from planning
+    private static final String STATUS_LANES = "retz.status.lanes";
+    static final int DEFAULT_STATUS_LANES = 4;
+    // Stacks of Stanchion tasks running longer than this are sampled; 0 disables
+    private static final String STANCHION_SLOW_TASK_MS = "retz.stanchion.slow-task-ms";
+    private static final int DEFAULT_STANCHION_SLOW_TASK_MS = 1000;
+
+    // Applications are cached in memory up to this number; 0 disables the cache.
+    // When several servers share one database, an application changed by one server
+    // may be seen by the others up to max staleness seconds later.
+    private static final String APP_CACHE_SIZE = "retz.app-cache.size";
+    static final int DEFAULT_APP_CACHE_SIZE = 1024;
+    private static final String APP_CACHE_MAX_STALENESS = "retz.app-cache.max-staleness";
+    static final int DEFAULT_APP_CACHE_MAX_STALENESS = 60;
+
+    // Seconds a user (and whether it is enabled) is cached for authentication; 0 disables
+    // the cache. Changes by other servers sharing the database take up to this long.
+    private static final String USER_CACHE_TTL = "retz.user-cache.ttl";
+    public static final int DEFAULT_USER_CACHE_TTL = 10;
 
     public ServerConfiguration(InputStream in) throws IOException, URISyntaxException {
         super(in);
@@ -168,6 +225,10 @@ public class ServerConfiguration extends FileConfiguration {
             throw new IllegalArgumentException(JOB_QUEUE_TYPE + " must be either fir or all");
         }
 
+        if (!"jdbc".equals(getDatabaseStore()) && !"memory".equals(getDatabaseStore())) {
+            throw new IllegalArgumentException(DATABASE_STORE + " must be either jdbc or memory");
+        }
+
         LOG.info("Mesos master={}, principal={}, role={}, {}={}, {}={}, {}={}, {}={}, {}={}, {}={}, {}={}, {}={}, {}={}, {}={}",
                 getMesosMaster(), getPrincipal(), getRole(), MAX_SIMULTANEOUS_JOBS, maxSimultaneousJobs,
                 DATABASE_URL, databaseURL,
@@ -180,6 +241,16 @@ public class ServerConfiguration extends FileConfiguration {
                 MAX_FILE_SIZE, getMaxFileSize(),
                 JOB_QUEUE_TYPE, getJobQueueType());
         LOG.info("{}={}", MESOS_FAILOVER_TIMEOUT, getFailoverTimeout());
+        LOG.info("{}={}", DATABASE_SLOW_QUERY, getSlowQueryThreshold());
+        LOG.info("{}={}, {}={}", DATABASE_REPLICA_URL, getDatabaseReplicaURL(), DATABASE_REPLICA_MAX_LAG, getDatabaseReplicaMaxLag());
+        LOG.info("{}={}, {}={}", DATABASE_STORE, getDatabaseStore(), DATABASE_SNAPSHOT, getDatabaseSnapshot());
+        LOG.info("{}={}, {}={}", GC_CHUNK_SIZE, getGcChunkSize(), GC_ROWS_PER_SECOND, getGcRowsPerSecond());
+        LOG.info("{}={}, {}={}", GC_ARCHIVE, getGcArchive(), GC_ARCHIVE_DIR, getGcArchiveDir());
+        LOG.info("{}={}, {}={}", STATUS_BATCH_SIZE, getStatusBatchSize(), STATUS_BATCH_DELAY, getStatusBatchDelay());
+        LOG.info("{}={}, {}={}", STATUS_LANES, getStatusLanes(), STANCHION_SLOW_TASK_MS, getStanchionSlowTaskThreshold());
+        LOG.info("{}={}", OFFER_TTL, getOfferTtl());
+        LOG.info("{}={}, {}={}", APP_CACHE_SIZE, getAppCacheSize(), APP_CACHE_MAX_STALENESS, getAppCacheMaxStaleness());
+        LOG.info("{}={}", USER_CACHE_TTL, getUserCacheTtl());
     }
 
     public ServerConfiguration(String file) throws IOException, URISyntaxException {
@@ -256,6 +327,36 @@ public class ServerConfiguration extends FileConfiguration {
         return Optional.ofNullable(properties.getProperty(DATABASE_PASSWORD));
     }
 
+    public Optional<String> getDatabaseReplicaURL() {
+        return Optional.ofNullable(properties.getProperty(DATABASE_REPLICA_URL));
+    }
+
+    public Optional<String> getDatabaseReplicaUser() {
+        Optional<String> user = Optional.ofNullable(properties.getProperty(DATABASE_REPLICA_USERNAME));
+        return user.isPresent() ? user : getDatabaseUser();
+    }
+
+    public Optional<String> getDatabaseReplicaPass() {
+        Optional<String> pass = Optional.ofNullable(properties.getProperty(DATABASE_REPLICA_PASSWORD));
+        return pass.isPresent() ? pass : getDatabasePass();
+    }
+
+    public int getDatabaseReplicaMaxLag() {
+        return getLowerboundedIntProperty(DATABASE_REPLICA_MAX_LAG, DEFAULT_DATABASE_REPLICA_MAX_LAG, 0);
+    }
+
+    public String getDatabaseStore() {
+        return properties.getProperty(DATABASE_STORE, DEFAULT_DATABASE_STORE).toLowerCase();
+    }
+
+    public Optional<String> getDatabaseSnapshot() {
+        return Optional.ofNullable(properties.getProperty(DATABASE_SNAPSHOT));
+    }
+
+    public int getSlowQueryThreshold() {
+        return getLowerboundedIntProperty(DATABASE_SLOW_QUERY, DEFAULT_DATABASE_SLOW_QUERY, 0);
+    }
+
     public ResourceQuantity getMaxJobSize() {
         return new ResourceQuantity(
                 Integer.parseInt(properties.getProperty(MAX_CPUS, DEFAULT_MAX_CPUS)),
@@ -278,6 +379,10 @@ public class ServerConfiguration extends FileConfiguration {
         return getBoundedIntProperty(JOB_QUEUE_ALL_LIMIT, DEFAULT_JOB_QUEUE_ALL_LIMIT, -1, Integer.MAX_VALUE);
     }
 
+    public int getOfferTtl() {
+        return getLowerboundedIntProperty(OFFER_TTL, DEFAULT_OFFER_TTL, 1);
+    }
+
     public int getRefuseSeconds() {
         return getLowerboundedIntProperty(MESOS_REFUSE_SECONDS, DEFAULT_MESOS_REFUSE_SECONDS, 1);
     }
@@ -294,6 +399,50 @@ public class ServerConfiguration extends FileConfiguration {
         return getLowerboundedIntProperty(GC_INTERVAL, DEFAULT_GC_INTERVAL, 1);
     }
 
+    public int getGcChunkSize() {
+        return getLowerboundedIntProperty(GC_CHUNK_SIZE, DEFAULT_GC_CHUNK_SIZE, 1);
+    }
+
+    public int getGcRowsPerSecond() {
+        return getLowerboundedIntProperty(GC_ROWS_PER_SECOND, DEFAULT_GC_ROWS_PER_SECOND, 1);
+    }
+
+    public boolean getGcArchive() {
+        return getBoolProperty(GC_ARCHIVE, false);
+    }
+
+    public Optional<String> getGcArchiveDir() {
+        return Optional.ofNullable(properties.getProperty(GC_ARCHIVE_DIR));
+    }
+
+    public int getStatusBatchSize() {
+        return getLowerboundedIntProperty(STATUS_BATCH_SIZE, DEFAULT_STATUS_BATCH_SIZE, 1);
+    }
+
+    public int getStatusBatchDelay() {
+        return getLowerboundedIntProperty(STATUS_BATCH_DELAY, DEFAULT_STATUS_BATCH_DELAY, 0);
+    }
+
+    public int getStatusLanes() {
+        return getLowerboundedIntProperty(STATUS_LANES, DEFAULT_STATUS_LANES, 1);
+    }
+
+    public int getStanchionSlowTaskThreshold() {
+        return getLowerboundedIntProperty(STANCHION_SLOW_TASK_MS, DEFAULT_STANCHION_SLOW_TASK_MS, 0);
+    }
+
+    public int getAppCacheSize() {
+        return getLowerboundedIntProperty(APP_CACHE_SIZE, DEFAULT_APP_CACHE_SIZE, 0);
+    }
+
+    public int getAppCacheMaxStaleness() {
+        return getLowerboundedIntProperty(APP_CACHE_MAX_STALENESS, DEFAULT_APP_CACHE_MAX_STALENESS, 0);
+    }
+
+    public int getUserCacheTtl() {
+        return getLowerboundedIntProperty(USER_CACHE_TTL, DEFAULT_USER_CACHE_TTL, 0);
+    }
+
     public int getMaxListJobSize() {
         return Integer.parseInt(properties.getProperty(MAX_LIST_JOB_SIZE, DEFAULT_MAX_LIST_JOB_SIZE));
     }
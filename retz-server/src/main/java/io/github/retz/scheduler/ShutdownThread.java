@@ -16,7 +16,7 @@
  */
 package io.github.retz.scheduler;
 
-import io.github.retz.db.Database;
+import io.github.retz.db.JobStores;
 import io.github.retz.web.WebConsole;
 import org.apache.mesos.SchedulerDriver;
 import org.slf4j.Logger;
@@ -36,7 +36,7 @@ public class ShutdownThread extends Thread {
         // Close up all incoming requests to prevent database update
         WebConsole.stop();
         // Close all database connections; it may take time
-        Database.getInstance().stop();
+        JobStores.get().stop();
         // Shut down connection to Mesos; always will be preserved for failover
         // true - possibly connect with same FrameworkID, Mesos doesn't collect tasks
         // false - Same FrameworkID will never connect again, Mesos would refuse reconnection
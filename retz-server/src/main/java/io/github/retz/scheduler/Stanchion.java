@@ -20,15 +20,31 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.*;
 
 import io.github.retz.misc.LogUtil;
 
-// An executor that serializes all request processing here
+// Executors that serialize all request processing here, in lanes. Planning, kills and
+// all other work that changes the job queue runs in one planning lane. Status updates
+// run in status lanes selected by task id, so that updates of the same task are applied
+// in order while they don't wait for planning nor updates of other tasks.
 public final class Stanchion {
     private static final Logger LOG = LoggerFactory.getLogger(RetzScheduler.class);
 
-    static final ThreadPoolExecutor EXECUTOR = (ThreadPoolExecutor) Executors.newFixedThreadPool(1);
+    static final ThreadPoolExecutor EXECUTOR = newLane("stanchion");
+    private static volatile ThreadPoolExecutor[] statusLanes = newStatusLanes(ServerConfiguration.DEFAULT_STATUS_LANES);
+
+    // Kinds of tasks, to break down time spent in lanes by StanchionStats
+    public enum Kind {
+        OFFERS,
+        INVOKE, // maybeInvokeNow
+        STATUS_UPDATES,
+        KILL,
+        RECONCILE,
+        SANDBOX_URL
+    }
 
     private Stanchion() {
     }
@@ -38,18 +54,66 @@ public final class Stanchion {
         void run() throws IOException;
     }
 
-    static void schedule(RunnableWithException runnable) {
-        EXECUTOR.submit(() -> {
+    private static ThreadPoolExecutor newLane(String name) {
+        return (ThreadPoolExecutor) Executors.newFixedThreadPool(1, r -> new Thread(r, name));
+    }
+
+    private static ThreadPoolExecutor[] newStatusLanes(int n) {
+        ThreadPoolExecutor[] lanes = new ThreadPoolExecutor[n];
+        for (int i = 0; i < n; i++) {
+            lanes[i] = newLane("stanchion-status-" + i);
+        }
+        return lanes;
+    }
+
+    // Must be called before any status update is scheduled
+    static synchronized void setStatusLanes(int n) {
+        if (n != statusLanes.length) {
+            ThreadPoolExecutor[] old = statusLanes;
+            statusLanes = newStatusLanes(n);
+            for (ThreadPoolExecutor lane : old) {
+                lane.shutdown();
+            }
+        }
+        LOG.info("Stanchion has 1 planning lane and {} status lanes", n);
+    }
+
+    static int statusLanes() {
+        return statusLanes.length;
+    }
+
+    static void schedule(Kind kind, RunnableWithException runnable) {
+        submit(EXECUTOR, kind, runnable);
+    }
+
+    static void scheduleStatus(int lane, Kind kind, RunnableWithException runnable) {
+        submit(statusLanes[lane], kind, runnable);
+    }
+
+    private static void submit(ExecutorService lane, Kind kind, RunnableWithException runnable) {
+        long enqueued = System.nanoTime();
+        lane.submit(() -> {
+            StanchionStats.Running running = StanchionStats.begin(kind, enqueued);
             try {
                 runnable.run();
             } catch (Exception e) {
                 LogUtil.error(LOG, "Exception in Stanchion", e);
+            } finally {
+                StanchionStats.end(running);
             }
         });
     }
 
-    public static <R> R call(Callable<R> callable) throws IOException {
-        Future<R> future = EXECUTOR.submit(callable);
+    public static <R> R call(Kind kind, Callable<R> callable) throws IOException {
+        long enqueued = System.nanoTime();
+        Future<R> future = EXECUTOR.submit(() -> {
+            StanchionStats.Running running = StanchionStats.begin(kind, enqueued);
+            try {
+                return callable.call();
+            } finally {
+                StanchionStats.end(running);
+            }
+        });
         try {
             return future.get();
         } catch (InterruptedException | ExecutionException e) {
@@ -57,7 +121,19 @@ public final class Stanchion {
         }
     }
 
+    // Sum of all lanes
     public static int getQueueLength() {
-       return EXECUTOR.getQueue().size();
+        return getQueueLengths().stream().mapToInt(Integer::intValue).sum();
+    }
+
+    // The planning lane first, status lanes follow
+    public static List<Integer> getQueueLengths() {
+        ThreadPoolExecutor[] lanes = statusLanes;
+        List<Integer> lengths = new ArrayList<>(lanes.length + 1);
+        lengths.add(EXECUTOR.getQueue().size());
+        for (ThreadPoolExecutor lane : lanes) {
+            lengths.add(lane.getQueue().size());
+        }
+        return lengths;
     }
 }
@@ -0,0 +1,192 @@
+/**
+ *    Retz
+ *    Copyright (C) 2016-2017 Nautilus Technologies, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.github.retz.scheduler;
+
+import io.github.retz.cli.TimestampHelper;
+import io.github.retz.misc.LatencyHistogram;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+// Time tasks of Stanchion wait in queues and run, per kind of task. Stacks of lanes running
+// a task longer than the threshold are sampled, and such slow tasks are kept with their
+// stacks in a ring buffer of recent ones.
+public final class StanchionStats {
+    private static final int MAX_SLOW_TASKS = 32;
+    private static final int SAMPLE_INTERVAL = 100; // milliseconds
+    private static final int MAX_STACK_DEPTH = 32;
+
+    private static final Map<Stanchion.Kind, LatencyHistogram> WAIT = new EnumMap<>(Stanchion.Kind.class);
+    private static final Map<Stanchion.Kind, LatencyHistogram> RUN = new EnumMap<>(Stanchion.Kind.class);
+    private static final Set<Running> RUNNING = ConcurrentHashMap.newKeySet();
+    private static final SlowTask[] SLOW_TASKS = new SlowTask[MAX_SLOW_TASKS];
+    private static int nextSlowTask = 0;
+    private static volatile long slowTaskNanos = 1000_000_000L;
+
+    private static final ScheduledExecutorService SAMPLER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "stanchion-sampler");
+        t.setDaemon(true);
+        return t;
+    });
+
+    static {
+        for (Stanchion.Kind kind : Stanchion.Kind.values()) {
+            WAIT.put(kind, new LatencyHistogram());
+            RUN.put(kind, new LatencyHistogram());
+        }
+        SAMPLER.scheduleWithFixedDelay(StanchionStats::sample, SAMPLE_INTERVAL, SAMPLE_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    private StanchionStats() {
+    }
+
+    // 0 disables sampling and keeping slow tasks
+    public static void configure(int slowTaskMillis) {
+        slowTaskNanos = slowTaskMillis > 0 ? slowTaskMillis * 1000_000L : Long.MAX_VALUE;
+    }
+
+    public static long slowTaskMillis() {
+        return slowTaskNanos == Long.MAX_VALUE ? 0 : slowTaskNanos / 1000_000L;
+    }
+
+    static Running begin(Stanchion.Kind kind, long enqueuedNanos) {
+        Running running = new Running(kind, Thread.currentThread(), enqueuedNanos, System.nanoTime());
+        WAIT.get(kind).recordNanos(running.started - enqueuedNanos);
+        RUNNING.add(running);
+        return running;
+    }
+
+    static void end(Running running) {
+        long nanos = System.nanoTime() - running.started;
+        RUNNING.remove(running);
+        RUN.get(running.kind).recordNanos(nanos);
+        if (nanos >= slowTaskNanos) {
+            SlowTask task = new SlowTask(running, nanos);
+            synchronized (SLOW_TASKS) {
+                SLOW_TASKS[nextSlowTask] = task;
+                nextSlowTask = (nextSlowTask + 1) % MAX_SLOW_TASKS;
+            }
+        }
+    }
+
+    // The stack may be of the next task if the slow one has just finished; fine for monitoring
+    private static void sample() {
+        long now = System.nanoTime();
+        for (Running running : RUNNING) {
+            if (running.stack == null && now - running.started >= slowTaskNanos) {
+                running.stack = running.thread.getStackTrace();
+            }
+        }
+    }
+
+    public static LatencyHistogram waitOf(Stanchion.Kind kind) {
+        return WAIT.get(kind);
+    }
+
+    public static LatencyHistogram runOf(Stanchion.Kind kind) {
+        return RUN.get(kind);
+    }
+
+    // One line per kind of task, most time run in total first
+    public static List<String> report() {
+        return Arrays.stream(Stanchion.Kind.values())
+                .filter(kind -> WAIT.get(kind).count() > 0)
+                .sorted(Comparator.comparingLong((Stanchion.Kind kind) -> RUN.get(kind).sumMicros()).reversed())
+                .map(kind -> {
+                    LatencyHistogram w = WAIT.get(kind);
+                    LatencyHistogram r = RUN.get(kind);
+                    return String.format("%s: count=%d wait(mean=%dus p99=%dus max=%dus) run(total=%dus mean=%dus p99=%dus max=%dus)",
+                            kind, w.count(), w.meanMicros(), w.percentileMicros(99), w.maxMicros(),
+                            r.sumMicros(), r.meanMicros(), r.percentileMicros(99), r.maxMicros());
+                })
+                .collect(Collectors.toList());
+    }
+
+    // Recent slow tasks, slowest first, each followed by its stack if sampled
+    public static List<String> slowTasks() {
+        List<SlowTask> tasks = new ArrayList<>(MAX_SLOW_TASKS);
+        synchronized (SLOW_TASKS) {
+            for (SlowTask task : SLOW_TASKS) {
+                if (task != null) {
+                    tasks.add(task);
+                }
+            }
+        }
+        tasks.sort(Comparator.comparingLong((SlowTask task) -> task.runNanos).reversed());
+        return tasks.stream().map(SlowTask::toString).collect(Collectors.toList());
+    }
+
+    public static void reset() {
+        WAIT.values().forEach(LatencyHistogram::reset);
+        RUN.values().forEach(LatencyHistogram::reset);
+        synchronized (SLOW_TASKS) {
+            Arrays.fill(SLOW_TASKS, null);
+            nextSlowTask = 0;
+        }
+    }
+
+    static final class Running {
+        private final Stanchion.Kind kind;
+        private final Thread thread;
+        private final long enqueued;
+        private final long started;
+        private volatile StackTraceElement[] stack;
+
+        Running(Stanchion.Kind kind, Thread thread, long enqueued, long started) {
+            this.kind = kind;
+            this.thread = thread;
+            this.enqueued = enqueued;
+            this.started = started;
+        }
+    }
+
+    private static final class SlowTask {
+        private final Stanchion.Kind kind;
+        private final String lane;
+        private final String finished;
+        private final long waitNanos;
+        private final long runNanos;
+        private final StackTraceElement[] stack;
+
+        SlowTask(Running running, long runNanos) {
+            this.kind = running.kind;
+            this.lane = running.thread.getName();
+            this.finished = TimestampHelper.now();
+            this.waitNanos = running.started - running.enqueued;
+            this.runNanos = runNanos;
+            this.stack = running.stack;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder b = new StringBuilder()
+                    .append(finished).append(' ').append(kind).append(" at ").append(lane)
+                    .append(": waited ").append(waitNanos / 1000_000L).append("ms, ran ")
+                    .append(runNanos / 1000_000L).append("ms");
+            if (stack != null) {
+                for (int i = 0; i < stack.length && i < MAX_STACK_DEPTH; i++) {
+                    b.append("\n\tat ").append(stack[i]);
+                }
+            }
+            return b.toString();
+        }
+    }
+}
@@ -0,0 +1,223 @@
+/**
+ *    Retz
+ *    Copyright (C) 2016-2017 Nautilus Technologies, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.github.retz.scheduler;
+
+import io.github.retz.cli.TimestampHelper;
+import io.github.retz.db.JobStores;
+import io.github.retz.misc.LogUtil;
+import io.github.retz.protocol.data.Job;
+import org.apache.mesos.Protos;
+import org.apache.mesos.SchedulerDriver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+// Collects Mesos status updates and applies them to jobs in batches at Stanchion,
+// one transaction per batch. Updates are acknowledged to Mesos only after commit;
+// if the commit fails they are not acknowledged and Mesos sends them again.
+// Updates are partitioned by task id, one partition per status lane of Stanchion,
+// so that updates of a task are always applied in order by the same lane.
+final class StatusUpdateJournal {
+    private static final Logger LOG = LoggerFactory.getLogger(StatusUpdateJournal.class);
+
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "status-update-journal");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final RetzScheduler scheduler;
+    private final int batchSize;
+    private final int delay;
+    private final Partition[] partitions;
+
+    StatusUpdateJournal(RetzScheduler scheduler, int batchSize, int delay) {
+        this.scheduler = Objects.requireNonNull(scheduler);
+        this.batchSize = batchSize;
+        this.delay = delay;
+        this.partitions = new Partition[Stanchion.statusLanes()];
+        for (int i = 0; i < partitions.length; i++) {
+            partitions[i] = new Partition(i);
+        }
+    }
+
+    void add(SchedulerDriver driver, Protos.TaskStatus status) {
+        Partition p = partitions[Math.floorMod(status.getTaskId().getValue().hashCode(), partitions.length)];
+        p.pending.add(new Entry(driver, status));
+        if (p.pending.size() >= batchSize || delay == 0) {
+            // Regardless of the timer; a flush by the timer finding nothing is harmless
+            scheduleFlush(p);
+        } else if (p.timer.compareAndSet(false, true)) {
+            TIMER.schedule(() -> {
+                p.timer.set(false);
+                scheduleFlush(p);
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void scheduleFlush(Partition p) {
+        if (p.flushQueued.compareAndSet(false, true)) {
+            Stanchion.scheduleStatus(p.lane, Stanchion.Kind.STATUS_UPDATES, () -> flush(p));
+        }
+    }
+
+    int size() {
+        return Arrays.stream(partitions).mapToInt(p -> p.pending.size()).sum();
+    }
+
+    private void flush(Partition p) {
+        p.flushQueued.set(false);
+        List<Entry> batch = new ArrayList<>(batchSize);
+        p.pending.drainTo(batch, batchSize);
+        if (!p.pending.isEmpty()) {
+            scheduleFlush(p);
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        Set<String> taskIds = batch.stream().map(e -> e.status.getTaskId().getValue()).collect(Collectors.toSet());
+        List<Job> retried = new ArrayList<>();
+        // Sandbox URLs not resolved yet are fetched after commit, and written to jobs later
+        Map<Integer, Protos.TaskStatus> unresolved = new HashMap<>();
+        try {
+            JobStores.get().updateJobsFromTaskIds(taskIds, jobs -> {
+                Map<Integer, Job> updated = new LinkedHashMap<>();
+                for (Entry e : batch) {
+                    Job job = jobs.get(e.status.getTaskId().getValue());
+                    if (job == null) {
+                        LOG.warn("Event {} ({}) for unknown job (taskid={})",
+                                e.status.getState().getDescriptorForType().getName(),
+                                e.status.getMessage(), e.status.getTaskId().getValue());
+                        continue;
+                    }
+                    // Transitions of the same job in a batch are applied in order to the same object
+                    JobStatem.Action action = JobStatem.handleCall(job, e.status.getState());
+                    if (apply(action, job, e.status, unresolved)) {
+                        updated.put(job.id(), job);
+                        if (action == JobStatem.Action.RETRY) {
+                            retried.add(job);
+                        }
+                    }
+                }
+                return new ArrayList<>(updated.values());
+            });
+        } catch (IOException e) {
+            LogUtil.error(LOG, "Applying " + batch.size() + " status updates failed; leaving them unacknowledged", e);
+            return;
+        }
+
+        for (Entry e : batch) {
+            // Updates without uuid (e.g. from reconciliation) must not be acknowledged
+            if (e.status.hasUuid()) {
+                e.driver.acknowledgeStatusUpdate(e.status);
+            }
+        }
+        unresolved.forEach(scheduler::resolveUrl);
+        for (Job job : retried) {
+            if (job.state() == Job.JobState.QUEUED) {
+                scheduler.maybeInvokeNow(batch.get(0).driver, job);
+            }
+        }
+    }
+
+    // Returns true if the job has been changed
+    private boolean apply(JobStatem.Action action, Job job, Protos.TaskStatus status,
+                          Map<Integer, Protos.TaskStatus> unresolved) {
+        String taskId = status.getTaskId().getValue();
+        switch (action) {
+            case FINISHED: {
+                Optional<String> maybeUrl = maybeGetUrl(job, status, unresolved);
+                int ret = status.getState().getNumber() - Protos.TaskState.TASK_FINISHED_VALUE;
+                String finished = TimestampHelper.now();
+                job.finished(finished, maybeUrl, ret);
+                LOG.info("Job id={} has finished at {} with return value={}", job.id(), finished, ret);
+                return true;
+            }
+            case FAILED:
+                job.killed(TimestampHelper.now(), maybeGetUrl(job, status, unresolved), status.getMessage());
+                LOG.info("Job id={} has failed: {}", job.id(), status.getMessage());
+                return true;
+
+            case RETRY:
+                JobQueue.retryOrGiveUp(job, status.hasMessage() ? status.getMessage() : "");
+                return true;
+
+            case STARTED: {
+                // the state of job is already started; don't update timestamp
+                String ts = (job.state() == Job.JobState.STARTED) ? job.started() : TimestampHelper.now();
+                job.started(taskId, status.getSlaveId().getValue(), maybeGetUrl(job, status, unresolved), ts);
+                return true;
+            }
+            case STARTING:
+                job.starting(taskId, maybeGetUrl(job, status, unresolved), TimestampHelper.now());
+                return true;
+
+            case NEVER:
+                // Other updates in the batch still have to be committed
+                LOG.error("This cannot happen: {} {} => {}; may be a state diagram (JobStatem) bug",
+                        job.state(), status.getState().getNumber(), action);
+                return false;
+
+            case LOG:
+                LOG.warn("This cannot happen: {} {} => {}",
+                        job.state(), status.getState().getNumber(), action);
+                return false;
+
+            case NOOP:
+            case KILLED: // kill by user...
+            default:
+                return false;
+        }
+    }
+
+    private Optional<String> maybeGetUrl(Job job, Protos.TaskStatus status, Map<Integer, Protos.TaskStatus> unresolved) {
+        Optional<String> maybeUrl = scheduler.maybeGetUrl(status);
+        if (!maybeUrl.isPresent()) {
+            unresolved.put(job.id(), status);
+        }
+        return maybeUrl;
+    }
+
+    private static final class Partition {
+        private final int lane;
+        private final BlockingQueue<Entry> pending = new LinkedBlockingQueue<>();
+        // A flush is queued at the lane
+        private final AtomicBoolean flushQueued = new AtomicBoolean(false);
+        // The delay timer is armed
+        private final AtomicBoolean timer = new AtomicBoolean(false);
+
+        Partition(int lane) {
+            this.lane = lane;
+        }
+    }
+
+    private static final class Entry {
+        private final SchedulerDriver driver;
+        private final Protos.TaskStatus status;
+
+        Entry(SchedulerDriver driver, Protos.TaskStatus status) {
+            this.driver = driver;
+            this.status = status;
+        }
+    }
+}
@@ -107,7 +107,7 @@ public final class AppRequestHandler {
 
         String appname = req.params(":name");
         LOG.debug("deleting app {} requested by {}", appname, authHeaderValue.get().key());
-        Optional<Application> maybeApp = Applications.get(appname);
+        Optional<Application> maybeApp = Applications.peek(appname);
         res.type("application/json");
         if (maybeApp.isPresent()) {
             // Compare application owner and requester
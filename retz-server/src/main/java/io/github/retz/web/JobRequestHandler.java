@@ -16,12 +16,18 @@
  */
 package io.github.retz.web;
 
+import com.fasterxml.jackson.annotation.JsonGetter;
+import com.fasterxml.jackson.annotation.JsonTypeName;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.MappingIterator;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.RawValue;
 import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
 import io.github.retz.auth.AuthHeader;
 import io.github.retz.cli.TimestampHelper;
-import io.github.retz.db.Database;
+import io.github.retz.db.JobStores;
 import io.github.retz.mesosc.MesosHTTPFetcher;
 import io.github.retz.misc.Pair;
 import io.github.retz.misc.Triad;
@@ -47,10 +53,8 @@ import spark.Request;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Collections;
-import java.util.List;
-import java.util.Objects;
-import java.util.Optional;
+import java.util.*;
+import java.util.stream.Collectors;
 
 import static io.github.retz.web.WebConsole.validateOwner;
 import static spark.Spark.halt;
@@ -87,21 +91,78 @@ public final class JobRequestHandler {
         Optional<AuthHeader> authHeaderValue = WebConsole.getAuthInfo(req);
         LOG.debug("list jobs owned by {}", authHeaderValue.get().key());
         ListJobRequest listJobRequest = MAPPER.readValue(req.body(), ListJobRequest.class);
-        LOG.debug("q: state={}, tag={}",
-                listJobRequest.state(), listJobRequest.tag());
+        LOG.debug("q: state={}, tag={}, afterId={}, limit={}",
+                listJobRequest.state(), listJobRequest.tag(), listJobRequest.afterId(), listJobRequest.limit());
         String user = Objects.requireNonNull(authHeaderValue.get().key());
-        List<Job> jobs = JobQueue.list(user, listJobRequest.state(), listJobRequest.tag(), maxListJobSize);
+        int pageSize = Math.min(maxListJobSize, ListJobResponse.MAX_JOB_NUMBER);
+        if (listJobRequest.limit().isPresent()) {
+            pageSize = Math.max(1, Math.min(pageSize, listJobRequest.limit().get()));
+        }
+        // One more than the page can hold, to know there are more
+        List<String> jobs = JobQueue.listJson(user, listJobRequest.state(), listJobRequest.tag(),
+                listJobRequest.afterId(), pageSize + 1);
 
         boolean more = false;
-        if (jobs.size() > ListJobResponse.MAX_JOB_NUMBER) {
+        Optional<Integer> next = Optional.empty();
+        if (jobs.size() > pageSize) {
             more = true;
-            jobs = jobs.subList(0, ListJobResponse.MAX_JOB_NUMBER);
+            jobs = jobs.subList(0, pageSize);
+            // Decodes just the last one for the cursor, as jobs are sorted by id
+            next = Optional.of(MAPPER.readTree(jobs.get(pageSize - 1)).get("id").asInt());
         }
-        ListJobResponse listJobResponse = new ListJobResponse(jobs, more);
+        RawListJobResponse listJobResponse = new RawListJobResponse(jobs, more, next);
         listJobResponse.ok();
         res.status(200);
         res.type("application/json");
-        return MAPPER.writeValueAsString(listJobResponse);
+        // Write directly to the client, as the response can be as large as MAX_JOB_NUMBER jobs
+        MAPPER.writer().without(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+                .writeValue(res.raw().getOutputStream(), listJobResponse);
+        return "";
+    }
+
+    // Same in JSON as ListJobResponse, but with jobs in JSON as stored in database,
+    // which saves decoding and encoding each job again
+    @JsonTypeName("list")
+    static final class RawListJobResponse extends Response {
+        private final List<RawValue> jobs;
+        private final boolean more;
+        private final Optional<Integer> next;
+
+        RawListJobResponse(List<String> jobs, boolean more, Optional<Integer> next) {
+            this.jobs = jobs.stream().map(RawValue::new).collect(Collectors.toList());
+            this.more = more;
+            this.next = next;
+        }
+
+        @JsonGetter("jobs")
+        public List<RawValue> jobs() {
+            return jobs;
+        }
+
+        @JsonGetter("more")
+        public boolean more() {
+            return more;
+        }
+
+        @JsonGetter("next")
+        public Optional<Integer> next() {
+            return next;
+        }
+    }
+
+    // Same in JSON as GetJobResponse, with a job as stored in database
+    @JsonTypeName("get-job")
+    static final class RawGetJobResponse extends Response {
+        private final RawValue job;
+
+        RawGetJobResponse(Optional<String> job) {
+            this.job = job.map(RawValue::new).orElse(null);
+        }
+
+        @JsonGetter("job")
+        public RawValue job() {
+            return job;
+        }
     }
 
     private static Optional<Job> getJobAndVerify(Request req) throws IOException {
@@ -114,7 +175,7 @@ public final class JobRequestHandler {
         }
         LOG.debug("get-xxx id={}, user={}", id, authHeaderValue.get().key());
 
-        Optional<AppJobPair> maybePair = Database.getInstance().getAppJob(id);
+        Optional<AppJobPair> maybePair = JobStores.get().getAppJob(id);
         if (maybePair.isPresent()) {
             AppJobPair pair = maybePair.get();
             if (pair.application().getOwner().equals(authHeaderValue.get().key())) {
@@ -125,11 +186,17 @@ public final class JobRequestHandler {
     }
 
     static String getJob(spark.Request req, spark.Response res) throws IOException {
-        Optional<Job> maybeJob = getJobAndVerify(req);
+        int id = Integer.parseInt(req.params(":id"));
+        Optional<AuthHeader> authHeaderValue = WebConsole.getAuthInfo(req);
+        Optional<String> maybeJob = Optional.empty();
+        if (authHeaderValue.isPresent()) {
+            LOG.debug("get-job id={}, user={}", id, authHeaderValue.get().key());
+            maybeJob = JobStores.get().getJobJson(id, authHeaderValue.get().key());
+        }
 
         res.type("application/json");
 
-        Response response = new GetJobResponse(maybeJob);
+        Response response = new RawGetJobResponse(maybeJob);
         response.status("ok");
         res.status(200);
         return MAPPER.writeValueAsString(response);
@@ -311,7 +378,7 @@ public final class JobRequestHandler {
             return MAPPER.writeValueAsString(response);
         }
 
-        boolean result = Stanchion.call(() -> {
+        boolean result = Stanchion.call(Stanchion.Kind.KILL, () -> {
             Optional<Job> maybeJob2 = JobQueue.cancel(id, "Canceled by user");
 
             if (maybeJob2.isPresent()) {
@@ -344,6 +411,46 @@ public final class JobRequestHandler {
         return MAPPER.writeValueAsString(response);
     }
 
+    // Kills all jobs of the user matching the request in one transaction, and sends kill
+    // to tasks of running ones in the same pass of Stanchion
+    static String killJobs(spark.Request req, spark.Response res) throws IOException {
+        res.type("application/json");
+        Optional<AuthHeader> authHeaderValue = WebConsole.getAuthInfo(req);
+        if (!authHeaderValue.isPresent()) {
+            halt(401, "Authorization header lacking");
+        }
+        KillJobsRequest killJobsRequest = MAPPER.readValue(req.bodyAsBytes(), KillJobsRequest.class);
+        if (!killJobsRequest.tag().isPresent() && !killJobsRequest.fromId().isPresent()
+                && !killJobsRequest.toId().isPresent()) {
+            halt(400, "Either tag or id range is required to kill jobs");
+        }
+        String user = authHeaderValue.get().key();
+        LOG.debug("kill-jobs user={}, states={}, tag={}, from={}, to={}", user, killJobsRequest.states(),
+                killJobsRequest.tag(), killJobsRequest.fromId(), killJobsRequest.toId());
+
+        int[] counts = Stanchion.call(Stanchion.Kind.KILL, () -> {
+            List<Job> killed = JobQueue.cancelAll(user, killJobsRequest.states(), killJobsRequest.tag(),
+                    killJobsRequest.fromId(), killJobsRequest.toId(), "Canceled by user");
+            int running = 0;
+            for (Job job : killed) {
+                if (job.taskId() != null && !job.taskId().isEmpty()) {
+                    running++;
+                    if (driver.isPresent()) {
+                        Protos.TaskID taskId = Protos.TaskID.newBuilder().setValue(job.taskId()).build();
+                        Protos.Status status = driver.get().killTask(taskId);
+                        LOG.info("Job id={} was running and killed. status={}, taskId={}", job.id(), status, job.taskId());
+                    }
+                }
+            }
+            return new int[]{killed.size() - running, running};
+        });
+
+        KillJobsResponse response = new KillJobsResponse(counts[0], counts[1]);
+        response.ok();
+        res.status(200);
+        return MAPPER.writeValueAsString(response);
+    }
+
     static String schedule(spark.Request req, spark.Response res) throws IOException {
         ScheduleRequest scheduleRequest = MAPPER.readValue(req.bodyAsBytes(), ScheduleRequest.class);
         res.type("application/json");
@@ -393,4 +500,75 @@ public final class JobRequestHandler {
             return MAPPER.writeValueAsString(response);
         }
     }
+
+    // Schedules jobs of an application given as a JSON array or newline-delimited JSON in one
+    // transaction, with contiguous ids, and tries to invoke them at one scheduling pass
+    static String scheduleBatch(spark.Request req, spark.Response res) throws IOException {
+        String appid = req.params(":name");
+        res.type("application/json");
+        Optional<Application> maybeApp = Applications.get(appid);
+        if (!maybeApp.isPresent()) {
+            ErrorResponse response = new ErrorResponse("No such application: " + appid);
+            res.status(404);
+            return MAPPER.writeValueAsString(response);
+
+        } else if (!maybeApp.get().enabled()) {
+            res.status(401);
+            ErrorResponse response = new ErrorResponse("Application " + appid + " is disabled");
+            return MAPPER.writeValueAsString(response);
+        }
+
+        validateOwner(req, maybeApp.get());
+
+        List<Job> jobs = new ArrayList<>();
+        // Most batches have a few shapes of resources, validated once each
+        Map<List<Integer>, Boolean> fits = new HashMap<>();
+        // A root-level array is unwrapped, or values are read one by one. hasNextValue and
+        // nextValue throw errors as they are, where hasNext and next wrap them in RuntimeException
+        try (MappingIterator<Job> it = MAPPER.readerFor(Job.class).readValues(req.bodyAsBytes())) {
+            while (it.hasNextValue()) {
+                Job job = it.nextValue();
+                if (!appid.equals(job.appid())) {
+                    halt(400, "Job of another application " + job.appid() + " in batch for " + appid);
+                }
+                if (jobs.size() >= ScheduleBatchRequest.MAX_JOB_NUMBER) {
+                    halt(400, "More than " + ScheduleBatchRequest.MAX_JOB_NUMBER + " jobs in a batch");
+                }
+                if (scheduler.isPresent()) {
+                    List<Integer> shape = Arrays.asList(job.resources().getCpu(), job.resources().getMemMB(),
+                            job.resources().getGpu(), job.resources().getPorts(), job.resources().getDiskMB());
+                    if (!fits.computeIfAbsent(shape, s -> scheduler.get().validateJob(job))) {
+                        String msg = "Job " + job.toString() + " does not fit system limit " + scheduler.get().maxJobSize();
+                        LOG.warn(msg);
+                        halt(400, msg);
+                    }
+                }
+                jobs.add(job);
+            }
+        } catch (JsonProcessingException e) {
+            halt(400, "Bad jobs in batch: " + e.getOriginalMessage());
+        }
+        if (jobs.isEmpty()) {
+            halt(400, "No job in batch");
+        }
+
+        int firstId = JobQueue.issueJobIds(jobs.size());
+        String now = TimestampHelper.now();
+        for (int i = 0; i < jobs.size(); i++) {
+            jobs.get(i).schedule(firstId + i, now);
+        }
+        JobQueue.pushAll(appid, jobs);
+        if (scheduler.isPresent() && driver.isPresent()) {
+            LOG.info("Trying invocation of {} jobs from offer stock", jobs.size());
+            scheduler.get().maybeInvokeNow(driver.get(), jobs);
+        }
+
+        ScheduleBatchResponse response = new ScheduleBatchResponse(firstId, jobs.size(), now);
+        response.ok();
+        LOG.info("{} jobs (id={}..{}) at {} have been scheduled at {}.",
+                jobs.size(), firstId, firstId + jobs.size() - 1, appid, now);
+
+        res.status(201);
+        return MAPPER.writeValueAsString(response);
+    }
 }
@@ -19,7 +19,8 @@ package io.github.retz.web;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
-import io.github.retz.db.Database;
+import io.github.retz.db.JobStores;
+import io.github.retz.misc.LogUtil;
 import io.github.retz.protocol.StatusResponse;
 import io.github.retz.protocol.data.Job;
 import io.github.retz.protocol.data.ResourceQuantity;
@@ -29,8 +30,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.io.UncheckedIOException;
-import java.util.List;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -39,7 +38,10 @@ public class StatusCache implements Runnable {
     private static final Logger LOG = LoggerFactory.getLogger(StatusCache.class);
     private static final ObjectMapper MAPPER = new ObjectMapper();
 
+    private static final int RECONCILE_INTERVAL = 60; // seconds
+
     private static boolean on = true;
+    private static long lastReconciled = System.currentTimeMillis();
     private static final ScheduledExecutorService SCHEDULER = Executors.newScheduledThreadPool(1);
     private static final StatusResponse STATUS_RESPONSE_CACHE = new StatusResponse(RetzScheduler.HTTP_SERVER_NAME);
 
@@ -55,6 +57,7 @@ public class StatusCache implements Runnable {
 
     @Override
     public void run() {
+        StatusCache.maybeReconcileCounters();
         StatusCache.updateUsedResources();
         StatusCache.updateStanchionStatus();
         if (on) {
@@ -89,29 +92,33 @@ public class StatusCache implements Runnable {
     }
 
     public static void updateUsedResources() {
-        // Do cache update here
-        int queueLength;
-        List<Job> jobs;
-        try {
-            queueLength = Database.getInstance().countQueued();
-            jobs = Database.getInstance().getRunning();
-        } catch (IOException e) {
-            throw new UncheckedIOException(e);
-        }
-        ResourceQuantity total = new ResourceQuantity();
-        for (Job job : jobs) {
-            total.add(job.resources());
-        }
-        int running = jobs.size();
+        // Counters are maintained at each job state transition; no database access here
+        int queueLength = JobStores.get().countQueued();
+        int running = JobStores.get().countRunning();
+        ResourceQuantity total = JobStores.get().getUsedResources();
         StatusCache.setUsedResources(queueLength, running, total);
 
         LOG.debug("poke len(Q)={}, len(Running)={}, totalUsed={}",
                 queueLength, running, total);
     }
 
+    // Counters may drift if jobs table is modified by others, e.g. another server or by hand
+    static void maybeReconcileCounters() {
+        long now = System.currentTimeMillis();
+        if (now - lastReconciled < TimeUnit.SECONDS.toMillis(RECONCILE_INTERVAL)) {
+            return;
+        }
+        lastReconciled = now;
+        try {
+            JobStores.get().reconcileJobCounters();
+        } catch (IOException e) {
+            LogUtil.error(LOG, "Reconciling job counters failed", e);
+        }
+    }
+
     public static void updateStanchionStatus() {
         synchronized (STATUS_RESPONSE_CACHE) {
-            STATUS_RESPONSE_CACHE.setStanchionQueueLength(Stanchion.getQueueLength());
+            STATUS_RESPONSE_CACHE.setStanchionQueueLength(Stanchion.getQueueLengths());
         }
     }
 
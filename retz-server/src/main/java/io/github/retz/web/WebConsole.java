@@ -23,7 +23,7 @@ import io.github.retz.auth.AuthHeader;
 import io.github.retz.auth.Authenticator;
 import io.github.retz.auth.HmacSHA256Authenticator;
 import io.github.retz.auth.NoopAuthenticator;
-import io.github.retz.db.Database;
+import io.github.retz.db.JobStores;
 import io.github.retz.misc.LogUtil;
 import io.github.retz.protocol.*;
 import io.github.retz.protocol.data.Application;
@@ -125,6 +125,8 @@ public final class WebConsole {
         // /job  PUT -> schedule, GET -> get-job, DELETE -> kill
         get(GetJobRequest.resourcePattern(), JobRequestHandler::getJob);
         post(ScheduleRequest.resourcePattern(), JobRequestHandler::schedule);
+        post(ScheduleBatchRequest.resourcePattern(), JobRequestHandler::scheduleBatch);
+        post(KillJobsRequest.resourcePattern(), JobRequestHandler::killJobs);
         delete(KillRequest.resourcePattern(), JobRequestHandler::kill);
         // Get a file
         get(GetFileRequest.resourcePattern(), JobRequestHandler::getFile);
@@ -205,7 +207,7 @@ public final class WebConsole {
 
         Authenticator authenticator;
         // Not admin
-        Optional<User> u = Database.getInstance().getUser(authHeaderValue.get().key());
+        Optional<User> u = JobStores.get().getUser(authHeaderValue.get().key());
         if (u.isPresent()) {
             if (!u.get().enabled()) {
                 halt(403, "User disabled");
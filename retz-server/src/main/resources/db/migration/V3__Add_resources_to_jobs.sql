@@ -0,0 +1,24 @@
+--
+--    Retz
+--    Copyright (C) 2016-2017 Nautilus Technologies, Inc.
+--
+--    Licensed under the Apache License, Version 2.0 (the "License");
+--    you may not use this file except in compliance with the License.
+--    You may obtain a copy of the License at
+--
+--        http://www.apache.org/licenses/LICENSE-2.0
+--
+--    Unless required by applicable law or agreed to in writing, software
+--    distributed under the License is distributed on an "AS IS" BASIS,
+--    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+--    See the License for the specific language governing permissions and
+--    limitations under the License.
+--
+
+-- Typed copies of Job.resources() so that queue scans do not have to
+-- decode JSON; filled for existing rows by V3_1__Fill_resources_of_jobs
+ALTER TABLE jobs ADD COLUMN cpu INTEGER DEFAULT 0 NOT NULL;
+ALTER TABLE jobs ADD COLUMN mem_mb INTEGER DEFAULT 0 NOT NULL;
+ALTER TABLE jobs ADD COLUMN gpu INTEGER DEFAULT 0 NOT NULL;
+ALTER TABLE jobs ADD COLUMN ports INTEGER DEFAULT 0 NOT NULL;
+ALTER TABLE jobs ADD COLUMN disk_mb INTEGER DEFAULT 0 NOT NULL;
@@ -0,0 +1,22 @@
+--
+--    Retz
+--    Copyright (C) 2016-2017 Nautilus Technologies, Inc.
+--
+--    Licensed under the Apache License, Version 2.0 (the "License");
+--    you may not use this file except in compliance with the License.
+--    You may obtain a copy of the License at
+--
+--        http://www.apache.org/licenses/LICENSE-2.0
+--
+--    Unless required by applicable law or agreed to in writing, software
+--    distributed under the License is distributed on an "AS IS" BASIS,
+--    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+--    See the License for the specific language governing permissions and
+--    limitations under the License.
+--
+
+-- Queue scans filter on state and order by Planner.orderBy(); these match
+-- built-in planners ("id" and "priority, id") and cover the resource columns
+-- findFit reads. See Database.hasQueueIndex for the startup check.
+CREATE INDEX jobs_state_id ON jobs(state, id, cpu, mem_mb);
+CREATE INDEX jobs_state_priority_id ON jobs(state, priority, id, cpu, mem_mb);
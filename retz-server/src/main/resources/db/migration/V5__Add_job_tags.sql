@@ -0,0 +1,27 @@
+--
+--    Retz
+--    Copyright (C) 2016-2017 Nautilus Technologies, Inc.
+--
+--    Licensed under the Apache License, Version 2.0 (the "License");
+--    you may not use this file except in compliance with the License.
+--    You may obtain a copy of the License at
+--
+--        http://www.apache.org/licenses/LICENSE-2.0
+--
+--    Unless required by applicable law or agreed to in writing, software
+--    distributed under the License is distributed on an "AS IS" BASIS,
+--    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+--    See the License for the specific language governing permissions and
+--    limitations under the License.
+--
+
+-- Normalized Job.tags() so that listing jobs by tag is done in SQL; maintained by
+-- io.github.retz.db.Jobs and filled for existing rows by V5_1__Fill_job_tags
+CREATE TABLE job_tags(
+    job_id INTEGER NOT NULL,
+    tag VARCHAR NOT NULL,
+    PRIMARY KEY (job_id, tag),
+    FOREIGN KEY (job_id) REFERENCES jobs(id) ON DELETE CASCADE
+);
+
+CREATE INDEX job_tags_tag ON job_tags(tag, job_id);
@@ -0,0 +1,26 @@
+--
+--    Retz
+--    Copyright (C) 2016-2017 Nautilus Technologies, Inc.
+--
+--    Licensed under the Apache License, Version 2.0 (the "License");
+--    you may not use this file except in compliance with the License.
+--    You may obtain a copy of the License at
+--
+--        http://www.apache.org/licenses/LICENSE-2.0
+--
+--    Unless required by applicable law or agreed to in writing, software
+--    distributed under the License is distributed on an "AS IS" BASIS,
+--    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+--    See the License for the specific language governing permissions and
+--    limitations under the License.
+--
+
+-- Job timestamps as milliseconds since epoch, so that ranges are compared as
+-- numbers rather than as strings with time zone offsets. VARCHAR columns are
+-- kept as they are; filled for existing rows by V6_1__Fill_epoch_timestamps
+ALTER TABLE jobs ADD COLUMN scheduled_at BIGINT;
+ALTER TABLE jobs ADD COLUMN started_at BIGINT;
+ALTER TABLE jobs ADD COLUMN finished_at BIGINT;
+
+CREATE INDEX jobs_scheduled_at ON jobs(scheduled_at);
+CREATE INDEX jobs_finished_at ON jobs(finished_at);
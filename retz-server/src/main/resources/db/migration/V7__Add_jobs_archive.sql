@@ -0,0 +1,47 @@
+--
+--    Retz
+--    Copyright (C) 2016-2017 Nautilus Technologies, Inc.
+--
+--    Licensed under the Apache License, Version 2.0 (the "License");
+--    you may not use this file except in compliance with the License.
+--    You may obtain a copy of the License at
+--
+--        http://www.apache.org/licenses/LICENSE-2.0
+--
+--    Unless required by applicable law or agreed to in writing, software
+--    distributed under the License is distributed on an "AS IS" BASIS,
+--    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+--    See the License for the specific language governing permissions and
+--    limitations under the License.
+--
+
+-- FINISHED or KILLED jobs moved out of 'jobs' by GarbageJobCollector when
+-- retz.gc.archive is on; reads of single jobs, lists and usage fall back here
+CREATE TABLE jobs_archive(
+    id INTEGER NOT NULL,
+    name VARCHAR(32),
+    appid VARCHAR(32) NOT NULL,
+    state VARCHAR(16) NOT NULL,
+    cpu INTEGER NOT NULL DEFAULT 0,
+    mem_mb INTEGER NOT NULL DEFAULT 0,
+    gpu INTEGER NOT NULL DEFAULT 0,
+    ports INTEGER NOT NULL DEFAULT 0,
+    disk_mb INTEGER NOT NULL DEFAULT 0,
+    scheduled_at BIGINT,
+    started_at BIGINT,
+    finished_at BIGINT,
+    json TEXT NOT NULL,
+    PRIMARY KEY (id)
+);
+
+CREATE INDEX jobs_archive_finished_at ON jobs_archive(finished_at);
+CREATE INDEX jobs_archive_appid_state_id ON jobs_archive(appid, state, id);
+
+CREATE TABLE jobs_archive_tags(
+    job_id INTEGER NOT NULL,
+    tag VARCHAR NOT NULL,
+    PRIMARY KEY (job_id, tag),
+    FOREIGN KEY (job_id) REFERENCES jobs_archive(id) ON DELETE CASCADE
+);
+
+CREATE INDEX jobs_archive_tags_tag ON jobs_archive_tags(tag, job_id);
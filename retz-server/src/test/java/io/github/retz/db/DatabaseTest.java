@@ -19,6 +19,7 @@ package io.github.retz.db;
 import io.github.retz.cli.TimestampHelper;
 import io.github.retz.protocol.data.*;
 import io.github.retz.planner.AppJobPair;
+import io.github.retz.scheduler.GarbageJobCollector;
 import io.github.retz.scheduler.JobQueue;
 import org.hamcrest.Matchers;
 import org.junit.After;
@@ -26,6 +27,8 @@ import org.junit.Before;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.util.*;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
@@ -261,6 +264,346 @@ public class DatabaseTest {
         db.deleteAllJob(Integer.MAX_VALUE);
     }
 
+    @Test
+    public void findFit() throws Exception {
+        User u = db.createUser("test user findFit");
+        Application a = new Application("fitapp", Collections.emptyList(), Collections.emptyList(),
+                Optional.empty(), u.keyId(), 0, new MesosContainer(), true);
+        db.addApplication(a);
+
+        List<Integer> ids = new ArrayList<>();
+        // cpu: 1, 2, 3, 4, ...
+        for (int i = 1; i <= 10; ++i) {
+            Job job = new Job(a.getAppid(), "sleep " + i, new Properties(), i, 32 * i, 0);
+            job.schedule(JobQueue.issueJobId(), TimestampHelper.now());
+            db.safeAddJob(job);
+            ids.add(job.id());
+        }
+
+        {
+            // 1 + 2 + 3 = 6 <= 7 < 1 + 2 + 3 + 4
+            List<Job> jobs = db.findFit(Arrays.asList("id"), 7, 10000);
+            assertEquals(ids.subList(0, 3), jobs.stream().map(Job::id).collect(Collectors.toList()));
+        }
+        {
+            // Memory runs out first: 32 + 64 <= 100 < 32 + 64 + 96
+            List<Job> jobs = db.findFit(Arrays.asList("id"), 100, 100);
+            assertEquals(ids.subList(0, 2), jobs.stream().map(Job::id).collect(Collectors.toList()));
+            assertEquals(2, jobs.get(1).resources().getCpu());
+        }
+        {
+            // Stops at the first job that does not fit, as before
+            List<Job> jobs = db.findFit(Arrays.asList("id"), 0, 10000);
+            assertTrue(jobs.isEmpty());
+        }
+        {
+            // Resource columns follow state changes
+            db.setJobStarting(ids.get(0), Optional.empty(), "fit-taskid-0");
+            List<Job> jobs = db.findFit(Arrays.asList("id"), 5, 10000);
+            assertEquals(ids.subList(1, 3), jobs.stream().map(Job::id).collect(Collectors.toList()));
+        }
+        db.deleteAllJob(Integer.MAX_VALUE);
+
+        {
+            // More jobs than fit in one IN clause are decoded in chunks
+            List<Job> many = new ArrayList<>();
+            for (int i = 0; i < Jobs.GET_CHUNK_SIZE * 2 + 1; ++i) {
+                Job job = new Job(a.getAppid(), "many " + i, new Properties(), 1, 1, 0);
+                job.schedule(JobQueue.issueJobId(), TimestampHelper.now());
+                many.add(job);
+            }
+            db.safeAddJobs(a.getAppid(), many);
+            List<Job> jobs = db.findFit(Arrays.asList("id"), many.size(), 100000);
+            assertEquals(many.stream().map(Job::id).collect(Collectors.toList()),
+                    jobs.stream().map(Job::id).collect(Collectors.toList()));
+        }
+        db.deleteAllJob(Integer.MAX_VALUE);
+    }
+
+    @Test
+    public void listJobsByTag() throws Exception {
+        User u = db.createUser("test user listJobsByTag");
+        Application a = new Application("tagapp", Collections.emptyList(), Collections.emptyList(),
+                Optional.empty(), u.keyId(), 0, new MesosContainer(), true);
+        db.addApplication(a);
+
+        List<Integer> even = new ArrayList<>();
+        for (int i = 0; i < 10; ++i) {
+            Job job = new Job(a.getAppid(), "echo " + i, new Properties(), 1, 32, 0);
+            job.addTags(i % 2 == 0 ? "even" : "odd", "all");
+            job.schedule(JobQueue.issueJobId(), TimestampHelper.now());
+            db.safeAddJob(job);
+            if (i % 2 == 0) {
+                even.add(0, job.id());
+            }
+        }
+
+        {
+            List<Job> jobs = db.listJobs(u.keyId(), Job.JobState.QUEUED, Optional.of("even"), 1024);
+            assertEquals(even, jobs.stream().map(Job::id).collect(Collectors.toList()));
+        }
+        {
+            // Limit applies after the tag filter
+            List<Job> jobs = db.listJobs(u.keyId(), Job.JobState.QUEUED, Optional.of("even"), 2);
+            assertEquals(even.subList(0, 2), jobs.stream().map(Job::id).collect(Collectors.toList()));
+        }
+        {
+            // Pages from afterId cover all jobs without overlap
+            List<Integer> paged = new ArrayList<>();
+            Optional<Integer> afterId = Optional.empty();
+            List<Job> jobs;
+            do {
+                jobs = db.listJobs(u.keyId(), Job.JobState.QUEUED, Optional.of("even"), afterId, 2);
+                jobs.forEach(job -> paged.add(job.id()));
+                if (!jobs.isEmpty()) {
+                    afterId = Optional.of(jobs.get(jobs.size() - 1).id());
+                }
+            } while (!jobs.isEmpty());
+            assertEquals(even, paged);
+        }
+        assertEquals(10, db.listJobs(u.keyId(), Job.JobState.QUEUED, Optional.of("all"), 1024).size());
+        assertEquals(10, db.listJobs(u.keyId(), Job.JobState.QUEUED, Optional.empty(), 1024).size());
+        assertTrue(db.listJobs(u.keyId(), Job.JobState.QUEUED, Optional.of("none"), 1024).isEmpty());
+        assertTrue(db.listJobs("charlie", Job.JobState.QUEUED, Optional.of("even"), 1024).isEmpty());
+
+        {
+            // Tags survive state changes
+            db.setJobStarting(even.get(0), Optional.empty(), "tag-taskid-0");
+            List<Job> jobs = db.listJobs(u.keyId(), Job.JobState.STARTING, Optional.of("even"), 1024);
+            assertEquals(1, jobs.size());
+            assertEquals(even.get(0).intValue(), jobs.get(0).id());
+            assertEquals(4, db.listJobs(u.keyId(), Job.JobState.QUEUED, Optional.of("even"), 1024).size());
+        }
+        db.deleteAllJob(Integer.MAX_VALUE);
+    }
+
+    @Test
+    public void updateJobs() throws Exception {
+        User u = db.createUser("test user updateJobs");
+        Application a = new Application("batchapp", Collections.emptyList(), Collections.emptyList(),
+                Optional.empty(), u.keyId(), 0, new MesosContainer(), true);
+        db.addApplication(a);
+
+        List<Job> jobs = new ArrayList<>();
+        for (int i = 0; i < 5; ++i) {
+            Job job = new Job(a.getAppid(), "echo " + i, new Properties(), 1, 32, 0);
+            job.addTags("batch");
+            job.schedule(JobQueue.issueJobId(), TimestampHelper.now());
+            db.safeAddJob(job);
+            jobs.add(job);
+        }
+
+        for (Job job : jobs) {
+            job.killed(TimestampHelper.now(), Optional.empty(), "updateJobs test");
+        }
+        db.updateJobs(jobs);
+        for (Job job : jobs) {
+            assertEquals(Job.JobState.KILLED, db.getJob(job.id()).get().state());
+        }
+        assertEquals(5, db.listJobs(u.keyId(), Job.JobState.KILLED, Optional.of("batch"), 1024).size());
+
+        // Unknown ids are skipped
+        List<Integer> ids = jobs.stream().map(Job::id).collect(Collectors.toList());
+        ids.add(-1);
+        db.retryJobs(ids);
+        for (Job job : jobs) {
+            Job retried = db.getJob(job.id()).get();
+            assertEquals(Job.JobState.QUEUED, retried.state());
+            assertEquals(1, retried.retry());
+        }
+        assertEquals(5, db.listJobs(u.keyId(), Job.JobState.QUEUED, Optional.of("batch"), 1024).size());
+        db.deleteAllJob(Integer.MAX_VALUE);
+    }
+
+    @Test
+    public void killJobsInChunks() throws Exception {
+        User u = db.createUser("test user killJobsInChunks");
+        Application a = new Application("killapp", Collections.emptyList(), Collections.emptyList(),
+                Optional.empty(), u.keyId(), 0, new MesosContainer(), true);
+        db.addApplication(a);
+
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < 7; ++i) {
+            Job job = new Job(a.getAppid(), "echo " + i, new Properties(), 1, 32, 0);
+            job.addTags(i == 3 ? "other" : "kill");
+            job.schedule(JobQueue.issueJobId(), TimestampHelper.now());
+            db.safeAddJob(job);
+            ids.add(job.id());
+        }
+        db.setJobStarting(ids.get(1), Optional.empty(), "kill-taskid-1");
+
+        // Jobs out of the tag, the states or the id range are left
+        List<Job> killed = db.killJobs(u.keyId(), Arrays.asList(Job.JobState.QUEUED, Job.JobState.STARTING),
+                Optional.of("kill"), Optional.of(ids.get(1)), Optional.of(ids.get(5)), "chunk test", 2);
+        assertEquals(Arrays.asList(ids.get(1), ids.get(2), ids.get(4), ids.get(5)),
+                killed.stream().map(Job::id).collect(Collectors.toList()));
+        for (Job job : killed) {
+            assertEquals(Job.JobState.KILLED, db.getJob(job.id()).get().state());
+        }
+        assertEquals(3, db.countQueued());
+        assertEquals(0, db.countRunning());
+
+        // A chunk as large as the rest ends with an empty chunk
+        killed = db.killJobs(u.keyId(), Collections.singletonList(Job.JobState.QUEUED),
+                Optional.empty(), Optional.empty(), Optional.empty(), "chunk test", 3);
+        assertEquals(Arrays.asList(ids.get(0), ids.get(3), ids.get(6)),
+                killed.stream().map(Job::id).collect(Collectors.toList()));
+        assertEquals(0, db.countQueued());
+        // Killed jobs are never marked starting
+        assertFalse(db.setJobStarting(ids.get(0), Optional.empty(), "kill-taskid-0"));
+        assertEquals(Job.JobState.KILLED, db.getJob(ids.get(0)).get().state());
+        assertTrue(db.killJobs("charlie", Collections.singletonList(Job.JobState.KILLED),
+                Optional.empty(), Optional.empty(), Optional.empty(), "chunk test", 3).isEmpty());
+        db.deleteAllJob(Integer.MAX_VALUE);
+    }
+
+    @Test
+    public void activeJobIndex() throws Exception {
+        User u = db.createUser("test user activeJobIndex");
+        Application a = new Application("indexapp", Collections.emptyList(), Collections.emptyList(),
+                Optional.empty(), u.keyId(), 0, new MesosContainer(), true);
+        db.addApplication(a);
+        ActiveJobIndex index = db.getActiveJobIndex();
+        int base = index.size();
+        int running = db.getRunning().size();
+
+        Job job = new Job(a.getAppid(), "echo index", new Properties(), 1, 32, 0);
+        job.schedule(JobQueue.issueJobId(), TimestampHelper.now());
+        db.safeAddJob(job);
+        assertEquals(base + 1, index.size());
+
+        db.setJobStarting(job.id(), Optional.empty(), "index-taskid");
+        long hits = index.hits();
+        assertEquals(Job.JobState.STARTING, db.getJobFromTaskId("index-taskid").get().state());
+        assertEquals(a.getAppid(), db.getAppJob(job.id()).get().application().getAppid());
+        assertEquals(hits + 2, index.hits());
+        assertEquals(running + 1, db.getRunning().size());
+
+        // JSON of active jobs is served from the index, to the owner only
+        assertTrue(db.getJobJson(job.id(), u.keyId()).get().contains("index-taskid"));
+        assertFalse(db.getJobJson(job.id(), "not the owner").isPresent());
+        assertEquals(hits + 4, index.hits());
+        assertTrue(db.checkActiveJobIndex().isEmpty());
+
+        // Terminal jobs leave the index but can still be read from database
+        db.updateJob(job.id(), j -> {
+            j.finished(TimestampHelper.now(), Optional.empty(), 0);
+            return Optional.of(j);
+        });
+        assertEquals(base, index.size());
+        assertEquals(running, db.getRunning().size());
+        assertEquals(Job.JobState.FINISHED, db.getJobFromTaskId("index-taskid").get().state());
+        assertTrue(db.getJobJson(job.id(), u.keyId()).isPresent());
+        assertFalse(db.getJobJson(job.id(), "not the owner").isPresent());
+        assertTrue(db.checkActiveJobIndex().isEmpty());
+
+        // Writes bypassing Database are detected
+        Job other = new Job(a.getAppid(), "echo other", new Properties(), 1, 32, 0);
+        other.schedule(JobQueue.issueJobId(), TimestampHelper.now());
+        db.safeAddJob(other);
+        try (Connection conn = Database.getDataSource().getConnection();
+             PreparedStatement p = conn.prepareStatement("UPDATE jobs SET state='KILLED' WHERE id=?")) {
+            conn.setAutoCommit(true);
+            p.setInt(1, other.id());
+            p.execute();
+        }
+        assertEquals(1, db.checkActiveJobIndex().size());
+        db.deleteAllJob(Integer.MAX_VALUE);
+        assertEquals(0, index.size());
+        assertTrue(db.checkActiveJobIndex().isEmpty());
+    }
+
+    // Writes reaching the index out of commit order are dropped by version
+    @Test
+    public void activeJobIndexVersions() throws Exception {
+        ActiveJobIndex index = new ActiveJobIndex();
+        long queued = index.nextVersion();
+        long starting = index.nextVersion();
+        long finished = index.nextVersion();
+
+        Job started = versionJob();
+        started.starting("version-taskid", Optional.empty(), TimestampHelper.now());
+        index.put(started, "starting", starting);
+        index.put(versionJob(), "queued", queued);
+        assertEquals("starting", index.get(1).get());
+        assertEquals(1, index.running());
+        assertEquals(0, index.queued());
+
+        Job done = versionJob();
+        done.finished(TimestampHelper.now(), Optional.empty(), 0);
+        index.put(done, "finished", finished);
+        index.put(started, "starting", starting);
+        assertFalse(index.get(1).isPresent());
+        assertEquals(0, index.running());
+    }
+
+    private static Job versionJob() {
+        Job job = new Job("versionapp", "echo version", new Properties(), 1, 32, 0);
+        job.schedule(1, TimestampHelper.now());
+        return job;
+    }
+
+    @Test
+    public void jobCounters() throws Exception {
+        User u = db.createUser("test user jobCounters");
+        Application a = new Application("counterapp", Collections.emptyList(), Collections.emptyList(),
+                Optional.empty(), u.keyId(), 0, new MesosContainer(), true);
+        db.addApplication(a);
+        assertTrue(db.reconcileJobCounters());
+        int queued = db.countQueued();
+        int running = db.countRunning();
+        int cpu = db.getUsedResources().getCpu();
+
+        List<Job> jobs = new ArrayList<>();
+        for (int i = 0; i < 3; ++i) {
+            Job job = new Job(a.getAppid(), "echo " + i, new Properties(), 2, 32, 0);
+            job.schedule(JobQueue.issueJobId(), TimestampHelper.now());
+            db.safeAddJob(job);
+            jobs.add(job);
+        }
+        assertEquals(queued + 3, db.countQueued());
+
+        db.setJobStarting(jobs.get(0).id(), Optional.empty(), "counter-taskid-0");
+        db.setJobStarting(jobs.get(1).id(), Optional.empty(), "counter-taskid-1");
+        assertEquals(queued + 1, db.countQueued());
+        assertEquals(running + 2, db.countRunning());
+        assertEquals(cpu + 4, db.getUsedResources().getCpu());
+
+        jobs.get(0).finished(TimestampHelper.now(), Optional.empty(), 0);
+        db.updateJobs(Arrays.asList(jobs.get(0)));
+        assertEquals(running + 1, db.countRunning());
+        assertEquals(cpu + 2, db.getUsedResources().getCpu());
+        assertTrue(db.reconcileJobCounters());
+
+        // Writes bypassing Database are reconciled
+        try (Connection conn = Database.getDataSource().getConnection();
+             PreparedStatement p = conn.prepareStatement("UPDATE jobs SET state='KILLED' WHERE id=?")) {
+            conn.setAutoCommit(true);
+            p.setInt(1, jobs.get(2).id());
+            p.execute();
+        }
+        assertEquals(queued + 1, db.countQueued());
+        // Not compared while a write is in flight
+        db.getActiveJobIndex().begin();
+        assertTrue(db.reconcileJobCounters());
+        assertEquals(queued + 1, db.countQueued());
+        db.getActiveJobIndex().end();
+        assertFalse(db.reconcileJobCounters());
+        assertEquals(queued, db.countQueued());
+        assertTrue(db.reconcileJobCounters());
+    }
+
+    @Test
+    public void queueIndex() throws Exception {
+        // Built-in planners
+        assertTrue(db.hasQueueIndex(Arrays.asList("id")));
+        assertTrue(db.hasQueueIndex(Arrays.asList("priority", "id")));
+        assertTrue(db.hasQueueIndex(Arrays.asList("PRIORITY")));
+        // Custom orders without index
+        assertFalse(db.hasQueueIndex(Arrays.asList("name")));
+        assertFalse(db.hasQueueIndex(Arrays.asList("id", "priority")));
+    }
+
     @Test
     public void testProps() throws IOException {
         String frameworkId = "foorbartest....";
@@ -270,7 +613,91 @@ public class DatabaseTest {
     }
 
     @Test
-    public void gc() throws IOException {
-        db.deleteOldJobs(1024);
+    public void finishedJobs() throws Exception {
+        User u = db.createUser("test user finishedJobs");
+        Application a = new Application("usageapp", Collections.emptyList(), Collections.emptyList(),
+                Optional.empty(), u.keyId(), 0, new MesosContainer(), true);
+        db.addApplication(a);
+
+        // Same instants written with different offsets; ordering as strings would not match
+        String[] finished = {"2017-03-20T17:53:20.000+09:00", "2017-03-20T09:53:20.000Z", "2017-03-20T05:53:20.000-05:00"};
+        List<Integer> ids = new ArrayList<>();
+        for (String ts : finished) {
+            Job job = new Job(a.getAppid(), "usage", new Properties(), 1, 32, 0);
+            job.schedule(JobQueue.issueJobId(), TimestampHelper.now());
+            db.safeAddJob(job);
+            job.starting("usage-taskid-" + job.id(), Optional.empty(), ts);
+            job.finished(ts, Optional.empty(), 0);
+            db.updateJobs(Arrays.asList(job));
+            ids.add(job.id());
+        }
+        long start = TimestampHelper.toEpochMillis("2017-03-20T08:53:20.000Z");
+        List<Integer> found = db.finishedJobs(start, start + 3600 * 1000 + 1).stream()
+                .map(Job::id).filter(ids::contains).sorted().collect(Collectors.toList());
+        assertEquals(ids.subList(0, 2), found);
+        found = db.finishedJobs(start + 1, start + 3 * 3600 * 1000).stream()
+                .map(Job::id).filter(ids::contains).sorted().collect(Collectors.toList());
+        assertEquals(ids.subList(1, 3), found);
+    }
+
+    @Test
+    public void gc() throws Exception {
+        User u = db.createUser("test user gc");
+        Application a = new Application("gcapp", Collections.emptyList(), Collections.emptyList(),
+                Optional.empty(), u.keyId(), 0, new MesosContainer(), true);
+        db.addApplication(a);
+
+        String old = TimestampHelper.past(3600);
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < 10; ++i) {
+            Job job = new Job(a.getAppid(), "gc", new Properties(), 1, 32, 0);
+            job.schedule(JobQueue.issueJobId(), old);
+            db.safeAddJob(job);
+            if (i % 2 == 0) {
+                job.starting("gc-taskid-" + job.id(), Optional.empty(), old);
+                job.finished(old, Optional.empty(), 0);
+                db.updateJobs(Arrays.asList(job));
+            }
+            ids.add(job.id());
+        }
+        long before = System.currentTimeMillis() - 60 * 1000;
+        Database.JobIdRange range = db.getOldJobIdRange(before).get();
+        assertTrue(range.count() >= 5);
+        assertTrue(range.max() >= ids.get(8));
+
+        // Only finished jobs in the chunk are deleted
+        assertEquals(2, db.deleteOldJobs(before, ids.get(0), ids.get(3)));
+        assertFalse(db.getJob(ids.get(0)).isPresent());
+        assertTrue(db.getJob(ids.get(1)).isPresent());
+        assertTrue(db.getJob(ids.get(4)).isPresent());
+
+        assertTrue(GarbageJobCollector.collect(60));
+        assertFalse(GarbageJobCollector.isRunning());
+        assertTrue(GarbageJobCollector.rowsDeleted() >= 3);
+        assertEquals(0, GarbageJobCollector.backlog());
+        assertFalse(db.getOldJobIdRange(before).isPresent());
+        for (int i = 0; i < ids.size(); ++i) {
+            assertEquals(i % 2 == 1, db.getJob(ids.get(i)).isPresent());
+        }
+        assertFalse(GarbageJobCollector.stopCollection());
+        db.deleteAllJob(Integer.MAX_VALUE);
+    }
+
+    @Test
+    public void queryStats() throws Exception {
+        QueryStats.reset();
+        User u = db.createUser("query stats user");
+        assertTrue(db.getUser(u.keyId()).isPresent());
+        db.queued(10);
+
+        assertTrue(QueryStats.acquire().count() >= 2);
+        assertTrue(QueryStats.execute().count() >= 2);
+        assertTrue(QueryStats.report().stream().anyMatch(line -> line.endsWith("SELECT * FROM jobs WHERE state='QUEUED' ORDER BY state ASC, id ASC LIMIT ?")));
+        assertEquals("SELECT * FROM jobs LIMIT ?", QueryStats.normalize("SELECT *\n FROM jobs LIMIT 42"));
+        // Secrets are not logged
+        assertEquals("[...]", QueryStats.formatParams("INSERT INTO users(key_id, secret) values(?, ?)",
+                new Object[]{"a", "b"}, 2));
+        assertEquals("[a, null]", QueryStats.formatParams("SELECT * FROM users WHERE key_id=? AND enabled=?",
+                new Object[]{"a", null}, 2));
     }
 }
@@ -0,0 +1,216 @@
+/**
+ *    Retz
+ *    Copyright (C) 2016-2017 Nautilus Technologies, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.github.retz.db;
+
+import io.github.retz.cli.TimestampHelper;
+import io.github.retz.protocol.data.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class MemoryJobStoreTest {
+    private MemoryJobStore store;
+    private Path dir;
+    private User user;
+    private int lastId = 0;
+
+    @Before
+    public void before() throws Exception {
+        dir = Files.createTempDirectory("retz-store");
+        store = new MemoryJobStore();
+        store.openSnapshot(dir.resolve("snapshot.json"));
+        user = store.createUser("memory store user");
+        assertTrue(store.addApplication(new Application("memapp", Collections.emptyList(), Collections.emptyList(),
+                Optional.empty(), user.keyId(), 0, new MesosContainer(), true)));
+    }
+
+    @After
+    public void after() throws Exception {
+        store.stop();
+        Files.deleteIfExists(dir.resolve("snapshot.json"));
+        Files.deleteIfExists(dir);
+    }
+
+    private List<Job> schedule(int n, int priority, String tag) throws Exception {
+        List<Job> jobs = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            Job job = new Job("memapp", "sleep " + i, new Properties(), 1 + i % 2, 32, 0);
+            job.setPriority(priority);
+            job.addTags(tag);
+            job.schedule(++lastId, TimestampHelper.now());
+            jobs.add(job);
+        }
+        store.safeAddJobs("memapp", jobs);
+        return jobs;
+    }
+
+    private static List<Integer> ids(List<Job> jobs) {
+        return jobs.stream().map(Job::id).collect(Collectors.toList());
+    }
+
+    @Test
+    public void queue() throws Exception {
+        List<Job> low = schedule(4, 10, "low");
+        List<Job> high = schedule(4, -10, "high");
+        assertEquals(8, store.countQueued());
+
+        List<Integer> expected = new ArrayList<>(ids(high));
+        expected.addAll(ids(low));
+        assertEquals(expected, ids(store.findAll(Arrays.asList("priority", "id"), -1)));
+        assertEquals(ids(low).subList(0, 2), ids(store.queued(2)));
+        // cpu of high: 1, 2, 1, 2
+        assertEquals(ids(high).subList(0, 3), ids(store.findFit(Arrays.asList("priority", "id"), 5, 1000)));
+        assertFalse(store.hasQueueIndex(Arrays.asList("no_such_column")));
+
+        // Queues follow state changes
+        store.setJobStarting(high.get(0).id(), Optional.empty(), "mem-taskid-0");
+        assertEquals(ids(high).subList(1, 4), ids(store.findFit(Arrays.asList("priority", "id"), 5, 1000)));
+        assertEquals(1, store.countRunning());
+        assertEquals(1, store.getUsedResources().getCpu());
+        assertEquals(high.get(0).id(), store.getJobFromTaskId("mem-taskid-0").get().id());
+
+        // Jobs returned are copies
+        store.getJob(high.get(1).id()).get().setPriority(100);
+        assertEquals(-10, store.getJob(high.get(1).id()).get().priority());
+        assertTrue(store.checkActiveJobIndex().isEmpty());
+        assertTrue(store.reconcileJobCounters());
+    }
+
+    @Test
+    public void listAndKill() throws Exception {
+        List<Job> low = schedule(4, 0, "low");
+        List<Job> high = schedule(4, 0, "high");
+
+        List<Job> listed = store.listJobs(user.keyId(), Job.JobState.QUEUED, Optional.of("high"), Optional.empty(), 3);
+        assertEquals(Arrays.asList(high.get(3).id(), high.get(2).id(), high.get(1).id()), ids(listed));
+        listed = store.listJobs(user.keyId(), Job.JobState.QUEUED, Optional.empty(), Optional.of(high.get(0).id()), 10);
+        assertEquals(4, listed.size());
+        assertTrue(store.listJobs("someone", Job.JobState.QUEUED, Optional.empty(), Optional.empty(), 10).isEmpty());
+
+        List<Job> killed = store.killJobs(user.keyId(), Arrays.asList(Job.JobState.QUEUED), Optional.of("low"),
+                Optional.of(low.get(1).id()), Optional.empty(), "test");
+        assertEquals(ids(low).subList(1, 4), ids(killed));
+        assertEquals(5, store.countQueued());
+        assertEquals(Job.JobState.KILLED, store.getJob(low.get(1).id()).get().state());
+        assertEquals(3, store.listJobs(user.keyId(), Job.JobState.KILLED, Optional.empty(), 10).size());
+        assertTrue(store.getJobJson(low.get(1).id(), user.keyId()).isPresent());
+        assertFalse(store.getJobJson(low.get(1).id(), "someone").isPresent());
+    }
+
+    @Test
+    public void usageAndGc() throws Exception {
+        List<Job> jobs = schedule(6, 0, "gc");
+        String started = TimestampHelper.past(7200);
+        String finished = TimestampHelper.past(3600);
+        for (Job job : jobs.subList(0, 4)) {
+            job.starting("gc-taskid-" + job.id(), Optional.empty(), started);
+            job.finished(finished, Optional.empty(), 0);
+        }
+        store.updateJobs(jobs.subList(0, 4));
+        long before = System.currentTimeMillis() - 60 * 1000;
+
+        List<JobStore.UsageSummary> summaries = store.usageSummary(0, before, "user");
+        assertEquals(1, summaries.size());
+        assertEquals(4, summaries.get(0).jobs());
+        // cpu: 1, 2, 1, 2 for an hour
+        assertEquals(6 * 3600 * 1000L, summaries.get(0).cpuMillis());
+
+        List<JobStore.UsageEntry> page = store.finishedJobsJson(0, before, Optional.empty(), 3);
+        assertEquals(3, page.size());
+        page = store.finishedJobsJson(0, before, Optional.of(page.get(2)), 3);
+        assertEquals(Arrays.asList(jobs.get(3).id()), page.stream().map(JobStore.UsageEntry::id).collect(Collectors.toList()));
+
+        JobStore.JobIdRange range = store.getOldJobIdRange(before).get();
+        assertEquals(4, range.count());
+        assertEquals(jobs.get(0).id(), range.min());
+        assertEquals(2, store.archiveOldJobs(before, range.min(), jobs.get(1).id()).size());
+        assertEquals(2, store.deleteOldJobs(before, range.min(), range.max()));
+        assertFalse(store.getOldJobIdRange(before).isPresent());
+
+        // Archived jobs are still found and accounted
+        assertTrue(store.getJob(jobs.get(0).id()).isPresent());
+        assertFalse(store.getJob(jobs.get(2).id()).isPresent());
+        assertEquals(2, store.finishedJobs(0, before).size());
+        assertEquals(2, store.listJobs(user.keyId(), Job.JobState.FINISHED, Optional.empty(), 10).size());
+        assertEquals(2, store.countJobs());
+    }
+
+    @Test
+    public void collectInChunks() throws Exception {
+        // Old jobs every other id, with active jobs between them
+        List<Job> jobs = schedule(9, 0, "collect");
+        String old = TimestampHelper.past(3600);
+        List<Job> finished = new ArrayList<>();
+        for (int i = 0; i < jobs.size(); i += 2) {
+            Job job = jobs.get(i);
+            job.starting("collect-taskid-" + job.id(), Optional.empty(), old);
+            job.finished(old, Optional.empty(), 0);
+            finished.add(job);
+        }
+        store.updateJobs(finished);
+        long before = System.currentTimeMillis() - 60 * 1000;
+
+        // Chunks count old jobs, not ids
+        assertEquals(Optional.of(jobs.get(2).id()), store.getOldJobChunkEnd(before, 0, 2));
+        assertEquals(Optional.of(jobs.get(8).id()), store.getOldJobChunkEnd(before, jobs.get(4).id(), 2));
+        assertFalse(store.getOldJobChunkEnd(before, jobs.get(8).id(), 2).isPresent());
+
+        // Chunks as the collector walks them
+        int after = 0;
+        Optional<Integer> end;
+        int deleted = 0;
+        while ((end = store.getOldJobChunkEnd(before, after, 2)).isPresent()) {
+            deleted += store.deleteOldJobs(before, after + 1, end.get());
+            after = end.get();
+        }
+        assertEquals(5, deleted);
+        assertFalse(store.getOldJobIdRange(before).isPresent());
+        assertEquals(4, store.countJobs());
+    }
+
+    @Test
+    public void snapshot() throws Exception {
+        List<Job> jobs = schedule(3, 0, "snap");
+        store.setJobStarting(jobs.get(0).id(), Optional.empty(), "snap-taskid-0");
+        store.killJobs(user.keyId(), Arrays.asList(Job.JobState.QUEUED), Optional.empty(),
+                Optional.of(jobs.get(2).id()), Optional.empty(), "test");
+        store.setFrameworkId("snap-framework");
+        store.stop();
+
+        store = new MemoryJobStore();
+        store.openSnapshot(dir.resolve("snapshot.json"));
+        assertTrue(store.getUser(user.keyId()).isPresent());
+        assertTrue(store.getApplication("memapp").isPresent());
+        assertEquals(Job.JobState.STARTING, store.getJob(jobs.get(0).id()).get().state());
+        assertEquals(Job.JobState.QUEUED, store.getJob(jobs.get(1).id()).get().state());
+        assertEquals(Job.JobState.KILLED, store.getJob(jobs.get(2).id()).get().state());
+        assertEquals(1, store.countQueued());
+        assertEquals(1, store.countRunning());
+        assertEquals(jobs.get(2).id(), store.getLatestJobId());
+        assertEquals("snap-framework", store.getFrameworkId().get());
+
+        // Compacted to one line per record
+        assertEquals(1 + 1 + 3 + 1, Files.readAllLines(dir.resolve("snapshot.json")).size());
+    }
+}
@@ -0,0 +1,113 @@
+/**
+ *    Retz
+ *    Copyright (C) 2016-2017 Nautilus Technologies, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.github.retz.db;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
+import io.github.retz.cli.TimestampHelper;
+import io.github.retz.protocol.data.Application;
+import io.github.retz.protocol.data.Job;
+import io.github.retz.protocol.data.MesosContainer;
+import io.github.retz.protocol.data.User;
+import io.github.retz.scheduler.ServerConfiguration;
+
+import java.sql.Connection;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.Properties;
+
+/**
+ * Measures latency of queue head queries while the jobs table grows. Not a unit test;
+ * run manually with a server configuration, e.g. one with retz.database.url pointing
+ * to PostgreSQL:
+ *
+ * java -cp ... io.github.retz.db.QueueHeadBenchmark src/test/resources/retz.properties [10000,100000,1000000]
+ */
+public class QueueHeadBenchmark {
+    private static final int ROUNDS = 100;
+
+    public static void main(String... argv) throws Exception {
+        ServerConfiguration config = new ServerConfiguration(argv[0]);
+        String[] sizes = (argv.length > 1 ? argv[1] : "10000,100000,1000000").split(",");
+
+        Database db = Database.getInstance();
+        db.init(config);
+        try {
+            User u = db.createUser("benchmark");
+            Application app = new Application("bench", Collections.emptyList(), Collections.emptyList(),
+                    Optional.empty(), u.keyId(), 0, new MesosContainer(), true);
+            db.addApplication(app);
+
+            int inserted = 0;
+            System.out.println("rows\tqueued(1)\tfindFit(id)\tfindFit(priority,id)\tcountQueued  [us/op]");
+            for (String size : sizes) {
+                int target = Integer.parseInt(size);
+                insert(app, inserted, target);
+                inserted = target;
+                System.out.printf("%d\t%d\t%d\t%d\t%d%n", target,
+                        measure(() -> db.queued(1)),
+                        measure(() -> db.findFit(Arrays.asList("id"), 8, 8192)),
+                        measure(() -> db.findFit(Arrays.asList("priority", "id"), 8, 8192)),
+                        measure(db::countQueued));
+            }
+        } finally {
+            db.clear();
+            db.stop();
+        }
+    }
+
+    // Nine out of ten jobs are finished, as in a long running cluster
+    private static void insert(Application app, int from, int to) throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.registerModule(new Jdk8Module());
+        try (Connection conn = Database.getDataSource().getConnection()) {
+            conn.setAutoCommit(false);
+            Jobs jobs = new Jobs(conn, mapper);
+            for (int i = from; i < to; ++i) {
+                Job job = new Job(app.getAppid(), "sleep 1", new Properties(), 1, 32, 0);
+                job.schedule(i + 1, TimestampHelper.now());
+                job.setPriority(i % 7);
+                if (i % 10 != 0) {
+                    job.finished(TimestampHelper.now(), Optional.empty(), 0);
+                }
+                jobs.addJob(job);
+                if (i % 10000 == 0) {
+                    conn.commit();
+                }
+            }
+            conn.commit();
+        }
+    }
+
+    private static long measure(Query query) throws Exception {
+        for (int i = 0; i < ROUNDS / 10; ++i) {
+            query.run();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; ++i) {
+            query.run();
+        }
+        return (System.nanoTime() - start) / ROUNDS / 1000;
+    }
+
+    @FunctionalInterface
+    private interface Query {
+        Object run() throws Exception;
+    }
+}
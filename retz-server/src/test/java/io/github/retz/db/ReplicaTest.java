@@ -0,0 +1,123 @@
+/**
+ *    Retz
+ *    Copyright (C) 2016-2017 Nautilus Technologies, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.github.retz.db;
+
+import io.github.retz.cli.TimestampHelper;
+import io.github.retz.protocol.data.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+// Two in-memory databases stand for primary and replica, which are not replicated; what
+// replica returns tells where queries went.
+public class ReplicaTest {
+    private static final String REPLICA_URL = "jdbc:h2:mem:replica-test-replica;DB_CLOSE_DELAY=-1";
+    private Database primary;
+    private Database replica;
+
+    @Before
+    public void before() throws Exception {
+        primary = Database.newMemInstance("replica-test-primary");
+        replica = Database.newMemInstance("replica-test-replica");
+    }
+
+    @After
+    public void after() throws Exception {
+        primary.clear();
+        primary.stop();
+        replica.clear();
+        replica.stop();
+    }
+
+    private static int addJob(Database db, String appid, String user, int id) throws Exception {
+        Application app = new Application(appid, Collections.emptyList(), Collections.emptyList(),
+                Optional.empty(), user, 0, new MesosContainer(), true);
+        db.addApplication(app);
+        Job job = new Job(appid, "replica", new Properties(), 1, 32, 0);
+        job.schedule(id, TimestampHelper.now());
+        db.safeAddJob(job);
+        return id;
+    }
+
+    private static void setHeartbeat(long millis) throws Exception {
+        try (Connection conn = DriverManager.getConnection(REPLICA_URL)) {
+            conn.setAutoCommit(false);
+            new Property(conn).setHeartbeat(millis);
+            conn.commit();
+        }
+    }
+
+    private List<Integer> listQueued(String user) throws Exception {
+        return primary.listJobs(user, Job.JobState.QUEUED, Optional.empty(), 10)
+                .stream().map(Job::id).collect(Collectors.toList());
+    }
+
+    @Test
+    public void routing() throws Exception {
+        primary.initReplicaOnMem("replica-test-replica", 0);
+        assertTrue(primary.hasReplica());
+
+        User user = new User("replica-user", "secret", true, "replica test user");
+        primary.addUser(user);
+        replica.addUser(user);
+        addJob(primary, "primary-app", user.keyId(), 1);
+        addJob(replica, "replica-app", user.keyId(), 2);
+
+        // Listing is served by replica
+        assertEquals(Arrays.asList(2), listQueued(user.keyId()));
+        assertEquals(Arrays.asList("replica-app"), primary.getAllApplications(user.keyId())
+                .stream().map(Application::getAppid).collect(Collectors.toList()));
+        assertTrue(primary.getApplication("replica-app", true).isPresent());
+
+        // Scheduler path stays on primary
+        assertTrue(primary.getApplication("primary-app").isPresent());
+        assertFalse(primary.getApplication("replica-app").isPresent());
+        assertTrue(primary.getJob(1).isPresent());
+        assertEquals(Arrays.asList(1), primary.queued(10).stream().map(Job::id).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void maxLag() throws Exception {
+        User user = new User("replica-user", "secret", true, "replica test user");
+        primary.addUser(user);
+        replica.addUser(user);
+        addJob(primary, "primary-app", user.keyId(), 1);
+        addJob(replica, "replica-app", user.keyId(), 2);
+
+        // No heartbeat has reached replica yet
+        primary.initReplicaOnMem("replica-test-replica", 10);
+        assertEquals(-1, primary.replicaLag());
+        assertEquals(Arrays.asList(1), listQueued(user.keyId()));
+
+        setHeartbeat(System.currentTimeMillis());
+        primary.checkReplica();
+        assertTrue(primary.replicaLag() >= 0);
+        assertEquals(Arrays.asList(2), listQueued(user.keyId()));
+
+        setHeartbeat(System.currentTimeMillis() - 60 * 1000);
+        primary.checkReplica();
+        assertTrue(primary.replicaLag() >= 60 * 1000);
+        assertEquals(Arrays.asList(1), listQueued(user.keyId()));
+    }
+}
@@ -0,0 +1,65 @@
+/**
+ *    Retz
+ *    Copyright (C) 2016-2017 Nautilus Technologies, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.github.retz.db;
+
+import io.github.retz.protocol.data.User;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class UserCacheTest {
+    private long now = 0;
+
+    @Test
+    public void ttl() {
+        UserCache cache = new UserCache(10, () -> now);
+        cache.put(new User("cafebabe", "foobar", true, "ttl"));
+        assertEquals("cafebabe", cache.get("cafebabe").get().keyId());
+
+        now = TimeUnit.SECONDS.toNanos(10) - 1;
+        assertTrue(cache.get("cafebabe").isPresent());
+        now = TimeUnit.SECONDS.toNanos(10);
+        assertFalse(cache.get("cafebabe").isPresent());
+
+        // Loaded again, it lives another ttl
+        cache.put(new User("cafebabe", "foobar", false, "ttl"));
+        assertFalse(cache.get("cafebabe").get().enabled());
+    }
+
+    @Test
+    public void invalidate() {
+        UserCache cache = new UserCache(10, () -> now);
+        cache.put(new User("cafebabe", "foobar", true, "invalidate"));
+        cache.put(new User("deadbeef", "foobar", true, "invalidate"));
+        cache.invalidate("cafebabe");
+        assertFalse(cache.get("cafebabe").isPresent());
+        assertTrue(cache.get("deadbeef").isPresent());
+        cache.invalidateAll();
+        assertFalse(cache.get("deadbeef").isPresent());
+    }
+
+    @Test
+    public void disabled() {
+        UserCache cache = new UserCache(0, () -> now);
+        cache.put(new User("cafebabe", "foobar", true, "disabled"));
+        assertFalse(cache.get("cafebabe").isPresent());
+    }
+}
@@ -0,0 +1,79 @@
+/**
+ *    Retz
+ *    Copyright (C) 2016-2017 Nautilus Technologies, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.github.retz.jmx;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.github.retz.db.Database;
+import io.github.retz.db.JobStores;
+import io.github.retz.protocol.data.User;
+import io.github.retz.scheduler.Launcher;
+import io.github.retz.scheduler.ServerConfiguration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.InputStream;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+// Users are cached for authentication; changes through AdminConsole must be seen at once
+public class AdminConsoleTest {
+    private AdminConsole console;
+
+    @Before
+    public void before() throws Exception {
+        InputStream in = Launcher.class.getResourceAsStream("/retz.properties");
+        ServerConfiguration config = new ServerConfiguration(in);
+        JobStores.init(config);
+        console = new AdminConsole(config.getGcLeeway());
+    }
+
+    @After
+    public void after() {
+        Database.getInstance().clear();
+        Database.getInstance().stop();
+    }
+
+    @Test
+    public void enableUser() throws Exception {
+        String keyId = keyId(console.createUser("enableUser"));
+        // Cached by this
+        assertTrue(JobStores.get().getUser(keyId).get().enabled());
+
+        console.enableUser(keyId, false);
+        assertFalse(JobStores.get().getUser(keyId).get().enabled());
+        console.enableUser(keyId, true);
+        assertTrue(JobStores.get().getUser(keyId).get().enabled());
+    }
+
+    @Test
+    public void createUser() throws Exception {
+        User user = new User("cafebabe", "foobar", true, "createUser");
+        // Misses are not cached
+        assertFalse(JobStores.get().getUser(user.keyId()).isPresent());
+        JobStores.get().addUser(user);
+        assertTrue(JobStores.get().getUser(user.keyId()).isPresent());
+
+        String keyId = keyId(console.createUser("createUser"));
+        assertTrue(JobStores.get().getUser(keyId).get().enabled());
+    }
+
+    private static String keyId(String json) throws Exception {
+        return new ObjectMapper().readValue(json, User.class).keyId();
+    }
+}
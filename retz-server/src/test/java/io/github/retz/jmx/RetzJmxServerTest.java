@@ -16,13 +16,18 @@
  */
 package io.github.retz.jmx;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
 import com.j256.simplejmx.client.JmxClient;
 import io.github.retz.admin.AdminConsoleClient;
 import io.github.retz.cli.FileConfiguration;
 import io.github.retz.db.Database;
+import io.github.retz.protocol.data.Application;
+import io.github.retz.protocol.data.Job;
+import io.github.retz.protocol.data.MesosContainer;
 import io.github.retz.protocol.data.User;
+import io.github.retz.scheduler.JobQueue;
 import io.github.retz.scheduler.Launcher;
 import io.github.retz.scheduler.ServerConfiguration;
 import org.junit.After;
@@ -94,7 +99,61 @@ public class RetzJmxServerTest {
                 assertNotEquals(0, jmxClient.getAttributesInfo(new ObjectName("io.github.retz:type=Stats,name=Status")).length);
                 assertNotEquals(0, jmxClient.getAttributesInfo(new ObjectName("io.github.retz:type=Stats,name=TotalOffered")).length);
                 assertNotEquals(0, jmxClient.getAttributesInfo(new ObjectName("io.github.retz:type=Stats,name=TotalUsed")).length);
+                assertNotEquals(0L, jmxClient.getAttribute(new ObjectName("io.github.retz.db:type=QueryStats"), "ExecuteCount"));
             }
         }
     }
+
+    @Test
+    public void usage() throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.registerModule(new Jdk8Module());
+        Database db = Database.getInstance();
+        Application app = new Application("usage-app", Collections.emptyList(), Collections.emptyList(),
+                Optional.empty(), "deadbeef", 0, new MesosContainer(), true);
+        db.addApplication(app);
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < 5; ++i) {
+            Job job = new Job(app.getAppid(), "usage", new Properties(), 2, 64, 0);
+            job.schedule(JobQueue.issueJobId(), "2017-03-20T00:00:00.000Z");
+            db.safeAddJob(job);
+            // Each job runs 10 seconds, and two finish at the same time
+            job.starting("usage-" + i, Optional.empty(), "2017-03-20T00:00:0" + i + ".000Z");
+            job.finished("2017-03-20T00:00:1" + i / 2 + ".000Z", Optional.empty(), 0);
+            db.updateJobs(Arrays.asList(job));
+            ids.add(job.id());
+        }
+
+        try (AdminConsoleClient client = new AdminConsoleClient(new JmxClient("localhost", port))) {
+            List<Integer> listed = new ArrayList<>();
+            String cursor = "";
+            int pages = 0;
+            while (true) {
+                JsonNode page = mapper.readTree(client.getUsagePage("2017-03-20", "2017-03-21", cursor, 2));
+                for (JsonNode job : page.get("jobs")) {
+                    listed.add(job.get("id").asInt());
+                }
+                pages++;
+                if (!page.has("next")) {
+                    break;
+                }
+                cursor = page.get("next").asText();
+            }
+            assertEquals(3, pages);
+            assertEquals(ids, listed);
+            assertEquals(5, client.getUsage("2017-03-20", "2017-03-21").size());
+
+            List<String> summary = client.getUsageSummary("2017-03-20", "2017-03-21", "user");
+            assertEquals(1, summary.size());
+            JsonNode user = mapper.readTree(summary.get(0));
+            assertEquals("deadbeef", user.get("user").asText());
+            assertEquals(5, user.get("jobs").asInt());
+            // 2 CPUs for 10 - i + i / 2 seconds each
+            assertEquals(2 * (10 + 9 + 9 + 8 + 8), user.get("cpuSeconds").asDouble(), 0.001);
+            assertEquals(64 * (10 + 9 + 9 + 8 + 8), user.get("memMBSeconds").asDouble(), 0.001);
+            assertEquals("usage-app", mapper.readTree(client.getUsageSummary("2017-03-20", "2017-03-21", "app").get(0)).get("app").asText());
+            assertEquals(5, mapper.readTree(client.getUsageSummary("2017-03-20", "2017-03-21", "total").get(0)).get("jobs").asInt());
+            assertTrue(client.getUsageSummary("2017-03-21", "2017-03-22", "total").isEmpty());
+        }
+    }
 }
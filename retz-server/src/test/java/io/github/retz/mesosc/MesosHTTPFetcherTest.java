@@ -42,6 +42,11 @@ public class MesosHTTPFetcherTest {
         assertTrue(s.isPresent());
         assertThat(s.get(), is("127.0.0.1:5051"));
 
+        in = MesosHTTPFetcherTest.class.getResourceAsStream("/master-slaves.json");
+        Map<String, String> addrs = MesosHTTPFetcher.extractSlaveAddrs(in);
+        assertThat(addrs.size(), is(1));
+        assertThat(addrs.get("6c751ae7-6856-4127-aea1-42f3a9210846-S0"), is("127.0.0.1:5051"));
+
         in = MesosHTTPFetcherTest.class.getResourceAsStream("/slave-flags.json");
         s = MesosHTTPFetcher.extractSlaveBasePath(in);
         assertTrue(s.isPresent());
@@ -66,7 +66,7 @@ public class PlannerRegressionTest {
                 offers.add(RetzSchedulerTest.buildOffer(fid.getValue(), "offer" + Integer.toString(i), uuid, cpus, mem));
                 offers.add(RetzSchedulerTest.buildOffer(fid.getValue(), "offer" + Integer.toString(i), uuid, cpus, mem));
             }
-            Plan plan = planner.plan(offers, jobs, 1, "nobody");
+            Plan plan = planner.plan(DecodedOffer.decodeAll(offers), jobs, 1, "nobody");
 
             int totalJobsToLaunch = plan.getOfferAcceptors().stream().mapToInt(offerAcceptor -> offerAcceptor.getJobs().size()).sum();
 
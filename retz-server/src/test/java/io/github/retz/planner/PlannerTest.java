@@ -77,7 +77,7 @@ public class PlannerTest {
                 String uuid = UUID.randomUUID().toString();
                 offers.add(RetzSchedulerTest.buildOffer(fid, i, uuid, 16, 512));
             }
-            Plan p = planner.plan(offers, jobs, 0, "nobody");
+            Plan p = planner.plan(DecodedOffer.decodeAll(offers), jobs, 0, "nobody");
 
             assertEquals(8, p.getOfferAcceptors().size());
             assertEquals(0, p.getToKeep().size());
@@ -90,7 +90,7 @@ public class PlannerTest {
                 String uuid = UUID.randomUUID().toString();
                 offers.add(RetzSchedulerTest.buildOffer(fid, i, uuid, 16, 512));
             }
-            Plan p = planner.plan(offers, jobs, 3, "nobody");
+            Plan p = planner.plan(DecodedOffer.decodeAll(offers), jobs, 3, "nobody");
 
             assertEquals(5, p.getOfferAcceptors().size());
             assertEquals(0, p.getToKeep().size());
@@ -111,7 +111,7 @@ public class PlannerTest {
             job.schedule(i, TimestampHelper.now());
             jobs.add(new AppJobPair(app, job));
         }
-        Plan p = planner.plan(offers, jobs, 0, "nobody");
+        Plan p = planner.plan(DecodedOffer.decodeAll(offers), jobs, 0, "nobody");
 
         assertEquals(2, p.getOfferAcceptors().size());
         assertEquals(0, p.getToKeep().size());
@@ -144,7 +144,7 @@ public class PlannerTest {
                 jobs.add(new AppJobPair(app, job));
 
             }
-            Plan p = planner.plan(offers, jobs, 0, "nobody");
+            Plan p = planner.plan(DecodedOffer.decodeAll(offers), jobs, 0, "nobody");
 
             assertEquals(2, p.getOfferAcceptors().size());
             assertEquals(0, p.getToKeep().size());
@@ -170,7 +170,7 @@ public class PlannerTest {
                 jobs.add(new AppJobPair(app, job));
 
             }
-            Plan p = planner.plan(offers, jobs, 1, "nobody");
+            Plan p = planner.plan(DecodedOffer.decodeAll(offers), jobs, 1, "nobody");
 
             assertEquals(3, p.getOfferAcceptors().size());
             assertEquals(0, p.getToKeep().size());
@@ -0,0 +1,127 @@
+/**
+ *    Retz
+ *    Copyright (C) 2016-2017 Nautilus Technologies, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.github.retz.planner;
+
+import io.github.retz.cli.TimestampHelper;
+import io.github.retz.planner.spi.Resource;
+import io.github.retz.protocol.data.Application;
+import io.github.retz.protocol.data.Job;
+import io.github.retz.protocol.data.MesosContainer;
+import io.github.retz.protocol.data.Range;
+import io.github.retz.protocol.data.ResourceQuantity;
+import org.apache.mesos.Protos;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.Properties;
+
+/**
+ * Measures one scheduling cycle of the naive planner: decoding fresh offers, totaling
+ * them for the fit query, planning queued jobs and totaling stocked offers for
+ * statistics. Offers are decoded once per cycle. Not a unit test; run manually:
+ *
+ * java -cp ... io.github.retz.planner.PlanningCycleBenchmark [offers] [jobs]
+ */
+public class PlanningCycleBenchmark {
+    private static final int ROUNDS = 200;
+
+    public static void main(String... argv) throws Exception {
+        int numOffers = argv.length > 0 ? Integer.parseInt(argv[0]) : 1000;
+        int numJobs = argv.length > 1 ? Integer.parseInt(argv[1]) : 1000;
+
+        List<Protos.Offer> offers = new ArrayList<>(numOffers);
+        for (int i = 0; i < numOffers; ++i) {
+            offers.add(buildOffer(i));
+        }
+        Application app = new Application("bench", Collections.emptyList(), Collections.emptyList(),
+                Optional.empty(), "deadbeef", 0, new MesosContainer(), true);
+        NaivePlanner planner = new NaivePlanner();
+
+        // Jobs are changed by planning; prepare fresh ones for each cycle
+        List<List<AppJobPair>> rounds = new ArrayList<>();
+        for (int r = 0; r < ROUNDS + ROUNDS / 4; ++r) {
+            List<AppJobPair> jobs = new ArrayList<>(numJobs);
+            for (int i = 0; i < numJobs; ++i) {
+                Job job = new Job(app.getAppid(), "sleep 1", new Properties(), 1, 512, 0, 0, 1);
+                job.schedule(i + 1, TimestampHelper.now());
+                jobs.add(new AppJobPair(Optional.of(app), job));
+            }
+            rounds.add(jobs);
+        }
+
+        Cycle decode = jobs -> DecodedOffer.decodeAll(offers).size();
+        Cycle cycle = jobs -> {
+            List<DecodedOffer> decoded = DecodedOffer.decodeAll(offers);
+            ResourceQuantity total = new ResourceQuantity();
+            for (DecodedOffer offer : decoded) {
+                total.add(offer.resource().toQuantity());
+            }
+            Plan plan = planner.plan(decoded, jobs, 16, "nobody");
+            ResourceQuantity stock = new ResourceQuantity();
+            for (DecodedOffer offer : plan.getToStock()) {
+                stock.add(offer.resource().toQuantity());
+            }
+            return plan.getOfferAcceptors().size() + total.getCpu() + stock.getCpu();
+        };
+
+        System.out.printf("%d offers, %d jobs: decode %d us/op, cycle %d us/op%n",
+                numOffers, numJobs, measure(decode, rounds), measure(cycle, rounds));
+    }
+
+    // Agents with CPU, memory, disk and ports, and a couple of attributes, as usual
+    private static Protos.Offer buildOffer(int i) {
+        Resource resource = new Resource(8, 16384, 65536, 0,
+                new ArrayList<>(Arrays.asList(new Range(31000, 31999), new Range(33000, 33999))));
+        String sid = "agent-" + i;
+        return Protos.Offer.newBuilder()
+                .addAllResources(ResourceConstructor.construct(resource))
+                .addAttributes(Protos.Attribute.newBuilder().setName("rack").setType(Protos.Value.Type.TEXT)
+                        .setText(Protos.Value.Text.newBuilder().setValue("rack-" + (i % 40))))
+                .addAttributes(Protos.Attribute.newBuilder().setName("generation").setType(Protos.Value.Type.SCALAR)
+                        .setScalar(Protos.Value.Scalar.newBuilder().setValue(3)))
+                .setSlaveId(Protos.SlaveID.newBuilder().setValue(sid))
+                .setFrameworkId(Protos.FrameworkID.newBuilder().setValue("benchmark"))
+                .setHostname(sid)
+                .setId(Protos.OfferID.newBuilder().setValue("offer-" + i))
+                .build();
+    }
+
+    private static long measure(Cycle cycle, List<List<AppJobPair>> rounds) throws Exception {
+        long sum = 0;
+        int warmup = ROUNDS / 4;
+        for (int i = 0; i < warmup; ++i) {
+            sum += cycle.run(new ArrayList<>(rounds.get(i)));
+        }
+        long start = System.nanoTime();
+        for (int i = warmup; i < warmup + ROUNDS; ++i) {
+            sum += cycle.run(new ArrayList<>(rounds.get(i)));
+        }
+        long elapsed = System.nanoTime() - start;
+        if (sum == 0) {
+            throw new AssertionError();
+        }
+        return elapsed / ROUNDS / 1000;
+    }
+
+    @FunctionalInterface
+    private interface Cycle {
+        int run(List<AppJobPair> jobs) throws Exception;
+    }
+}
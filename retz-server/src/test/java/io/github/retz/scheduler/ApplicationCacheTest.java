@@ -0,0 +1,81 @@
+/**
+ *    Retz
+ *    Copyright (C) 2016-2017 Nautilus Technologies, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.github.retz.scheduler;
+
+import io.github.retz.protocol.data.Application;
+import io.github.retz.protocol.data.DockerContainer;
+import org.apache.mesos.Protos;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ApplicationCacheTest {
+    private static Application app(String appid) {
+        return new Application(appid, Collections.emptyList(), Collections.emptyList(),
+                Optional.empty(), "deadbeef", 0, new DockerContainer("centos:7", Collections.emptyList()), true);
+    }
+
+    @Test
+    public void lru() {
+        ApplicationCache cache = new ApplicationCache(2, 60);
+        cache.put(app("a"));
+        cache.put(app("b"));
+        assertTrue(cache.get("a").isPresent());
+        cache.put(app("c"));
+        // "b" is the least recently used
+        assertTrue(cache.get("a").isPresent());
+        assertFalse(cache.get("b").isPresent());
+        assertTrue(cache.get("c").isPresent());
+
+        cache.invalidate("a");
+        assertFalse(cache.get("a").isPresent());
+    }
+
+    @Test
+    public void staleness() {
+        ApplicationCache cache = new ApplicationCache(2, 0);
+        cache.put(app("a"));
+        assertFalse(cache.get("a").isPresent());
+
+        ApplicationCache disabled = new ApplicationCache(0, 60);
+        disabled.put(app("a"));
+        assertFalse(disabled.get("a").isPresent());
+    }
+
+    @Test
+    public void containerInfo() {
+        ApplicationCache cache = new ApplicationCache(2, 60);
+        AtomicInteger built = new AtomicInteger();
+        Protos.ContainerInfo info = Protos.ContainerInfo.newBuilder().setType(Protos.ContainerInfo.Type.MESOS).build();
+
+        Application cached = app("a");
+        cache.put(cached);
+        assertSame(info, cache.containerInfo(cached, a -> { built.incrementAndGet(); return info; }));
+        assertSame(info, cache.containerInfo(cached, a -> { built.incrementAndGet(); return info; }));
+        assertEquals(1, built.get());
+
+        // Instances not in the cache are always built
+        cache.containerInfo(app("a"), a -> { built.incrementAndGet(); return info; });
+        assertEquals(2, built.get());
+
+        assertEquals("centos:7", Applications.appToContainerInfo(cached).getMesos().getImage().getDocker().getName());
+    }
+}
@@ -0,0 +1,160 @@
+/**
+ *    Retz
+ *    Copyright (C) 2016-2017 Nautilus Technologies, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.github.retz.scheduler;
+
+import io.github.retz.cli.TimestampHelper;
+import io.github.retz.db.Database;
+import io.github.retz.protocol.data.Application;
+import io.github.retz.protocol.data.Job;
+import io.github.retz.protocol.data.MesosContainer;
+import io.github.retz.protocol.data.User;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class GarbageJobCollectorTest {
+    private Path dir;
+
+    @Before
+    public void before() throws Exception {
+        InputStream in = Launcher.class.getResourceAsStream("/retz-tls.properties");
+        ServerConfiguration config = new ServerConfiguration(in);
+        Database.getInstance().init(config);
+        dir = Files.createTempDirectory("retz-archive");
+    }
+
+    @After
+    public void after() throws Exception {
+        GarbageJobCollector.configure(1000, 5000, false, Optional.empty());
+        Database.getInstance().deleteAllJob(Integer.MAX_VALUE);
+        Database.getInstance().clear();
+        Database.getInstance().stop();
+        for (Path p : Files.list(dir).collect(Collectors.toList())) {
+            Files.delete(p);
+        }
+        Files.delete(dir);
+    }
+
+    @Test
+    public void archive() throws Exception {
+        Database db = Database.getInstance();
+        User u = db.createUser("test user archive");
+        Application a = new Application("archiveapp", Collections.emptyList(), Collections.emptyList(),
+                Optional.empty(), u.keyId(), 0, new MesosContainer(), true);
+        db.addApplication(a);
+
+        String old = TimestampHelper.past(3600);
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < 7; ++i) {
+            Job job = new Job(a.getAppid(), "archive", new Properties(), 1, 32, 0);
+            job.addTags(Arrays.asList("t" + (i % 2)));
+            job.schedule(JobQueue.issueJobId(), old);
+            db.safeAddJob(job);
+            job.starting("archive-taskid-" + job.id(), Optional.empty(), old);
+            if (i < 5) {
+                job.finished(old, Optional.empty(), 0);
+            }
+            db.updateJobs(Arrays.asList(job));
+            ids.add(job.id());
+        }
+        // Another finished job not old enough
+        Job recent = new Job(a.getAppid(), "recent", new Properties(), 1, 32, 0);
+        recent.schedule(JobQueue.issueJobId(), TimestampHelper.now());
+        db.safeAddJob(recent);
+        recent.starting("archive-taskid-recent", Optional.empty(), TimestampHelper.now());
+        recent.finished(TimestampHelper.now(), Optional.empty(), 0);
+        db.updateJobs(Arrays.asList(recent));
+
+        GarbageJobCollector.configure(2, 5000, true, Optional.of(dir.toString()));
+        assertTrue(GarbageJobCollector.collect(60));
+        assertEquals(5, GarbageJobCollector.rowsDeleted());
+        long before = System.currentTimeMillis() - 60 * 1000;
+        assertFalse(db.getOldJobIdRange(before).isPresent());
+
+        // Reads fall back to the archive
+        for (int i = 0; i < 5; ++i) {
+            assertEquals(Job.JobState.FINISHED, db.getJob(ids.get(i)).get().state());
+            assertTrue(db.getJobJson(ids.get(i), u.keyId()).isPresent());
+        }
+        assertFalse(db.getJobJson(ids.get(0), "nobody").isPresent());
+
+        List<Integer> listed = db.listJobs(u.keyId(), Job.JobState.FINISHED, Optional.empty(), 4)
+                .stream().map(Job::id).collect(Collectors.toList());
+        assertEquals(Arrays.asList(recent.id(), ids.get(4), ids.get(3), ids.get(2)), listed);
+        listed = db.listJobs(u.keyId(), Job.JobState.FINISHED, Optional.of("t0"), 10)
+                .stream().map(Job::id).collect(Collectors.toList());
+        assertEquals(Arrays.asList(ids.get(4), ids.get(2), ids.get(0)), listed);
+
+        long start = TimestampHelper.toEpochMillis(old);
+        assertEquals(5, db.finishedJobs(start, start + 1).size());
+        assertEquals(6, db.finishedJobs(start, Long.MAX_VALUE).size());
+
+        // Archived jobs are also in the segment file
+        List<Path> segments = Files.list(dir).collect(Collectors.toList());
+        assertEquals(1, segments.size());
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(Files.newInputStream(segments.get(0))), StandardCharsets.UTF_8))) {
+            assertEquals(5, reader.lines().count());
+        }
+    }
+
+    // Collection started from AdminConsole runs in background, one at a time
+    @Test
+    public void startInBackground() throws Exception {
+        Database db = Database.getInstance();
+        User u = db.createUser("test user background");
+        Application a = new Application("bgapp", Collections.emptyList(), Collections.emptyList(),
+                Optional.empty(), u.keyId(), 0, new MesosContainer(), true);
+        db.addApplication(a);
+
+        String old = TimestampHelper.past(3600);
+        for (int i = 0; i < 4; ++i) {
+            Job job = new Job(a.getAppid(), "background", new Properties(), 1, 32, 0);
+            job.schedule(JobQueue.issueJobId(), old);
+            db.safeAddJob(job);
+            job.starting("bg-taskid-" + job.id(), Optional.empty(), old);
+            job.finished(old, Optional.empty(), 0);
+            db.updateJobs(Arrays.asList(job));
+        }
+
+        // A job per second
+        GarbageJobCollector.configure(1, 1, false, Optional.empty());
+        assertTrue(GarbageJobCollector.startCollection(60));
+        assertFalse(GarbageJobCollector.startCollection(60));
+        assertTrue(GarbageJobCollector.isRunning());
+        assertTrue(GarbageJobCollector.stopCollection());
+        for (int i = 0; i < 500 && GarbageJobCollector.isRunning(); ++i) {
+            Thread.sleep(10);
+        }
+        assertFalse(GarbageJobCollector.isRunning());
+        assertTrue(GarbageJobCollector.rowsDeleted() < 4);
+    }
+}
@@ -22,6 +22,7 @@ import org.apache.mesos.Scheduler;
 import org.apache.mesos.SchedulerDriver;
 
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
@@ -41,6 +42,7 @@ public class MesosSchedulerDummyDriver implements SchedulerDriver {
 
     private final List<Protos.OfferID> accepted;
     private final List<Protos.TaskInfo> tasks;
+    private final List<Protos.TaskStatus> acknowledged = new CopyOnWriteArrayList<>();
 
 //    List<Protos.Resource> reserved;
 //    List<Protos.Resource> volumes;
@@ -150,46 +152,14 @@ public class MesosSchedulerDummyDriver implements SchedulerDriver {
     public Protos.Status acceptOffers(Collection<Protos.OfferID> offerIds,
                                       Collection<Protos.Offer.Operation> operations,
                                       Protos.Filters filters) {
-        // Shouldn't be used
-        throw new UnknownError();
-//        this.accepted.addAll(offerIds);
-//        for (Protos.OfferID id : offerIds) {
-//            Protos.Offer.Builder ob = offers.get(id).toBuilder();
-//
-//
-//            for (Protos.Offer.Operation op : operations) {
-//                switch (op.getType().getNumber()) {
-//                    case Protos.Offer.Operation.Type.LAUNCH_VALUE: {
-//                        tasks.addAll(op.getLaunch().getTaskInfosList());
-//                        break;
-//                    }
-//                    case Protos.Offer.Operation.Type.RESERVE_VALUE: {
-//                        // TODO: aggregate against same principal/roles
-//                        reserved.addAll(op.getReserve().getResourcesList());
-//                        break;
-//                    }
-//                    case Protos.Offer.Operation.Type.CREATE_VALUE: {
-//                        volumes.addAll(op.getCreate().getVolumesList());
-//                        break;
-//                    }
-//                    case Protos.Offer.Operation.Type.DESTROY_VALUE: {
-//                        for (Protos.Resource r : op.getDestroy().getVolumesList()) {
-//                            volumes.remove(r);
-//                        }
-//                        break;
-//                    }
-//                    case Protos.Offer.Operation.Type.UNRESERVE_VALUE: {
-//                        for (Protos.Resource r : op.getUnreserve().getResourcesList()) {
-//                            reserved.remove(r);
-//                        }
-//                        break;
-//                    }
-//                    default:
-//                        fail();
-//                }
-//            }
-//        }
-//        return Protos.Status.DRIVER_RUNNING;
+        // Only launches are recorded
+        this.accepted.addAll(offerIds);
+        for (Protos.Offer.Operation op : operations) {
+            if (op.getType() == Protos.Offer.Operation.Type.LAUNCH) {
+                tasks.addAll(op.getLaunch().getTaskInfosList());
+            }
+        }
+        return Protos.Status.DRIVER_RUNNING;
     }
 
     public Protos.Status declineOffer(Protos.OfferID offerID, Protos.Filters filters) {
@@ -211,6 +181,7 @@ public class MesosSchedulerDummyDriver implements SchedulerDriver {
     }
 
     public Protos.Status acknowledgeStatusUpdate(Protos.TaskStatus status) {
+        acknowledged.add(status);
         return Protos.Status.DRIVER_RUNNING;
     }
 
@@ -240,6 +211,10 @@ public class MesosSchedulerDummyDriver implements SchedulerDriver {
         return accepted;
     }
 
+    public List<Protos.TaskStatus> getAcknowledged() {
+        return acknowledged;
+    }
+
     public List<Protos.TaskInfo> getTasks() {
         return tasks;
     }
@@ -248,6 +223,7 @@ public class MesosSchedulerDummyDriver implements SchedulerDriver {
         declined.clear();
         accepted.clear();
         tasks.clear();
+        acknowledged.clear();
     }
 
     public void dummyTaskStarted() {
@@ -0,0 +1,118 @@
+/**
+ *    Retz
+ *    Copyright (C) 2016-2017 Nautilus Technologies, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.github.retz.scheduler;
+
+import io.github.retz.planner.DecodedOffer;
+import io.github.retz.protocol.data.Job;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.stream.Collectors;
+
+import static io.github.retz.scheduler.RetzSchedulerTest.buildOffer;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+
+public class OfferPoolTest {
+    private long now = 0;
+
+    private OfferPool pool() {
+        return new OfferPool(10, () -> now);
+    }
+
+    private static List<String> ids(List<DecodedOffer> offers) {
+        return offers.stream().map(offer -> offer.id()).collect(Collectors.toList());
+    }
+
+    private static DecodedOffer offer(String sid, String offerId, int cpus, int mem) {
+        return new DecodedOffer(buildOffer("fw", sid, offerId, cpus, mem));
+    }
+
+    private static Job job(int cpu, int mem) {
+        return new Job("app", "job", new Properties(), cpu, mem, 0);
+    }
+
+    @Test
+    public void sameAgent() {
+        OfferPool pool = pool();
+        pool.add(Arrays.asList(offer("a", "o1", 2, 256), offer("b", "o2", 2, 256)));
+        pool.add(Arrays.asList(offer("a", "o3", 2, 256)));
+        assertThat(pool.size(), is(3));
+        assertThat(pool.total().getNodes(), is(2));
+        assertThat(pool.total().getCpu(), is(6));
+
+        // Neither of offers of agent a fits alone, but together they do
+        List<DecodedOffer> offers = pool.takeFor(Arrays.asList(job(4, 512)));
+        assertThat(ids(offers), containsInAnyOrder("o1", "o3"));
+        assertThat(pool.size(), is(1));
+    }
+
+    @Test
+    public void smallestFit() {
+        OfferPool pool = pool();
+        pool.add(Arrays.asList(
+                offer("a", "o1", 8, 1024),
+                offer("b", "o2", 2, 4096),
+                offer("c", "o3", 4, 512),
+                offer("d", "o4", 4, 2048)));
+
+        assertThat(ids(pool.takeFor(Arrays.asList(job(3, 1024)))), contains("o4"));
+        // Second job fits in the rest of agent a taken for the first
+        assertThat(ids(pool.takeFor(Arrays.asList(job(5, 256), job(2, 256)))), contains("o1"));
+        assertThat(pool.takeFor(Arrays.asList(job(16, 256))), is(empty()));
+        assertThat(pool.size(), is(2));
+    }
+
+    @Test
+    public void expire() {
+        OfferPool pool = pool();
+        pool.add(Arrays.asList(offer("a", "o1", 2, 256)));
+        now = 5000;
+        pool.add(Arrays.asList(offer("a", "o2", 2, 256)));
+
+        // Planned but stocked again, keeping its age
+        List<DecodedOffer> offers = pool.takeAll();
+        assertThat(ids(offers), containsInAnyOrder("o1", "o2"));
+        now = 10000;
+        pool.restock(offers);
+
+        assertThat(ids(pool.expire()), contains("o1"));
+        assertThat(pool.size(), is(1));
+        assertThat(pool.total().getCpu(), is(2));
+        now = 15000;
+        assertThat(ids(pool.expire()), contains("o2"));
+        assertThat(pool.size(), is(0));
+    }
+
+    @Test
+    public void remove() {
+        OfferPool pool = pool();
+        pool.add(Arrays.asList(offer("a", "o1", 2, 256), offer("a", "o2", 2, 256),
+                offer("b", "o3", 2, 256)));
+        assertThat(pool.remove("o1"), is(true));
+        assertThat(pool.remove("o1"), is(false));
+        assertThat(ids(pool.removeAgent("a")), contains("o2"));
+        assertThat(pool.removeAgent("a"), is(empty()));
+        assertThat(ids(pool.takeAll()), contains("o3"));
+        assertThat(pool.size(), is(0));
+    }
+}
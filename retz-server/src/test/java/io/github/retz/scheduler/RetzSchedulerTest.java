@@ -19,7 +19,10 @@ package io.github.retz.scheduler;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
+import com.google.protobuf.ByteString;
+import io.github.retz.cli.TimestampHelper;
 import io.github.retz.db.Database;
+import io.github.retz.planner.DecodedOffer;
 import io.github.retz.planner.ResourceConstructor;
 import io.github.retz.protocol.data.*;
 import org.apache.mesos.Protos;
@@ -32,6 +35,8 @@ import java.io.InputStream;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Optional;
+import java.util.Properties;
+import java.util.UUID;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
@@ -180,6 +185,76 @@ public class RetzSchedulerTest {
         driver.stop();
     }
 
+    @Test
+    public void statusUpdates() throws Exception {
+        Database.getInstance().addUser(new User("Deadbeef", "cafebabe", true, "statusUpdates test user"));
+        Applications.load(new Application("fooapp", Collections.emptyList(),
+                Collections.emptyList(), Optional.empty(), "Deadbeef",
+                0, new MesosContainer(), true));
+        Job job = new Job("fooapp", "foocmd", null, 1, 32, 0);
+        job.schedule(JobQueue.issueJobId(), TimestampHelper.now());
+        JobQueue.push(job);
+        JobQueue.starting(job, Optional.empty(), "status-task");
+
+        driver.start();
+        driver.clear();
+        Protos.TaskState[] states = {Protos.TaskState.TASK_RUNNING, Protos.TaskState.TASK_FINISHED};
+        for (Protos.TaskState state : states) {
+            scheduler.statusUpdate(driver, taskStatus("status-task", state, true));
+        }
+        scheduler.statusUpdate(driver, taskStatus("unknown-task", Protos.TaskState.TASK_RUNNING, true));
+        // Updates from reconciliation have no uuid and are never acknowledged
+        scheduler.statusUpdate(driver, taskStatus("status-task", Protos.TaskState.TASK_FINISHED, false));
+
+        for (int i = 0; i < 100 && driver.getAcknowledged().size() < 3; ++i) {
+            Thread.sleep(50);
+        }
+        assertThat(driver.getAcknowledged().size(), is(3));
+        assertThat(JobQueue.getJob(job.id()).get().state(), is(Job.JobState.FINISHED));
+
+        Applications.unload("fooapp");
+        driver.stop();
+    }
+
+    // A job killed after it was read for planning is not launched
+    @Test
+    public void killedBeforeLaunch() throws Exception {
+        Database.getInstance().addUser(new User("Deadbeef", "cafebabe", true, "killedBeforeLaunch test user"));
+        Applications.load(new Application("fooapp", Collections.emptyList(),
+                Collections.emptyList(), Optional.empty(), "Deadbeef",
+                0, new MesosContainer(), true));
+        Job job = new Job("fooapp", "foocmd", new Properties(), 1, 32, 0);
+        job.schedule(JobQueue.issueJobId(), TimestampHelper.now());
+        JobQueue.push(job);
+        Job killed = new Job("fooapp", "barcmd", new Properties(), 1, 32, 0);
+        killed.schedule(JobQueue.issueJobId(), TimestampHelper.now());
+        JobQueue.push(killed);
+        // The copy in hand stays QUEUED
+        JobQueue.cancel(killed.id(), "killedBeforeLaunch test");
+
+        driver.start();
+        driver.clear();
+        scheduler.handleAll(DecodedOffer.decodeAll(Arrays.asList(buildOffer("killed-offer", 4, 512))),
+                Arrays.asList(job, killed), driver);
+
+        assertThat(driver.getTasks().size(), is(1));
+        assertThat(JobQueue.getJob(job.id()).get().state(), is(Job.JobState.STARTING));
+        assertThat(JobQueue.getJob(killed.id()).get().state(), is(Job.JobState.KILLED));
+
+        Applications.unload("fooapp");
+        driver.stop();
+    }
+
+    private static Protos.TaskStatus taskStatus(String taskId, Protos.TaskState state, boolean withUuid) {
+        Protos.TaskStatus.Builder builder = Protos.TaskStatus.newBuilder()
+                .setTaskId(Protos.TaskID.newBuilder().setValue(taskId))
+                .setState(state);
+        if (withUuid) {
+            builder.setUuid(ByteString.copyFromUtf8(UUID.randomUUID().toString()));
+        }
+        return builder.build();
+    }
+
     // TODO: @Test
     public void slaveFail() throws InterruptedException, JsonProcessingException, IOException {
         String[] files = {"http://foobar.boom.co.jp/foo.tar.gz"};
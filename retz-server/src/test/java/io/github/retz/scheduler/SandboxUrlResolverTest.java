@@ -0,0 +1,191 @@
+/**
+ *    Retz
+ *    Copyright (C) 2016-2017 Nautilus Technologies, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.github.retz.scheduler;
+
+import io.github.retz.cli.TimestampHelper;
+import io.github.retz.db.Database;
+import io.github.retz.mesosc.MesosHTTPFetcher;
+import io.github.retz.protocol.data.Application;
+import io.github.retz.protocol.data.Job;
+import io.github.retz.protocol.data.MesosContainer;
+import io.github.retz.protocol.data.User;
+import org.apache.mesos.Protos;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.*;
+
+public class SandboxUrlResolverTest {
+    private static final String AGENT = "agent-1";
+    private static final String ADDR = "agent1.example.com:5051";
+    private static final String DIR = "/var/lib/mesos/slaves/agent-1/frameworks/fw/executors/e/runs/c";
+
+    private StubFetcher fetcher;
+    private SandboxUrlResolver resolver;
+    private Job job;
+
+    // Serves one agent, failing the first failures directory fetches
+    private static final class StubFetcher implements SandboxUrlResolver.Fetcher {
+        private final AtomicInteger agentFetches = new AtomicInteger();
+        private final AtomicInteger directoryFetches = new AtomicInteger();
+        private volatile int failures = 0;
+
+        @Override
+        public Map<String, String> agentAddrs(String master) throws IOException {
+            agentFetches.incrementAndGet();
+            return Collections.singletonMap(AGENT, ADDR);
+        }
+
+        @Override
+        public Optional<String> directory(String agentAddr, String frameworkId, String executorId, String containerId) {
+            if (directoryFetches.incrementAndGet() <= failures) {
+                return Optional.empty();
+            }
+            return Optional.of(DIR);
+        }
+    }
+
+    @Before
+    public void before() throws Exception {
+        InputStream in = Launcher.class.getResourceAsStream("/retz.properties");
+        ServerConfiguration config = new ServerConfiguration(in);
+        Database.getInstance().init(config);
+
+        User u = Database.getInstance().createUser("test user sandbox");
+        Application a = new Application("sandboxapp", Collections.emptyList(), Collections.emptyList(),
+                Optional.empty(), u.keyId(), 0, new MesosContainer(), true);
+        Database.getInstance().addApplication(a);
+        job = new Job(a.getAppid(), "sandbox", new Properties(), 1, 32, 0);
+        job.schedule(JobQueue.issueJobId(), TimestampHelper.now());
+        Database.getInstance().safeAddJob(job);
+
+        fetcher = new StubFetcher();
+        resolver = new SandboxUrlResolver(() -> Optional.of("master.example.com:5050"), () -> "fw", fetcher, 10);
+    }
+
+    @After
+    public void after() throws Exception {
+        Database.getInstance().deleteAllJob(Integer.MAX_VALUE);
+        Database.getInstance().clear();
+        Database.getInstance().stop();
+    }
+
+    private static Protos.TaskStatus status(String containerId) {
+        return Protos.TaskStatus.newBuilder()
+                .setTaskId(Protos.TaskID.newBuilder().setValue("sandbox-task-" + containerId))
+                .setState(Protos.TaskState.TASK_RUNNING)
+                .setSlaveId(Protos.SlaveID.newBuilder().setValue(AGENT))
+                .setExecutorId(Protos.ExecutorID.newBuilder().setValue("e"))
+                .setContainerStatus(Protos.ContainerStatus.newBuilder()
+                        .setContainerId(Protos.ContainerID.newBuilder().setValue(containerId)))
+                .build();
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+
+    private String jobUrl() {
+        try {
+            return Database.getInstance().getJob(job.id()).get().url();
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    @Test
+    public void resolve() throws Exception {
+        String url = MesosHTTPFetcher.buildSandboxUri("browse", ADDR, DIR).get();
+        Protos.TaskStatus status = status("c1");
+        assertFalse(resolver.cached(status).isPresent());
+
+        resolver.resolve(job.id(), status);
+        await(() -> resolver.cached(status).isPresent());
+        assertEquals(url, resolver.cached(status).get());
+        // Patched into the job waiting for it
+        await(() -> url.equals(jobUrl()));
+        assertEquals(1, fetcher.agentFetches.get());
+        assertEquals(1, fetcher.directoryFetches.get());
+
+        // Agent address is cached for other containers
+        Protos.TaskStatus other = status("c2");
+        resolver.resolve(job.id(), other);
+        await(() -> resolver.cached(other).isPresent());
+        assertEquals(1, fetcher.agentFetches.get());
+        assertEquals(2, fetcher.directoryFetches.get());
+
+        // Statuses without sandbox are ignored
+        Protos.TaskStatus bare = Protos.TaskStatus.newBuilder()
+                .setTaskId(Protos.TaskID.newBuilder().setValue("sandbox-task-bare"))
+                .setState(Protos.TaskState.TASK_RUNNING)
+                .build();
+        resolver.resolve(job.id(), bare);
+        assertFalse(resolver.cached(bare).isPresent());
+    }
+
+    @Test
+    public void retry() throws Exception {
+        fetcher.failures = 2;
+        Protos.TaskStatus status = status("c1");
+        resolver.resolve(job.id(), status);
+        await(() -> resolver.cached(status).isPresent());
+        assertEquals(3, fetcher.directoryFetches.get());
+        // Agent address is fetched again after each failure, as the agent may have moved
+        assertEquals(3, fetcher.agentFetches.get());
+
+        // Gives up after the retry limit
+        fetcher.failures = Integer.MAX_VALUE;
+        Protos.TaskStatus failing = status("c2");
+        resolver.resolve(job.id(), failing);
+        await(() -> fetcher.directoryFetches.get() == 6);
+        Thread.sleep(100);
+        assertEquals(6, fetcher.directoryFetches.get());
+        assertFalse(resolver.cached(failing).isPresent());
+    }
+
+    @Test
+    public void invalidate() throws Exception {
+        Protos.TaskStatus status = status("c1");
+        resolver.resolve(job.id(), status);
+        await(() -> resolver.cached(status).isPresent());
+
+        // Lost agent drops its address and URLs
+        resolver.agentLost(AGENT);
+        assertFalse(resolver.cached(status).isPresent());
+        resolver.resolve(job.id(), status);
+        await(() -> resolver.cached(status).isPresent());
+        assertEquals(2, fetcher.agentFetches.get());
+        assertEquals(2, fetcher.directoryFetches.get());
+
+        resolver.clear();
+        assertFalse(resolver.cached(status).isPresent());
+        resolver.resolve(job.id(), status);
+        await(() -> resolver.cached(status).isPresent());
+        assertEquals(3, fetcher.agentFetches.get());
+    }
+}
@@ -0,0 +1,66 @@
+/**
+ *    Retz
+ *    Copyright (C) 2016-2017 Nautilus Technologies, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.github.retz.scheduler;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.startsWith;
+
+public class StanchionStatsTest {
+    @Before
+    public void before() {
+        StanchionStats.configure(100);
+        StanchionStats.reset();
+    }
+
+    @After
+    public void after() {
+        StanchionStats.configure(1000);
+        StanchionStats.reset();
+    }
+
+    @Test
+    public void slowTask() throws Exception {
+        Stanchion.call(Stanchion.Kind.KILL, () -> {
+            Thread.sleep(500);
+            return null;
+        });
+        Stanchion.call(Stanchion.Kind.KILL, () -> null);
+
+        assertThat(StanchionStats.runOf(Stanchion.Kind.KILL).count(), is(2L));
+        assertThat(StanchionStats.waitOf(Stanchion.Kind.KILL).count(), is(2L));
+        List<String> report = StanchionStats.report();
+        assertThat(report.size(), is(1));
+        assertThat(report.get(0), startsWith("KILL: count=2"));
+
+        List<String> slow = StanchionStats.slowTasks();
+        assertThat(slow.size(), is(1));
+        assertThat(slow.get(0), containsString("KILL at stanchion"));
+        assertThat(slow.get(0), containsString("Thread.sleep"));
+
+        StanchionStats.reset();
+        assertThat(StanchionStats.report().size(), is(0));
+        assertThat(StanchionStats.slowTasks().size(), is(0));
+    }
+}
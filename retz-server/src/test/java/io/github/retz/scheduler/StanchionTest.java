@@ -0,0 +1,163 @@
+/**
+ *    Retz
+ *    Copyright (C) 2016-2017 Nautilus Technologies, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.github.retz.scheduler;
+
+import com.google.protobuf.ByteString;
+import io.github.retz.cli.TimestampHelper;
+import io.github.retz.db.Database;
+import io.github.retz.protocol.data.Application;
+import io.github.retz.protocol.data.Job;
+import io.github.retz.protocol.data.MesosContainer;
+import io.github.retz.protocol.data.User;
+import org.apache.mesos.Protos;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertTrue;
+
+// Offers and status updates processed at once in the planning lane and status lanes
+// must not launch any job twice
+public class StanchionTest {
+    private static final int JOBS = 200;
+
+    LocalSchedulerDriver driver;
+    RetzScheduler scheduler;
+
+    @Before
+    public void before() throws Throwable {
+        Protos.FrameworkInfo frameworkInfo = Protos.FrameworkInfo.newBuilder()
+                .setUser("")
+                .setName(RetzScheduler.FRAMEWORK_NAME)
+                .build();
+
+        InputStream in = Launcher.class.getResourceAsStream("/retz.properties");
+        Launcher.Configuration conf = new Launcher.Configuration(new ServerConfiguration(in));
+
+        Database.getInstance().init(conf.getServerConfig());
+        Stanchion.setStatusLanes(4);
+        scheduler = new RetzScheduler(conf, frameworkInfo);
+        driver = new LocalSchedulerDriver(scheduler, frameworkInfo, conf.getMesosMaster());
+    }
+
+    @After
+    public void after() {
+        driver.clear();
+        Database.getInstance().clear();
+        Database.getInstance().stop();
+    }
+
+    @Test
+    public void stress() throws Exception {
+        Database.getInstance().addUser(new User("Deadbeef", "cafebabe", true, "stress test user"));
+        Applications.load(new Application("stressapp", Collections.emptyList(),
+                Collections.emptyList(), Optional.empty(), "Deadbeef",
+                0, new MesosContainer(), true));
+        List<Job> jobs = new ArrayList<>();
+        for (int i = 0; i < JOBS; i++) {
+            Job job = new Job("stressapp", "sleep " + i, new Properties(), 1, 32, 0);
+            job.schedule(JobQueue.issueJobId(), TimestampHelper.now());
+            jobs.add(job);
+        }
+        JobQueue.pushAll("stressapp", jobs);
+        driver.start();
+
+        AtomicBoolean done = new AtomicBoolean(false);
+        ExecutorService offerers = Executors.newFixedThreadPool(2);
+        for (int t = 0; t < 2; t++) {
+            int thread = t;
+            offerers.submit(() -> {
+                for (int round = 0; !done.get(); round++) {
+                    List<Protos.Offer> offers = new ArrayList<>();
+                    for (int slave = 0; slave < 4; slave++) {
+                        String sid = "slave-" + thread + "-" + slave;
+                        offers.add(RetzSchedulerTest.buildOffer(driver.getFrameworkInfo().getId().getValue(), sid,
+                                sid + "-" + round, 4, 512));
+                    }
+                    driver.dummyOffer(offers);
+                    Thread.sleep(10);
+                }
+                return null;
+            });
+        }
+
+        // Acts as Mesos: every fifth job is lost once and relaunched, others finish
+        Map<String, Integer> launches = new HashMap<>();
+        Set<Integer> lost = new HashSet<>();
+        int seen = 0;
+        long deadline = System.currentTimeMillis() + 60000;
+        while (System.currentTimeMillis() < deadline) {
+            List<Protos.TaskInfo> tasks = driver.getTasks();
+            for (; seen < tasks.size(); seen++) {
+                Protos.TaskInfo task = tasks.get(seen);
+                String taskId = task.getTaskId().getValue();
+                launches.merge(taskId, 1, Integer::sum);
+                int id = JobQueue.getFromTaskId(taskId).get().id();
+                if (id % 5 == 0 && lost.add(id)) {
+                    scheduler.statusUpdate(driver, status(task, Protos.TaskState.TASK_LOST));
+                } else {
+                    scheduler.statusUpdate(driver, status(task, Protos.TaskState.TASK_RUNNING));
+                    scheduler.statusUpdate(driver, status(task, Protos.TaskState.TASK_FINISHED));
+                }
+            }
+            if (jobs.stream().allMatch(this::finished)) {
+                break;
+            }
+            Thread.sleep(50);
+        }
+        done.set(true);
+        offerers.shutdown();
+        assertTrue(offerers.awaitTermination(10, TimeUnit.SECONDS));
+        // Wait for offers still in the planning lane
+        Stanchion.call(Stanchion.Kind.OFFERS, () -> null);
+
+        for (Job job : jobs) {
+            Job j = JobQueue.getJob(job.id()).get();
+            assertThat(j.state(), is(Job.JobState.FINISHED));
+            int expected = lost.contains(j.id()) ? 2 : 1;
+            assertThat("launches of job " + j.id(), launches.get(j.taskId()), is(expected));
+        }
+        assertThat(launches.values().stream().mapToInt(Integer::intValue).sum(), is(JOBS + lost.size()));
+
+        Applications.unload("stressapp");
+        driver.stop();
+    }
+
+    private boolean finished(Job job) {
+        try {
+            return JobQueue.getJob(job.id()).get().state() == Job.JobState.FINISHED;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private static Protos.TaskStatus status(Protos.TaskInfo task, Protos.TaskState state) {
+        return Protos.TaskStatus.newBuilder()
+                .setTaskId(task.getTaskId())
+                .setSlaveId(task.getSlaveId())
+                .setState(state)
+                .setUuid(ByteString.copyFromUtf8(UUID.randomUUID().toString()))
+                .build();
+    }
+}
@@ -0,0 +1,76 @@
+/**
+ *    Retz
+ *    Copyright (C) 2016-2017 Nautilus Technologies, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.github.retz.scheduler;
+
+import io.github.retz.db.Database;
+import org.apache.mesos.Protos;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.InputStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class StatusUpdateJournalTest {
+    private static final int BATCH_SIZE = 8;
+    private static final int DELAY = 60000;
+
+    LocalSchedulerDriver driver;
+    RetzScheduler scheduler;
+
+    @Before
+    public void before() throws Throwable {
+        Protos.FrameworkInfo frameworkInfo = Protos.FrameworkInfo.newBuilder()
+                .setUser("")
+                .setName(RetzScheduler.FRAMEWORK_NAME)
+                .build();
+
+        InputStream in = Launcher.class.getResourceAsStream("/retz.properties");
+        Launcher.Configuration conf = new Launcher.Configuration(new ServerConfiguration(in));
+
+        Database.getInstance().init(conf.getServerConfig());
+        Stanchion.setStatusLanes(1);
+        scheduler = new RetzScheduler(conf, frameworkInfo);
+        driver = new LocalSchedulerDriver(scheduler, frameworkInfo, conf.getMesosMaster());
+    }
+
+    @After
+    public void after() {
+        Stanchion.setStatusLanes(ServerConfiguration.DEFAULT_STATUS_LANES);
+        Database.getInstance().clear();
+        Database.getInstance().stop();
+    }
+
+    // A full batch is flushed at once, even after the first update armed the delay timer
+    @Test
+    public void flushWhenFull() throws Exception {
+        StatusUpdateJournal journal = new StatusUpdateJournal(scheduler, BATCH_SIZE, DELAY);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            journal.add(driver, Protos.TaskStatus.newBuilder()
+                    .setTaskId(Protos.TaskID.newBuilder().setValue("no-such-task-" + i))
+                    .setState(Protos.TaskState.TASK_RUNNING)
+                    .build());
+        }
+        long deadline = System.currentTimeMillis() + DELAY / 10;
+        while (journal.size() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(journal.size(), is(0));
+    }
+}
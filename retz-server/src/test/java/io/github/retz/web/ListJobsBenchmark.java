@@ -0,0 +1,97 @@
+/**
+ *    Retz
+ *    Copyright (C) 2016-2017 Nautilus Technologies, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.github.retz.web;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
+import io.github.retz.cli.TimestampHelper;
+import io.github.retz.protocol.ListJobResponse;
+import io.github.retz.protocol.data.Job;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Properties;
+
+/**
+ * Compares encoding a list response of stored job JSON by decoding and encoding
+ * each job (as ListJobResponse) against passing it through as raw values (as
+ * RawListJobResponse). Not a unit test; run manually:
+ *
+ * java -cp ... io.github.retz.web.ListJobsBenchmark [jobs per response]
+ */
+public class ListJobsBenchmark {
+    private static final int ROUNDS = 200;
+
+    public static void main(String... argv) throws Exception {
+        int size = argv.length > 0 ? Integer.parseInt(argv[0]) : 4096;
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.registerModule(new Jdk8Module());
+
+        List<String> stored = new ArrayList<>();
+        for (int i = 0; i < size; ++i) {
+            Properties env = new Properties();
+            env.setProperty("PARAM", Integer.toString(i));
+            Job job = new Job("app", "./run.sh --index " + i, env, 1, 256, 0);
+            job.addTags("sweep", "batch-" + (i / 100));
+            job.schedule(i, TimestampHelper.now());
+            stored.add(mapper.writeValueAsString(job));
+        }
+
+        Encoder decoding = () -> {
+            List<Job> jobs = new ArrayList<>(stored.size());
+            for (String json : stored) {
+                jobs.add(mapper.readValue(json, Job.class));
+            }
+            ListJobResponse response = new ListJobResponse(jobs, false);
+            response.ok();
+            return mapper.writeValueAsBytes(response);
+        };
+        Encoder raw = () -> {
+            JobRequestHandler.RawListJobResponse response = new JobRequestHandler.RawListJobResponse(stored, false, Optional.empty());
+            response.ok();
+            return mapper.writeValueAsBytes(response);
+        };
+
+        if (!mapper.readTree(decoding.encode()).equals(mapper.readTree(raw.encode()))) {
+            throw new AssertionError("Responses differ");
+        }
+        System.out.printf("%d jobs/response: decode+encode %d us/op, raw %d us/op%n",
+                size, measure(decoding), measure(raw));
+    }
+
+    private static long measure(Encoder encoder) throws Exception {
+        long bytes = 0;
+        for (int i = 0; i < ROUNDS / 4; ++i) {
+            bytes += encoder.encode().length;
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; ++i) {
+            bytes += encoder.encode().length;
+        }
+        long elapsed = System.nanoTime() - start;
+        if (bytes == 0) {
+            throw new AssertionError();
+        }
+        return elapsed / ROUNDS / 1000;
+    }
+
+    @FunctionalInterface
+    private interface Encoder {
+        byte[] encode() throws Exception;
+    }
+}
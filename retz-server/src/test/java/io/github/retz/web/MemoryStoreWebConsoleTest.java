@@ -0,0 +1,42 @@
+/**
+ *    Retz
+ *    Copyright (C) 2016-2017 Nautilus Technologies, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.github.retz.web;
+
+import io.github.retz.cli.ClientCLIConfig;
+import io.github.retz.scheduler.Launcher;
+import io.github.retz.scheduler.ServerConfiguration;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+
+// Same tests as WebConsoleTest, with jobs stored in memory instead of database
+public class MemoryStoreWebConsoleTest extends WebConsoleCommonTests {
+
+    @Override
+    Launcher.Configuration makeConfig() throws Exception {
+        InputStream in = new SequenceInputStream(Launcher.class.getResourceAsStream("/retz-tls.properties"),
+                new ByteArrayInputStream("\nretz.database.store = memory\n".getBytes(StandardCharsets.UTF_8)));
+        return new Launcher.Configuration(new ServerConfiguration(in));
+    }
+
+    @Override
+    ClientCLIConfig makeClientConfig() throws Exception {
+        return new ClientCLIConfig("src/test/resources/retz-tls-client.properties");
+    }
+}
@@ -18,13 +18,19 @@ package io.github.retz.web;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
+import feign.Feign;
+import feign.Headers;
+import feign.Param;
+import feign.RequestLine;
 import io.github.retz.cli.ClientCLIConfig;
 import io.github.retz.cli.TimestampHelper;
 import io.github.retz.db.Database;
+import io.github.retz.db.JobStores;
 import io.github.retz.misc.ApplicationBuilder;
 import io.github.retz.protocol.*;
 import io.github.retz.protocol.data.*;
 import io.github.retz.scheduler.*;
+import io.github.retz.web.feign.AuthHeaderInterceptor;
 import org.apache.mesos.Protos;
 import org.hamcrest.Matchers;
 import org.junit.*;
@@ -32,7 +38,12 @@ import org.junit.*;
 import java.io.ByteArrayOutputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.security.SecureRandom;
 import java.util.*;
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.*;
@@ -75,8 +86,10 @@ public class WebConsoleCommonTests {
 
         RetzScheduler scheduler = new RetzScheduler(conf, frameworkInfo);
         config = conf.getServerConfig();
-        Database.getInstance().init(config);
-        assertTrue(Database.getMigrator().isFinished());
+        // The store is named by retz.database.store of each configuration
+        if (JobStores.init(config) instanceof Database) {
+            assertTrue(Database.getMigrator().isFinished());
+        }
 
         WebConsole.set(scheduler, null);
         WebConsole.start(config);
@@ -96,8 +109,8 @@ public class WebConsoleCommonTests {
     public void tearDown() throws Exception {
         webClient.close();
         WebConsole.stop();
-        Database.getInstance().clear();
-        Database.getInstance().stop();
+        JobStores.get().clear();
+        JobStores.get().stop();
         // This is because Spark.stop() is impelemented in asynchronous way,
         // there are no way to wait for spark.Service.initialized become false.
         // If this sleep is too short, IllegalStateException("This must be done before route mapping has begun");
@@ -269,6 +282,118 @@ public class WebConsoleCommonTests {
         }
     }
 
+    @Test
+    public void scheduleBatch() throws Exception {
+        Application app = new ApplicationBuilder("batch-app", config.getUser().keyId()).build();
+        LoadAppResponse loadAppResponse = (LoadAppResponse) webClient.load(app);
+        assertEquals("ok", loadAppResponse.status());
+
+        List<Job> jobs = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            Job job = new Job("batch-app", "echo " + i, new Properties(), 1 + i % 2, 64, 0);
+            job.addTags("batch");
+            jobs.add(job);
+        }
+        Response res = webClient.scheduleAll("batch-app", jobs);
+        assertThat(res, instanceOf(ScheduleBatchResponse.class));
+        ScheduleBatchResponse batch = (ScheduleBatchResponse) res;
+        assertEquals(10, batch.count());
+        for (int i = 0; i < 10; i++) {
+            Job job = ((GetJobResponse) webClient.getJob(batch.firstId() + i)).job().get();
+            assertEquals("echo " + i, job.cmd());
+            assertEquals(Job.JobState.QUEUED, job.state());
+            assertEquals(batch.scheduled(), job.scheduled());
+        }
+        ListJobResponse listed = (ListJobResponse) webClient.list(Job.JobState.QUEUED, Optional.of("batch"));
+        assertEquals(10, listed.jobs().size());
+
+        // All or nothing
+        jobs.add(new Job("batch-app", "too large", new Properties(), 1000000, 64, 0));
+        assertThat(webClient.scheduleAll("batch-app", jobs), instanceOf(ErrorResponse.class));
+        jobs.set(10, new Job("other-app", "other app", new Properties(), 1, 64, 0));
+        assertThat(webClient.scheduleAll("batch-app", jobs), instanceOf(ErrorResponse.class));
+        assertThat(webClient.scheduleAll("no-such-app", jobs.subList(0, 1)), instanceOf(ErrorResponse.class));
+        assertThat(webClient.scheduleAll("batch-app", Collections.emptyList()), instanceOf(ErrorResponse.class));
+        listed = (ListJobResponse) webClient.list(Job.JobState.QUEUED, Optional.of("batch"));
+        assertEquals(10, listed.jobs().size());
+
+        // Malformed jobs after the first one are bad requests, too
+        String first = mapper.writeValueAsString(jobs.get(0));
+        assertEquals(400, postBatch("batch-app", first + "\n{bad"));
+        assertEquals(400, postBatch("batch-app", "[" + first + ", 3x]"));
+        assertEquals(400, postBatch("batch-app", "[" + first + ", 3]"));
+        listed = (ListJobResponse) webClient.list(Job.JobState.QUEUED, Optional.of("batch"));
+        assertEquals(10, listed.jobs().size());
+    }
+
+    // Client never sends malformed batch
+    interface RawBatch {
+        @RequestLine("POST /app/{appid}/jobs")
+        @Headers({"Content-Type: application/json", "Accept: application/json"})
+        feign.Response scheduleAll(@Param("appid") String appid, String body);
+    }
+
+    private int postBatch(String appid, String body) throws Exception {
+        SSLSocketFactory socketFactory = null;
+        HostnameVerifier hostnameVerifier = null;
+        if (cliConfig.insecure()) {
+            SSLContext sc = SSLContext.getInstance("SSL");
+            sc.init(null, new TrustManager[]{new WrongTrustManager()}, new SecureRandom());
+            socketFactory = sc.getSocketFactory();
+            hostnameVerifier = new NoOpHostnameVerifier();
+        }
+        RawBatch raw = Feign.builder()
+                .client(new feign.Client.Default(socketFactory, hostnameVerifier))
+                .requestInterceptor(new AuthHeaderInterceptor(cliConfig.getAuthenticator()))
+                .target(RawBatch.class, cliConfig.getUri().toString());
+        try (feign.Response res = raw.scheduleAll(appid, body)) {
+            return res.status();
+        }
+    }
+
+    @Test
+    public void killJobs() throws Exception {
+        Application app = new ApplicationBuilder("killall-app", config.getUser().keyId()).build();
+        LoadAppResponse loadAppResponse = (LoadAppResponse) webClient.load(app);
+        assertEquals("ok", loadAppResponse.status());
+
+        List<Job> jobs = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            Job job = new Job("killall-app", "sleep " + i, new Properties(), 1, 64, 0);
+            job.addTags(i % 2 == 0 ? "even" : "odd");
+            jobs.add(job);
+        }
+        ScheduleBatchResponse batch = (ScheduleBatchResponse) webClient.scheduleAll("killall-app", jobs);
+        int firstId = batch.firstId();
+
+        // Neither tag nor id range
+        assertThat(webClient.killAll(KillJobsRequest.DEFAULT_STATES, Optional.empty(), Optional.empty(), Optional.empty()),
+                instanceOf(ErrorResponse.class));
+
+        // Even jobs in [firstId, firstId + 5]: 0, 2, 4
+        Response res = webClient.killAll(KillJobsRequest.DEFAULT_STATES, Optional.of("even"),
+                Optional.of(firstId), Optional.of(firstId + 5));
+        assertThat(res, instanceOf(KillJobsResponse.class));
+        assertEquals(3, ((KillJobsResponse) res).queued());
+        assertEquals(0, ((KillJobsResponse) res).running());
+        for (int i = 0; i < 10; i++) {
+            Job job = ((GetJobResponse) webClient.getJob(firstId + i)).job().get();
+            Job.JobState expected = (i % 2 == 0 && i <= 5) ? Job.JobState.KILLED : Job.JobState.QUEUED;
+            assertEquals(expected, job.state());
+        }
+
+        // Only STARTED jobs, of which there is none
+        res = webClient.killAll(Collections.singletonList(Job.JobState.STARTED), Optional.empty(),
+                Optional.of(firstId), Optional.empty());
+        assertEquals(0, ((KillJobsResponse) res).queued());
+
+        // The rest
+        res = webClient.killAll(KillJobsRequest.DEFAULT_STATES, Optional.empty(),
+                Optional.of(firstId), Optional.of(firstId + 9));
+        assertEquals(7, ((KillJobsResponse) res).queued());
+        assertEquals(0, ((ListJobResponse) webClient.list(Job.JobState.QUEUED, Optional.empty())).jobs().size());
+    }
+
     @Test
     public void ping() throws IOException {
         Client c = Client.newBuilder(config.getUri())
@@ -282,7 +407,7 @@ public class WebConsoleCommonTests {
     public void status() throws Exception {
         Application app = new Application("fooapp", Collections.emptyList(), Collections.emptyList(), Optional.empty(), config.getUser().keyId(),
                 0, new MesosContainer(), true);
-        Database.getInstance().addApplication(app);
+        JobStores.get().addApplication(app);
         Job job = new Job(app.getAppid(), "foocmd", null, 12000, 12000, 12000);
         job.schedule(JobQueue.issueJobId(), TimestampHelper.now());
         JobQueue.push(job);
@@ -327,7 +452,7 @@ public class WebConsoleCommonTests {
 
         // Here comes a new challenger!!
         User charlie = new User("charlie", "snoops!", true, "Charlie the theif");
-        Database.getInstance().addUser(charlie);
+        JobStores.get().addUser(charlie);
 
         ClientCLIConfig c2 = new ClientCLIConfig(cliConfig);
         c2.setUser(charlie);
@@ -446,9 +571,9 @@ public class WebConsoleCommonTests {
         Job job1 = scheduleResponse.job();
 
         System.err.println("Disable user " + user.keyId());
-        Database.getInstance().enableUser(user.keyId(), false);
+        JobStores.get().enableUser(user.keyId(), false);
         {
-            Optional<User> u = Database.getInstance().getUser(user.keyId());
+            Optional<User> u = JobStores.get().getUser(user.keyId());
             assertFalse(u.get().enabled());
         }
 
@@ -466,7 +591,7 @@ public class WebConsoleCommonTests {
         Assert.assertThat(res, instanceOf(ErrorResponse.class));
 
         System.err.println("Enable user");
-        Database.getInstance().enableUser(user.keyId(), true);
+        JobStores.get().enableUser(user.keyId(), true);
 
         res = client.getJob(job1.id());
         System.err.println(res.status());
@@ -486,9 +611,9 @@ public class WebConsoleCommonTests {
     public void getBinaryFile() throws Exception {
         Application app = new Application("fooapp", Collections.emptyList(), Collections.emptyList(), Optional.empty(), config.getUser().keyId(),
                 0, new MesosContainer(), true);
-        Database.getInstance().addApplication(app);
+        JobStores.get().addApplication(app);
         Job job = new Job(app.getAppid(), "hoge", null, 1, 200, 32);
-        Database.getInstance().safeAddJob(job);
+        JobStores.get().safeAddJob(job);
 
         ByteArrayOutputStream out = new ByteArrayOutputStream();
         try {